@@ -0,0 +1,925 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Benchmarks - Command-line benchmarks for the library's indexes and batch jobs.
+ * Each one builds its own data in memory or under the temp directory, times the
+ * operation and checks the result; none of them touch the real data directory.
+ * Kept out of the production classes so they carry no benchmark entry points.
+ *
+ * Usage: java Benchmarks <name> [args...]
+ *   balancer [branches] [titles]                Inter-branch copy balancing (BranchBalancer)
+ *   report [books] [members]                    Streamed and gzipped library report (ReportGenerator)
+ *   columnar [books] [members] [history]        Full and incremental columnar export (ColumnarExporter)
+ *   analytics [historyLoans]                    Circulation statistics on all cores and one (CirculationAnalytics)
+ *   popularity [loans] [titles]                 Trending titles against exact counts (PopularityTracker)
+ *   recommendations [loans] [members] [titles]  Recommendation build, queries and updates (RecommendationEngine)
+ *   fuzzy [books]                               Misspelled queries on the fuzzy index (FuzzySearchIndex)
+ *   catalog [books]                             Planned catalog queries against a full scan (CatalogIndex)
+ *   loandates [activeLoans] [pastLoans]         Indexed date queries against a full scan (LoanDateIndex)
+ *   reminders [activeLoans] [members]           Daily reminder runs and outbox drain (ReminderPipeline)
+ *   fees [transactions] [members]               Cent ledger postings against double sums (FeeLedger)
+ *   network [root]                              Three branches: federated search and routed loans (LibraryNetwork)
+ */
+public class Benchmarks {
+
+    private static final String TEMP_ROOT = System.getProperty("java.io.tmpdir");
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            printUsage();
+            return;
+        }
+        String[] rest = Arrays.copyOfRange(args, 1, args.length);
+        switch (args[0]) {
+            case "balancer":
+                branchBalancer(rest);
+                break;
+            case "report":
+                reportGenerator(rest);
+                break;
+            case "columnar":
+                columnarExport(rest);
+                break;
+            case "analytics":
+                circulationAnalytics(rest);
+                break;
+            case "popularity":
+                popularityTracker(rest);
+                break;
+            case "recommendations":
+                recommendationEngine(rest);
+                break;
+            case "fuzzy":
+                fuzzySearchIndex(rest);
+                break;
+            case "catalog":
+                catalogIndex(rest);
+                break;
+            case "loandates":
+                loanDateIndex(rest);
+                break;
+            case "reminders":
+                reminderPipeline(rest);
+                break;
+            case "fees":
+                feeLedger(rest);
+                break;
+            case "network":
+                libraryNetwork(rest);
+                break;
+            default:
+                printUsage();
+                return;
+        }
+        System.exit(0);     // Branch and service threads are not daemons
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: java Benchmarks <name> [args...]");
+        System.out.println("  balancer [branches] [titles]                Inter-branch copy balancing");
+        System.out.println("  report [books] [members]                    Streamed and gzipped library report");
+        System.out.println("  columnar [books] [members] [history]        Full and incremental columnar export");
+        System.out.println("  analytics [historyLoans]                    Circulation statistics on all cores and one");
+        System.out.println("  popularity [loans] [titles]                 Trending titles against exact counts");
+        System.out.println("  recommendations [loans] [members] [titles]  Recommendation build, queries and updates");
+        System.out.println("  fuzzy [books]                               Misspelled queries on the fuzzy index");
+        System.out.println("  catalog [books]                             Planned catalog queries against a full scan");
+        System.out.println("  loandates [activeLoans] [pastLoans]         Indexed date queries against a full scan");
+        System.out.println("  reminders [activeLoans] [members]           Daily reminder runs and outbox drain");
+        System.out.println("  fees [transactions] [members]               Cent ledger postings against double sums");
+        System.out.println("  network [root]                              Three branches: federated search and routed loans");
+    }
+
+    /**
+     * Library logs every operation to stdout; silence it while building data
+     */
+    private static PrintStream silenceConsole() {
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        return console;
+    }
+
+    // ==================== BRANCH BALANCER ====================
+
+    /**
+     * Build a network with many titles and skewed demand, then time a balancing run
+     * and check that no copy was lost or counted twice.
+     */
+    private static void branchBalancer(String[] args) {
+        int branchCount = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int titles = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        PrintStream console = silenceConsole();
+
+        LibraryNetwork network = new LibraryNetwork(TEMP_ROOT + "/lms-balancer");
+        Random random = new Random(42);
+        List<Member> readers = new ArrayList<>();
+        for (int b = 0; b < branchCount; b++) {
+            Library branch = new Library("Branch-" + b, TEMP_ROOT + "/lms-balancer/Branch-" + b);
+            Member reader = new Member("Reader", "Branch" + (char) ('A' + b % 26), 30);
+            reader.upgradePlan(MembershipPlan.PlanType.PREMIUM);   // Holds need a plan with reservations
+            branch.addMember(reader);
+            readers.add(reader);
+            for (int t = 0; t < titles; t++) {
+                String isbn = Long.toString(Isbn.withCheckDigit(978_100_000_000L + t));
+                branch.addBook(new Book(isbn, "Title " + t, "Author " + (t % 5000), Book.BookTheme.OTHER,
+                        random.nextInt(4)));
+            }
+            network.addBranch(branch);
+        }
+        // Holds on a quarter of the titles at one branch each, with no copy on the shelf there
+        for (int t = 0; t < titles; t += 4) {
+            int b = random.nextInt(branchCount);
+            String isbn = Long.toString(Isbn.withCheckDigit(978_100_000_000L + t));
+            Member reader = readers.get(b);
+            network.getBranch("Branch-" + b).call(lib -> {
+                Book book = lib.findBookByISBN(isbn);
+                if (book.getAvailableCopies() > 0) {
+                    book.tryReserve(book.getAvailableCopies());  // Out on loan, as far as holds can tell
+                }
+                lib.placeHold(reader.getId(), isbn);
+                return null;
+            }).join();
+        }
+
+        BranchBalancer balancer = new BranchBalancer(network);
+        long before = networkCopies(network);
+        long start = System.nanoTime();
+        List<BranchBalancer.Transfer> proposed = balancer.plan();
+        long planned = System.nanoTime();
+        List<BranchBalancer.Transfer> moved = balancer.execute(proposed);
+        long done = System.nanoTime();
+        long after = networkCopies(network);
+        System.setOut(console);
+
+        System.out.println("=== Branch balancing: " + branchCount + " branches x " + titles + " titles ===");
+        System.out.printf("Plan:     %d transfers in %d ms%n", proposed.size(), (planned - start) / 1_000_000);
+        System.out.printf("Execute:  %d transfers, %d copies in %d ms%n", moved.size(),
+                moved.stream().mapToInt(BranchBalancer.Transfer::getCopies).sum(), (done - planned) / 1_000_000);
+        System.out.println("Copies:   " + before + " before, " + after + " after, " +
+                balancer.getCopiesInTransit() + " in transit");
+        System.out.println(before == after ? "Totals conserved." : "ERROR: totals changed!");
+    }
+
+    private static long networkCopies(LibraryNetwork network) {
+        long total = 0;
+        for (String branch : network.getBranchNames()) {
+            total += network.getBranch(branch).call(lib -> {
+                long copies = 0;
+                for (Book book : lib.getAllBooks()) {
+                    copies += book.getTotalCopies();
+                }
+                return copies;
+            }).join();
+        }
+        return total;
+    }
+
+    // ==================== REPORT GENERATOR ====================
+
+    /**
+     * Generate reports for a large synthetic catalog and print size and time
+     */
+    private static void reportGenerator(String[] args) throws IOException {
+        int bookCount = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int memberCount = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        Path directory = Files.createTempDirectory("report-benchmark");
+        Library library = new Library("Report Benchmark", directory.toString());
+
+        PrintStream console = silenceConsole();
+        try {
+            for (int i = 0; i < bookCount; i++) {
+                library.addBook(new Book(String.valueOf(Isbn.withCheckDigit(978000000000L + i)),
+                        "Title " + i, "Author " + (i % 5_000), Book.BookTheme.values()[i % Book.BookTheme.values().length], 3));
+            }
+            for (int i = 0; i < memberCount; i++) {
+                Member member = new Member("Reader", "No" + i, 30);
+                library.addMember(member);
+                if (i % 2 == 0) {
+                    library.issueLoan(member.getId(), String.valueOf(Isbn.withCheckDigit(978000000000L + i)));
+                }
+            }
+        } finally {
+            System.setOut(console);
+        }
+
+        ReportGenerator generator = new ReportGenerator(library);
+        generator.setProgressListener((section, done, total) -> {
+            if (done == total || done % 100_000 == 0) {
+                System.out.println("  " + section + ": " + done + "/" + total);
+            }
+        });
+
+        for (String name : new String[] {"library_report.txt", "library_report.txt" + ReportGenerator.GZIP_SUFFIX}) {
+            Path file = directory.resolve(name);
+            long start = System.nanoTime();
+            long rows = generator.generate(file.toString());
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("%s: %,d rows, %,d KB in %,d ms%n", name, rows, Files.size(file) / 1024, millis);
+            Files.delete(file);
+        }
+        library.getLoanHistoryStore().close();
+    }
+
+    // ==================== COLUMNAR EXPORT ====================
+
+    /**
+     * Build a library with a long loan history, then time a full analytics export,
+     * reading two history columns back and an incremental export of a few hundred changes.
+     */
+    private static void columnarExport(String[] args) throws IOException {
+        int bookCount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int memberCount = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+        int historyCount = args.length > 2 ? Integer.parseInt(args[2]) : 1_000_000;
+        Path directory = Files.createTempDirectory("columnar-benchmark");
+        Library library = new Library("Columnar Benchmark", directory.toString());
+
+        PrintStream console = silenceConsole();
+        List<Member> members = new ArrayList<>();
+        try {
+            for (int i = 0; i < bookCount; i++) {
+                library.addBook(new Book(isbn(i), "Title " + i, "Author " + (i % 5_000),
+                        Book.BookTheme.values()[i % Book.BookTheme.values().length], 3));
+            }
+            for (int i = 0; i < memberCount; i++) {
+                Member member = new Member("Reader", "No" + i, 30);
+                library.addMember(member);
+                members.add(member);
+            }
+            for (int i = 0; i < historyCount; i++) {
+                int memberId = members.get(i % memberCount).getId();
+                String isbn = isbn(i % bookCount);
+                library.issueLoan(memberId, isbn);
+                library.returnBook(memberId, isbn);
+            }
+            for (int i = 0; i < memberCount; i += 2) {
+                library.issueLoan(members.get(i).getId(), isbn(i % bookCount));
+            }
+        } finally {
+            System.setOut(console);
+        }
+
+        ColumnarExporter exporter = new ColumnarExporter(library, directory.resolve("analytics").toString());
+        long start = System.nanoTime();
+        silenceConsole();
+        long rows = exporter.exportAll();
+        System.setOut(console);
+        System.out.printf("Full export: %,d rows in %,d ms%n", rows, (System.nanoTime() - start) / 1_000_000);
+        Path history = exporter.tableFile(ColumnarExporter.HISTORY_TABLE);
+        System.out.printf("History:     %,d KB log, %,d KB table%n",
+                Files.size(directory.resolve("loan_history.log")) / 1024, Files.size(history) / 1024);
+
+        start = System.nanoTime();
+        ColumnarTable.Table table = ColumnarTable.Table.read(history, "member_id", "isbn");
+        System.out.printf("Read back:   %,d rows of %s in %,d ms%n", table.getRowCount(),
+                table.getSchema().keySet(), (System.nanoTime() - start) / 1_000_000);
+
+        // Half returns, half new loans
+        silenceConsole();
+        try {
+            for (int i = 0; i < 250; i++) {
+                int member = 2 * i;
+                library.returnBook(members.get(member).getId(), isbn(member % bookCount));
+                library.issueLoan(members.get(member + 1).getId(), isbn((member + 1) % bookCount));
+            }
+            start = System.nanoTime();
+            rows = exporter.exportChanges();
+        } finally {
+            System.setOut(console);
+        }
+        System.out.printf("Incremental: %,d rows in %,d ms%n", rows, (System.nanoTime() - start) / 1_000_000);
+        library.getLoanHistoryStore().close();
+    }
+
+    private static String isbn(int i) {
+        return String.valueOf(Isbn.withCheckDigit(978000000000L + i));
+    }
+
+    // ==================== CIRCULATION ANALYTICS ====================
+
+    /**
+     * Time the circulation statistics over a synthetic history, on all cores and on one
+     */
+    private static void circulationAnalytics(String[] args) throws IOException {
+        int loanCount = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        Path directory = Files.createTempDirectory("analytics-benchmark");
+        Library library = new Library("Analytics Benchmark", directory.toString());
+        Book.BookTheme[] themes = Book.BookTheme.values();
+        MembershipPlan.PlanType[] plans = MembershipPlan.PlanType.values();
+
+        PrintStream console = silenceConsole();
+        Random random = new Random(42);
+        Book[] books = new Book[50_000];
+        Member[] members = new Member[20_000];
+        LocalDate start = LocalDate.of(2020, 1, 1);
+        try {
+            for (int i = 0; i < books.length; i++) {
+                books[i] = new Book(isbn(i), "Title " + i, "Author " + (i % 2_000), themes[i % themes.length], 3);
+                library.addBook(books[i]);
+            }
+            for (int i = 0; i < members.length; i++) {
+                members[i] = new Member("Reader", "No" + i, 30);
+                members[i].changePlan(plans[i % 3]);
+                library.addMember(members[i]);
+            }
+            for (int i = 0; i < loanCount; i++) {
+                LocalDate loanDate = start.plusDays(random.nextInt(5 * 365));
+                // Skewed popularity: low-numbered titles are borrowed far more often
+                Book book = books[(int) (books.length * Math.pow(random.nextDouble(), 3))];
+                library.getLoanHistoryStore().append(Loan.restore(members[random.nextInt(members.length)], book,
+                        loanDate, loanDate.plusDays(14), loanDate.plusDays(random.nextInt(21))));
+            }
+        } finally {
+            System.setOut(console);
+        }
+
+        CirculationAnalytics parallel = new CirculationAnalytics(library);
+        CirculationAnalytics sequential = new CirculationAnalytics(library, new ForkJoinPool(1));
+        for (CirculationAnalytics analytics : new CirculationAnalytics[] {parallel, sequential}) {
+            String name = analytics == parallel
+                    ? "parallel (" + ForkJoinPool.commonPool().getParallelism() + ")" : "sequential";
+            CirculationStats first = analytics.getStats();
+            long cachedStart = System.nanoTime();
+            analytics.getStats();
+            long cachedMicros = (System.nanoTime() - cachedStart) / 1_000;
+            // One more returned loan: only its row is extracted, then every row is counted again
+            library.getLoanHistoryStore().append(Loan.restore(members[0], books[0], start, start.plusDays(14),
+                    start.plusDays(7)));
+            long countMillis = analytics.getStats().getComputeMillis();
+            System.out.printf("%s: first %,d ms (with extraction), recount %,d ms, cached %,d us%n",
+                    name, first.getComputeMillis(), countMillis, cachedMicros);
+        }
+        CirculationStats stats = parallel.getStats();
+        System.out.println(stats);
+        for (int i = 0; i < 3; i++) {
+            CirculationStats.PlanStats planStats = stats.getPlanStats(plans[i]);
+            System.out.printf("  %s: %.2f days on average, %.1f%% late%n", plans[i],
+                    planStats.getAverageLoanDays(), planStats.getLateReturnRate() * 100);
+        }
+        System.out.println("  " + stats.getBorrowingByThemePerMonth().lastKey() + ": " +
+                stats.getBorrowingByThemePerMonth().get(stats.getBorrowingByThemePerMonth().lastKey()));
+        library.getLoanHistoryStore().close();
+    }
+
+    // ==================== POPULARITY TRACKER ====================
+
+    /**
+     * Feed a skewed stream of loans through the tracker and compare its top titles with exact counts
+     */
+    private static void popularityTracker(String[] args) {
+        int loanCount = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        int titleCount = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        int days = 365;
+
+        // Zipf-like popularity: title i is borrowed about 1/(i+1) as often as title 0
+        double[] cumulative = new double[titleCount];
+        double sum = 0;
+        for (int i = 0; i < titleCount; i++) {
+            sum += 1.0 / (i + 1);
+            cumulative[i] = sum;
+        }
+        Random random = new Random(42);
+        long[] isbns = new long[loanCount];
+        int[] loanDays = new int[loanCount];
+        for (int i = 0; i < loanCount; i++) {
+            double u = random.nextDouble() * sum;
+            int lo = 0;
+            int hi = titleCount - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (cumulative[mid] < u) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            // Shuffle ranks over time so the trending list actually changes
+            isbns[i] = (lo + (long) (i / (loanCount / 4 + 1)) * 7) % titleCount;
+            loanDays[i] = (int) ((long) i * days / loanCount);
+        }
+
+        PopularityTracker tracker = new PopularityTracker();
+        long start = System.nanoTime();
+        for (int i = 0; i < loanCount; i++) {
+            tracker.record(isbns[i], loanDays[i]);
+        }
+        long recordNanos = System.nanoTime() - start;
+
+        // Exact decayed counts for comparison
+        double[] exact = new double[titleCount];
+        for (int i = 0; i < loanCount; i++) {
+            exact[(int) isbns[i]] += Math.pow(2.0,
+                    -(days - loanDays[i]) / PopularityTracker.DEFAULT_HALF_LIFE_DAYS);
+        }
+        int k = 10;
+        List<PopularityTracker.Trend> trending = null;
+        start = System.nanoTime();
+        int queries = 100_000;
+        for (int i = 0; i < queries; i++) {
+            trending = tracker.getTrending(k, days);
+        }
+        long queryNanos = (System.nanoTime() - start) / queries;
+
+        Integer[] order = new Integer[titleCount];
+        for (int i = 0; i < titleCount; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(exact[b], exact[a]));
+        int hits = 0;
+        for (PopularityTracker.Trend trend : trending) {
+            for (int i = 0; i < k; i++) {
+                if (order[i] == trend.getIsbnKey()) {
+                    hits++;
+                }
+            }
+        }
+        System.out.printf("%,d loans over %,d titles: %.0f ns per loan, %,d ns per top-%d query%n",
+                loanCount, titleCount, (double) recordNanos / loanCount, queryNanos, k);
+        System.out.printf("Top-%d agreement with exact decayed counts: %d/%d%n", k, hits, k);
+        for (int i = 0; i < k; i++) {
+            PopularityTracker.Trend trend = trending.get(i);
+            System.out.printf("  %2d. title %6d  score %8.1f (exact %8.1f, error <= %.1f)%n", i + 1,
+                    trend.getIsbnKey(), trend.getScore(), exact[(int) trend.getIsbnKey()], trend.getError());
+        }
+    }
+
+    // ==================== RECOMMENDATION ENGINE ====================
+
+    /**
+     * Build the recommendation model from a large synthetic loan history, then time member queries and new loans
+     */
+    private static void recommendationEngine(String[] args) throws IOException {
+        int loanCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int memberCount = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+        int titleCount = args.length > 2 ? Integer.parseInt(args[2]) : 20_000;
+        Path directory = Files.createTempDirectory("recommendation-benchmark");
+        Library library = new Library("Recommendation Benchmark", directory.toString());
+        Random random = new Random(7);
+        Book[] books = new Book[titleCount];
+        Member[] members = new Member[memberCount];
+
+        PrintStream console = silenceConsole();
+        try {
+            for (int i = 0; i < books.length; i++) {
+                books[i] = new Book(isbn(i), "Title " + i, "Author " + (i % 2_000),
+                        Book.BookTheme.values()[i % Book.BookTheme.values().length], 3);
+                library.addBook(books[i]);
+            }
+            for (int i = 0; i < members.length; i++) {
+                members[i] = new Member("Reader", "No" + i, 30);
+                library.addMember(members[i]);
+            }
+            // Each member keeps to a neighbourhood of titles, so there is structure to find
+            LocalDate start = LocalDate.of(2020, 1, 1);
+            for (int i = 0; i < loanCount; i++) {
+                int member = random.nextInt(members.length);
+                int title = Math.floorMod(member * 37 + (int) (random.nextGaussian() * 40), books.length);
+                LocalDate loanDate = start.plusDays(random.nextInt(5 * 365));
+                library.getLoanHistoryStore().append(Loan.restore(members[member], books[title],
+                        loanDate, loanDate.plusDays(14), loanDate.plusDays(random.nextInt(21))));
+            }
+        } finally {
+            System.setOut(console);
+        }
+
+        RecommendationEngine engine = library.getRecommendationEngine();
+        silenceConsole();
+        try {
+            engine.rebuild();
+        } finally {
+            System.setOut(console);
+        }
+        System.out.printf("Build (%d threads): %,d loans, %,d titles, %,d pairs in %,d ms%n",
+                ForkJoinPool.commonPool().getParallelism(), loanCount, engine.getTitleCount(),
+                engine.getPairCount(), engine.getBuildMillis());
+
+        int queries = 2_000;
+        long start = System.nanoTime();
+        List<Book> sample = null;
+        for (int i = 0; i < queries; i++) {
+            sample = engine.recommendFor(members[random.nextInt(members.length)], 10);
+        }
+        System.out.printf("Member query: %.2f ms%n", (System.nanoTime() - start) / 1e6 / queries);
+        System.out.println("  e.g. " + sample.stream().map(Book::getTitle).toList());
+
+        start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            engine.recordLoan(members[random.nextInt(members.length)],
+                    books[random.nextInt(books.length)].getIsbnKey());
+        }
+        System.out.printf("New loan update: %.3f ms (overlay %,d pairs)%n",
+                (System.nanoTime() - start) / 1e6 / queries, engine.getOverlayPairs());
+        library.getLoanHistoryStore().close();
+    }
+
+    // ==================== FUZZY SEARCH INDEX ====================
+
+    /**
+     * Index a large synthetic catalog and time misspelled author queries
+     */
+    private static void fuzzySearchIndex(String[] args) {
+        int bookCount = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        Random random = new Random(11);
+        String[] vocabulary = new String[20_000];
+        for (int i = 0; i < vocabulary.length; i++) {
+            StringBuilder word = new StringBuilder();
+            int length = 4 + random.nextInt(7);
+            for (int c = 0; c < length; c++) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            vocabulary[i] = word.toString();
+        }
+        String[] authors = new String[5_000];
+        for (int i = 0; i < authors.length; i++) {
+            authors[i] = capitalize(vocabulary[random.nextInt(vocabulary.length)]) + " " +
+                    capitalize(vocabulary[random.nextInt(vocabulary.length)]);
+        }
+
+        FuzzySearchIndex index = new FuzzySearchIndex();
+        long start = System.nanoTime();
+        for (int i = 0; i < bookCount; i++) {
+            String title = "The " + capitalize(vocabulary[random.nextInt(vocabulary.length)]) + " of " +
+                    capitalize(vocabulary[random.nextInt(vocabulary.length)]);
+            index.add(new Book(isbn(i), title, authors[random.nextInt(authors.length)], Book.BookTheme.OTHER, 1));
+        }
+        System.out.printf("Indexed %,d books (%,d words) in %,d ms%n", bookCount, index.getWordCount(),
+                (System.nanoTime() - start) / 1_000_000);
+
+        int queries = 2_000;
+        long worst = 0;
+        long total = 0;
+        int found = 0;
+        for (int i = 0; i < queries; i++) {
+            String author = authors[random.nextInt(authors.length)];
+            String typo = misspell(author.substring(author.indexOf(' ') + 1).toLowerCase(), random);
+            long queryStart = System.nanoTime();
+            List<FuzzySearchIndex.Match> results = index.search(typo, FuzzySearchIndex.DEFAULT_LIMIT);
+            long nanos = System.nanoTime() - queryStart;
+            total += nanos;
+            worst = Math.max(worst, nanos);
+            for (FuzzySearchIndex.Match match : results) {
+                if (match.getBook().getAuthor().equals(author)) {
+                    found++;
+                    break;
+                }
+            }
+        }
+        System.out.printf("Misspelled author queries: %.2f ms average, %.2f ms worst, author found %d/%d%n",
+                total / 1e6 / queries, worst / 1e6, found, queries);
+        System.out.println("  e.g. \"the ofx\" -> " + index.search("the ofx", 5));
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+
+    /**
+     * Apply one random typo: a wrong, missing, extra or swapped letter
+     */
+    private static String misspell(String word, Random random) {
+        StringBuilder typo = new StringBuilder(word);
+        int at = random.nextInt(word.length() - 1);
+        switch (random.nextInt(4)) {
+            case 0 -> typo.setCharAt(at, (char) ('a' + random.nextInt(26)));
+            case 1 -> typo.deleteCharAt(at);
+            case 2 -> typo.insert(at, (char) ('a' + random.nextInt(26)));
+            default -> {
+                typo.setCharAt(at, word.charAt(at + 1));
+                typo.setCharAt(at + 1, word.charAt(at));
+            }
+        }
+        return typo.toString();
+    }
+
+    // ==================== CATALOG INDEX ====================
+
+    /**
+     * Compare planned catalog queries with filtering the whole catalog, on a large synthetic catalog
+     */
+    private static void catalogIndex(String[] args) {
+        int bookCount = args.length > 0 ? Integer.parseInt(args[0]) : 300_000;
+        Random random = new Random(5);
+        String[] words = new String[10_000];
+        for (int i = 0; i < words.length; i++) {
+            StringBuilder word = new StringBuilder();
+            for (int c = 4 + random.nextInt(6); c > 0; c--) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            words[i] = word.toString();
+        }
+        Book.BookTheme[] themes = Book.BookTheme.values();
+        FuzzySearchIndex search = new FuzzySearchIndex();
+        CatalogIndex index = new CatalogIndex(search);
+        List<Book> all = new ArrayList<>();
+        for (int i = 0; i < bookCount; i++) {
+            Book book = new Book(isbn(i),
+                    words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)],
+                    words[random.nextInt(2_000)], themes[random.nextInt(themes.length)], 2,
+                    random.nextInt(4) == 0 ? 0 : 2);
+            search.add(book);
+            index.add(book);
+            all.add(book);
+        }
+        String author = all.get(0).getAuthor();
+        BookQuery[] queries = {
+            new BookQuery().theme(Book.BookTheme.SCIENCE).availableOnly().sortBy(BookQuery.Sort.TITLE).limit(20),
+            new BookQuery().words(author).theme(Book.BookTheme.FICTION, Book.BookTheme.HISTORY).availableOnly(),
+            new BookQuery().availableOnly().sortBy(BookQuery.Sort.MOST_AVAILABLE).limit(10),
+            new BookQuery().text(author.substring(1)).availableOnly().limit(10),
+            new BookQuery().isbn(all.get(42).getIsbn()).availableOnly()
+        };
+        for (BookQuery query : queries) {
+            int runs = 50;
+            List<Book> planned = null;
+            long start = System.nanoTime();
+            for (int i = 0; i < runs; i++) {
+                planned = index.execute(query);
+            }
+            double plannedMillis = (System.nanoTime() - start) / 1e6 / runs;
+            start = System.nanoTime();
+            List<Book> scanned = null;
+            for (int i = 0; i < runs; i++) {
+                scanned = all.stream().filter(query::matches).toList();
+            }
+            double scanMillis = (System.nanoTime() - start) / 1e6 / runs;
+            System.out.printf("%s%n  plan %s: %d results in %.3f ms (full scan and filter: %d in %.3f ms)%n",
+                    query, index.plan(query), planned.size(), plannedMillis, scanned.size(), scanMillis);
+        }
+    }
+
+    // ==================== LOAN DATE INDEX ====================
+
+    /**
+     * Compare indexed loan date queries with sorting and filtering every loan
+     */
+    private static void loanDateIndex(String[] args) throws IOException {
+        int activeCount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int pastCount = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        Path directory = Files.createTempDirectory("loan-date-index");
+        LoanHistoryStore store = new LoanHistoryStore(directory.resolve("history.log").toString(),
+                directory.resolve("history.idx").toString(), key -> null);
+        try {
+            Random random = new Random(11);
+            Member member = new Member("Bench", "Reader", 30);
+            Book book = new Book(isbn(0), "Bench", "Author", Book.BookTheme.OTHER, 1);
+            LocalDate today = LibraryClock.get().today();
+            for (int i = 0; i < pastCount; i++) {
+                LocalDate returned = today.minusDays(730L * (pastCount - i) / pastCount);
+                LocalDate loaned = returned.minusDays(1 + random.nextInt(30));
+                store.append(Loan.restore(member, book, loaned, loaned.plusDays(14), returned));
+            }
+            LoanDateIndex index = new LoanDateIndex(store);
+            List<Loan> active = new ArrayList<>();
+            for (int i = 0; i < activeCount; i++) {
+                LocalDate loaned = today.minusDays(random.nextInt(60));
+                Loan loan = Loan.restore(member, book, loaned, loaned.plusDays(14), null);
+                active.add(loan);
+                index.add(loan);
+            }
+
+            int runs = 50;
+            long start = System.nanoTime();
+            List<Loan> latest = null;
+            for (int i = 0; i < runs; i++) {
+                latest = index.latestLoans(5);
+            }
+            double indexed = (System.nanoTime() - start) / 1e6 / runs;
+            start = System.nanoTime();
+            List<Loan> sorted = null;
+            for (int i = 0; i < runs; i++) {
+                sorted = active.stream().sorted(Comparator.comparing(Loan::getLoanDate).reversed()).limit(5).toList();
+            }
+            System.out.printf("Latest 5 of %d active loans: %.3f ms (sort all: %.3f ms, same days: %b)%n",
+                    activeCount, indexed, (System.nanoTime() - start) / 1e6 / runs,
+                    latest.stream().map(Loan::getLoanDate).toList()
+                            .equals(sorted.stream().map(Loan::getLoanDate).toList()));
+
+            start = System.nanoTime();
+            List<Loan> due = null;
+            for (int i = 0; i < runs; i++) {
+                due = index.dueBetween(today, today.plusDays(3));
+            }
+            indexed = (System.nanoTime() - start) / 1e6 / runs;
+            start = System.nanoTime();
+            long scanned = 0;
+            for (int i = 0; i < runs; i++) {
+                scanned = active.stream().filter(l -> !l.getDueDate().isBefore(today)
+                        && !l.getDueDate().isAfter(today.plusDays(3))).count();
+            }
+            System.out.printf("Due in the next 3 days: %d loans in %.3f ms (filter all: %d in %.3f ms)%n",
+                    due.size(), indexed, scanned, (System.nanoTime() - start) / 1e6 / runs);
+
+            start = System.nanoTime();
+            index.returnedBetween(today, today);
+            System.out.printf("Returns index built from %d records in %.1f ms%n",
+                    pastCount, (System.nanoTime() - start) / 1e6);
+            start = System.nanoTime();
+            List<LoanHistoryStore.Record> week = null;
+            for (int i = 0; i < runs; i++) {
+                week = index.returnedBetween(today.minusDays(7), today);
+            }
+            indexed = (System.nanoTime() - start) / 1e6 / runs;
+            start = System.nanoTime();
+            long[] count = new long[1];
+            long weekStart = today.minusDays(7).toEpochDay();
+            for (int i = 0; i < 5; i++) {
+                count[0] = 0;
+                store.scanSince(0, (memberId, isbnKey, loanDay, dueDay, returnDay) -> {
+                    if (returnDay >= weekStart && returnDay <= today.toEpochDay()) {
+                        count[0]++;
+                    }
+                });
+            }
+            System.out.printf("Returned last week: %d loans in %.3f ms (scan the log: %d in %.3f ms)%n",
+                    week.size(), indexed, count[0], (System.nanoTime() - start) / 1e6 / 5);
+        } finally {
+            store.close();
+            try (var files = Files.list(directory)) {
+                for (Path file : files.toList()) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    // ==================== REMINDER PIPELINE ====================
+
+    /**
+     * Time a daily reminder run over a large number of active loans
+     */
+    private static void reminderPipeline(String[] args) throws IOException {
+        int loanCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int memberCount = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        Path directory = Files.createTempDirectory("reminders");
+        LoanHistoryStore history = new LoanHistoryStore(directory.resolve("history.log").toString(),
+                directory.resolve("history.idx").toString(), key -> null);
+        try {
+            Random random = new Random(3);
+            Member[] members = new Member[memberCount];
+            for (int i = 0; i < memberCount; i++) {
+                members[i] = new Member("Reader", "No" + i, 30);
+                members[i].setEmail("reader" + i + "@example.com");
+            }
+            Book[] books = new Book[5_000];
+            for (int i = 0; i < books.length; i++) {
+                books[i] = new Book(isbn(i), "Title " + i, "Author " + (i % 700), Book.BookTheme.OTHER, 1);
+            }
+            LocalDate today = LibraryClock.get().today();
+            LoanDateIndex index = new LoanDateIndex(history);
+            for (int i = 0; i < loanCount; i++) {
+                LocalDate loaned = today.minusDays(random.nextInt(90));
+                index.add(Loan.restore(members[random.nextInt(memberCount)], books[random.nextInt(books.length)],
+                        loaned, loaned.plusDays(14 + random.nextInt(90)), null));
+            }
+            ReminderPipeline pipeline = new ReminderPipeline(index, directory.resolve("outbox").toString(),
+                    directory.resolve("sent.dat").toString(), ReminderPipeline.DEFAULT_DAYS_AHEAD);
+
+            PrintStream console = silenceConsole();
+            long start = System.nanoTime();
+            int first = pipeline.run(today);
+            double firstMillis = (System.nanoTime() - start) / 1e6;
+            start = System.nanoTime();
+            int repeated = pipeline.run(today);
+            double repeatedMillis = (System.nanoTime() - start) / 1e6;
+            start = System.nanoTime();
+            int nextDay = pipeline.run(today.plusDays(1));
+            double nextDayMillis = (System.nanoTime() - start) / 1e6;
+            System.setOut(console);
+
+            System.out.printf("%d active loans: %d reminders in %.1f ms; same day again: %d in %.1f ms; "
+                    + "next day: %d in %.1f ms%n", loanCount, first, firstMillis, repeated, repeatedMillis,
+                    nextDay, nextDayMillis);
+            start = System.nanoTime();
+            int[] delivered = new int[1];
+            pipeline.drainOutbox(reminder -> delivered[0]++);
+            System.out.printf("Relay drained %d reminders in %.1f ms%n", delivered[0],
+                    (System.nanoTime() - start) / 1e6);
+        } finally {
+            history.close();
+            try (var files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    // ==================== FEE LEDGER ====================
+
+    /**
+     * Post many small charges and payments, then compare the ledger with adding the same amounts as doubles
+     */
+    private static void feeLedger(String[] args) throws IOException {
+        int transactions = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int memberCount = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        Path directory = Files.createTempDirectory("fee-ledger");
+        String logFile = directory.resolve("fees.log").toString();
+        String indexFile = directory.resolve("fees.idx").toString();
+        FeeLedger ledger = new FeeLedger(logFile, indexFile);
+        try {
+            Random random = new Random(17);
+            double[] doubles = new double[memberCount];
+            long start = System.nanoTime();
+            for (int i = 0; i < transactions; i++) {
+                int member = random.nextInt(memberCount);
+                if (random.nextInt(3) > 0) {
+                    long cents = 10 * (1 + random.nextInt(30));        // 10 cents a day, up to 30 days
+                    ledger.charge(member, FeeLedger.Type.OVERDUE_FEE, cents, 0);
+                    doubles[member] += cents * 0.01;
+                } else {
+                    long accepted = ledger.pay(member, 10 * (1 + random.nextInt(50)));
+                    doubles[member] -= accepted * 0.01;
+                }
+            }
+            double postMillis = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            long sum = 0;
+            for (int i = 0; i < 1_000_000; i++) {
+                sum += ledger.getBalanceCents(i % memberCount);
+            }
+            double balanceNanos = (System.nanoTime() - start) / 1e6;     // Total ns / 1M reads
+            int drifted = 0;
+            double worst = 0;
+            for (int member = 0; member < memberCount; member++) {
+                double difference = Math.abs(doubles[member] * 100 - ledger.getBalanceCents(member));
+                if (difference > 0) {
+                    drifted++;
+                    worst = Math.max(worst, difference);
+                }
+            }
+            System.out.printf("%d transactions posted in %.0f ms (%.2f us each); balance read %.1f ns "
+                    + "(checksum %d)%n",
+                    transactions, postMillis, postMillis * 1000 / transactions, balanceNanos, sum);
+            System.out.printf("Outstanding %s; double balances drifted for %d of %d members (worst %.2e cents)%n",
+                    FeeLedger.formatCents(ledger.getOutstandingCents()), drifted, memberCount, worst);
+
+            start = System.nanoTime();
+            FeeLedger.Reconciliation reconciliation = ledger.reconcile();
+            System.out.printf("Reconciled in %.0f ms: %s%n", (System.nanoTime() - start) / 1e6, reconciliation);
+
+            ledger.saveIndex();
+            ledger.close();
+            start = System.nanoTime();
+            FeeLedger reopened = new FeeLedger(logFile, indexFile);
+            long outstanding = reopened.getOutstandingCents();
+            System.out.printf("Reopened from the saved balances in %.1f ms (outstanding %s)%n",
+                    (System.nanoTime() - start) / 1e6, FeeLedger.formatCents(outstanding));
+            reopened.close();
+        } finally {
+            ledger.close();
+            try (var files = Files.list(directory)) {
+                for (Path file : files.toList()) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    // ==================== LIBRARY NETWORK ====================
+
+    /**
+     * Run three branches in one JVM: search across them and route loans
+     */
+    private static void libraryNetwork(String[] args) {
+        String root = args.length > 0 ? args[0] : TEMP_ROOT + "/lms-network";
+        LibraryNetwork network = new LibraryNetwork(root);
+        String[][] stock = {
+            {"9780141439518", "Pride and Prejudice", "Jane Austen"},
+            {"9780451524935", "Nineteen Eighty-Four", "George Orwell"},
+            {"9780547928227", "The Hobbit", "J.R.R. Tolkien"},
+        };
+        String[] names = {"Central", "Riverside", "Hilltop"};
+        for (int b = 0; b < names.length; b++) {
+            Library branch = new Library(names[b], root + "/" + names[b]);
+            for (int i = 0; i <= b; i++) {
+                branch.addBook(new Book(stock[i][0], stock[i][1], stock[i][2], Book.BookTheme.FICTION, b + 1));
+            }
+            network.addBranch(branch);
+        }
+        Member reader = new Member("Dana", "Reed", 30, "dana.reed@email.com", "readerpass1");
+        network.addMember("Riverside", reader);
+
+        System.out.println("\n--- Network search: \"the\" ---");
+        for (LibraryNetwork.CatalogEntry entry : network.searchBooks("the")) {
+            System.out.println("  " + entry);
+        }
+        System.out.println("\n--- Loan routed to " + network.getHomeBranch(reader.getId()) + " ---");
+        System.out.println("Due: " + network.issueLoan(reader.getId(), "9780451524935"));
+        System.out.println("After loan: " + network.searchBooksByAuthor("orwell"));
+        network.returnBook(reader.getId(), "9780451524935");
+        network.stop();
+    }
+}
@@ -1,13 +1,35 @@
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Book class represents a book in the library inventory.
  * Tracks availability, copies, and book metadata.
+ * Copy counts are packed into a single atomic word (total in the high 32 bits,
+ * available in the low 32 bits) so checkouts and returns never need a lock.
+ * Authors are canonicalized through a shared StringPool, so books by the same author
+ * share one String and one precomputed lowercase form. The pool only keeps authors
+ * that some Book still references. Titles are matched without a folded copy.
  */
 public class Book implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    // Serialized form stays {isbn, title, author, theme, totalCopies, availableCopies}
+    // so existing books.dat files keep loading.
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("isbn", String.class),
+        new ObjectStreamField("title", String.class),
+        new ObjectStreamField("author", String.class),
+        new ObjectStreamField("theme", BookTheme.class),
+        new ObjectStreamField("totalCopies", int.class),
+        new ObjectStreamField("availableCopies", int.class)
+    };
+
     public enum BookTheme {
         FICTION,
         NON_FICTION,
@@ -21,13 +43,16 @@ public class Book implements Serializable {
         OTHER
     }
 
+    // Shared by every Book; entries go away with the last Book that uses them
+    private static final StringPool AUTHOR_POOL = new StringPool();
+
     // Attributes
     private String isbn;
+    private transient long isbnKey;                    // Numeric key from Isbn.toKey(), or a stand-in key
     private String title;
-    private String author;
+    private transient StringPool.Entry author;         // Canonical author and its folded form
     private BookTheme theme;
-    private int totalCopies;
-    private int availableCopies;
+    private transient AtomicLong copyState;   // (totalCopies << 32) | availableCopies
 
     // Constructors
     
@@ -35,16 +60,16 @@ public class Book implements Serializable {
      * Full constructor
      */
     public Book(String isbn, String title, String author, BookTheme theme, int totalCopies, int availableCopies) {
-        validateIsbn(isbn);
+        long key = Isbn.toKey(isbn);
         validateTitle(title);
         validateCopies(totalCopies, availableCopies);
         
         this.isbn = isbn;
+        this.isbnKey = key;
         this.title = title;
-        this.author = author != null ? author : "Unknown";
+        this.author = internAuthor(author);
         this.theme = theme != null ? theme : BookTheme.OTHER;
-        this.totalCopies = totalCopies;
-        this.availableCopies = availableCopies;
+        this.copyState = new AtomicLong(pack(totalCopies, availableCopies));
     }
     
     /**
@@ -63,11 +88,6 @@ public class Book implements Serializable {
 
     // Validation Methods
     
-    private void validateIsbn(String isbn) {
-        if (isbn == null || isbn.trim().isEmpty()) {
-            throw new IllegalArgumentException("ISBN cannot be empty");
-        }
-    }
     
     private void validateTitle(String title) {
         if (title == null || title.trim().isEmpty()) {
@@ -95,18 +115,71 @@ public class Book implements Serializable {
         }
     }
 
+    // Copy State Packing
+
+    private static long pack(int total, int available) {
+        return ((long) total << 32) | (available & 0xFFFFFFFFL);
+    }
+
+    private static int totalOf(long state) {
+        return (int) (state >>> 32);
+    }
+
+    private static int availableOf(long state) {
+        return (int) state;
+    }
+
     // Getters
     
     public String getIsbn() {
         return isbn;
     }
 
+    /**
+     * Numeric ISBN key used by the library indexes
+     */
+    public long getIsbnKey() {
+        return isbnKey;
+    }
+
     public String getTitle() {
         return title;
     }
 
     public String getAuthor() {
-        return author;
+        return author.getValue();
+    }
+
+    /**
+     * Check whether the title contains an already folded query, ignoring case
+     */
+    public boolean titleContains(String foldedQuery) {
+        return StringPool.containsFolded(title, foldedQuery);
+    }
+
+    /**
+     * Lowercase author for case-insensitive matching
+     */
+    public String getAuthorFolded() {
+        return author.getFolded();
+    }
+
+    /**
+     * Author ID shared by all books whose authors are equal ignoring case
+     */
+    public int getAuthorKey() {
+        return author.getFoldedId();
+    }
+
+    /**
+     * Pool holding the canonical author strings
+     */
+    public static StringPool getAuthorPool() {
+        return AUTHOR_POOL;
+    }
+
+    private static StringPool.Entry internAuthor(String author) {
+        return AUTHOR_POOL.intern(author != null ? author : "Unknown");
     }
 
     public BookTheme getTheme() {
@@ -122,7 +195,7 @@ public class Book implements Serializable {
     }
 
     public int getTotalCopies() {
-        return totalCopies;
+        return totalOf(copyState.get());
     }
     
     /**
@@ -130,11 +203,11 @@ public class Book implements Serializable {
      */
     @Deprecated
     public int getNumberOfCopies() {
-        return totalCopies;
+        return getTotalCopies();
     }
 
     public int getAvailableCopies() {
-        return availableCopies;
+        return availableOf(copyState.get());
     }
     
     /**
@@ -142,13 +215,20 @@ public class Book implements Serializable {
      */
     @Deprecated
     public int getCopiesAvailable() {
-        return availableCopies;
+        return getAvailableCopies();
     }
 
     // Setters
     
+    /**
+     * Move the book to the stand-in key of its stored ISBN, when another book already has its key
+     */
+    void quarantineIsbn() {
+        this.isbnKey = Isbn.legacyKey(isbn);
+    }
+    
     public void setIsbn(String isbn) {
-        validateIsbn(isbn);
+        this.isbnKey = Isbn.toKey(isbn);
         this.isbn = isbn;
     }
 
@@ -158,7 +238,7 @@ public class Book implements Serializable {
     }
 
     public void setAuthor(String author) {
-        this.author = author != null ? author : "Unknown";
+        this.author = internAuthor(author);
     }
 
     public void setTheme(BookTheme theme) {
@@ -181,7 +261,10 @@ public class Book implements Serializable {
         if (totalCopies < 0) {
             throw new IllegalArgumentException("Total copies cannot be negative");
         }
-        this.totalCopies = totalCopies;
+        long state;
+        do {
+            state = copyState.get();
+        } while (!copyState.compareAndSet(state, pack(totalCopies, availableOf(state))));
     }
     
     /**
@@ -193,10 +276,13 @@ public class Book implements Serializable {
     }
 
     public void setAvailableCopies(int availableCopies) {
-        if (availableCopies < 0 || availableCopies > totalCopies) {
-            throw new IllegalArgumentException("Available copies must be between 0 and total copies");
-        }
-        this.availableCopies = availableCopies;
+        long state;
+        do {
+            state = copyState.get();
+            if (availableCopies < 0 || availableCopies > totalOf(state)) {
+                throw new IllegalArgumentException("Available copies must be between 0 and total copies");
+            }
+        } while (!copyState.compareAndSet(state, pack(totalOf(state), availableCopies)));
     }
     
     /**
@@ -213,27 +299,68 @@ public class Book implements Serializable {
      * Check if book is available for borrowing
      */
     public boolean isAvailable() {
-        return availableCopies > 0;
+        return getAvailableCopies() > 0;
+    }
+    
+    /**
+     * Atomically take one copy if any is available.
+     * Never drives available copies below zero, even under contention.
+     * @return true if a copy was taken
+     */
+    public boolean tryBorrow() {
+        return tryReserve(1);
+    }
+    
+    /**
+     * Atomically take the given number of copies, all or nothing.
+     * Used for checkouts and for setting copies aside for holds.
+     * @return true if the copies were taken
+     */
+    public boolean tryReserve(int copies) {
+        if (copies < 1) {
+            throw new IllegalArgumentException("Number of copies to reserve must be positive");
+        }
+        long state;
+        do {
+            state = copyState.get();
+            if (availableOf(state) < copies) {
+                return false;
+            }
+        } while (!copyState.compareAndSet(state, state - copies));
+        return true;
+    }
+    
+    /**
+     * Atomically give one copy back if not all copies are already on the shelf.
+     * @return true if a copy was given back
+     */
+    public boolean tryReturn() {
+        long state;
+        do {
+            state = copyState.get();
+            if (availableOf(state) >= totalOf(state)) {
+                return false;
+            }
+        } while (!copyState.compareAndSet(state, state + 1));
+        return true;
     }
     
     /**
      * Borrow one copy (decreases available copies)
      */
     public void borrowCopy() {
-        if (availableCopies <= 0) {
+        if (!tryBorrow()) {
             throw new IllegalStateException("No copies available to borrow");
         }
-        availableCopies--;
     }
     
     /**
      * Return one copy (increases available copies)
      */
     public void returnCopy() {
-        if (availableCopies >= totalCopies) {
+        if (!tryReturn()) {
             throw new IllegalStateException("All copies already returned");
         }
-        availableCopies++;
     }
     
     /**
@@ -248,18 +375,22 @@ public class Book implements Serializable {
      * Modify available copies by a number (positive or negative)
      */
     public void modifyAvailableCopiesBy(int modifier) {
-        int newAvailable = availableCopies + modifier;
-        if (newAvailable < 0) {
-            System.out.println("Cannot reduce available copies below 0. " + 
-                    title + " only has " + availableCopies + " available.");
-            return;
-        }
-        if (newAvailable > totalCopies) {
-            System.out.println("Cannot exceed total copies. Maximum available: " + totalCopies);
-            return;
-        }
-        availableCopies = newAvailable;
-        System.out.println(title + " now has " + availableCopies + " copies available.");
+        long state;
+        int newAvailable;
+        do {
+            state = copyState.get();
+            newAvailable = availableOf(state) + modifier;
+            if (newAvailable < 0) {
+                System.out.println("Cannot reduce available copies below 0. " + 
+                        title + " only has " + availableOf(state) + " available.");
+                return;
+            }
+            if (newAvailable > totalOf(state)) {
+                System.out.println("Cannot exceed total copies. Maximum available: " + totalOf(state));
+                return;
+            }
+        } while (!copyState.compareAndSet(state, pack(totalOf(state), newAvailable)));
+        System.out.println(title + " now has " + newAvailable + " copies available.");
     }
 
     /**
@@ -269,30 +400,90 @@ public class Book implements Serializable {
         if (copies < 1) {
             throw new IllegalArgumentException("Number of copies to add must be positive");
         }
-        totalCopies += copies;
-        availableCopies += copies;
+        long state;
+        long updated;
+        do {
+            state = copyState.get();
+            updated = pack(totalOf(state) + copies, availableOf(state) + copies);
+        } while (!copyState.compareAndSet(state, updated));
         System.out.println("Added " + copies + " " + (copies == 1 ? "copy" : "copies") + 
-                " of '" + title + "'. Total: " + totalCopies);
+                " of '" + title + "'. Total: " + totalOf(updated));
+    }
+
+    /**
+     * Atomically take copies off the shelf and out of the inventory, all or nothing.
+     * Only copies on the shelf can be removed; used for transfers between branches.
+     * @return true if the copies were removed
+     */
+    public boolean tryRemoveCopies(int copies) {
+        if (copies < 1) {
+            throw new IllegalArgumentException("Number of copies to remove must be positive");
+        }
+        long state;
+        do {
+            state = copyState.get();
+            if (availableOf(state) < copies) {
+                return false;
+            }
+        } while (!copyState.compareAndSet(state, pack(totalOf(state) - copies, availableOf(state) - copies)));
+        return true;
     }
 
     /**
      * Remove copies from inventory
      */
     public void removeCopies(int copies) {
-        if (copies < 1 || copies > availableCopies) {
-            throw new IllegalArgumentException("Invalid number of copies to remove. " +
-                    "Available: " + availableCopies);
-        }
-        totalCopies -= copies;
-        availableCopies -= copies;
+        long state;
+        long updated;
+        do {
+            state = copyState.get();
+            if (copies < 1 || copies > availableOf(state)) {
+                throw new IllegalArgumentException("Invalid number of copies to remove. " +
+                        "Available: " + availableOf(state));
+            }
+            updated = pack(totalOf(state) - copies, availableOf(state) - copies);
+        } while (!copyState.compareAndSet(state, updated));
         System.out.println("Removed " + copies + " " + (copies == 1 ? "copy" : "copies") + 
-                " of '" + title + "'. Remaining: " + totalCopies);
+                " of '" + title + "'. Remaining: " + totalOf(updated));
+    }
+
+    // Serialization
+    
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        long state = copyState.get();
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("isbn", isbn);
+        fields.put("title", title);
+        fields.put("author", author.getValue());
+        fields.put("theme", theme);
+        fields.put("totalCopies", totalOf(state));
+        fields.put("availableCopies", availableOf(state));
+        out.writeFields();
+    }
+    
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        this.isbn = (String) fields.get("isbn", null);
+        this.title = (String) fields.get("title", null);
+        if (isbn == null) {
+            throw new InvalidObjectException("Book '" + title + "' has no ISBN");
+        }
+        try {
+            this.isbnKey = Isbn.toKey(isbn);
+        } catch (IllegalArgumentException e) {
+            // Older versions stored any ISBN; keep the book rather than failing the whole file
+            this.isbnKey = Isbn.legacyKey(isbn);
+            System.err.println("Book '" + title + "' has an invalid ISBN (" + e.getMessage() + "); kept as is.");
+        }
+        this.author = internAuthor((String) fields.get("author", "Unknown"));
+        this.theme = (BookTheme) fields.get("theme", BookTheme.OTHER);
+        this.copyState = new AtomicLong(pack(fields.get("totalCopies", 0), fields.get("availableCopies", 0)));
     }
 
     @Override
     public String toString() {
-        return "Book{ISBN='" + isbn + "', title='" + title + "', author='" + author + 
-               "', theme=" + theme + ", copies=" + availableCopies + "/" + totalCopies + "}";
+        return "Book{ISBN='" + isbn + "', title='" + title + "', author='" + author.getValue() + 
+               "', theme=" + theme + ", copies=" + getAvailableCopies() + "/" + getTotalCopies() + "}";
     }
     
     @Override
@@ -300,11 +491,11 @@ public class Book implements Serializable {
         if (this == obj) return true;
         if (obj == null || getClass() != obj.getClass()) return false;
         Book book = (Book) obj;
-        return isbn.equals(book.isbn);
+        return isbnKey == book.isbnKey;
     }
     
     @Override
     public int hashCode() {
-        return isbn.hashCode();
+        return Long.hashCode(isbnKey);
     }
 }
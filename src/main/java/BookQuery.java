@@ -0,0 +1,235 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * BookQuery class describes a combined filter over the catalog: ISBN, themes, words of the title
+ * or author, substrings, availability, plus an order and a limit.
+ * Filters are combined with AND. Run it with Library.findBooks(); CatalogIndex decides which
+ * index to start from, so combining filters never means one full scan per filter.
+ */
+public class BookQuery {
+
+    /**
+     * Order of the results
+     */
+    public enum Sort {
+        NONE,               // Index order, or best match first for text()
+        TITLE,
+        AUTHOR,
+        MOST_AVAILABLE
+    }
+
+    static final Comparator<Book> BY_TITLE = Comparator.comparing(Book::getTitle, String.CASE_INSENSITIVE_ORDER)
+            .thenComparingLong(Book::getIsbnKey);
+    static final Comparator<Book> BY_AUTHOR = Comparator.comparing(Book::getAuthorFolded)
+            .thenComparing(BY_TITLE);
+    static final Comparator<Book> BY_MOST_AVAILABLE = Comparator.comparingInt(Book::getAvailableCopies).reversed()
+            .thenComparing(BY_TITLE);
+
+    // Attributes
+    private Long isbnKey;                                   // Exact ISBN, null if not filtered
+    private final Set<Book.BookTheme> themes;               // Any of these; empty if not filtered
+    private final List<String> words;                       // Each must start a word of the title or author
+    private String text;                                    // Typo-tolerant search, null if not used
+    private String titleContains;                           // Folded substring of the title
+    private String authorContains;                          // Folded substring of the author
+    private boolean availableOnly;
+    private Sort sort;
+    private int limit;
+
+    // Constructors
+
+    public BookQuery() {
+        this.themes = EnumSet.noneOf(Book.BookTheme.class);
+        this.words = new ArrayList<>();
+        this.sort = Sort.NONE;
+        this.limit = Integer.MAX_VALUE;
+    }
+
+    // ==================== FILTERS ====================
+
+    /**
+     * Only the book with this ISBN (ISBN-10 or ISBN-13, with or without hyphens)
+     * @throws IllegalArgumentException if the ISBN is not valid
+     */
+    public BookQuery isbn(String isbn) {
+        this.isbnKey = Isbn.lookupKey(isbn);
+        return this;
+    }
+
+    /**
+     * Only books of one of the given themes; may be called more than once
+     */
+    public BookQuery theme(Book.BookTheme... themes) {
+        for (Book.BookTheme theme : themes) {
+            if (theme == null) {
+                throw new IllegalArgumentException("Theme cannot be null");
+            }
+            this.themes.add(theme);
+        }
+        return this;
+    }
+
+    /**
+     * Only books whose title or author has a word starting with each word of the text,
+     * ignoring case and accents ("orw geo" finds George Orwell)
+     */
+    public BookQuery words(String text) {
+        words.addAll(FuzzySearchIndex.tokenize(text));
+        return this;
+    }
+
+    /**
+     * Only books found by the typo-tolerant search; with Sort.NONE the best matches come first
+     */
+    public BookQuery text(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            throw new IllegalArgumentException("Search text cannot be empty");
+        }
+        this.text = text;
+        return this;
+    }
+
+    /**
+     * Only books whose title contains the text, ignoring case
+     */
+    public BookQuery titleContains(String text) {
+        this.titleContains = StringPool.fold(text);
+        return this;
+    }
+
+    /**
+     * Only books whose author contains the text, ignoring case
+     */
+    public BookQuery authorContains(String text) {
+        this.authorContains = StringPool.fold(text);
+        return this;
+    }
+
+    /**
+     * Only books with a copy on the shelf
+     */
+    public BookQuery availableOnly() {
+        this.availableOnly = true;
+        return this;
+    }
+
+    public BookQuery sortBy(Sort sort) {
+        if (sort == null) {
+            throw new IllegalArgumentException("Sort cannot be null");
+        }
+        this.sort = sort;
+        return this;
+    }
+
+    /**
+     * At most this many results
+     */
+    public BookQuery limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit cannot be negative");
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    // ==================== MATCHING ====================
+
+    /**
+     * Check every filter except text() against one book
+     */
+    public boolean matches(Book book) {
+        if (isbnKey != null && book.getIsbnKey() != isbnKey) {
+            return false;
+        }
+        if (!themes.isEmpty() && !themes.contains(book.getTheme())) {
+            return false;
+        }
+        if (availableOnly && !book.isAvailable()) {
+            return false;
+        }
+        if (titleContains != null && !book.titleContains(titleContains)) {
+            return false;
+        }
+        if (authorContains != null && !book.getAuthorFolded().contains(authorContains)) {
+            return false;
+        }
+        if (!words.isEmpty()) {
+            List<String> bookWords = FuzzySearchIndex.tokenize(book.getTitle() + " " + book.getAuthor());
+            for (String word : words) {
+                boolean found = false;
+                for (String bookWord : bookWords) {
+                    if (bookWord.startsWith(word)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Comparator for the sort order, null for Sort.NONE
+     */
+    Comparator<Book> comparator() {
+        return switch (sort) {
+            case TITLE -> BY_TITLE;
+            case AUTHOR -> BY_AUTHOR;
+            case MOST_AVAILABLE -> BY_MOST_AVAILABLE;
+            case NONE -> null;
+        };
+    }
+
+    // Getters
+
+    public Long getIsbnKey() {
+        return isbnKey;
+    }
+
+    public Set<Book.BookTheme> getThemes() {
+        return Collections.unmodifiableSet(themes);
+    }
+
+    public List<String> getWords() {
+        return Collections.unmodifiableList(words);
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public boolean isAvailableOnly() {
+        return availableOnly;
+    }
+
+    public Sort getSort() {
+        return sort;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder description = new StringBuilder("BookQuery{");
+        if (isbnKey != null) description.append("isbn=").append(Isbn.ofKey(isbnKey)).append(", ");
+        if (!themes.isEmpty()) description.append("themes=").append(themes).append(", ");
+        if (!words.isEmpty()) description.append("words=").append(words).append(", ");
+        if (text != null) description.append("text='").append(text).append("', ");
+        if (titleContains != null) description.append("title~'").append(titleContains).append("', ");
+        if (authorContains != null) description.append("author~'").append(authorContains).append("', ");
+        if (availableOnly) description.append("available, ");
+        description.append("sort=").append(sort);
+        if (limit != Integer.MAX_VALUE) description.append(", limit=").append(limit);
+        return description.append("}").toString();
+    }
+}
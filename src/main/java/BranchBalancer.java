@@ -0,0 +1,451 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BranchBalancer class moves book copies between the branches of a LibraryNetwork.
+ *
+ * A transfer takes free copies out of the source branch's inventory on the source's
+ * thread, holds them in an in-transit ledger, then adds them at the destination on
+ * the destination's thread (or back at the source if that fails). A copy is therefore
+ * counted in exactly one place at any time: network total = branch totals + in transit.
+ *
+ * The balancing job looks at every title at every branch: branches with waiting holds,
+ * or with recent loans and no copy on the shelf, are short; branches with free copies
+ * beyond what their own recent loans need have spares. Spares go to shortages. Plans
+ * are built from one snapshot per branch and executed in one batch per branch, so a
+ * run over tens of thousands of titles costs a few thread hops, not one per title.
+ */
+public class BranchBalancer {
+
+    public static final int DEFAULT_DEMAND_WINDOW_DAYS = 30;
+    private static final int MIN_SHELF_COPIES = 1;      // Kept by a branch that lends the title
+
+    /**
+     * One proposed or executed move of copies between two branches
+     */
+    public static class Transfer {
+        private final long isbnKey;
+        private final String isbn;
+        private final String title;
+        private final String author;
+        private final Book.BookTheme theme;
+        private final String fromBranch;
+        private final String toBranch;
+        private final int copies;
+        private final String reason;
+
+        private Transfer(TitleStock stock, String fromBranch, String toBranch, int copies, String reason) {
+            this.isbnKey = stock.isbnKey;
+            this.isbn = stock.isbn;
+            this.title = stock.title;
+            this.author = stock.author;
+            this.theme = stock.theme;
+            this.fromBranch = fromBranch;
+            this.toBranch = toBranch;
+            this.copies = copies;
+            this.reason = reason;
+        }
+
+        /**
+         * The copies in transit, as a Book the destination can take in
+         */
+        private Book toShipment() {
+            return new Book(isbn, title, author, theme, copies);
+        }
+
+        public String getIsbn() {
+            return isbn;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getFromBranch() {
+            return fromBranch;
+        }
+
+        public String getToBranch() {
+            return toBranch;
+        }
+
+        public int getCopies() {
+            return copies;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return copies + " x " + title + " (" + isbn + "): " + fromBranch + " -> " + toBranch + " [" + reason + "]";
+        }
+    }
+
+    /**
+     * One title at one branch, snapshotted on the branch's thread
+     */
+    private static class TitleStock {
+        private final long isbnKey;
+        private final String isbn;
+        private final String title;
+        private final String author;
+        private final Book.BookTheme theme;
+        private final int total;
+        private final int available;
+        private final int waitingHolds;
+        private final int recentLoans;
+
+        private TitleStock(Book book, int waitingHolds, int recentLoans) {
+            this.isbnKey = book.getIsbnKey();
+            this.isbn = book.getIsbn();
+            this.title = book.getTitle();
+            this.author = book.getAuthor();
+            this.theme = book.getTheme();
+            this.total = book.getTotalCopies();
+            this.available = book.getAvailableCopies();
+            this.waitingHolds = waitingHolds;
+            this.recentLoans = recentLoans;
+        }
+
+        /**
+         * Copies this branch is short of
+         */
+        private int shortfall() {
+            if (waitingHolds > 0) {
+                return waitingHolds;
+            }
+            return available == 0 && recentLoans > 0 ? MIN_SHELF_COPIES : 0;
+        }
+
+        /**
+         * Free copies this branch can give away
+         */
+        private int spare() {
+            if (waitingHolds > 0) {
+                return 0;
+            }
+            int keep = recentLoans > 0 ? MIN_SHELF_COPIES : 0;
+            return Math.max(0, available - keep);
+        }
+    }
+
+    /**
+     * A branch with copies to give or copies it needs, while matching one title
+     */
+    private static class Slot {
+        private final String branch;
+        private int copies;
+
+        private Slot(String branch, int copies) {
+            this.branch = branch;
+            this.copies = copies;
+        }
+    }
+
+    // Attributes
+    private final LibraryNetwork network;
+    private final int demandWindowDays;
+    private final Map<Long, Integer> inTransitByTitle;     // ISBN key -> copies between branches
+    private final AtomicLong copiesMoved;
+    private ScheduledExecutorService scheduler;
+
+    // Constructors
+
+    public BranchBalancer(LibraryNetwork network, int demandWindowDays) {
+        if (network == null) {
+            throw new IllegalArgumentException("Network cannot be null");
+        }
+        if (demandWindowDays < 1) {
+            throw new IllegalArgumentException("Demand window must be at least one day");
+        }
+        this.network = network;
+        this.demandWindowDays = demandWindowDays;
+        this.inTransitByTitle = new ConcurrentHashMap<>();
+        this.copiesMoved = new AtomicLong();
+    }
+
+    public BranchBalancer(LibraryNetwork network) {
+        this(network, DEFAULT_DEMAND_WINDOW_DAYS);
+    }
+
+    // ==================== SINGLE TRANSFERS ====================
+
+    /**
+     * Move free copies of one title between two branches
+     * @return true if the copies arrived at the destination
+     */
+    public boolean transfer(String isbn, String fromBranch, String toBranch, int copies) {
+        if (copies < 1) {
+            throw new IllegalArgumentException("Number of copies to transfer must be positive");
+        }
+        if (fromBranch.equals(toBranch)) {
+            throw new IllegalArgumentException("Source and destination must be different branches");
+        }
+        long isbnKey = Isbn.lookupKey(isbn);
+        TitleStock stock;
+        try {
+            stock = network.getBranch(fromBranch).call(lib -> new TitleStock(lib.findBookByKey(isbnKey), 0, 0)).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+        List<Transfer> moved = execute(Collections.singletonList(
+                new Transfer(stock, fromBranch, toBranch, copies, "manual")));
+        return !moved.isEmpty();
+    }
+
+    // ==================== BALANCING ====================
+
+    /**
+     * Snapshot every branch and propose transfers from spare copies to shortages.
+     * Nothing is moved.
+     */
+    public List<Transfer> plan() {
+        LocalDate since = LibraryClock.get().today().minusDays(demandWindowDays);
+        List<String> branches = new ArrayList<>(network.getBranchNames());
+
+        // One snapshot per branch, all branches at once
+        List<CompletableFuture<LongObjectMap<TitleStock>>> snapshots = new ArrayList<>();
+        for (String branch : branches) {
+            snapshots.add(network.getBranch(branch).call(lib -> {
+                LongObjectMap<Integer> recentLoans = lib.countLoansByTitleSince(since);
+                List<Book> books = lib.getAllBooks();
+                LongObjectMap<TitleStock> stock = new LongObjectMap<>(books.size());
+                for (Book book : books) {
+                    Integer loans = recentLoans.get(book.getIsbnKey());
+                    stock.put(book.getIsbnKey(), new TitleStock(book,
+                            lib.getHoldQueueLength(book.getIsbnKey()), loans != null ? loans : 0));
+                }
+                return stock;
+            }));
+        }
+
+        // ISBN key -> stock at each branch (null where the branch does not carry it)
+        LongObjectMap<TitleStock[]> byTitle = new LongObjectMap<>();
+        for (int b = 0; b < branches.size(); b++) {
+            for (TitleStock stock : snapshots.get(b).join().values()) {
+                TitleStock[] row = byTitle.get(stock.isbnKey);
+                if (row == null) {
+                    row = new TitleStock[branches.size()];
+                    byTitle.put(stock.isbnKey, row);
+                }
+                row[b] = stock;
+            }
+        }
+
+        List<Transfer> transfers = new ArrayList<>();
+        List<Slot> shortages = new ArrayList<>();
+        List<Slot> spares = new ArrayList<>();
+        for (TitleStock[] row : byTitle.values()) {
+            shortages.clear();
+            spares.clear();
+            TitleStock any = null;
+            for (int b = 0; b < row.length; b++) {
+                TitleStock stock = row[b];
+                if (stock == null) {
+                    continue;
+                }
+                any = stock;
+                if (stock.shortfall() > 0) {
+                    shortages.add(new Slot(branches.get(b), stock.shortfall()));
+                } else if (stock.spare() > 0) {
+                    spares.add(new Slot(branches.get(b), stock.spare()));
+                }
+            }
+            if (shortages.isEmpty() || spares.isEmpty()) {
+                continue;
+            }
+            // Largest shortages first, served from the largest spares
+            shortages.sort((a, b) -> Integer.compare(b.copies, a.copies));
+            spares.sort((a, b) -> Integer.compare(b.copies, a.copies));
+            int next = 0;
+            for (Slot shortage : shortages) {
+                while (shortage.copies > 0 && next < spares.size()) {
+                    Slot spare = spares.get(next);
+                    int copies = Math.min(shortage.copies, spare.copies);
+                    TitleStock target = row[branches.indexOf(shortage.branch)];
+                    String reason = target.waitingHolds > 0
+                            ? target.waitingHolds + " waiting hold(s)"
+                            : "no shelf copy, " + target.recentLoans + " recent loan(s)";
+                    transfers.add(new Transfer(any, spare.branch, shortage.branch, copies, reason));
+                    shortage.copies -= copies;
+                    spare.copies -= copies;
+                    if (spare.copies == 0) {
+                        next++;
+                    }
+                }
+            }
+        }
+        return transfers;
+    }
+
+    /**
+     * Carry out transfers: every source releases its copies in one batch, then every
+     * destination takes in its copies in one batch. Transfers whose source no longer
+     * has the free copies are skipped; copies a destination cannot take go back.
+     * @return the transfers that completed
+     */
+    public List<Transfer> execute(List<Transfer> transfers) {
+        // Phase 1: take the copies out at each source
+        List<CompletableFuture<List<Transfer>>> releases = new ArrayList<>();
+        for (Map.Entry<String, List<Transfer>> source : groupBy(transfers, true).entrySet()) {
+            LibraryService branch = network.getBranch(source.getKey());
+            releases.add(branch.call(lib -> {
+                List<Transfer> released = new ArrayList<>();
+                for (Transfer transfer : source.getValue()) {
+                    if (lib.releaseCopiesForTransfer(transfer.isbnKey, transfer.copies)) {
+                        inTransitByTitle.merge(transfer.isbnKey, transfer.copies, Integer::sum);
+                        released.add(transfer);
+                    }
+                }
+                return released;
+            }));
+            branch.markDirty();
+        }
+        List<Transfer> inTransit = new ArrayList<>();
+        for (CompletableFuture<List<Transfer>> release : releases) {
+            inTransit.addAll(release.join());
+        }
+
+        // Phase 2: add them at each destination
+        List<CompletableFuture<List<Transfer>>> deliveries = new ArrayList<>();
+        for (Map.Entry<String, List<Transfer>> destination : groupBy(inTransit, false).entrySet()) {
+            LibraryService branch = network.getBranch(destination.getKey());
+            deliveries.add(branch.call(lib -> {
+                List<Transfer> failed = new ArrayList<>();
+                for (Transfer transfer : destination.getValue()) {
+                    try {
+                        lib.receiveTransferredCopies(transfer.toShipment());
+                        arrived(transfer);
+                    } catch (RuntimeException e) {
+                        failed.add(transfer);
+                    }
+                }
+                return failed;
+            }));
+            branch.markDirty();
+        }
+        List<Transfer> failed = new ArrayList<>();
+        for (CompletableFuture<List<Transfer>> delivery : deliveries) {
+            failed.addAll(delivery.join());
+        }
+
+        // Phase 3: send anything undelivered back where it came from
+        List<CompletableFuture<Void>> returns = new ArrayList<>();
+        for (Map.Entry<String, List<Transfer>> source : groupBy(failed, true).entrySet()) {
+            returns.add(network.getBranch(source.getKey()).call(lib -> {
+                for (Transfer transfer : source.getValue()) {
+                    lib.receiveTransferredCopies(transfer.toShipment());
+                    arrived(transfer);
+                }
+                return null;
+            }));
+        }
+        for (CompletableFuture<Void> sentBack : returns) {
+            sentBack.join();
+        }
+
+        List<Transfer> completed = new ArrayList<>(inTransit);
+        completed.removeAll(failed);
+        for (Transfer transfer : completed) {
+            copiesMoved.addAndGet(transfer.copies);
+        }
+        return completed;
+    }
+
+    private void arrived(Transfer transfer) {
+        inTransitByTitle.computeIfPresent(transfer.isbnKey,
+                (key, copies) -> copies > transfer.copies ? copies - transfer.copies : null);
+    }
+
+    private static Map<String, List<Transfer>> groupBy(List<Transfer> transfers, boolean bySource) {
+        Map<String, List<Transfer>> groups = new LinkedHashMap<>();
+        for (Transfer transfer : transfers) {
+            String branch = bySource ? transfer.fromBranch : transfer.toBranch;
+            groups.computeIfAbsent(branch, b -> new ArrayList<>()).add(transfer);
+        }
+        return groups;
+    }
+
+    /**
+     * Plan and, if asked, execute one balancing run
+     * @return the transfers proposed (executeTransfers false) or completed (true)
+     */
+    public List<Transfer> runOnce(boolean executeTransfers) {
+        long start = System.nanoTime();
+        List<Transfer> proposed = plan();
+        List<Transfer> result = executeTransfers ? execute(proposed) : proposed;
+        int copies = result.stream().mapToInt(Transfer::getCopies).sum();
+        System.out.println("Branch balancing: " + result.size() + " transfer(s), " + copies + " copies " +
+                (executeTransfers ? "moved" : "proposed") + " in " +
+                (System.nanoTime() - start) / 1_000_000 + " ms.");
+        return result;
+    }
+
+    // ==================== SCHEDULING ====================
+
+    /**
+     * Run the balancing job every period, executing or only proposing transfers
+     */
+    public void start(long periodMinutes, boolean executeTransfers) {
+        if (scheduler != null) {
+            return;
+        }
+        if (periodMinutes < 1) {
+            throw new IllegalArgumentException("Period must be at least one minute");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "branch-balancer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                runOnce(executeTransfers);
+            } catch (RuntimeException e) {
+                System.err.println("Branch balancing failed: " + e.getMessage());
+            }
+        }, periodMinutes, periodMinutes, TimeUnit.MINUTES);
+        System.out.println("Branch balancer scheduled every " + periodMinutes + " minute(s).");
+    }
+
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    public boolean isRunning() {
+        return scheduler != null;
+    }
+
+    // ==================== STATUS ====================
+
+    /**
+     * Copies taken out of one branch and not yet added at another
+     */
+    public int getCopiesInTransit() {
+        int total = 0;
+        for (int copies : inTransitByTitle.values()) {
+            total += copies;
+        }
+        return total;
+    }
+
+    public long getCopiesMoved() {
+        return copiesMoved.get();
+    }
+}
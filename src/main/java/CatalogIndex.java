@@ -0,0 +1,306 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+/**
+ * CatalogIndex class keeps secondary indexes over the books and runs BookQuery with a small planner.
+ *
+ * Every book gets a slot number; each theme has a bitmap of slots, and the books are also kept
+ * sorted by title. Together with the word index of FuzzySearchIndex this gives four ways to
+ * start a query: ISBN lookup, typo-tolerant text search, word prefixes, theme bitmaps.
+ * The planner estimates how many books each applicable index yields, starts from the smallest,
+ * checks the theme bitmaps for the others and the remaining filters on each candidate.
+ * When the results are wanted by title with a limit, walking the title order and stopping at the
+ * limit can be cheaper, and the planner compares the two. Availability changes on every loan,
+ * so it is checked on each candidate instead of being indexed.
+ * Not thread-safe: used by the thread that owns the Library.
+ */
+public class CatalogIndex {
+
+    private static final int TEXT_CANDIDATES = 500;       // Fuzzy matches considered for text()
+    private static final int MAX_PREFIX_WORDS = 5_000;    // More words than this: prefix not selective
+
+    /**
+     * Where a query starts
+     */
+    public enum Access {
+        ISBN_LOOKUP,
+        TEXT_SEARCH,
+        WORD_INDEX,
+        THEME_BITMAP,
+        TITLE_ORDER,
+        FULL_SCAN
+    }
+
+    /**
+     * How a query will run
+     */
+    public static class Plan {
+        private final Access access;
+        private final long estimatedCandidates;
+        private final String detail;
+        private final String word;          // Prefix read from the word index
+
+        private Plan(Access access, long estimatedCandidates, String detail) {
+            this(access, estimatedCandidates, detail, null);
+        }
+
+        private Plan(Access access, long estimatedCandidates, String detail, String word) {
+            this.access = access;
+            this.estimatedCandidates = estimatedCandidates;
+            this.detail = detail;
+            this.word = word;
+        }
+
+        public Access getAccess() {
+            return access;
+        }
+
+        public long getEstimatedCandidates() {
+            return estimatedCandidates;
+        }
+
+        @Override
+        public String toString() {
+            return access + (detail.isEmpty() ? "" : " " + detail) + " (~" + estimatedCandidates + " candidates)";
+        }
+    }
+
+    // Attributes
+    private final FuzzySearchIndex searchIndex;
+    private final LongObjectMap<Integer> slotOf;           // ISBN key -> slot
+    private Book[] books;                                   // Slot -> book
+    private final BitSet usedSlots;
+    private final EnumMap<Book.BookTheme, BitSet> byTheme;
+    private final int[] themeCounts;
+    private final TreeSet<Book> byTitle;
+
+    // Constructors
+
+    public CatalogIndex(FuzzySearchIndex searchIndex) {
+        if (searchIndex == null) {
+            throw new IllegalArgumentException("Search index cannot be null");
+        }
+        this.searchIndex = searchIndex;
+        this.slotOf = new LongObjectMap<>();
+        this.books = new Book[64];
+        this.usedSlots = new BitSet();
+        this.byTheme = new EnumMap<>(Book.BookTheme.class);
+        for (Book.BookTheme theme : Book.BookTheme.values()) {
+            byTheme.put(theme, new BitSet());
+        }
+        this.themeCounts = new int[Book.BookTheme.values().length];
+        this.byTitle = new TreeSet<>(BookQuery.BY_TITLE);
+    }
+
+    // ==================== INDEX MAINTENANCE ====================
+
+    /**
+     * Index a book. Books must be removed before their title or theme changes and added again after.
+     */
+    public void add(Book book) {
+        remove(book.getIsbnKey());
+        int slot = usedSlots.nextClearBit(0);
+        if (slot == books.length) {
+            books = Arrays.copyOf(books, slot * 2);
+        }
+        usedSlots.set(slot);
+        books[slot] = book;
+        slotOf.put(book.getIsbnKey(), slot);
+        byTheme.get(book.getTheme()).set(slot);
+        themeCounts[book.getTheme().ordinal()]++;
+        byTitle.add(book);
+    }
+
+    public void remove(long isbnKey) {
+        Integer slot = slotOf.remove(isbnKey);
+        if (slot == null) {
+            return;
+        }
+        Book book = books[slot];
+        byTheme.get(book.getTheme()).clear(slot);
+        themeCounts[book.getTheme().ordinal()]--;
+        byTitle.remove(book);
+        books[slot] = null;
+        usedSlots.clear(slot);
+    }
+
+    public void clear() {
+        slotOf.clear();
+        books = new Book[64];
+        usedSlots.clear();
+        for (BitSet slots : byTheme.values()) {
+            slots.clear();
+        }
+        Arrays.fill(themeCounts, 0);
+        byTitle.clear();
+    }
+
+    public int size() {
+        return slotOf.size();
+    }
+
+    // ==================== PLANNING ====================
+
+    /**
+     * Choose where the query starts
+     */
+    public Plan plan(BookQuery query) {
+        int total = size();
+        if (query.getIsbnKey() != null) {
+            return new Plan(Access.ISBN_LOOKUP, 1, Isbn.ofKey(query.getIsbnKey()).toString());
+        }
+        if (query.getText() != null) {
+            return new Plan(Access.TEXT_SEARCH, TEXT_CANDIDATES, "'" + query.getText() + "'");
+        }
+
+        Plan best = new Plan(Access.FULL_SCAN, total, "");
+        for (String word : query.getWords()) {
+            long estimate = searchIndex.countBooksWithWordPrefix(word, MAX_PREFIX_WORDS);
+            if (estimate >= 0 && estimate < best.estimatedCandidates) {
+                best = new Plan(Access.WORD_INDEX, estimate, "'" + word + "*'", word);
+            }
+        }
+        if (!query.getThemes().isEmpty()) {
+            long estimate = 0;
+            for (Book.BookTheme theme : query.getThemes()) {
+                estimate += themeCounts[theme.ordinal()];
+            }
+            if (estimate < best.estimatedCandidates) {
+                best = new Plan(Access.THEME_BITMAP, estimate, query.getThemes().toString());
+            }
+        }
+
+        // In title order, about limit * total / matches books are read before the limit is reached
+        if (query.getSort() == BookQuery.Sort.TITLE && query.getLimit() < total) {
+            long walk = best.estimatedCandidates == 0 ? total
+                    : Math.min(total, (long) query.getLimit() * total / best.estimatedCandidates);
+            if (walk < best.estimatedCandidates) {
+                return new Plan(Access.TITLE_ORDER, walk, "stopping at " + query.getLimit());
+            }
+        }
+        return best;
+    }
+
+    // ==================== EXECUTION ====================
+
+    /**
+     * Run a query: read the candidates of its plan, keep those passing every filter, sort and limit
+     */
+    public List<Book> execute(BookQuery query) {
+        Plan plan = plan(query);
+        Results results = new Results(query, plan.access == Access.TITLE_ORDER);
+        switch (plan.access) {
+            case ISBN_LOOKUP -> {
+                Integer slot = slotOf.get(query.getIsbnKey());
+                if (slot != null) {
+                    results.offer(books[slot]);
+                }
+            }
+            case TEXT_SEARCH -> {
+                for (FuzzySearchIndex.Match match : searchIndex.search(query.getText(), TEXT_CANDIDATES)) {
+                    if (!results.offer(match.getBook())) {
+                        break;
+                    }
+                }
+            }
+            case WORD_INDEX -> {
+                BitSet seen = new BitSet();
+                for (long isbnKey : searchIndex.booksWithWordPrefix(plan.word)) {
+                    Integer slot = slotOf.get(isbnKey);
+                    if (slot != null && !seen.get(slot)) {
+                        seen.set(slot);
+                        if (!results.offer(books[slot])) {
+                            break;
+                        }
+                    }
+                }
+            }
+            case THEME_BITMAP -> {
+                BitSet slots = new BitSet();
+                for (Book.BookTheme theme : query.getThemes()) {
+                    slots.or(byTheme.get(theme));
+                }
+                for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1)) {
+                    if (!results.offer(books[slot])) {
+                        break;
+                    }
+                }
+            }
+            case TITLE_ORDER -> {
+                for (Book book : byTitle) {
+                    if (!results.offer(book)) {
+                        break;
+                    }
+                }
+            }
+            case FULL_SCAN -> {
+                for (int slot = usedSlots.nextSetBit(0); slot >= 0; slot = usedSlots.nextSetBit(slot + 1)) {
+                    if (!results.offer(books[slot])) {
+                        break;
+                    }
+                }
+            }
+        }
+        return results.toList();
+    }
+
+    /**
+     * Collects matching candidates: unsorted results (or results read in title order) stop at
+     * the limit, sorted ones keep the best in a bounded heap
+     */
+    private static final class Results {
+        private final BookQuery query;
+        private final Comparator<Book> order;
+        private final List<Book> list = new ArrayList<>();
+        private final PriorityQueue<Book> heap;     // Worst kept result on top
+
+        private Results(BookQuery query, boolean inOrder) {
+            this.query = query;
+            this.order = query.comparator();
+            this.heap = order != null && !inOrder ? new PriorityQueue<>(order.reversed()) : null;
+        }
+
+        /**
+         * @return false once no more candidates are needed
+         */
+        private boolean offer(Book book) {
+            if (query.getLimit() == 0) {
+                return false;
+            }
+            if (!query.matches(book)) {
+                return true;
+            }
+            if (heap == null) {
+                list.add(book);
+                return list.size() < query.getLimit();
+            }
+            if (heap.size() < query.getLimit()) {
+                heap.add(book);
+            } else if (order.compare(book, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(book);
+            }
+            return true;
+        }
+
+        private List<Book> toList() {
+            if (heap == null) {
+                return list;
+            }
+            List<Book> sorted = new ArrayList<>(heap);
+            sorted.sort(order);
+            return sorted;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CatalogIndex{books=" + size() + "}";
+    }
+}
@@ -0,0 +1,357 @@
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * CirculationAnalytics class computes circulation statistics over the whole loan history.
+ *
+ * Loans are copied into primitive columns (title, member, loan/due/return day, month) on the
+ * thread that owns the Library. The history store only ever grows at the end, so each refresh
+ * reads just the records added since the previous one. The counting is then a fork-join pass
+ * over those columns that touches no library objects, so it can run on every core.
+ * The result is cached until the next loan is issued or returned.
+ */
+public class CirculationAnalytics {
+
+    public static final int TOP_TITLES = 10;
+    private static final int MIN_LEAF_ROWS = 16 * 1024;
+    private static final int NOT_RETURNED = LoanHistoryStore.NOT_RETURNED;
+    private static final int NO_THEME = -1;
+    private static final Book.BookTheme[] THEMES = Book.BookTheme.values();
+    private static final MembershipPlan.PlanType[] PLANS = MembershipPlan.PlanType.values();
+    private static final int UNKNOWN_PLAN = PLANS.length;     // Members who have left
+
+    /**
+     * The extracted columns and lookup tables one counting pass reads
+     */
+    private static final class Columns {
+        private int[] titles;
+        private int[] memberIds;
+        private int[] loanDays;
+        private int[] dueDays;
+        private int[] returnDays;
+        private int[] months;
+        private byte[] themeOfTitle;
+        private byte[] planOfMember;       // Indexed by member ID - firstMemberId
+        private int firstMemberId;
+        private int firstMonth;
+        private int monthCount;
+        private int titleCount;
+        private int leafRows;
+
+        private int planOf(int memberId) {
+            int slot = memberId - firstMemberId;
+            return slot >= 0 && slot < planOfMember.length ? planOfMember[slot] : UNKNOWN_PLAN;
+        }
+    }
+
+    /**
+     * Counters of one slice of the rows; slices are added together
+     */
+    private static final class Counts {
+        private final int[] byTitle;
+        private final int[] byMonthAndTheme;
+        private final int[] returnedByPlan = new int[PLANS.length + 1];
+        private final long[] loanDaysByPlan = new long[PLANS.length + 1];
+        private final int[] lateByPlan = new int[PLANS.length + 1];
+
+        private Counts(Columns columns) {
+            this.byTitle = new int[columns.titleCount];
+            this.byMonthAndTheme = new int[columns.monthCount * THEMES.length];
+        }
+
+        private Counts add(Counts other) {
+            addTo(byTitle, other.byTitle);
+            addTo(byMonthAndTheme, other.byMonthAndTheme);
+            addTo(returnedByPlan, other.returnedByPlan);
+            addTo(lateByPlan, other.lateByPlan);
+            for (int i = 0; i < loanDaysByPlan.length; i++) {
+                loanDaysByPlan[i] += other.loanDaysByPlan[i];
+            }
+            return this;
+        }
+
+        private static void addTo(int[] into, int[] from) {
+            for (int i = 0; i < into.length; i++) {
+                into[i] += from[i];
+            }
+        }
+    }
+
+    private static final class CountTask extends RecursiveTask<Counts> {
+        private static final long serialVersionUID = 1L;
+
+        private final Columns columns;
+        private final int from;
+        private final int to;
+
+        private CountTask(Columns columns, int from, int to) {
+            this.columns = columns;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Counts compute() {
+            if (to - from > columns.leafRows) {
+                int middle = (from + to) >>> 1;
+                CountTask left = new CountTask(columns, from, middle);
+                left.fork();
+                Counts right = new CountTask(columns, middle, to).compute();
+                return left.join().add(right);
+            }
+            Columns c = columns;
+            Counts counts = new Counts(c);
+            for (int i = from; i < to; i++) {
+                int title = c.titles[i];
+                counts.byTitle[title]++;
+                int theme = c.themeOfTitle[title];
+                if (theme != NO_THEME) {
+                    counts.byMonthAndTheme[(c.months[i] - c.firstMonth) * THEMES.length + theme]++;
+                }
+                int returned = c.returnDays[i];
+                if (returned != NOT_RETURNED) {
+                    int plan = c.planOf(c.memberIds[i]);
+                    counts.returnedByPlan[plan]++;
+                    counts.loanDaysByPlan[plan] += returned - c.loanDays[i];
+                    if (returned > c.dueDays[i]) {
+                        counts.lateByPlan[plan]++;
+                    }
+                }
+            }
+            return counts;
+        }
+    }
+
+    // Attributes
+    private final Library library;
+    private final ForkJoinPool pool;
+    private final LongObjectMap<Integer> titleIndex;     // ISBN key -> position in titleIsbns
+    private long[] titleIsbns;
+    private int titleCount;
+    private int[] titles;
+    private int[] memberIds;
+    private int[] loanDays;
+    private int[] dueDays;
+    private int[] returnDays;
+    private int[] months;                                // Year * 12 + month - 1
+    private int rows;                                    // History rows, then the active loans
+    private int historyRows;
+    private int firstMonth;
+    private int lastMonth;
+    private int lastMonthDay = Integer.MIN_VALUE;
+    private int lastMonthValue;
+    private CirculationStats cached;
+    private long cachedLoanEvents;
+    private long cachedHistoryRecords;
+
+    // Constructors
+
+    public CirculationAnalytics(Library library, ForkJoinPool pool) {
+        if (library == null || pool == null) {
+            throw new IllegalArgumentException("Library and pool cannot be null");
+        }
+        this.library = library;
+        this.pool = pool;
+        this.titleIndex = new LongObjectMap<>();
+        this.titleIsbns = new long[1024];
+        this.titles = new int[0];
+        this.memberIds = new int[0];
+        this.loanDays = new int[0];
+        this.dueDays = new int[0];
+        this.returnDays = new int[0];
+        this.months = new int[0];
+        this.firstMonth = Integer.MAX_VALUE;
+        this.lastMonth = Integer.MIN_VALUE;
+    }
+
+    public CirculationAnalytics(Library library) {
+        this(library, ForkJoinPool.commonPool());
+    }
+
+    // ==================== STATISTICS ====================
+
+    /**
+     * Current statistics, recomputed only if a loan was issued or returned since the last call.
+     * Must run on the thread that owns the Library.
+     */
+    public CirculationStats getStats() {
+        long loanEvents = library.getLoanEventCount();
+        long historyRecords = library.getLoanHistoryStore().getRecordCount();
+        if (cached != null && loanEvents == cachedLoanEvents && historyRecords == cachedHistoryRecords) {
+            return cached;
+        }
+        long start = System.nanoTime();
+        Columns columns = extract();
+        Counts counts = rows == 0 ? new Counts(columns) : pool.invoke(new CountTask(columns, 0, rows));
+        cached = toStats(columns, counts, (System.nanoTime() - start) / 1_000_000);
+        cachedLoanEvents = loanEvents;
+        cachedHistoryRecords = historyRecords;
+        return cached;
+    }
+
+    // ==================== EXTRACTION ====================
+
+    /**
+     * Bring the columns up to date and build the lookup tables for one pass
+     */
+    private Columns extract() {
+        rows = historyRows;     // Active loans of the previous refresh are replaced
+        library.getLoanHistoryStore().scanSince(historyRows, this::addRow);
+        historyRows = rows;
+        library.forEachActiveLoan(loan -> {
+            if (!loan.isReturned()) {
+                addRow(loan.getMember().getId(), loan.getBook().getIsbnKey(), (int) loan.getLoanDate().toEpochDay(),
+                        (int) loan.getDueDate().toEpochDay(), NOT_RETURNED);
+            }
+        });
+
+        Columns columns = new Columns();
+        columns.titles = titles;
+        columns.memberIds = memberIds;
+        columns.loanDays = loanDays;
+        columns.dueDays = dueDays;
+        columns.returnDays = returnDays;
+        columns.months = months;
+        columns.titleCount = titleCount;
+        columns.firstMonth = rows == 0 ? 0 : firstMonth;
+        columns.monthCount = rows == 0 ? 0 : lastMonth - firstMonth + 1;
+        columns.leafRows = Math.max(MIN_LEAF_ROWS, rows / (pool.getParallelism() * 4) + 1);
+
+        columns.themeOfTitle = new byte[titleCount];
+        Arrays.fill(columns.themeOfTitle, (byte) NO_THEME);
+        library.forEachBook(book -> {
+            Integer title = titleIndex.get(book.getIsbnKey());
+            if (title != null) {
+                columns.themeOfTitle[title] = (byte) book.getTheme().ordinal();
+            }
+        });
+
+        int[] idRange = {Integer.MAX_VALUE, Integer.MIN_VALUE};
+        library.forEachMember(member -> {
+            idRange[0] = Math.min(idRange[0], member.getId());
+            idRange[1] = Math.max(idRange[1], member.getId());
+        });
+        columns.firstMemberId = idRange[0];
+        columns.planOfMember = new byte[idRange[0] <= idRange[1] ? idRange[1] - idRange[0] + 1 : 0];
+        Arrays.fill(columns.planOfMember, (byte) UNKNOWN_PLAN);
+        library.forEachMember(member -> columns.planOfMember[member.getId() - idRange[0]] =
+                (byte) (member.getMembershipPlan() != null
+                        ? member.getMembershipPlan().getPlanType().ordinal() : UNKNOWN_PLAN));
+        return columns;
+    }
+
+    private void addRow(int memberId, long isbnKey, int loanDay, int dueDay, int returnDay) {
+        if (rows == titles.length) {
+            int capacity = Math.max(1024, rows * 2);
+            titles = Arrays.copyOf(titles, capacity);
+            memberIds = Arrays.copyOf(memberIds, capacity);
+            loanDays = Arrays.copyOf(loanDays, capacity);
+            dueDays = Arrays.copyOf(dueDays, capacity);
+            returnDays = Arrays.copyOf(returnDays, capacity);
+            months = Arrays.copyOf(months, capacity);
+        }
+        Integer title = titleIndex.get(isbnKey);
+        if (title == null) {
+            title = titleCount;
+            titleIndex.put(isbnKey, title);
+            if (titleCount == titleIsbns.length) {
+                titleIsbns = Arrays.copyOf(titleIsbns, titleCount * 2);
+            }
+            titleIsbns[titleCount++] = isbnKey;
+        }
+        int month = monthOf(loanDay);
+        firstMonth = Math.min(firstMonth, month);
+        lastMonth = Math.max(lastMonth, month);
+
+        titles[rows] = title;
+        memberIds[rows] = memberId;
+        loanDays[rows] = loanDay;
+        dueDays[rows] = dueDay;
+        returnDays[rows] = returnDay;
+        months[rows] = month;
+        rows++;
+    }
+
+    /**
+     * Year * 12 + month - 1 of an epoch day. History is appended in time order, so neighbouring
+     * records usually share a day and the last answer is remembered.
+     */
+    private int monthOf(int epochDay) {
+        if (epochDay != lastMonthDay) {
+            LocalDate date = LocalDate.ofEpochDay(epochDay);
+            lastMonthDay = epochDay;
+            lastMonthValue = date.getYear() * 12 + date.getMonthValue() - 1;
+        }
+        return lastMonthValue;
+    }
+
+    // ==================== RESULTS ====================
+
+    private CirculationStats toStats(Columns columns, Counts counts, long computeMillis) {
+        // Top titles: keep the best TOP_TITLES in a min-heap
+        PriorityQueue<Integer> top = new PriorityQueue<>((a, b) -> counts.byTitle[a] != counts.byTitle[b]
+                ? Integer.compare(counts.byTitle[a], counts.byTitle[b]) : Long.compare(titleIsbns[b], titleIsbns[a]));
+        for (int title = 0; title < columns.titleCount; title++) {
+            if (counts.byTitle[title] == 0) {
+                continue;
+            }
+            top.add(title);
+            if (top.size() > TOP_TITLES) {
+                top.poll();
+            }
+        }
+        List<CirculationStats.TitleCount> mostBorrowed = new ArrayList<>();
+        while (!top.isEmpty()) {
+            int title = top.poll();
+            mostBorrowed.add(0, new CirculationStats.TitleCount(titleIsbns[title], titleOf(titleIsbns[title]),
+                    counts.byTitle[title]));
+        }
+
+        SortedMap<YearMonth, Map<Book.BookTheme, Integer>> byMonth = new TreeMap<>();
+        for (int month = 0; month < columns.monthCount; month++) {
+            EnumMap<Book.BookTheme, Integer> byTheme = new EnumMap<>(Book.BookTheme.class);
+            for (int theme = 0; theme < THEMES.length; theme++) {
+                int loans = counts.byMonthAndTheme[month * THEMES.length + theme];
+                if (loans > 0) {
+                    byTheme.put(THEMES[theme], loans);
+                }
+            }
+            if (!byTheme.isEmpty()) {
+                int yearMonth = columns.firstMonth + month;
+                byMonth.put(YearMonth.of(yearMonth / 12, yearMonth % 12 + 1), byTheme);
+            }
+        }
+
+        EnumMap<MembershipPlan.PlanType, CirculationStats.PlanStats> byPlan = new EnumMap<>(MembershipPlan.PlanType.class);
+        int returned = 0;
+        int late = 0;
+        for (int plan = 0; plan <= PLANS.length; plan++) {
+            returned += counts.returnedByPlan[plan];
+            late += counts.lateByPlan[plan];
+            if (plan < PLANS.length) {
+                byPlan.put(PLANS[plan], new CirculationStats.PlanStats(counts.returnedByPlan[plan],
+                        counts.loanDaysByPlan[plan], counts.lateByPlan[plan]));
+            }
+        }
+        return new CirculationStats(rows, returned, late, mostBorrowed, byMonth, byPlan, computeMillis);
+    }
+
+    private String titleOf(long isbnKey) {
+        try {
+            return library.findBookByKey(isbnKey).getTitle();
+        } catch (NoSuchElementException e) {
+            return null;
+        }
+    }
+}
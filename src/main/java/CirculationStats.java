@@ -0,0 +1,149 @@
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * CirculationStats class is a read-only result of CirculationAnalytics:
+ * most borrowed titles, borrowing by theme per month, average loan length
+ * and late-return rate per membership plan.
+ * Covers the loan history plus the active loans at the time it was computed.
+ */
+public class CirculationStats {
+
+    /**
+     * How often one title was borrowed
+     */
+    public static class TitleCount {
+        private final long isbnKey;
+        private final String title;          // Null if the title has left the catalog
+        private final int loans;
+
+        TitleCount(long isbnKey, String title, int loans) {
+            this.isbnKey = isbnKey;
+            this.title = title;
+            this.loans = loans;
+        }
+
+        public long getIsbnKey() {
+            return isbnKey;
+        }
+
+        public String getTitle() {
+            return title != null ? title : "ISBN " + isbnKey;
+        }
+
+        public int getLoans() {
+            return loans;
+        }
+
+        @Override
+        public String toString() {
+            return getTitle() + " (" + loans + ")";
+        }
+    }
+
+    /**
+     * Returned loans of one membership plan
+     */
+    public static class PlanStats {
+        private final int returnedLoans;
+        private final long loanDays;
+        private final int lateReturns;
+
+        PlanStats(int returnedLoans, long loanDays, int lateReturns) {
+            this.returnedLoans = returnedLoans;
+            this.loanDays = loanDays;
+            this.lateReturns = lateReturns;
+        }
+
+        public int getReturnedLoans() {
+            return returnedLoans;
+        }
+
+        public double getAverageLoanDays() {
+            return returnedLoans == 0 ? 0.0 : (double) loanDays / returnedLoans;
+        }
+
+        public double getLateReturnRate() {
+            return returnedLoans == 0 ? 0.0 : (double) lateReturns / returnedLoans;
+        }
+    }
+
+    // Attributes
+    private final long totalLoans;
+    private final int returnedLoans;
+    private final int lateReturns;
+    private final List<TitleCount> mostBorrowed;
+    private final SortedMap<YearMonth, Map<Book.BookTheme, Integer>> borrowingByThemePerMonth;
+    private final Map<MembershipPlan.PlanType, PlanStats> byPlan;
+    private final long computeMillis;
+
+    CirculationStats(long totalLoans, int returnedLoans, int lateReturns, List<TitleCount> mostBorrowed,
+                     SortedMap<YearMonth, Map<Book.BookTheme, Integer>> borrowingByThemePerMonth,
+                     EnumMap<MembershipPlan.PlanType, PlanStats> byPlan, long computeMillis) {
+        this.totalLoans = totalLoans;
+        this.returnedLoans = returnedLoans;
+        this.lateReturns = lateReturns;
+        this.mostBorrowed = Collections.unmodifiableList(mostBorrowed);
+        this.borrowingByThemePerMonth = Collections.unmodifiableSortedMap(borrowingByThemePerMonth);
+        this.byPlan = Collections.unmodifiableMap(byPlan);
+        this.computeMillis = computeMillis;
+    }
+
+    // Getters
+
+    public long getTotalLoans() {
+        return totalLoans;
+    }
+
+    public int getReturnedLoans() {
+        return returnedLoans;
+    }
+
+    /**
+     * Share of returned loans that came back after their due date
+     */
+    public double getLateReturnRate() {
+        return returnedLoans == 0 ? 0.0 : (double) lateReturns / returnedLoans;
+    }
+
+    /**
+     * Titles by number of loans, most borrowed first
+     */
+    public List<TitleCount> getMostBorrowed() {
+        return mostBorrowed;
+    }
+
+    /**
+     * Loans started in each month, by theme of the book. Months and themes without loans are left out.
+     */
+    public SortedMap<YearMonth, Map<Book.BookTheme, Integer>> getBorrowingByThemePerMonth() {
+        return borrowingByThemePerMonth;
+    }
+
+    /**
+     * Returned loans by the member's current plan; members who have left are not counted
+     */
+    public PlanStats getPlanStats(MembershipPlan.PlanType planType) {
+        PlanStats stats = byPlan.get(planType);
+        return stats != null ? stats : new PlanStats(0, 0, 0);
+    }
+
+    public double getAverageLoanDays(MembershipPlan.PlanType planType) {
+        return getPlanStats(planType).getAverageLoanDays();
+    }
+
+    public long getComputeMillis() {
+        return computeMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "CirculationStats{loans=" + totalLoans + ", returned=" + returnedLoans +
+               ", lateRate=" + String.format("%.1f%%", getLateReturnRate() * 100) +
+               ", months=" + borrowingByThemePerMonth.size() + ", top=" + mostBorrowed + "}";
+    }
+}
@@ -0,0 +1,294 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * ColumnarExporter class writes the library's data as ColumnarTable files for analytics.
+ *
+ * A full export writes four tables: books, members, active loans and loan history.
+ * An incremental export writes one loan_changes_N table with only the loans issued or
+ * returned since the previous export. What was already exported (the number of history
+ * records and the active loans) is kept in export_state.dat in the export directory.
+ * Must run on the thread that owns the Library.
+ */
+public class ColumnarExporter {
+
+    public static final String BOOKS_TABLE = "books";
+    public static final String MEMBERS_TABLE = "members";
+    public static final String LOANS_TABLE = "loans";
+    public static final String HISTORY_TABLE = "loan_history";
+    public static final String CHANGES_TABLE = "loan_changes";
+    public static final String ISSUED = "ISSUED";
+    public static final String RETURNED = "RETURNED";
+    private static final String STATE_FILE = "export_state.dat";
+
+    /**
+     * What the previous export covered
+     */
+    private static class ExportState implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private int sequence;                 // Number of the last loan_changes table
+        private long historyRecords;          // Loan history records already exported
+        private Set<String> activeLoans;      // Keys of the active loans at the last export
+    }
+
+    // Attributes
+    private final Library library;
+    private final Path directory;
+
+    // Constructors
+
+    public ColumnarExporter(Library library, String directory) {
+        if (library == null) {
+            throw new IllegalArgumentException("Library cannot be null");
+        }
+        if (directory == null || directory.trim().isEmpty()) {
+            throw new IllegalArgumentException("Export directory cannot be empty");
+        }
+        this.library = library;
+        this.directory = Path.of(directory);
+    }
+
+    // ==================== FULL EXPORT ====================
+
+    /**
+     * Write every table and start a new change sequence
+     * @return the number of rows written
+     */
+    public long exportAll() throws IOException {
+        Files.createDirectories(directory);
+        long rows = exportBooks() + exportMembers();
+        ExportState state = new ExportState();
+        state.activeLoans = new HashSet<>();
+        rows += exportLoans(state.activeLoans);
+        state.historyRecords = library.getLoanHistoryStore().getRecordCount();
+        rows += exportHistory();
+        state.sequence = 0;
+        saveState(state);
+        System.out.println("Analytics export written to " + directory + ": " + rows + " rows");
+        return rows;
+    }
+
+    private long exportBooks() throws IOException {
+        try (ColumnarTable.Writer table = new ColumnarTable.Writer(tableFile(BOOKS_TABLE), BOOKS_TABLE)) {
+            ColumnarTable.LongColumn isbn = table.longColumn("isbn");
+            ColumnarTable.StringColumn title = table.stringColumn("title");
+            ColumnarTable.StringColumn author = table.stringColumn("author");
+            ColumnarTable.DictionaryColumn theme = table.dictionaryColumn("theme");
+            ColumnarTable.IntColumn total = table.intColumn("total_copies");
+            ColumnarTable.IntColumn available = table.intColumn("available_copies");
+            forEach(library::forEachBook, book -> {
+                isbn.add(book.getIsbnKey());
+                title.add(book.getTitle());
+                author.add(book.getAuthor());
+                theme.add(book.getTheme());
+                total.add(book.getTotalCopies());
+                available.add(book.getAvailableCopies());
+                table.endRow();
+            });
+            return table.getRowCount();
+        }
+    }
+
+    private long exportMembers() throws IOException {
+        try (ColumnarTable.Writer table = new ColumnarTable.Writer(tableFile(MEMBERS_TABLE), MEMBERS_TABLE)) {
+            ColumnarTable.IntColumn id = table.intColumn("member_id");
+            ColumnarTable.StringColumn name = table.stringColumn("name");
+            ColumnarTable.StringColumn surname = table.stringColumn("surname");
+            ColumnarTable.IntColumn age = table.intColumn("age");
+            ColumnarTable.DictionaryColumn plan = table.dictionaryColumn("plan");
+            ColumnarTable.IntColumn activeLoans = table.intColumn("active_loans");
+            ColumnarTable.IntColumn loanLimit = table.intColumn("loan_limit");
+            ColumnarTable.IntColumn pastLoans = table.intColumn("past_loans");
+            ColumnarTable.LongColumn accumulatedFees = table.longColumn("accumulated_fees_cents");
+            ColumnarTable.LongColumn currentFees = table.longColumn("current_fees_cents");
+            forEach(library::forEachMember, member -> {
+                id.add(member.getId());
+                name.add(member.getName());
+                surname.add(member.getSurname());
+                age.add(member.getAge());
+                plan.add(member.getMembershipPlan() != null ? member.getMembershipPlan().getPlanType() : null);
+                activeLoans.add(member.getActiveLoans().size());
+                loanLimit.add(member.getMaxLoanLimit());
+                pastLoans.add(member.getLoanHistoryCount());
+                accumulatedFees.add(member.getFeeBalanceCents());
+                currentFees.add(FeeAccrual.toCents(member.calculateCurrentOverdueFees()));
+                table.endRow();
+            });
+            return table.getRowCount();
+        }
+    }
+
+    private long exportLoans(Set<String> exportedKeys) throws IOException {
+        try (ColumnarTable.Writer table = new ColumnarTable.Writer(tableFile(LOANS_TABLE), LOANS_TABLE)) {
+            ColumnarTable.IntColumn member = table.intColumn("member_id");
+            ColumnarTable.LongColumn isbn = table.longColumn("isbn");
+            ColumnarTable.DateColumn loanDate = table.dateColumn("loan_date");
+            ColumnarTable.DateColumn dueDate = table.dateColumn("due_date");
+            forEach(library::forEachActiveLoan, loan -> {
+                member.add(loan.getMember().getId());
+                isbn.add(loan.getBook().getIsbnKey());
+                loanDate.add(loan.getLoanDate());
+                dueDate.add(loan.getDueDate());
+                table.endRow();
+                exportedKeys.add(key(loan));
+            });
+            return table.getRowCount();
+        }
+    }
+
+    private long exportHistory() throws IOException {
+        try (ColumnarTable.Writer table = new ColumnarTable.Writer(tableFile(HISTORY_TABLE), HISTORY_TABLE)) {
+            ColumnarTable.IntColumn member = table.intColumn("member_id");
+            ColumnarTable.LongColumn isbn = table.longColumn("isbn");
+            ColumnarTable.DateColumn loanDate = table.dateColumn("loan_date");
+            ColumnarTable.DateColumn dueDate = table.dateColumn("due_date");
+            ColumnarTable.DateColumn returnDate = table.dateColumn("return_date");
+            forEach(library.getLoanHistoryStore()::forEach, record -> {
+                member.add(record.getMemberId());
+                isbn.add(record.getIsbnKey());
+                loanDate.add(record.getLoanDate());
+                dueDate.add(record.getDueDate());
+                returnDate.add(record.getReturnDate());
+                table.endRow();
+            });
+            return table.getRowCount();
+        }
+    }
+
+    // ==================== INCREMENTAL EXPORT ====================
+
+    /**
+     * Write the loans issued or returned since the previous export as the next loan_changes table.
+     * Falls back to a full export when there is no previous one.
+     * @return the number of rows written
+     */
+    public long exportChanges() throws IOException {
+        ExportState state = loadState();
+        if (state == null) {
+            System.out.println("No previous analytics export; writing a full export.");
+            return exportAll();
+        }
+        Set<String> activeNow = new HashSet<>();
+        long historyNow = library.getLoanHistoryStore().getRecordCount();
+        int sequence = state.sequence + 1;
+        String tableName = CHANGES_TABLE + "_" + sequence;
+        long rows;
+        try (ColumnarTable.Writer table = new ColumnarTable.Writer(tableFile(tableName), CHANGES_TABLE)) {
+            ColumnarTable.DictionaryColumn change = table.dictionaryColumn("change");
+            ColumnarTable.IntColumn member = table.intColumn("member_id");
+            ColumnarTable.LongColumn isbn = table.longColumn("isbn");
+            ColumnarTable.DateColumn loanDate = table.dateColumn("loan_date");
+            ColumnarTable.DateColumn dueDate = table.dateColumn("due_date");
+            ColumnarTable.DateColumn returnDate = table.dateColumn("return_date");
+            forEach(library::forEachActiveLoan, loan -> {
+                String key = key(loan);
+                activeNow.add(key);
+                if (!state.activeLoans.contains(key)) {
+                    change.add(ISSUED);
+                    member.add(loan.getMember().getId());
+                    isbn.add(loan.getBook().getIsbnKey());
+                    loanDate.add(loan.getLoanDate());
+                    dueDate.add(loan.getDueDate());
+                    returnDate.add(null);
+                    table.endRow();
+                }
+            });
+            LoanHistoryStore history = library.getLoanHistoryStore();
+            forEach(action -> history.forEachSince(state.historyRecords, action), (LoanHistoryStore.Record record) -> {
+                change.add(RETURNED);
+                member.add(record.getMemberId());
+                isbn.add(record.getIsbnKey());
+                loanDate.add(record.getLoanDate());
+                dueDate.add(record.getDueDate());
+                returnDate.add(record.getReturnDate());
+                table.endRow();
+            });
+            rows = table.getRowCount();
+        }
+        state.sequence = sequence;
+        state.historyRecords = historyNow;
+        state.activeLoans = activeNow;
+        saveState(state);
+        System.out.println("Analytics changes written to " + tableFile(tableName) + ": " + rows + " rows");
+        return rows;
+    }
+
+    /**
+     * An active loan's identity: a member has at most one active loan per title
+     */
+    private static String key(Loan loan) {
+        return loan.getMember().getId() + ":" + loan.getBook().getIsbnKey() + ":" + loan.getLoanDate().toEpochDay();
+    }
+
+    // ==================== FILES ====================
+
+    public Path tableFile(String tableName) {
+        return directory.resolve(tableName + ColumnarTable.FILE_EXTENSION);
+    }
+
+    /**
+     * Number of the last loan_changes table written, 0 after a full export or before any
+     */
+    public int getChangeSequence() {
+        ExportState state = loadState();
+        return state != null ? state.sequence : 0;
+    }
+
+    private ExportState loadState() {
+        File file = directory.resolve(STATE_FILE).toFile();
+        if (!file.exists()) {
+            return null;
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
+            return (ExportState) ois.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            System.err.println("Error loading export state: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void saveState(ExportState state) throws IOException {
+        Path file = directory.resolve(STATE_FILE);
+        Path tmp = directory.resolve(STATE_FILE + ".tmp");
+        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(tmp.toFile()))) {
+            oos.writeObject(state);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // ==================== HELPERS ====================
+
+    private interface RowWriter<T> {
+        void write(T row) throws IOException;
+    }
+
+    /**
+     * Run an in-place visit whose callback writes rows, passing write errors back out
+     */
+    private static <T> void forEach(Consumer<Consumer<T>> source, RowWriter<T> writer) throws IOException {
+        try {
+            source.accept(row -> {
+                try {
+                    writer.write(row);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
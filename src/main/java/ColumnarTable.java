@@ -0,0 +1,601 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * ColumnarTable class reads and writes the typed, compressed table files of the analytics export.
+ *
+ * File layout (the whole file is gzip-compressed):
+ *   header:     magic "LMSCOL01", table name, column count, then each column's name and type
+ *   row groups: row count, then each column's values as one length-prefixed block
+ *   end:        a row count of 0
+ * Column encodings:
+ *   INT         zigzag varints
+ *   LONG        zigzag varint deltas from the previous row
+ *   STRING      length + 1 as a varint (0 for null), then the UTF-8 bytes
+ *   DICTIONARY  the group's distinct values, then one varint code per row (0 for null)
+ *   DATE        a presence bitmap, then zigzag varint deltas between the epoch days present
+ * Rows are buffered per column and written ROW_GROUP_SIZE at a time, so memory stays bounded.
+ * Readers can skip the blocks of columns they do not need.
+ */
+public class ColumnarTable {
+
+    public static final String FILE_EXTENSION = ".lcol";
+    public static final int ROW_GROUP_SIZE = 64 * 1024;
+    public static final int NO_DATE = Integer.MIN_VALUE;     // Epoch day of a missing date
+    private static final String MAGIC = "LMSCOL01";
+
+    public enum ColumnType { INT, LONG, STRING, DICTIONARY, DATE }
+
+    // ==================== COLUMNS ====================
+
+    /**
+     * A column being written; holds the values of the current row group
+     */
+    public abstract static class Column {
+        private final String name;
+        private final ColumnType type;
+        protected int size;
+
+        private Column(String name, ColumnType type) {
+            this.name = name;
+            this.type = type;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public ColumnType getType() {
+            return type;
+        }
+
+        abstract void encode(DataOutputStream out) throws IOException;
+
+        void clear() {
+            size = 0;
+        }
+    }
+
+    public static final class IntColumn extends Column {
+        private int[] values = new int[1024];
+
+        private IntColumn(String name) {
+            super(name, ColumnType.INT);
+        }
+
+        public void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        @Override
+        void encode(DataOutputStream out) throws IOException {
+            for (int i = 0; i < size; i++) {
+                writeVarint(out, zigzag(values[i]));
+            }
+        }
+    }
+
+    public static final class LongColumn extends Column {
+        private long[] values = new long[1024];
+
+        private LongColumn(String name) {
+            super(name, ColumnType.LONG);
+        }
+
+        public void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        @Override
+        void encode(DataOutputStream out) throws IOException {
+            long previous = 0;
+            for (int i = 0; i < size; i++) {
+                writeVarint(out, zigzag(values[i] - previous));
+                previous = values[i];
+            }
+        }
+    }
+
+    public static final class StringColumn extends Column {
+        private String[] values = new String[1024];
+
+        private StringColumn(String name) {
+            super(name, ColumnType.STRING);
+        }
+
+        public void add(String value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        @Override
+        void encode(DataOutputStream out) throws IOException {
+            for (int i = 0; i < size; i++) {
+                writeString(out, values[i]);
+            }
+        }
+
+        @Override
+        void clear() {
+            Arrays.fill(values, 0, size, null);
+            super.clear();
+        }
+    }
+
+    /**
+     * Strings from a small set, such as themes and plan types
+     */
+    public static final class DictionaryColumn extends Column {
+        private final Map<String, Integer> codes = new LinkedHashMap<>();
+        private int[] values = new int[1024];     // 0 for null, otherwise dictionary position + 1
+
+        private DictionaryColumn(String name) {
+            super(name, ColumnType.DICTIONARY);
+        }
+
+        public void add(String value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value == null ? 0 : codes.computeIfAbsent(value, v -> codes.size() + 1);
+        }
+
+        public void add(Enum<?> value) {
+            add(value != null ? value.name() : null);
+        }
+
+        @Override
+        void encode(DataOutputStream out) throws IOException {
+            writeVarint(out, codes.size());
+            for (String value : codes.keySet()) {
+                writeString(out, value);
+            }
+            for (int i = 0; i < size; i++) {
+                writeVarint(out, values[i]);
+            }
+        }
+
+        @Override
+        void clear() {
+            codes.clear();
+            super.clear();
+        }
+    }
+
+    public static final class DateColumn extends Column {
+        private int[] values = new int[1024];     // Epoch days, NO_DATE for null
+
+        private DateColumn(String name) {
+            super(name, ColumnType.DATE);
+        }
+
+        public void add(LocalDate value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value != null ? (int) value.toEpochDay() : NO_DATE;
+        }
+
+        @Override
+        void encode(DataOutputStream out) throws IOException {
+            byte[] present = new byte[(size + 7) / 8];
+            for (int i = 0; i < size; i++) {
+                if (values[i] != NO_DATE) {
+                    present[i >> 3] |= 1 << (i & 7);
+                }
+            }
+            out.write(present);
+            long previous = 0;
+            for (int i = 0; i < size; i++) {
+                if (values[i] != NO_DATE) {
+                    writeVarint(out, zigzag(values[i] - previous));
+                    previous = values[i];
+                }
+            }
+        }
+    }
+
+    // ==================== WRITING ====================
+
+    /**
+     * Writes one table. Declare the columns, then add a value to every column and call endRow().
+     */
+    public static final class Writer implements Closeable {
+        private final String tableName;
+        private final DataOutputStream out;
+        private final List<Column> columns;
+        private int groupRows;
+        private long totalRows;
+        private boolean headerWritten;
+
+        public Writer(Path file, String tableName) throws IOException {
+            this.tableName = tableName;
+            this.out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(Files.newOutputStream(file), 64 * 1024), 64 * 1024));
+            this.columns = new ArrayList<>();
+        }
+
+        public IntColumn intColumn(String name) {
+            return declare(new IntColumn(name));
+        }
+
+        public LongColumn longColumn(String name) {
+            return declare(new LongColumn(name));
+        }
+
+        public StringColumn stringColumn(String name) {
+            return declare(new StringColumn(name));
+        }
+
+        public DictionaryColumn dictionaryColumn(String name) {
+            return declare(new DictionaryColumn(name));
+        }
+
+        public DateColumn dateColumn(String name) {
+            return declare(new DateColumn(name));
+        }
+
+        private <C extends Column> C declare(C column) {
+            if (headerWritten) {
+                throw new IllegalStateException("Columns must be declared before the first row");
+            }
+            for (Column existing : columns) {
+                if (existing.getName().equals(column.getName())) {
+                    throw new IllegalArgumentException("Duplicate column: " + column.getName());
+                }
+            }
+            columns.add(column);
+            return column;
+        }
+
+        /**
+         * Finish the current row; every column must have received exactly one value
+         */
+        public void endRow() throws IOException {
+            writeHeader();
+            for (Column column : columns) {
+                if (column.size != groupRows + 1) {
+                    throw new IllegalStateException("Row " + (totalRows + 1) + " has no single value for column " +
+                            column.getName());
+                }
+            }
+            groupRows++;
+            totalRows++;
+            if (groupRows == ROW_GROUP_SIZE) {
+                flushGroup();
+            }
+        }
+
+        public long getRowCount() {
+            return totalRows;
+        }
+
+        private void writeHeader() throws IOException {
+            if (headerWritten) {
+                return;
+            }
+            out.write(MAGIC.getBytes(StandardCharsets.US_ASCII));
+            out.writeUTF(tableName);
+            writeVarint(out, columns.size());
+            for (Column column : columns) {
+                out.writeUTF(column.getName());
+                out.writeByte(column.getType().ordinal());
+            }
+            headerWritten = true;
+        }
+
+        private void flushGroup() throws IOException {
+            writeVarint(out, groupRows);
+            ByteArrayOutputStream block = new ByteArrayOutputStream(groupRows * 4);
+            for (Column column : columns) {
+                block.reset();
+                column.encode(new DataOutputStream(block));
+                writeVarint(out, block.size());
+                block.writeTo(out);
+                column.clear();
+            }
+            groupRows = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                writeHeader();
+                if (groupRows > 0) {
+                    flushGroup();
+                }
+                writeVarint(out, 0);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    // ==================== READING ====================
+
+    /**
+     * A table read back into memory, one primitive array per column
+     */
+    public static final class Table {
+        private final String name;
+        private final Map<String, ColumnType> schema;
+        private final Map<String, Object> data;
+        private final int rowCount;
+
+        private Table(String name, Map<String, ColumnType> schema, Map<String, Object> data, int rowCount) {
+            this.name = name;
+            this.schema = Collections.unmodifiableMap(schema);
+            this.data = data;
+            this.rowCount = rowCount;
+        }
+
+        /**
+         * Read a table file, keeping only the named columns (all of them if none are named)
+         */
+        public static Table read(Path file, String... columnNames) throws IOException {
+            Set<String> wanted = Set.of(columnNames);
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new GZIPInputStream(Files.newInputStream(file), 64 * 1024), 64 * 1024))) {
+                byte[] magic = new byte[MAGIC.length()];
+                in.readFully(magic);
+                if (!MAGIC.equals(new String(magic, StandardCharsets.US_ASCII))) {
+                    throw new IOException("Not a columnar table file: " + file);
+                }
+                String name = in.readUTF();
+                int columnCount = (int) readVarint(in);
+                String[] names = new String[columnCount];
+                ColumnType[] types = new ColumnType[columnCount];
+                Map<String, ColumnType> schema = new LinkedHashMap<>();
+                for (int c = 0; c < columnCount; c++) {
+                    names[c] = in.readUTF();
+                    types[c] = ColumnType.values()[in.readUnsignedByte()];
+                    if (wanted.isEmpty() || wanted.contains(names[c])) {
+                        schema.put(names[c], types[c]);
+                    }
+                }
+                for (String column : wanted) {
+                    if (!schema.containsKey(column)) {
+                        throw new NoSuchElementException("No column " + column + " in table " + name);
+                    }
+                }
+
+                Map<String, Object> data = new HashMap<>();
+                int rows = 0;
+                int groupRows;
+                while ((groupRows = (int) readVarint(in)) > 0) {
+                    for (int c = 0; c < columnCount; c++) {
+                        int length = (int) readVarint(in);
+                        if (!schema.containsKey(names[c])) {
+                            in.skipNBytes(length);
+                            continue;
+                        }
+                        data.put(names[c], decode(in, types[c], groupRows, data.get(names[c]), rows));
+                    }
+                    rows += groupRows;
+                }
+                for (Map.Entry<String, ColumnType> column : schema.entrySet()) {
+                    data.put(column.getKey(), trim(data.get(column.getKey()), column.getValue(), rows));
+                }
+                return new Table(name, schema, data, rows);
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        public Map<String, ColumnType> getSchema() {
+            return schema;
+        }
+
+        /**
+         * Values of an INT column, or the epoch days of a DATE column (NO_DATE for null)
+         */
+        public int[] getInts(String column) {
+            return (int[]) column(column, ColumnType.INT, ColumnType.DATE);
+        }
+
+        public long[] getLongs(String column) {
+            return (long[]) column(column, ColumnType.LONG, ColumnType.LONG);
+        }
+
+        /**
+         * Values of a STRING or DICTIONARY column
+         */
+        public String[] getStrings(String column) {
+            return (String[]) column(column, ColumnType.STRING, ColumnType.DICTIONARY);
+        }
+
+        private Object column(String column, ColumnType type, ColumnType alternative) {
+            ColumnType actual = schema.get(column);
+            if (actual == null) {
+                throw new NoSuchElementException("No column " + column + " in table " + name);
+            }
+            if (actual != type && actual != alternative) {
+                throw new IllegalArgumentException("Column " + column + " is " + actual);
+            }
+            Object values = data.get(column);
+            return values != null ? values : trim(null, actual, 0);
+        }
+
+        @Override
+        public String toString() {
+            return "Table{" + name + ", rows=" + rowCount + ", columns=" + schema + "}";
+        }
+    }
+
+    /**
+     * Decode one block and append it to the column's values so far
+     */
+    private static Object decode(DataInputStream in, ColumnType type, int count, Object values, int offset)
+            throws IOException {
+        switch (type) {
+            case INT: {
+                int[] ints = grow((int[]) values, offset + count);
+                for (int i = 0; i < count; i++) {
+                    ints[offset + i] = (int) unzigzag(readVarint(in));
+                }
+                return ints;
+            }
+            case LONG: {
+                long[] longs = grow((long[]) values, offset + count);
+                long previous = 0;
+                for (int i = 0; i < count; i++) {
+                    previous += unzigzag(readVarint(in));
+                    longs[offset + i] = previous;
+                }
+                return longs;
+            }
+            case STRING: {
+                String[] strings = grow((String[]) values, offset + count);
+                for (int i = 0; i < count; i++) {
+                    strings[offset + i] = readString(in);
+                }
+                return strings;
+            }
+            case DICTIONARY: {
+                String[] dictionary = new String[(int) readVarint(in) + 1];
+                for (int d = 1; d < dictionary.length; d++) {
+                    dictionary[d] = readString(in);
+                }
+                String[] strings = grow((String[]) values, offset + count);
+                for (int i = 0; i < count; i++) {
+                    strings[offset + i] = dictionary[(int) readVarint(in)];
+                }
+                return strings;
+            }
+            case DATE: {
+                byte[] present = new byte[(count + 7) / 8];
+                in.readFully(present);
+                int[] days = grow((int[]) values, offset + count);
+                long previous = 0;
+                for (int i = 0; i < count; i++) {
+                    if ((present[i >> 3] & (1 << (i & 7))) != 0) {
+                        previous += unzigzag(readVarint(in));
+                        days[offset + i] = (int) previous;
+                    } else {
+                        days[offset + i] = NO_DATE;
+                    }
+                }
+                return days;
+            }
+            default:
+                throw new IOException("Unknown column type " + type);
+        }
+    }
+
+    private static int[] grow(int[] values, int length) {
+        if (values == null) {
+            return new int[length];
+        }
+        return values.length >= length ? values : Arrays.copyOf(values, Math.max(length, values.length * 2));
+    }
+
+    private static long[] grow(long[] values, int length) {
+        if (values == null) {
+            return new long[length];
+        }
+        return values.length >= length ? values : Arrays.copyOf(values, Math.max(length, values.length * 2));
+    }
+
+    private static String[] grow(String[] values, int length) {
+        if (values == null) {
+            return new String[length];
+        }
+        return values.length >= length ? values : Arrays.copyOf(values, Math.max(length, values.length * 2));
+    }
+
+    private static Object trim(Object values, ColumnType type, int rows) {
+        switch (type) {
+            case LONG:
+                return values == null ? new long[0] : Arrays.copyOf((long[]) values, rows);
+            case STRING:
+            case DICTIONARY:
+                return values == null ? new String[0] : Arrays.copyOf((String[]) values, rows);
+            default:
+                return values == null ? new int[0] : Arrays.copyOf((int[]) values, rows);
+        }
+    }
+
+    // ==================== ENCODING ====================
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarint(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarint(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length + 1L);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = (int) readVarint(in);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
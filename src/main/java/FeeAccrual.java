@@ -0,0 +1,104 @@
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * FeeAccrual class is a materialized, linearly growing fee counter.
+ * Holds a base amount at an anchor date plus a per-day growth rate, so the
+ * amount owed on any later day is a constant-time read instead of a loop over loans.
+ * Amounts are kept in whole cents.
+ */
+public class FeeAccrual implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // Attributes
+    private long baseCents;          // Amount owed as of anchorDate
+    private long centsPerDay;        // Growth per day from overdue loans still out
+    private LocalDate anchorDate;
+
+    // Constructors
+
+    public FeeAccrual() {
+        this.baseCents = 0;
+        this.centsPerDay = 0;
+        this.anchorDate = null;
+    }
+
+    // ==================== UPDATES ====================
+
+    /**
+     * Add a loan's fee so far and its daily rate, as of the given date
+     */
+    public synchronized void add(long feeCents, long ratePerDayCents, LocalDate asOf) {
+        advanceTo(asOf);
+        baseCents += feeCents;
+        centsPerDay += ratePerDayCents;
+    }
+
+    /**
+     * Remove a loan's fee so far and its daily rate, as of the given date
+     */
+    public synchronized void remove(long feeCents, long ratePerDayCents, LocalDate asOf) {
+        advanceTo(asOf);
+        baseCents = Math.max(0, baseCents - feeCents);
+        centsPerDay = Math.max(0, centsPerDay - ratePerDayCents);
+    }
+
+    /**
+     * Clear the counter
+     */
+    public synchronized void reset() {
+        baseCents = 0;
+        centsPerDay = 0;
+        anchorDate = null;
+    }
+
+    /**
+     * Fold the growth since the anchor into the base and move the anchor forward
+     */
+    private void advanceTo(LocalDate date) {
+        if (anchorDate != null && date.isAfter(anchorDate)) {
+            baseCents += centsPerDay * ChronoUnit.DAYS.between(anchorDate, date);
+        }
+        if (anchorDate == null || date.isAfter(anchorDate)) {
+            anchorDate = date;
+        }
+    }
+
+    // ==================== QUERIES ====================
+
+    /**
+     * Amount owed on the given date, in cents
+     */
+    public synchronized long centsAsOf(LocalDate date) {
+        if (anchorDate == null || !date.isAfter(anchorDate)) {
+            return baseCents;
+        }
+        return baseCents + centsPerDay * ChronoUnit.DAYS.between(anchorDate, date);
+    }
+
+    /**
+     * Amount owed on the given date, in dollars
+     */
+    public double amountAsOf(LocalDate date) {
+        return centsAsOf(date) / 100.0;
+    }
+
+    public synchronized long getCentsPerDay() {
+        return centsPerDay;
+    }
+
+    /**
+     * Convert a dollar amount to whole cents
+     */
+    public static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "FeeAccrual{baseCents=" + baseCents + ", centsPerDay=" + centsPerDay +
+               ", anchor=" + anchorDate + "}";
+    }
+}
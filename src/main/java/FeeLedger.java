@@ -0,0 +1,646 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * FeeLedger class records every fee charged to and paid by members.
+ *
+ * Amounts are whole cents in longs, never doubles. The ledger file is an append-only log of
+ * fixed-size entries: a charge (overdue fee, plan fee, opening balance) or a credit (payment,
+ * waiver), each stamped with the member's balance after it and a checksum. Entries are never
+ * changed; a mistake is corrected by a new entry. Per-member balances and the library-wide
+ * outstanding total are kept in memory and updated with every entry, so reading them is O(1).
+ * Plan fees are tracked apart from fines: credits settle a member's fines first, then plan fees.
+ * They are saved to an index file with the log length they cover; entries appended after the
+ * index was saved are replayed when the ledger is opened. reconcile() replays the whole log
+ * and checks it against those balances.
+ * Not thread-safe: used from the thread that owns the Library.
+ */
+public class FeeLedger {
+
+    private static final int ENTRY_BYTES = 40;
+    private static final long MAGIC = 0x4C4D534645455331L;    // "LMSFEES1"
+
+    /**
+     * Kind of ledger entry. Charges raise the member's balance, credits lower it.
+     */
+    public enum Type {
+        OVERDUE_FEE(true),          // Reference: ISBN key of the late book
+        PLAN_FEE(true),             // Reference: plan type ordinal
+        OPENING_BALANCE(true),      // Fees owed before the ledger existed
+        PAYMENT(false),
+        WAIVER(false);
+
+        private final boolean charge;
+
+        Type(boolean charge) {
+            this.charge = charge;
+        }
+
+        public boolean isCharge() {
+            return charge;
+        }
+    }
+
+    /**
+     * One entry as stored in the log
+     */
+    public static class Entry {
+        private final long number;
+        private final int memberId;
+        private final Type type;
+        private final LocalDate date;
+        private final long amountCents;
+        private final long reference;
+        private final long balanceAfterCents;
+
+        private Entry(long number, int memberId, Type type, LocalDate date, long amountCents, long reference,
+                      long balanceAfterCents) {
+            this.number = number;
+            this.memberId = memberId;
+            this.type = type;
+            this.date = date;
+            this.amountCents = amountCents;
+            this.reference = reference;
+            this.balanceAfterCents = balanceAfterCents;
+        }
+
+        /**
+         * Position in the log, 0 for the first entry written
+         */
+        public long getNumber() {
+            return number;
+        }
+
+        public int getMemberId() {
+            return memberId;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public LocalDate getDate() {
+            return date;
+        }
+
+        /**
+         * Always positive; the type tells whether it was charged or credited
+         */
+        public long getAmountCents() {
+            return amountCents;
+        }
+
+        public long getReference() {
+            return reference;
+        }
+
+        public long getBalanceAfterCents() {
+            return balanceAfterCents;
+        }
+
+        @Override
+        public String toString() {
+            return "#" + number + " " + date + " member " + memberId + " " + type + " "
+                    + (type.isCharge() ? "+" : "-") + formatCents(amountCents)
+                    + " -> " + formatCents(balanceAfterCents);
+        }
+    }
+
+    /**
+     * Running totals of one member
+     */
+    private static class Account {
+        private final int memberId;
+        private long balanceCents;
+        private long planFeeCents;          // Part of the balance owed for plans
+        private long chargedCents;
+        private long creditedCents;
+        private int entries;
+
+        private Account(int memberId) {
+            this.memberId = memberId;
+        }
+    }
+
+    /**
+     * Result of replaying the whole log against the running balances
+     */
+    public static class Reconciliation {
+        private long entries;
+        private long chargedCents;
+        private long creditedCents;
+        private long outstandingCents;              // Sum of the replayed member balances
+        private long recordedOutstandingCents;      // Library-wide running total
+        private final List<String> problems = new ArrayList<>();
+
+        public long getEntries() {
+            return entries;
+        }
+
+        public long getChargedCents() {
+            return chargedCents;
+        }
+
+        public long getCreditedCents() {
+            return creditedCents;
+        }
+
+        public long getOutstandingCents() {
+            return outstandingCents;
+        }
+
+        public List<String> getProblems() {
+            return Collections.unmodifiableList(problems);
+        }
+
+        /**
+         * True when every checksum and stored balance matched and charges minus credits
+         * equal the outstanding total
+         */
+        public boolean isBalanced() {
+            return problems.isEmpty() && chargedCents - creditedCents == outstandingCents
+                    && outstandingCents == recordedOutstandingCents;
+        }
+
+        @Override
+        public String toString() {
+            return "Reconciliation{entries=" + entries + ", charged=" + formatCents(chargedCents)
+                    + ", credited=" + formatCents(creditedCents) + ", outstanding=" + formatCents(outstandingCents)
+                    + ", " + (isBalanced() ? "balanced" : problems.size() + " problem(s)") + "}";
+        }
+    }
+
+    // Attributes
+    private final String logFile;
+    private final String indexFile;
+    private final IntObjectMap<Account> accounts;
+    private long outstandingCents;
+    private long chargedCents;
+    private long creditedCents;
+    private RandomAccessFile log;
+
+    // Constructors
+
+    public FeeLedger(String logFile, String indexFile) {
+        this.logFile = logFile;
+        this.indexFile = indexFile;
+        this.accounts = new IntObjectMap<>();
+    }
+
+    // ==================== OPEN / CLOSE ====================
+
+    /**
+     * Open the log on first use: load the saved balances and replay entries appended after them
+     */
+    private RandomAccessFile log() {
+        if (log != null) {
+            return log;
+        }
+        try {
+            log = new RandomAccessFile(logFile, "rw");
+            if (log.length() == 0) {
+                log.writeLong(MAGIC);
+                log.write(new byte[ENTRY_BYTES - Long.BYTES]);
+            } else if (log.readLong() != MAGIC) {
+                throw new IOException("Not a fee ledger: " + logFile);
+            }
+            long end = log.length() - (log.length() - ENTRY_BYTES) % ENTRY_BYTES;  // Drop a torn entry
+            log.setLength(end);
+            long indexed = loadIndex();
+            if (indexed > end) {
+                clearBalances();        // Index belongs to a different log: rebuild from this one
+                indexed = ENTRY_BYTES;
+            }
+            long first = (Math.max(indexed, ENTRY_BYTES) - ENTRY_BYTES) / ENTRY_BYTES;
+            scan(first, entry -> apply(entry.memberId, entry.type, entry.amountCents));
+            return log;
+        } catch (IOException e) {
+            log = null;
+            throw new UncheckedIOException("Cannot open fee ledger: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the log length the saved balances cover
+     */
+    private long loadIndex() throws IOException {
+        clearBalances();
+        File file = new File(indexFile);
+        if (!file.exists()) {
+            return ENTRY_BYTES;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            long covered = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Account account = new Account(in.readInt());
+                account.balanceCents = in.readLong();
+                account.planFeeCents = in.readLong();
+                account.chargedCents = in.readLong();
+                account.creditedCents = in.readLong();
+                account.entries = in.readInt();
+                accounts.put(account.memberId, account);
+                outstandingCents += account.balanceCents;
+                chargedCents += account.chargedCents;
+                creditedCents += account.creditedCents;
+            }
+            return covered;
+        } catch (EOFException e) {
+            clearBalances();    // Torn index: rebuild from the whole log
+            return ENTRY_BYTES;
+        }
+    }
+
+    private void clearBalances() {
+        accounts.clear();
+        outstandingCents = 0;
+        chargedCents = 0;
+        creditedCents = 0;
+    }
+
+    /**
+     * The balances as they would be saved, for writing together with a library snapshot
+     */
+    public byte[] snapshotIndex() {
+        try {
+            long covered = log().length();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(12 + accounts.size() * 40);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeLong(covered);
+            out.writeInt(accounts.size());
+            for (Account account : accounts.values()) {
+                out.writeInt(account.memberId);
+                out.writeLong(account.balanceCents);
+                out.writeLong(account.planFeeCents);
+                out.writeLong(account.chargedCents);
+                out.writeLong(account.creditedCents);
+                out.writeInt(account.entries);
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Save the balances so the next open replays nothing
+     */
+    public void saveIndex() throws IOException {
+        byte[] index = snapshotIndex();
+        Path temp = Paths.get(indexFile + ".tmp");
+        Files.write(temp, index);
+        Files.move(temp, Paths.get(indexFile), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public void close() {
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                System.err.println("Error closing fee ledger: " + e.getMessage());
+            }
+            log = null;
+        }
+    }
+
+    // ==================== TRANSACTIONS ====================
+
+    /**
+     * Charge a member
+     * @param reference what the charge is for (see Type), 0 if nothing
+     */
+    public Entry charge(int memberId, Type type, long amountCents, long reference) {
+        if (!type.isCharge()) {
+            throw new IllegalArgumentException(type + " is not a charge");
+        }
+        if (amountCents <= 0) {
+            throw new IllegalArgumentException("Charge must be positive");
+        }
+        return append(memberId, type, amountCents, reference);
+    }
+
+    /**
+     * Take a payment. Only the amount owed is accepted; the rest is change for the member.
+     * @return the accepted amount in cents, 0 if nothing was owed
+     */
+    public long pay(int memberId, long amountCents) {
+        return credit(memberId, Type.PAYMENT, amountCents);
+    }
+
+    /**
+     * Waive up to the given amount of what the member owes
+     * @return the waived amount in cents
+     */
+    public long waive(int memberId, long amountCents) {
+        return credit(memberId, Type.WAIVER, amountCents);
+    }
+
+    private long credit(int memberId, Type type, long amountCents) {
+        if (amountCents <= 0) {
+            throw new IllegalArgumentException("Amount must be positive");
+        }
+        long accepted = Math.min(amountCents, getBalanceCents(memberId));
+        if (accepted > 0) {
+            append(memberId, type, accepted, 0);
+        }
+        return accepted;
+    }
+
+    private Entry append(int memberId, Type type, long amountCents, long reference) {
+        RandomAccessFile file = log();
+        Account account = accounts.get(memberId);
+        long balance = (account != null ? account.balanceCents : 0) + (type.isCharge() ? amountCents : -amountCents);
+        LocalDate today = LibraryClock.get().today();
+        ByteBuffer entry = encode(memberId, type, (int) today.toEpochDay(), amountCents, reference, balance);
+        long number;
+        try {
+            long offset = file.length();
+            number = (offset - ENTRY_BYTES) / ENTRY_BYTES;
+            file.seek(offset);
+            file.write(entry.array());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write fee ledger: " + e.getMessage(), e);
+        }
+        apply(memberId, type, amountCents);
+        return new Entry(number, memberId, type, today, amountCents, reference, balance);
+    }
+
+    /**
+     * Move the running balances by one entry
+     */
+    private void apply(int memberId, Type type, long amountCents) {
+        Account account = accounts.get(memberId);
+        if (account == null) {
+            account = new Account(memberId);
+            accounts.put(memberId, account);
+        }
+        account.entries++;
+        if (type == Type.PLAN_FEE) {
+            account.planFeeCents += amountCents;
+        } else if (!type.isCharge()) {
+            long fineCents = Math.max(0, account.balanceCents - account.planFeeCents);
+            account.planFeeCents = Math.max(0, account.planFeeCents - Math.max(0, amountCents - fineCents));
+        }
+        if (type.isCharge()) {
+            account.balanceCents += amountCents;
+            account.chargedCents += amountCents;
+            outstandingCents += amountCents;
+            chargedCents += amountCents;
+        } else {
+            account.balanceCents -= amountCents;
+            account.creditedCents += amountCents;
+            outstandingCents -= amountCents;
+            creditedCents += amountCents;
+        }
+    }
+
+    // ==================== BALANCES ====================
+
+    /**
+     * What the member owes, in cents
+     */
+    public long getBalanceCents(int memberId) {
+        log();
+        Account account = accounts.get(memberId);
+        return account != null ? account.balanceCents : 0;
+    }
+
+    /**
+     * The part of the member's balance owed for plans, in cents
+     */
+    public long getPlanFeeBalanceCents(int memberId) {
+        log();
+        Account account = accounts.get(memberId);
+        return account != null ? account.planFeeCents : 0;
+    }
+
+    /**
+     * What all members owe together, in cents
+     */
+    public long getOutstandingCents() {
+        log();
+        return outstandingCents;
+    }
+
+    public long getTotalChargedCents() {
+        log();
+        return chargedCents;
+    }
+
+    public long getTotalCreditedCents() {
+        log();
+        return creditedCents;
+    }
+
+    /**
+     * Check if the member has any entries, e.g. to migrate an older balance only once
+     */
+    public boolean hasAccount(int memberId) {
+        log();
+        return accounts.containsKey(memberId);
+    }
+
+    // ==================== READING ====================
+
+    /**
+     * A member's entries, oldest first (a sequential scan of the log)
+     */
+    public List<Entry> getEntries(int memberId) {
+        log();
+        Account account = accounts.get(memberId);
+        List<Entry> entries = new ArrayList<>(account != null ? account.entries : 0);
+        if (account != null) {
+            forEach(entry -> {
+                if (entry.memberId == memberId) {
+                    entries.add(entry);
+                }
+            });
+        }
+        return entries;
+    }
+
+    /**
+     * Read every entry in the order written
+     */
+    public void forEach(Consumer<Entry> action) {
+        log();
+        try {
+            scan(0, action);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read fee ledger: " + e.getMessage(), e);
+        }
+    }
+
+    public long getEntryCount() {
+        try {
+            return (log().length() - ENTRY_BYTES) / ENTRY_BYTES;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Read the entries from the given one to the end of the log; entries that fail their
+     * checksum are passed as null
+     */
+    private void scanRaw(long first, Consumer<ByteBuffer> action) throws IOException {
+        long end = log.length();
+        long start = ENTRY_BYTES + first * ENTRY_BYTES;
+        if (start >= end) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile), 64 * 1024))) {
+            in.skipNBytes(start);
+            byte[] buffer = new byte[ENTRY_BYTES];
+            for (long offset = start; offset < end; offset += ENTRY_BYTES) {
+                in.readFully(buffer);
+                action.accept(ByteBuffer.wrap(buffer));
+            }
+        }
+    }
+
+    private void scan(long first, Consumer<Entry> action) throws IOException {
+        long[] number = {first};
+        scanRaw(first, buffer -> {
+            Entry entry = decode(number[0]++, buffer);
+            if (entry != null) {
+                action.accept(entry);
+            } else {
+                System.err.println("Fee ledger entry " + (number[0] - 1) + " failed its checksum and was skipped.");
+            }
+        });
+    }
+
+    // ==================== RECONCILIATION ====================
+
+    /**
+     * Replay the whole log from zero: check every checksum and stored balance, and compare
+     * the replayed balances with the running ones
+     */
+    public Reconciliation reconcile() {
+        log();
+        Reconciliation result = new Reconciliation();
+        IntObjectMap<long[]> replayed = new IntObjectMap<>();
+        long[] number = {0};
+        try {
+            scanRaw(0, buffer -> {
+                long entryNumber = number[0]++;
+                Entry entry = decode(entryNumber, buffer);
+                result.entries++;
+                if (entry == null) {
+                    result.problems.add("Entry " + entryNumber + " fails its checksum");
+                    return;
+                }
+                long[] balance = replayed.get(entry.memberId);
+                if (balance == null) {
+                    balance = new long[1];
+                    replayed.put(entry.memberId, balance);
+                }
+                if (entry.type.isCharge()) {
+                    balance[0] += entry.amountCents;
+                    result.chargedCents += entry.amountCents;
+                } else {
+                    balance[0] -= entry.amountCents;
+                    result.creditedCents += entry.amountCents;
+                }
+                if (balance[0] != entry.balanceAfterCents) {
+                    result.problems.add("Entry " + entryNumber + " records balance " + formatCents(entry.balanceAfterCents)
+                            + " for member " + entry.memberId + ", replay gives " + formatCents(balance[0]));
+                }
+                if (balance[0] < 0) {
+                    result.problems.add("Member " + entry.memberId + " goes below zero at entry " + entryNumber);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read fee ledger: " + e.getMessage(), e);
+        }
+        for (Account account : accounts.values()) {
+            long[] balance = replayed.get(account.memberId);
+            long expected = balance != null ? balance[0] : 0;
+            if (expected != account.balanceCents) {
+                result.problems.add("Member " + account.memberId + " balance is " + formatCents(account.balanceCents)
+                        + ", replay gives " + formatCents(expected));
+            }
+        }
+        for (long[] balance : replayed.values()) {
+            result.outstandingCents += balance[0];
+        }
+        result.recordedOutstandingCents = outstandingCents;
+        if (replayed.size() != accounts.size()) {
+            result.problems.add(replayed.size() + " members in the log, " + accounts.size() + " in the balances");
+        }
+        return result;
+    }
+
+    // ==================== ENCODING ====================
+
+    private static ByteBuffer encode(int memberId, Type type, int epochDay, long amountCents, long reference,
+                                     long balanceAfterCents) {
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_BYTES);
+        entry.putInt(0, memberId)
+             .putInt(4, type.ordinal())
+             .putInt(8, epochDay)
+             .putLong(16, amountCents)
+             .putLong(24, reference)
+             .putLong(32, balanceAfterCents);
+        entry.putInt(12, checksum(entry));
+        return entry;
+    }
+
+    /**
+     * @return the entry, or null if its checksum does not match
+     */
+    private static Entry decode(long number, ByteBuffer entry) {
+        int type = entry.getInt(4);
+        if (entry.getInt(12) != checksum(entry) || type < 0 || type >= Type.values().length) {
+            return null;
+        }
+        return new Entry(number, entry.getInt(0), Type.values()[type], LocalDate.ofEpochDay(entry.getInt(8)),
+                entry.getLong(16), entry.getLong(24), entry.getLong(32));
+    }
+
+    /**
+     * CRC-32 of every field except the checksum itself (bytes 12-15)
+     */
+    private static int checksum(ByteBuffer entry) {
+        CRC32 crc = new CRC32();
+        crc.update(entry.array(), 0, 12);
+        crc.update(entry.array(), 16, ENTRY_BYTES - 16);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Format cents as dollars, e.g. 1234 -> "$12.34"
+     */
+    public static String formatCents(long cents) {
+        String sign = cents < 0 ? "-" : "";
+        long absolute = Math.abs(cents);
+        return sign + "$" + (absolute / 100) + "." + String.format("%02d", absolute % 100);
+    }
+
+    @Override
+    public String toString() {
+        return "FeeLedger{entries=" + getEntryCount() + ", members=" + accounts.size()
+                + ", outstanding=" + formatCents(getOutstandingCents()) + "}";
+    }
+}
@@ -263,47 +263,42 @@ public class FileManager {
     }
     
     /**
-     * Export library data to a text report
+     * Export library data to a text report, gzipped if the file name ends in .gz.
+     * Streams the entities without copying them; see ReportGenerator.
      */
     public static void exportLibraryReport(Library library, String filename) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(filename))) {
-            writer.println("===========================================");
-            writer.println("       LIBRARY MANAGEMENT SYSTEM REPORT    ");
-            writer.println("===========================================");
-            writer.println("Library: " + library.getLibraryName());
-            writer.println("Generated: " + java.time.LocalDateTime.now());
-            writer.println();
-            
-            writer.println("--- INVENTORY SUMMARY ---");
-            writer.println("Total Books: " + library.getTotalBooks());
-            writer.println("Total Members: " + library.getTotalMembers());
-            writer.println("Active Loans: " + library.getActiveLoansCount());
-            writer.println();
-            
-            writer.println("--- ALL BOOKS ---");
-            for (Book book : library.getAllBooks()) {
-                writer.println(book);
-            }
-            writer.println();
-            
-            writer.println("--- ALL MEMBERS ---");
-            for (Member member : library.getAllMembers()) {
-                writer.println(member);
-            }
-            writer.println();
-            
-            writer.println("--- ACTIVE LOANS ---");
-            for (Loan loan : library.getAllActiveLoans()) {
-                writer.println(loan);
-            }
-            
-            writer.println("\n===========================================");
-            writer.println("              END OF REPORT                ");
-            writer.println("===========================================");
-            
-            System.out.println("Report exported to: " + filename);
+        exportLibraryReport(library, filename, null);
+    }
+    
+    /**
+     * Export library data to a text report, telling the listener how far it has got
+     */
+    public static void exportLibraryReport(Library library, String filename,
+                                           ReportGenerator.ProgressListener progressListener) {
+        ReportGenerator generator = new ReportGenerator(library);
+        generator.setProgressListener(progressListener);
+        try {
+            long rows = generator.generate(filename);
+            System.out.println("Report exported to: " + filename + " (" + rows + " rows)");
         } catch (IOException e) {
             System.err.println("Error exporting report: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+    
+    /**
+     * Export library data as typed, compressed column tables for analytics (see ColumnarExporter).
+     * With changesOnly, writes just the loans issued or returned since the previous export.
+     */
+    public static void exportForAnalytics(Library library, String directory, boolean changesOnly) {
+        ColumnarExporter exporter = new ColumnarExporter(library, directory);
+        try {
+            if (changesOnly) {
+                exporter.exportChanges();
+            } else {
+                exporter.exportAll();
+            }
+        } catch (IOException e) {
+            System.err.println("Error exporting analytics data: " + e.getMessage());
+        }
+    }
+}
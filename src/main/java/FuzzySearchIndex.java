@@ -0,0 +1,491 @@
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * FuzzySearchIndex class finds books by the words of their title and author, tolerating typos.
+ *
+ * Every distinct word of the catalog is indexed once by its trigrams. A query word is compared
+ * only with the few words sharing enough trigrams with it (an edit changes at most three), and
+ * those are checked with a bounded edit distance that counts a swap of two neighbouring letters
+ * as one edit. The last query word also matches as a prefix, for search-as-you-type.
+ * Books must match every query word; they are ranked by how closely they match.
+ *
+ * The work per query is capped: at most MAX_WORD_CANDIDATES words are verified per query word
+ * and at most MAX_BOOK_CANDIDATES books are scored, starting from the rarest query word, and
+ * scoring stops when the time budget runs out. Safe for concurrent use.
+ */
+public class FuzzySearchIndex {
+
+    public static final int DEFAULT_LIMIT = 50;
+    public static final long DEFAULT_BUDGET_MILLIS = 25;
+    private static final int MAX_WORD_CANDIDATES = 200;
+    private static final int MAX_PREFIX_MATCHES = 50;
+    private static final int MAX_BOOK_CANDIDATES = 20_000;
+    private static final int MAX_QUERY_WORDS = 8;
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final char PAD = '\u0001';
+
+    /**
+     * A book found by a search and how well it matched
+     */
+    public static class Match {
+        private final Book book;
+        private final double score;
+
+        private Match(Book book, double score) {
+            this.book = book;
+            this.score = score;
+        }
+
+        public Book getBook() {
+            return book;
+        }
+
+        /**
+         * Higher is better; an exact match of every query word scores the number of words
+         */
+        public double getScore() {
+            return score;
+        }
+
+        @Override
+        public String toString() {
+            return book.getTitle() + " (" + String.format("%.2f", score) + ")";
+        }
+    }
+
+    /**
+     * A growable list of ints or longs
+     */
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        private void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    private static final class LongList {
+        private long[] values = new long[4];
+        private int size;
+
+        private void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        private void remove(long value) {
+            for (int i = 0; i < size; i++) {
+                if (values[i] == value) {
+                    values[i] = values[--size];
+                    return;
+                }
+            }
+        }
+    }
+
+    // Attributes
+    private final Map<String, Integer> wordIds;            // Distinct word -> word ID
+    private final NavigableMap<String, Integer> sortedWords; // Same words, for prefix matching
+    private final List<String> words;                      // Word ID -> word
+    private final List<LongList> postings;                 // Word ID -> ISBN keys of the books using it
+    private final LongObjectMap<IntList> wordsByTrigram;   // Packed trigram -> word IDs
+    private final LongObjectMap<int[]> bookWords;          // ISBN key -> word IDs of the indexed book
+    private final LongObjectMap<Book> books;               // ISBN key -> indexed book
+    private final long budgetNanos;
+    private int[] sharedTrigrams = new int[0];             // Scratch, indexed by word ID
+
+    // Constructors
+
+    public FuzzySearchIndex(long budgetMillis) {
+        if (budgetMillis <= 0) {
+            throw new IllegalArgumentException("Time budget must be positive");
+        }
+        this.wordIds = new HashMap<>();
+        this.sortedWords = new TreeMap<>();
+        this.words = new ArrayList<>();
+        this.postings = new ArrayList<>();
+        this.wordsByTrigram = new LongObjectMap<>();
+        this.bookWords = new LongObjectMap<>();
+        this.books = new LongObjectMap<>();
+        this.budgetNanos = budgetMillis * 1_000_000;
+    }
+
+    public FuzzySearchIndex() {
+        this(DEFAULT_BUDGET_MILLIS);
+    }
+
+    // ==================== INDEX MAINTENANCE ====================
+
+    /**
+     * Index a book by the words of its title and author, replacing any earlier entry for its ISBN
+     */
+    public synchronized void add(Book book) {
+        remove(book.getIsbnKey());
+        List<String> tokens = tokenize(book.getTitle() + " " + book.getAuthor());
+        int[] ids = new int[tokens.size()];
+        int count = 0;
+        for (String token : tokens) {
+            int id = wordId(token);
+            boolean seen = false;
+            for (int i = 0; i < count; i++) {
+                seen |= ids[i] == id;
+            }
+            if (!seen) {
+                ids[count++] = id;
+                postings.get(id).add(book.getIsbnKey());
+            }
+        }
+        bookWords.put(book.getIsbnKey(), Arrays.copyOf(ids, count));
+        books.put(book.getIsbnKey(), book);
+    }
+
+    /**
+     * Drop a book from the index. Its words stay in the vocabulary.
+     */
+    public synchronized void remove(long isbnKey) {
+        int[] ids = bookWords.remove(isbnKey);
+        if (ids != null) {
+            for (int id : ids) {
+                postings.get(id).remove(isbnKey);
+            }
+            books.remove(isbnKey);
+        }
+    }
+
+    public synchronized void clear() {
+        wordIds.clear();
+        sortedWords.clear();
+        words.clear();
+        postings.clear();
+        wordsByTrigram.clear();
+        bookWords.clear();
+        books.clear();
+        sharedTrigrams = new int[0];
+    }
+
+    private int wordId(String word) {
+        Integer id = wordIds.get(word);
+        if (id != null) {
+            return id;
+        }
+        int newId = words.size();
+        wordIds.put(word, newId);
+        sortedWords.put(word, newId);
+        words.add(word);
+        postings.add(new LongList());
+        for (long trigram : trigrams(word)) {
+            IntList list = wordsByTrigram.get(trigram);
+            if (list == null) {
+                list = new IntList();
+                wordsByTrigram.put(trigram, list);
+            }
+            list.add(newId);
+        }
+        return newId;
+    }
+
+    // ==================== SEARCH ====================
+
+    /**
+     * Books matching every word of the query, best first, at most limit of them
+     */
+    public synchronized List<Match> search(String query, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit cannot be negative");
+        }
+        long deadline = System.nanoTime() + budgetNanos;
+        List<String> queryWords = tokenize(query);
+        if (queryWords.isEmpty() || limit == 0) {
+            return new ArrayList<>();
+        }
+        if (queryWords.size() > MAX_QUERY_WORDS) {
+            queryWords = queryWords.subList(0, MAX_QUERY_WORDS);
+        }
+
+        // 1. Words of the catalog close to each query word, with a quality from 0 to 1
+        List<Map<Integer, Double>> matches = new ArrayList<>();
+        int driver = -1;
+        long driverBooks = Long.MAX_VALUE;
+        for (int q = 0; q < queryWords.size(); q++) {
+            Map<Integer, Double> close = closeWords(queryWords.get(q), q == queryWords.size() - 1);
+            if (close.isEmpty()) {
+                return new ArrayList<>();
+            }
+            long bookCount = 0;
+            for (int id : close.keySet()) {
+                bookCount += postings.get(id).size;
+            }
+            if (bookCount < driverBooks) {
+                driverBooks = bookCount;
+                driver = q;
+            }
+            matches.add(close);
+        }
+
+        // 2. Score the books of the rarest query word against the others
+        LongObjectMap<Match> scored = new LongObjectMap<>();
+        int examined = 0;
+        candidates:
+        for (Map.Entry<Integer, Double> entry : matches.get(driver).entrySet()) {
+            LongList posting = postings.get(entry.getKey());
+            for (int i = 0; i < posting.size; i++) {
+                long isbnKey = posting.values[i];
+                if (scored.containsKey(isbnKey)) {
+                    continue;       // Reached again through another close word
+                }
+                if (++examined > MAX_BOOK_CANDIDATES || ((examined & 255) == 0 && System.nanoTime() > deadline)) {
+                    break candidates;
+                }
+                double score = scoreBook(isbnKey, matches);
+                if (score > 0) {
+                    scored.put(isbnKey, new Match(books.get(isbnKey), score));
+                }
+            }
+        }
+
+        List<Match> results = new ArrayList<>(scored.values());
+        results.sort((a, b) -> a.score != b.score ? Double.compare(b.score, a.score)
+                : String.CASE_INSENSITIVE_ORDER.compare(a.book.getTitle(), b.book.getTitle()));
+        return results.size() > limit ? new ArrayList<>(results.subList(0, limit)) : results;
+    }
+
+    /**
+     * Sum over the query words of the best quality among the book's words, 0 if one is missing
+     */
+    private double scoreBook(long isbnKey, List<Map<Integer, Double>> matches) {
+        int[] ids = bookWords.get(isbnKey);
+        double total = 0;
+        for (Map<Integer, Double> close : matches) {
+            double best = 0;
+            for (int id : ids) {
+                Double quality = close.get(id);
+                if (quality != null && quality > best) {
+                    best = quality;
+                }
+            }
+            if (best == 0) {
+                return 0;
+            }
+            total += best;
+        }
+        return total;
+    }
+
+    /**
+     * Catalog words within the allowed edit distance of a query word, or starting with it
+     */
+    private Map<Integer, Double> closeWords(String word, boolean allowPrefix) {
+        Map<Integer, Double> close = new HashMap<>();
+        Integer exact = wordIds.get(word);
+        if (exact != null) {
+            close.put(exact, 1.0);
+        }
+        if (allowPrefix) {
+            int added = 0;
+            for (Map.Entry<String, Integer> entry : sortedWords.subMap(word, false, word + Character.MAX_VALUE, false)
+                    .entrySet()) {
+                if (added++ == MAX_PREFIX_MATCHES) {
+                    break;
+                }
+                // Longer completions of the same prefix rank a little lower
+                close.putIfAbsent(entry.getValue(), 0.9 - 0.2 * (1.0 - (double) word.length() / entry.getKey().length()));
+            }
+        }
+        int maxEdits = maxEdits(word.length());
+        if (maxEdits == 0) {
+            return close;
+        }
+
+        // Count trigrams shared with each catalog word, then verify the best candidates
+        if (sharedTrigrams.length < words.size()) {
+            sharedTrigrams = new int[Math.max(words.size(), sharedTrigrams.length * 2)];
+        }
+        long[] grams = trigrams(word);
+        IntList touched = new IntList();
+        for (long gram : grams) {
+            IntList ids = wordsByTrigram.get(gram);
+            if (ids == null) {
+                continue;
+            }
+            for (int i = 0; i < ids.size; i++) {
+                int id = ids.values[i];
+                if (sharedTrigrams[id]++ == 0) {
+                    touched.add(id);
+                }
+            }
+        }
+        // Each edit breaks at most three trigrams; short words keep at least one in common
+        int needed = Math.max(1, grams.length - 3 * maxEdits);
+        long[] candidates = new long[touched.size];
+        int count = 0;
+        for (int i = 0; i < touched.size; i++) {
+            int id = touched.values[i];
+            if (sharedTrigrams[id] >= needed && Math.abs(words.get(id).length() - word.length()) <= maxEdits) {
+                candidates[count++] = ((long) sharedTrigrams[id] << 32) | id;
+            }
+            sharedTrigrams[id] = 0;
+        }
+        if (count > MAX_WORD_CANDIDATES) {
+            Arrays.sort(candidates, 0, count);
+            candidates = Arrays.copyOfRange(candidates, count - MAX_WORD_CANDIDATES, count);
+            count = MAX_WORD_CANDIDATES;
+        }
+        for (int i = 0; i < count; i++) {
+            int id = (int) candidates[i];
+            int distance = editDistance(word, words.get(id), maxEdits);
+            if (distance <= maxEdits) {
+                double quality = 0.8 - 0.6 * distance / (maxEdits + 1.0);
+                close.merge(id, quality, Math::max);
+            }
+        }
+        return close;
+    }
+
+    /**
+     * Typos allowed in a query word: none up to 2 letters, one up to 5, two beyond
+     */
+    static int maxEdits(int length) {
+        return length <= 2 ? 0 : length <= 5 ? 1 : 2;
+    }
+
+    // ==================== TEXT ====================
+
+    /**
+     * Lowercase words of a text with accents removed, so "García" matches "garcia"
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        String plain = MARKS.matcher(Normalizer.normalize(StringPool.fold(text), Normalizer.Form.NFD)).replaceAll("");
+        for (String token : NON_WORD.split(plain)) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Trigrams of a word padded at both ends, each packed into a long
+     */
+    private static long[] trigrams(String word) {
+        String padded = PAD + word + PAD;
+        long[] grams = new long[padded.length() - 2];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = ((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2);
+        }
+        return grams;
+    }
+
+    /**
+     * Edit distance with adjacent transpositions (optimal string alignment), or max + 1 as soon
+     * as it is certain to exceed max. Only a band of width 2 * max + 1 is computed.
+     */
+    static int editDistance(String a, String b, int max) {
+        int n = a.length();
+        int m = b.length();
+        if (Math.abs(n - m) > max) {
+            return max + 1;
+        }
+        int over = max + 1;
+        int[] before = new int[m + 1];
+        int[] previous = new int[m + 1];
+        int[] current = new int[m + 1];
+        for (int j = 0; j <= m; j++) {
+            previous[j] = j <= max ? j : over;
+        }
+        for (int i = 1; i <= n; i++) {
+            int from = Math.max(1, i - max);
+            int to = Math.min(m, i + max);
+            current[0] = i <= max ? i : over;
+            if (from > 1) {
+                current[from - 1] = over;
+            }
+            int rowMin = current[0];
+            for (int j = from; j <= to; j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(previous[j - 1] + cost, Math.min(previous[j] + 1, current[j - 1] + 1));
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    value = Math.min(value, before[j - 2] + 1);
+                }
+                current[j] = Math.min(value, over);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (to < m) {
+                current[to + 1] = over;
+            }
+            if (rowMin > max) {
+                return over;
+            }
+            int[] recycled = before;
+            before = previous;
+            previous = current;
+            current = recycled;
+        }
+        return Math.min(previous[m], over);
+    }
+
+    // ==================== EXACT WORDS ====================
+
+    /**
+     * Number of book entries under the words starting with the prefix (a book with two such
+     * words counts twice), or -1 if more than maxWords words start with it
+     */
+    public synchronized long countBooksWithWordPrefix(String prefix, int maxWords) {
+        long count = 0;
+        int seen = 0;
+        for (int id : sortedWords.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+            if (++seen > maxWords) {
+                return -1;
+            }
+            count += postings.get(id).size;
+        }
+        return count;
+    }
+
+    /**
+     * ISBN keys of the books with a word starting with the prefix, possibly repeated
+     */
+    public synchronized long[] booksWithWordPrefix(String prefix) {
+        LongList keys = new LongList();
+        for (int id : sortedWords.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+            LongList posting = postings.get(id);
+            for (int i = 0; i < posting.size; i++) {
+                keys.add(posting.values[i]);
+            }
+        }
+        return Arrays.copyOf(keys.values, keys.size);
+    }
+
+    // ==================== STATISTICS ====================
+
+    public synchronized int getBookCount() {
+        return bookWords.size();
+    }
+
+    public synchronized int getWordCount() {
+        return words.size();
+    }
+
+    @Override
+    public String toString() {
+        return "FuzzySearchIndex{books=" + getBookCount() + ", words=" + getWordCount() + "}";
+    }
+}
@@ -0,0 +1,223 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Isbn class is the normalized form of a book's ISBN.
+ * Accepts ISBN-10 and ISBN-13 (hyphens and spaces allowed), verifies the check digit,
+ * and maps both forms of the same book to one 64-bit key: the 13 digits of its ISBN-13.
+ * Indexes keyed by that long never hash or compare strings.
+ * A stored ISBN that fails validation (older versions accepted any) gets a negative
+ * stand-in key from legacyKey(), so the book stays loadable and can still be found.
+ */
+public final class Isbn implements Comparable<Isbn> {
+
+    private static final Map<Long, String> LEGACY = new ConcurrentHashMap<>();   // Stand-in key -> stored ISBN
+
+    // Attributes
+    private final long key;
+
+    // Constructors
+
+    private Isbn(long key) {
+        this.key = key;
+    }
+
+    /**
+     * Parse and validate an ISBN-10 or ISBN-13
+     * @throws IllegalArgumentException if the ISBN is malformed or its check digit is wrong
+     */
+    public static Isbn parse(String isbn) {
+        return new Isbn(toKey(isbn));
+    }
+
+    /**
+     * Rebuild an ISBN from a key produced by toKey()
+     */
+    public static Isbn ofKey(long key) {
+        if (key < 0 && LEGACY.containsKey(key)) {
+            return new Isbn(key);
+        }
+        if (key < 978_000_000_000_0L || key > 979_999_999_999_9L) {
+            throw new IllegalArgumentException("Not an ISBN key: " + key);
+        }
+        return new Isbn(key);
+    }
+
+    // ==================== CONVERSION ====================
+
+    /**
+     * Convert an ISBN-10 or ISBN-13 to its 64-bit key
+     * @throws IllegalArgumentException if the ISBN is malformed or its check digit is wrong
+     */
+    public static long toKey(String isbn) {
+        if (isbn == null || isbn.trim().isEmpty()) {
+            throw new IllegalArgumentException("ISBN cannot be empty");
+        }
+        // Collect the digits, skipping separators; 'X' is only allowed as an ISBN-10 check digit
+        long digits = 0;
+        int count = 0;
+        int weighted10 = 0;
+        boolean endsWithX = false;
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (c == '-' || c == ' ') {
+                continue;
+            }
+            if (endsWithX) {
+                throw new IllegalArgumentException("Invalid ISBN: " + isbn);
+            }
+            int value;
+            if (c >= '0' && c <= '9') {
+                value = c - '0';
+            } else if ((c == 'X' || c == 'x') && count == 9) {
+                value = 10;
+                endsWithX = true;
+            } else {
+                throw new IllegalArgumentException("Invalid ISBN: " + isbn);
+            }
+            if (++count > 13) {
+                throw new IllegalArgumentException("Invalid ISBN: " + isbn);
+            }
+            weighted10 += value * (11 - count);
+            digits = digits * 10 + value;
+        }
+
+        if (count == 10) {
+            if (weighted10 % 11 != 0) {
+                throw new IllegalArgumentException("Invalid ISBN-10 check digit: " + isbn);
+            }
+            // Re-prefix with 978 and recompute the ISBN-13 check digit
+            long body = 978_000_000_000L + (endsWithX ? (digits - 10) / 10 : digits / 10);
+            return body * 10 + checkDigit13(body);
+        }
+        if (count == 13) {
+            long body = digits / 10;
+            if (body / 1_000_000_000L != 978 && body / 1_000_000_000L != 979) {
+                throw new IllegalArgumentException("ISBN-13 must start with 978 or 979: " + isbn);
+            }
+            if (checkDigit13(body) != digits % 10) {
+                throw new IllegalArgumentException("Invalid ISBN-13 check digit: " + isbn);
+            }
+            return digits;
+        }
+        throw new IllegalArgumentException("ISBN must have 10 or 13 digits: " + isbn);
+    }
+
+    /**
+     * Stand-in key for an ISBN that was stored without validation and fails it now.
+     * Negative, so it never equals the key of a valid ISBN; the stored string is
+     * remembered so ofKey() and lookupKey() still work for it.
+     */
+    public static long legacyKey(String isbn) {
+        long key = legacyHash(isbn);
+        String previous = LEGACY.putIfAbsent(key, isbn);
+        if (previous != null && !previous.equals(isbn)) {
+            throw new IllegalArgumentException("ISBNs '" + previous + "' and '" + isbn + "' have the same stand-in key");
+        }
+        return key;
+    }
+
+    /**
+     * Key of an ISBN, or the stand-in key of an invalid one a loaded book still uses
+     * @throws IllegalArgumentException if the ISBN is not valid and no book uses it
+     */
+    public static long lookupKey(String isbn) {
+        try {
+            return toKey(isbn);
+        } catch (IllegalArgumentException e) {
+            long key = isbn != null ? legacyHash(isbn) : 0;
+            if (isbn != null && isbn.equals(LEGACY.get(key))) {
+                return key;
+            }
+            throw e;
+        }
+    }
+
+    private static long legacyHash(String isbn) {
+        long hash = 1125899906842597L;
+        for (int i = 0; i < isbn.length(); i++) {
+            hash = 31 * hash + isbn.charAt(i);
+        }
+        return hash | Long.MIN_VALUE;
+    }
+
+    /**
+     * Check if a string is a valid ISBN-10 or ISBN-13
+     */
+    public static boolean isValid(String isbn) {
+        try {
+            toKey(isbn);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Complete the first 12 digits of an ISBN-13 with its check digit
+     * @return the key of the complete ISBN
+     */
+    public static long withCheckDigit(long first12Digits) {
+        return ofKey(first12Digits * 10 + checkDigit13(first12Digits)).getKey();
+    }
+
+    /**
+     * ISBN-13 check digit for the first 12 digits
+     */
+    private static int checkDigit13(long body) {
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            int digit = (int) (body % 10);
+            // Rightmost of the 12 digits has weight 3, alternating leftwards
+            sum += (i % 2 == 0) ? digit * 3 : digit;
+            body /= 10;
+        }
+        return (10 - sum % 10) % 10;
+    }
+
+    // ==================== GETTERS ====================
+
+    public long getKey() {
+        return key;
+    }
+
+    /**
+     * The 13 digits without separators (the stored string for a stand-in key)
+     */
+    public String toIsbn13() {
+        return key < 0 ? LEGACY.get(key) : Long.toString(key);
+    }
+
+    /**
+     * ISBN-13 in the 978-XXXXXXXXXX form used by the library (the stored string for a stand-in key)
+     */
+    public String toDisplayString() {
+        if (key < 0) {
+            return LEGACY.get(key);
+        }
+        String digits = toIsbn13();
+        return digits.substring(0, 3) + "-" + digits.substring(3);
+    }
+
+    @Override
+    public int compareTo(Isbn other) {
+        return Long.compare(key, other.key);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        return key == ((Isbn) obj).key;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(key);
+    }
+
+    @Override
+    public String toString() {
+        return toDisplayString();
+    }
+}
@@ -11,7 +11,7 @@ public class Librarian extends User implements Serializable {
     private static final long serialVersionUID = 1L;
     
     private String employeeId;
-    private Library library;
+    private transient Library library;   // Re-linked by Library.loadLibrariansFromFile()
 
     // Constructors
     
@@ -149,16 +149,7 @@ public class Librarian extends User implements Serializable {
      */
     public void updateBook(String isbn, String newTitle, String newAuthor, String newTheme) {
         try {
-            Book book = library.findBookByISBN(isbn);
-            if (newTitle != null && !newTitle.isEmpty()) {
-                book.setTitle(newTitle);
-            }
-            if (newAuthor != null && !newAuthor.isEmpty()) {
-                book.setAuthor(newAuthor);
-            }
-            if (newTheme != null && !newTheme.isEmpty()) {
-                book.setTheme(newTheme);
-            }
+            library.updateBook(isbn, newTitle, newAuthor, newTheme);
             System.out.println("Book updated successfully");
         } catch (Exception e) {
             System.out.println("Error updating book: " + e.getMessage());
@@ -360,6 +351,13 @@ public class Librarian extends User implements Serializable {
         library.displayMemberStatistics();
     }
 
+    /**
+     * Generate circulation statistics over all past and active loans
+     */
+    public void generateCirculationReport() {
+        library.displayCirculationStatistics();
+    }
+
     /**
      * Display detailed report of member borrowing history
      */
@@ -15,6 +15,8 @@ import javafx.util.Duration;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
@@ -230,8 +232,21 @@ public class LibrarianDashboard {
         
         VBox recentActivity = createRecentLoansPreview();
         
+        LocalDate today = LibraryClock.get().today();
+        Label dueSoonLabel = new Label("Due in the Next 3 Days");
+        dueSoonLabel.getStyleClass().add("section-label");
+        VBox dueSoon = createLoanListPreview(library.getLoansDueBetween(today, today.plusDays(3)),
+                "No loans due in the next 3 days.");
+        
+        Label returnedLabel = new Label("Returned Last Week");
+        returnedLabel.getStyleClass().add("section-label");
+        List<Loan> returned = library.getLoansReturnedBetween(today.minusDays(7), today);
+        Collections.reverse(returned);      // Latest first
+        VBox returnedLastWeek = createLoanListPreview(returned, "No books returned in the last week.");
+        
         content.getChildren().addAll(welcome, subtitle, statsRow1, statsRow2, 
-                quickActionsLabel, quickActions, recentLabel, recentActivity);
+                quickActionsLabel, quickActions, recentLabel, recentActivity,
+                dueSoonLabel, dueSoon, returnedLabel, returnedLastWeek);
         
         setContent(content);
     }
@@ -240,10 +255,7 @@ public class LibrarianDashboard {
      * Count overdue loans
      */
     private int countOverdueLoans() {
-        return (int) library.getAllMembers().stream()
-            .flatMap(m -> m.getActiveLoans().stream())
-            .filter(Loan::isOverdue)
-            .count();
+        return library.getOverdueLoans().size();
     }
     
     /**
@@ -268,9 +280,7 @@ public class LibrarianDashboard {
      * Calculate total fees due
      */
     private double calculateTotalFees() {
-        return library.getAllMembers().stream()
-            .mapToDouble(Member::calculateCurrentOverdueFees)
-            .sum();
+        return library.calculateTotalFeesDue();
     }
     
     /**
@@ -307,24 +317,30 @@ public class LibrarianDashboard {
      * Create recent loans preview
      */
     private VBox createRecentLoansPreview() {
+        return createLoanListPreview(library.getRecentLoans(5), "No active loans in the system.");
+    }
+    
+    /**
+     * Create a preview of a few loans, showing at most 8
+     */
+    private VBox createLoanListPreview(List<Loan> loans, String emptyText) {
         VBox box = new VBox(10);
         box.getStyleClass().add("glass-card");
         
-        List<Loan> allLoans = library.getAllMembers().stream()
-            .flatMap(m -> m.getActiveLoans().stream())
-            .sorted((a, b) -> b.getLoanDate().compareTo(a.getLoanDate()))
-            .limit(5)
-            .toList();
-        
-        if (allLoans.isEmpty()) {
-            Label noLoans = new Label("No active loans in the system.");
+        if (loans.isEmpty()) {
+            Label noLoans = new Label(emptyText);
             noLoans.getStyleClass().add("body-label");
             box.getChildren().add(noLoans);
         } else {
-            for (Loan loan : allLoans) {
+            for (Loan loan : loans.subList(0, Math.min(8, loans.size()))) {
                 HBox loanRow = createLoanPreviewRow(loan);
                 box.getChildren().add(loanRow);
             }
+            if (loans.size() > 8) {
+                Label more = new Label("and " + (loans.size() - 8) + " more");
+                more.getStyleClass().add("muted-label");
+                box.getChildren().add(more);
+            }
         }
         
         return box;
@@ -354,8 +370,14 @@ public class LibrarianDashboard {
         HBox.setHgrow(bookInfo, Priority.ALWAYS);
         
         // Status
-        Label status = new Label(loan.isOverdue() ? "OVERDUE" : "Active");
-        status.getStyleClass().addAll("badge", loan.isOverdue() ? "badge-danger" : "badge-success");
+        Label status;
+        if (loan.isReturned()) {
+            status = new Label(loan.isOverdue() ? "Returned late" : "Returned");
+            status.getStyleClass().addAll("badge", loan.isOverdue() ? "badge-warning" : "badge-success");
+        } else {
+            status = new Label(loan.isOverdue() ? "OVERDUE" : "Due " + loan.getDueDate());
+            status.getStyleClass().addAll("badge", loan.isOverdue() ? "badge-danger" : "badge-success");
+        }
         
         row.getChildren().addAll(bookIcon, bookInfo, status);
         return row;
@@ -398,11 +420,20 @@ public class LibrarianDashboard {
             if (newValue.isEmpty()) {
                 booksTable.setItems(FXCollections.observableArrayList(library.getAllBooks()));
             } else {
-                List<Book> filtered = library.getAllBooks().stream()
-                    .filter(b -> b.getTitle().toLowerCase().contains(newValue.toLowerCase()) ||
-                                b.getAuthor().toLowerCase().contains(newValue.toLowerCase()) ||
-                                b.getIsbn().contains(newValue))
-                    .toList();
+                List<Book> filtered = new ArrayList<>();
+                if (newValue.matches("[0-9Xx-]+")) {
+                    // Looks like (part of) an ISBN; titles such as "1984" are still found below
+                    library.forEachBook(b -> {
+                        if (b.getIsbn().contains(newValue)) {
+                            filtered.add(b);
+                        }
+                    });
+                }
+                for (Book book : library.searchBooksFuzzy(newValue)) {
+                    if (!filtered.contains(book)) {
+                        filtered.add(book);
+                    }
+                }
                 booksTable.setItems(FXCollections.observableArrayList(filtered));
             }
         });
@@ -522,8 +553,12 @@ public class LibrarianDashboard {
         
         dialog.setResultConverter(buttonType -> {
             if (buttonType == addButtonType) {
-                return new Book(isbnField.getText(), titleField.getText(), 
-                    authorField.getText(), themeCombo.getValue(), copiesSpinner.getValue());
+                try {
+                    return new Book(isbnField.getText(), titleField.getText(),
+                        authorField.getText(), themeCombo.getValue(), copiesSpinner.getValue());
+                } catch (IllegalArgumentException e) {
+                    showAlert(Alert.AlertType.ERROR, "Invalid Book", e.getMessage());
+                }
             }
             return null;
         });
@@ -729,12 +764,17 @@ public class LibrarianDashboard {
             new SimpleStringProperty(data.getValue().getActiveLoans().size() + "/" + data.getValue().getMaxLoanLimit()));
         loansCol.setPrefWidth(100);
         
-        TableColumn<Member, String> feesCol = new TableColumn<>("Fees Due");
+        TableColumn<Member, String> feesCol = new TableColumn<>("Overdue Fees");
         feesCol.setCellValueFactory(data -> 
-            new SimpleStringProperty(String.format("$%.2f", data.getValue().calculateCurrentOverdueFees())));
+            new SimpleStringProperty(String.format("$%.2f", data.getValue().calculateTotalOverdueFees())));
         feesCol.setPrefWidth(100);
         
-        table.getColumns().addAll(idCol, nameCol, emailCol, planCol, loansCol, feesCol);
+        TableColumn<Member, String> planFeesCol = new TableColumn<>("Plan Fees");
+        planFeesCol.setCellValueFactory(data -> 
+            new SimpleStringProperty(String.format("$%.2f", data.getValue().getPlanFees())));
+        planFeesCol.setPrefWidth(100);
+        
+        table.getColumns().addAll(idCol, nameCol, emailCol, planCol, loansCol, feesCol, planFeesCol);
         
         return table;
     }
@@ -816,19 +856,21 @@ public class LibrarianDashboard {
         details.setTitle("Member Details");
         details.setHeaderText(member.getName() + " " + member.getSurname());
         
+        MemberSummary summary = library.getMemberSummary(member);
         StringBuilder sb = new StringBuilder();
         sb.append("ID: ").append(member.getId()).append("\n");
         sb.append("Email: ").append(member.getEmail() != null ? member.getEmail() : "N/A").append("\n");
         sb.append("Age: ").append(member.getAge()).append("\n");
         sb.append("\n--- Membership ---\n");
-        sb.append("Plan: ").append(member.getMembershipPlan().getPlanName()).append("\n");
-        sb.append("Max Books: ").append(member.getMaxLoanLimit()).append("\n");
-        sb.append("Loan Period: ").append(member.getLoanPeriodDays()).append(" days\n");
+        sb.append("Plan: ").append(summary.getPlanName()).append("\n");
+        sb.append("Max Books: ").append(summary.getMaxLoans()).append("\n");
+        sb.append("Loan Period: ").append(summary.getLoanPeriodDays()).append(" days\n");
         sb.append("\n--- Current Status ---\n");
-        sb.append("Active Loans: ").append(member.getActiveLoans().size()).append("\n");
-        sb.append("Overdue Books: ").append(member.getOverdueBookCount()).append("\n");
-        sb.append("Current Fees: $").append(String.format("%.2f", member.calculateCurrentOverdueFees())).append("\n");
-        sb.append("Total Fees: $").append(String.format("%.2f", member.calculateTotalOverdueFees()));
+        sb.append("Active Loans: ").append(summary.getActiveLoans().size()).append("\n");
+        sb.append("Overdue Books: ").append(summary.getOverdueCount()).append("\n");
+        sb.append("Current Fees: $").append(String.format("%.2f", summary.getCurrentFees())).append("\n");
+        sb.append("Total Overdue Fees: $").append(String.format("%.2f", summary.getOutstandingFees())).append("\n");
+        sb.append("Plan Fees: $").append(String.format("%.2f", summary.getPlanFees()));
         
         details.setContentText(sb.toString());
         details.showAndWait();
@@ -941,7 +983,7 @@ public class LibrarianDashboard {
         
         ComboBox<Book> bookCombo = new ComboBox<>();
         bookCombo.setPromptText("Select Book");
-        bookCombo.getItems().addAll(library.getAllBooks().stream().filter(Book::isAvailable).toList());
+        bookCombo.getItems().addAll(library.findBooks(new BookQuery().availableOnly().sortBy(BookQuery.Sort.TITLE)));
         bookCombo.setCellFactory(lv -> new ListCell<Book>() {
             @Override
             protected void updateItem(Book item, boolean empty) {
@@ -992,7 +1034,7 @@ public class LibrarianDashboard {
             "Book issued successfully!\n\n" +
             "Book: " + book.getTitle() + "\n" +
             "Member: " + member.getName() + " " + member.getSurname() + "\n" +
-            "Due: " + LocalDate.now().plusDays(member.getLoanPeriodDays()));
+            "Due: " + LibraryClock.get().today().plusDays(member.getLoanPeriodDays()));
     }
     
     /**
@@ -1029,14 +1071,14 @@ public class LibrarianDashboard {
             if (loan.isOverdue()) {
                 return new SimpleStringProperty("⚠️ OVERDUE (" + loan.getDaysOverdue() + "d)");
             }
-            long days = java.time.temporal.ChronoUnit.DAYS.between(LocalDate.now(), loan.getDueDate());
+            long days = loan.getDaysUntilDue();
             return new SimpleStringProperty("✓ " + days + " days left");
         });
         statusCol.setPrefWidth(120);
         
         TableColumn<LoanWithMember, String> feeCol = new TableColumn<>("Fee");
         feeCol.setCellValueFactory(data -> 
-            new SimpleStringProperty(String.format("$%.2f", data.getValue().loan.calculateOverdueFee(data.getValue().member.getDailyOverdueFee()))));
+            new SimpleStringProperty(FeeLedger.formatCents(data.getValue().member.overdueFeeCents(data.getValue().loan))));
         feeCol.setPrefWidth(70);
         
         table.getColumns().addAll(bookCol, memberCol, borrowCol, dueCol, statusCol, feeCol);
@@ -1050,14 +1092,14 @@ public class LibrarianDashboard {
     private void handleProcessReturn(LoanWithMember loanWithMember) {
         Loan loan = loanWithMember.loan;
         Member member = loanWithMember.member;
-        double fee = loan.calculateOverdueFee(member.getDailyOverdueFee());
+        long feeCents = member.overdueFeeCents(loan);
         
         String message = "Process return for:\n\n" +
             "Book: " + loan.getBook().getTitle() + "\n" +
             "Member: " + member.getName() + " " + member.getSurname();
         
-        if (fee > 0) {
-            message += "\n\n⚠️ Overdue fee: $" + String.format("%.2f", fee);
+        if (feeCents > 0) {
+            message += "\n\n⚠️ Overdue fee: " + FeeLedger.formatCents(feeCents);
         }
         
         Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
@@ -1070,7 +1112,7 @@ public class LibrarianDashboard {
             librarian.returnBook(member.getId(), loan.getBook().getIsbn());
             library.saveAllData();
             showAlert(Alert.AlertType.INFORMATION, "Success", 
-                "Book returned successfully!" + (fee > 0 ? "\nFee collected: $" + String.format("%.2f", fee) : ""));
+                "Book returned successfully!" + (feeCents > 0 ? "\nFee collected: " + FeeLedger.formatCents(feeCents) : ""));
         }
     }
     
@@ -1105,7 +1147,15 @@ public class LibrarianDashboard {
             showAlert(Alert.AlertType.INFORMATION, "Export Complete", "Report exported to library_report.txt");
         });
         
-        exportButtons.getChildren().addAll(exportInventory, exportReport);
+        Button exportAnalytics = new Button("Export for Analytics");
+        exportAnalytics.getStyleClass().add("glass-button");
+        exportAnalytics.setOnAction(e -> {
+            FileManager.exportForAnalytics(library, "analytics", true);
+            showAlert(Alert.AlertType.INFORMATION, "Export Complete",
+                    "Loans changed since the last export written to the analytics folder");
+        });
+        
+        exportButtons.getChildren().addAll(exportInventory, exportReport, exportAnalytics);
         
         content.getChildren().addAll(title, overdueSection, statsSection, exportButtons);
         setContent(content);
@@ -1145,8 +1195,8 @@ public class LibrarianDashboard {
                 VBox info = new VBox(3);
                 Label bookTitle = new Label(lm.loan.getBook().getTitle());
                 bookTitle.setStyle("-fx-font-weight: bold; -fx-text-fill: white;");
-                Label details = new Label(lm.member.getName() + " | " + lm.loan.getDaysOverdue() + " days overdue | $" + 
-                    String.format("%.2f", lm.loan.calculateOverdueFee(lm.member.getDailyOverdueFee())));
+                Label details = new Label(lm.member.getName() + " | " + lm.loan.getDaysOverdue() + " days overdue | " + 
+                    FeeLedger.formatCents(lm.member.overdueFeeCents(lm.loan)));
                 details.getStyleClass().add("muted-label");
                 info.getChildren().addAll(bookTitle, details);
                 HBox.setHgrow(info, Priority.ALWAYS);
@@ -1208,6 +1258,28 @@ public class LibrarianDashboard {
         addStatRow(grid, 11, "Overdue Loans:", String.valueOf(overdueCount));
         addStatRow(grid, 12, "Total Fees Due:", "$" + String.format("%.2f", totalFees));
         
+        grid.add(new Label(""), 0, 13); // Spacer
+        
+        CirculationStats circulation = library.getCirculationStats();
+        List<CirculationStats.TitleCount> mostBorrowed = circulation.getMostBorrowed();
+        addStatRow(grid, 14, "Loans (All Time):", String.valueOf(circulation.getTotalLoans()));
+        addStatRow(grid, 15, "Late Return Rate:", String.format("%.1f%%", circulation.getLateReturnRate() * 100));
+        addStatRow(grid, 16, "Most Borrowed:", mostBorrowed.isEmpty() ? "N/A" : mostBorrowed.get(0).toString());
+        addStatRow(grid, 17, "Avg Loan (Basic/Premium/VIP):", String.format("%.1f / %.1f / %.1f days",
+            circulation.getAverageLoanDays(MembershipPlan.PlanType.BASIC),
+            circulation.getAverageLoanDays(MembershipPlan.PlanType.PREMIUM),
+            circulation.getAverageLoanDays(MembershipPlan.PlanType.VIP)));
+        
+        grid.add(new Label(""), 0, 18); // Spacer
+        
+        List<Book> trending = library.getTrendingBooks(3);
+        for (int i = 0; i < trending.size(); i++) {
+            addStatRow(grid, 19 + i, i == 0 ? "Trending Now:" : "", (i + 1) + ". " + trending.get(i).getTitle());
+        }
+        if (trending.isEmpty()) {
+            addStatRow(grid, 19, "Trending Now:", "N/A");
+        }
+        
         section.getChildren().addAll(header, grid);
         return section;
     }
@@ -1,6 +1,8 @@
 import java.io.*;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -12,40 +14,83 @@ public class Library implements Serializable {
     
     private static final long serialVersionUID = 1L;
     
-    // File paths for binary storage
-    private static final String DATA_DIRECTORY = "data";
-    private static final String BOOKS_FILE = DATA_DIRECTORY + "/books.dat";
-    private static final String MEMBERS_FILE = DATA_DIRECTORY + "/members.dat";
-    private static final String LOANS_FILE = DATA_DIRECTORY + "/loans.dat";
-    private static final String LOAN_HISTORY_FILE = DATA_DIRECTORY + "/loan_history.dat";
-    private static final String LIBRARIANS_FILE = DATA_DIRECTORY + "/librarians.dat";
+    // File names for binary storage, inside the library's data directory
+    public static final String DEFAULT_DATA_DIRECTORY = "data";
+    private static final String BOOKS_FILE = "books.dat";
+    private static final String MEMBERS_FILE = "members.dat";
+    private static final String LOANS_FILE = "loans.dat";
+    private static final String LOAN_HISTORY_FILE = "loan_history.dat";     // Before LoanHistoryStore
+    private static final String LOAN_HISTORY_LOG = "loan_history.log";
+    private static final String LOAN_HISTORY_INDEX = "loan_history.idx";
+    private static final String LIBRARIANS_FILE = "librarians.dat";
+    private static final String RESERVATIONS_FILE = "reservations.dat";
+    private static final String POPULARITY_FILE = "popularity.dat";
+    private static final String LAST_LOGINS_FILE = "last_logins.dat";
+    private static final String FEE_LEDGER_LOG = "fee_ledger.log";
+    private static final String FEE_LEDGER_INDEX = "fee_ledger.idx";
+    private static final String REMINDERS_SENT_FILE = "reminders_sent.dat";
+    private static final String REMINDER_OUTBOX = "outbox";             // Queued reminders for the mail relay
     
     // Library data collections
-    private Map<String, Book> bookInventory;          // ISBN -> Book
-    private Map<Integer, Member> members;              // MemberID -> Member
-    private Map<Integer, Librarian> librarians;        // LibrarianID -> Librarian
+    private LongObjectMap<Book> bookInventory;         // ISBN key -> Book (see Isbn.toKey())
+    private IntObjectMap<Member> members;              // MemberID -> Member (unboxed keys)
+    private IntObjectMap<Librarian> librarians;        // LibrarianID -> Librarian (unboxed keys)
     private List<Loan> activeLoans;
-    private List<Loan> loanHistory;                   // For tracking all past loans
-    
-    // Currently logged in user
-    private transient User currentUser;
+    private transient LoanHistoryStore loanHistory;   // All past loans, on disk, read on demand
+    private transient FeeLedger feeLedger;            // Every fee charged and paid, in cents
+    private ReservationQueue reservations;            // Per-ISBN hold queues
+    private transient OverdueSweeper overdueSweeper;  // Daily job materializing overdue fees
+    private transient MemberSummaryCache summaryCache; // Recently viewed member dashboards
+    private transient CirculationAnalytics circulation; // Statistics over all loans, cached
+    private transient long loanEvents;                 // Loans issued or returned since startup
+    private transient PopularityTracker popularity;    // Trending titles, counted as loans are issued
+    private transient RecommendationEngine recommendations; // Co-borrowing model, built on first use
+    private transient FuzzySearchIndex searchIndex;    // Typo-tolerant title and author search
+    private transient CatalogIndex catalogIndex;       // Theme and title indexes for BookQuery
+    private transient LoanDateIndex loanDates;         // Loans by loan, due and return date
+    private transient ReminderPipeline reminders;      // Daily due-soon reminders to the outbox
+    
+    // Logged-in terminals (any number of librarians and members at once)
+    private transient SessionManager sessions;
     
     // Library configuration
     private String libraryName;
+    private transient String dataDirectory;           // One per branch; see LibraryNetwork
     private static final double DAILY_OVERDUE_FEE = 0.50;  // Default fee
-    private static final int DEFAULT_LOAN_PERIOD_DAYS = 14;
-    private static final int MAX_BOOKS_PER_MEMBER = 5;
     
     // ==================== CONSTRUCTORS ====================
     
     public Library(String libraryName) {
+        this(libraryName, DEFAULT_DATA_DIRECTORY);
+    }
+    
+    /**
+     * Create a library that keeps its files in its own directory
+     */
+    public Library(String libraryName, String dataDirectory) {
+        if (dataDirectory == null || dataDirectory.trim().isEmpty()) {
+            throw new IllegalArgumentException("Data directory cannot be empty");
+        }
         this.libraryName = libraryName;
-        this.bookInventory = new HashMap<>();
-        this.members = new HashMap<>();
-        this.librarians = new HashMap<>();
+        this.dataDirectory = dataDirectory;
+        this.bookInventory = new LongObjectMap<>();
+        this.members = new IntObjectMap<>();
+        this.librarians = new IntObjectMap<>();
         this.activeLoans = new ArrayList<>();
-        this.loanHistory = new ArrayList<>();
-        this.currentUser = null;
+        this.loanHistory = newLoanHistoryStore();
+        this.feeLedger = new FeeLedger(dataFile(FEE_LEDGER_LOG), dataFile(FEE_LEDGER_INDEX));
+        this.reservations = new ReservationQueue();
+        this.overdueSweeper = new OverdueSweeper(this);
+        this.summaryCache = new MemberSummaryCache(this);
+        this.circulation = new CirculationAnalytics(this);
+        this.popularity = new PopularityTracker();
+        this.recommendations = new RecommendationEngine(this, bookInventory::get);
+        this.searchIndex = new FuzzySearchIndex();
+        this.catalogIndex = new CatalogIndex(searchIndex);
+        this.loanDates = new LoanDateIndex(loanHistory);
+        this.reminders = new ReminderPipeline(loanDates, dataFile(REMINDER_OUTBOX), dataFile(REMINDERS_SENT_FILE),
+                ReminderPipeline.DEFAULT_DAYS_AHEAD);
+        this.sessions = new SessionManager();
         
         // Ensure data directory exists
         createDataDirectory();
@@ -55,6 +100,20 @@ public class Library implements Serializable {
         this("Community Library");
     }
     
+    /**
+     * Librarians saved by older versions carry a full Library snapshot.
+     * Only its name is read; the instance is a placeholder that is dropped, so no
+     * collections or helpers are built. loadLibrariansFromFile() re-links the live library.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        this.libraryName = (String) fields.get("libraryName", "Community Library");
+    }
+    
+    private LoanHistoryStore newLoanHistoryStore() {
+        return new LoanHistoryStore(dataFile(LOAN_HISTORY_LOG), dataFile(LOAN_HISTORY_INDEX), bookInventory::get);
+    }
+    
     // ==================== AUTHENTICATION ====================
     
     /**
@@ -72,7 +131,6 @@ public class Library implements Serializable {
             if (librarian.getEmail() != null && 
                 librarian.getEmail().equalsIgnoreCase(email)) {
                 if (librarian.login(email, password)) {
-                    currentUser = librarian;
                     return librarian;
                 }
                 return null;
@@ -84,13 +142,14 @@ public class Library implements Serializable {
             if (member.getEmail() != null && 
                 member.getEmail().equalsIgnoreCase(email)) {
                 if (member.login(email, password)) {
-                    currentUser = member;
                     return member;
                 }
                 return null;
             }
         }
         
+        // Burn the same hashing time as a wrong password so unknown emails cannot be probed
+        PasswordCredential.verifyDummy(password);
         System.out.println("Error: No user found with email: " + email);
         return null;
     }
@@ -105,7 +164,6 @@ public class Library implements Serializable {
         }
         if (user != null) {
             System.out.println("Error: This is not a member account.");
-            user.logout();
         }
         return null;
     }
@@ -120,49 +178,52 @@ public class Library implements Serializable {
         }
         if (user != null) {
             System.out.println("Error: This is not a librarian account.");
-            user.logout();
         }
         return null;
     }
     
     /**
-     * Logout the currently logged in user
+     * Authenticate a user and open a session for their terminal
+     * @return the new session, or null if authentication fails
      */
-    public void logout() {
-        if (currentUser != null) {
-            currentUser.logout();
-            currentUser = null;
-        } else {
-            System.out.println("No user is currently logged in.");
+    public SessionManager.Session openSession(String email, String password) {
+        User user = authenticateUser(email, password);
+        if (user == null) {
+            return null;
         }
+        summaryCache.invalidate(user.getId());      // The summary shows the last login
+        return sessions.open(user);
     }
     
     /**
-     * Get the currently logged in user
+     * Get an open session by token and mark it active
+     * @return the session, or null if unknown or expired
      */
-    public User getCurrentUser() {
-        return currentUser;
+    public SessionManager.Session getSession(String token) {
+        return sessions.touch(token);
     }
     
     /**
-     * Check if a user is currently logged in
+     * Close the session with the given token
      */
-    public boolean isUserLoggedIn() {
-        return currentUser != null && currentUser.isLoggedIn();
+    public void logout(String token) {
+        SessionManager.Session session = sessions.find(token);
+        if (session != null && sessions.close(token)) {
+            session.getUser().logout();
+        } else {
+            System.out.println("No active session for this terminal.");
+        }
     }
     
     /**
-     * Check if the current user is a librarian
+     * Check if a user has an open session on any terminal
      */
-    public boolean isLibrarianLoggedIn() {
-        return currentUser instanceof Librarian && currentUser.isLoggedIn();
+    public boolean isUserLoggedIn(int userId) {
+        return sessions.isLoggedIn(userId);
     }
     
-    /**
-     * Check if the current user is a member
-     */
-    public boolean isMemberLoggedIn() {
-        return currentUser instanceof Member && currentUser.isLoggedIn();
+    public SessionManager getSessionManager() {
+        return sessions;
     }
     
     /**
@@ -237,7 +298,7 @@ public class Library implements Serializable {
      */
     public void saveLibrariansToFile() {
         try (ObjectOutputStream oos = new ObjectOutputStream(
-                new FileOutputStream(LIBRARIANS_FILE))) {
+                new FileOutputStream(dataFile(LIBRARIANS_FILE)))) {
             oos.writeObject(new ArrayList<>(librarians.values()));
             System.out.println("Librarians saved successfully.");
         } catch (IOException e) {
@@ -250,14 +311,14 @@ public class Library implements Serializable {
      */
     @SuppressWarnings("unchecked")
     public void loadLibrariansFromFile() {
-        File file = new File(LIBRARIANS_FILE);
+        File file = new File(dataFile(LIBRARIANS_FILE));
         if (!file.exists()) {
             System.out.println("No existing librarian data found.");
             return;
         }
         
         try (ObjectInputStream ois = new ObjectInputStream(
-                new FileInputStream(LIBRARIANS_FILE))) {
+                new FileInputStream(dataFile(LIBRARIANS_FILE)))) {
             List<Librarian> loadedLibrarians = (List<Librarian>) ois.readObject();
             librarians.clear();
             for (Librarian librarian : loadedLibrarians) {
@@ -272,8 +333,19 @@ public class Library implements Serializable {
 
     // ==================== DATA PERSISTENCE (Binary Files) ====================
     
+    /**
+     * Path of one of this library's files
+     */
+    public String dataFile(String fileName) {
+        return new File(dataDirectory, fileName).getPath();
+    }
+    
+    public String getDataDirectory() {
+        return dataDirectory;
+    }
+    
     private void createDataDirectory() {
-        File dataDir = new File(DATA_DIRECTORY);
+        File dataDir = new File(dataDirectory);
         if (!dataDir.exists()) {
             dataDir.mkdirs();
         }
@@ -284,7 +356,7 @@ public class Library implements Serializable {
      */
     public void saveBooksToFile() {
         try (ObjectOutputStream oos = new ObjectOutputStream(
-                new FileOutputStream(BOOKS_FILE))) {
+                new FileOutputStream(dataFile(BOOKS_FILE)))) {
             oos.writeObject(new ArrayList<>(bookInventory.values()));
             System.out.println("Books saved successfully to binary file.");
         } catch (IOException e) {
@@ -297,18 +369,35 @@ public class Library implements Serializable {
      */
     @SuppressWarnings("unchecked")
     public void loadBooksFromFile() {
-        File file = new File(BOOKS_FILE);
+        File file = new File(dataFile(BOOKS_FILE));
         if (!file.exists()) {
             System.out.println("No existing book data found. Starting with empty inventory.");
             return;
         }
         
         try (ObjectInputStream ois = new ObjectInputStream(
-                new FileInputStream(BOOKS_FILE))) {
+                new FileInputStream(dataFile(BOOKS_FILE)))) {
             List<Book> loadedBooks = (List<Book>) ois.readObject();
             bookInventory.clear();
+            searchIndex.clear();
+            catalogIndex.clear();
             for (Book book : loadedBooks) {
-                bookInventory.put(book.getIsbn(), book);
+                Book existing = bookInventory.get(book.getIsbnKey());
+                if (existing != null) {
+                    // E.g. an ISBN-10 and its ISBN-13 form, stored as two books by older versions
+                    book.quarantineIsbn();
+                    if (bookInventory.containsKey(book.getIsbnKey())) {
+                        System.err.println("Book '" + book.getTitle() + "' repeats ISBN " + book.getIsbn()
+                                + " exactly; only '" + existing.getTitle() + "' was loaded.");
+                        continue;
+                    }
+                    System.err.println("Books '" + existing.getTitle() + "' (" + existing.getIsbn() + ") and '"
+                            + book.getTitle() + "' (" + book.getIsbn() + ") have the same ISBN; the second is "
+                            + "kept apart and can only be found by searching until one ISBN is corrected.");
+                }
+                bookInventory.put(book.getIsbnKey(), book);
+                searchIndex.add(book);
+                catalogIndex.add(book);
             }
             System.out.println("Loaded " + loadedBooks.size() + " books from binary file.");
         } catch (IOException | ClassNotFoundException e) {
@@ -321,7 +410,7 @@ public class Library implements Serializable {
      */
     public void saveMembersToFile() {
         try (ObjectOutputStream oos = new ObjectOutputStream(
-                new FileOutputStream(MEMBERS_FILE))) {
+                new FileOutputStream(dataFile(MEMBERS_FILE)))) {
             oos.writeObject(new ArrayList<>(members.values()));
             System.out.println("Members saved successfully to binary file.");
         } catch (IOException e) {
@@ -334,20 +423,35 @@ public class Library implements Serializable {
      */
     @SuppressWarnings("unchecked")
     public void loadMembersFromFile() {
-        File file = new File(MEMBERS_FILE);
+        File file = new File(dataFile(MEMBERS_FILE));
         if (!file.exists()) {
             System.out.println("No existing member data found.");
             return;
         }
         
         try (ObjectInputStream ois = new ObjectInputStream(
-                new FileInputStream(MEMBERS_FILE))) {
+                new FileInputStream(dataFile(MEMBERS_FILE)))) {
             List<Member> loadedMembers = (List<Member>) ois.readObject();
             members.clear();
+            summaryCache.clear();
+            int movedLoans = 0;
+            long movedFeeCents = 0;
             for (Member member : loadedMembers) {
+                member.setOverdueSweeper(overdueSweeper); // Re-link sweeper reference
+                member.setSummaryCache(summaryCache);
+                movedLoans += member.setHistoryStore(loanHistory);
+                movedFeeCents += member.setFeeLedger(feeLedger);
                 members.put(member.getId(), member);
             }
             System.out.println("Loaded " + loadedMembers.size() + " members from binary file.");
+            if (movedLoans > 0 || movedFeeCents > 0) {
+                // Older members.dat kept each member's history and fees inline; save it without
+                System.out.println("Moved " + movedLoans + " past loans into the loan history store and "
+                        + FeeLedger.formatCents(movedFeeCents) + " of fees into the fee ledger.");
+                loanHistory.saveIndex();
+                feeLedger.saveIndex();
+                saveMembersToFile();
+            }
         } catch (IOException | ClassNotFoundException e) {
             System.err.println("Error loading members: " + e.getMessage());
         }
@@ -358,19 +462,32 @@ public class Library implements Serializable {
      */
     public void saveLoansToFile() {
         try (ObjectOutputStream oos = new ObjectOutputStream(
-                new FileOutputStream(LOANS_FILE))) {
+                new FileOutputStream(dataFile(LOANS_FILE)))) {
             oos.writeObject(activeLoans);
             System.out.println("Active loans saved successfully.");
         } catch (IOException e) {
             System.err.println("Error saving loans: " + e.getMessage());
         }
         
-        try (ObjectOutputStream oos = new ObjectOutputStream(
-                new FileOutputStream(LOAN_HISTORY_FILE))) {
-            oos.writeObject(loanHistory);
-            System.out.println("Loan history saved successfully.");
-        } catch (IOException e) {
-            System.err.println("Error saving loan history: " + e.getMessage());
+        // Past loans are written to the history log as they are returned; only the index is saved
+        try {
+            loanHistory.saveIndex();
+            System.out.println("Loan history index saved successfully.");
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error saving loan history index: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Save the fee ledger balances. Charges and payments are written to the ledger log as
+     * they happen; the balances only spare replaying it at startup.
+     */
+    public void saveFeeLedger() {
+        try {
+            feeLedger.saveIndex();
+            System.out.println("Fee ledger balances saved successfully.");
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error saving fee ledger balances: " + e.getMessage());
         }
     }
     
@@ -379,11 +496,11 @@ public class Library implements Serializable {
      */
     @SuppressWarnings("unchecked")
     public void loadLoansFromFile() {
-        File activeFile = new File(LOANS_FILE);
+        File activeFile = new File(dataFile(LOANS_FILE));
         if (activeFile.exists()) {
             try (ObjectInputStream ois = new ObjectInputStream(
-                    new FileInputStream(LOANS_FILE))) {
-                activeLoans = (List<Loan>) ois.readObject();
+                    new FileInputStream(dataFile(LOANS_FILE)))) {
+                activeLoans = relinkActiveLoans((List<Loan>) ois.readObject());
                 System.out.println("Loaded " + activeLoans.size() + " active loans.");
             } catch (IOException | ClassNotFoundException e) {
                 System.err.println("Error loading active loans: " + e.getMessage());
@@ -391,16 +508,224 @@ public class Library implements Serializable {
             }
         }
         
-        File historyFile = new File(LOAN_HISTORY_FILE);
+        // Older versions kept all past loans in one list. Members' own copies were moved with
+        // the members; keep the loans of members no longer registered, then retire the file.
+        File historyFile = new File(dataFile(LOAN_HISTORY_FILE));
         if (historyFile.exists()) {
+            int moved = -1;
             try (ObjectInputStream ois = new ObjectInputStream(
-                    new FileInputStream(LOAN_HISTORY_FILE))) {
-                loanHistory = (List<Loan>) ois.readObject();
-                System.out.println("Loaded " + loanHistory.size() + " historical loans.");
-            } catch (IOException | ClassNotFoundException e) {
-                System.err.println("Error loading loan history: " + e.getMessage());
-                loanHistory = new ArrayList<>();
+                    new FileInputStream(historyFile))) {
+                List<Loan> legacyHistory = (List<Loan>) ois.readObject();
+                moved = 0;
+                for (Loan loan : legacyHistory) {
+                    if (!members.containsKey(loan.getMember().getId())) {
+                        loanHistory.append(loan);
+                        moved++;
+                    }
+                }
+                loanHistory.saveIndex();
+            } catch (IOException | ClassNotFoundException | UncheckedIOException e) {
+                System.err.println("Error migrating loan history: " + e.getMessage());
+            }
+            // Retire the file once it is closed, and only if its loans were moved
+            if (moved >= 0) {
+                try {
+                    java.nio.file.Files.move(historyFile.toPath(),
+                            new File(dataFile(LOAN_HISTORY_FILE + ".migrated")).toPath(),
+                            java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+                    System.out.println("Moved " + moved + " past loans of former members into the loan history store.");
+                } catch (IOException e) {
+                    System.err.println("Error retiring old loan history file: " + e.getMessage());
+                }
+            }
+        }
+        adoptMemberLoans();
+        loanDates.indexActiveLoans(activeLoans);
+        loanDates.invalidateReturns();
+        System.out.println("Loan history: " + loanHistory.getRecordCount() + " past loans on disk.");
+    }
+    
+    /**
+     * Loans borrowed from the member dashboard before it went through issueLoan were kept
+     * only by the member. Add them to the active loans, pointed at the inventory book.
+     */
+    private void adoptMemberLoans() {
+        Set<Loan> known = Collections.newSetFromMap(new IdentityHashMap<>());
+        known.addAll(activeLoans);
+        int adopted = 0;
+        for (Member member : members.values()) {
+            for (Loan loan : member.getActiveLoans()) {
+                if (loan.isReturned() || !known.add(loan)) {
+                    continue;
+                }
+                Book book = bookInventory.get(loan.getBook().getIsbnKey());
+                if (book != null) {
+                    loan.relink(member, book);
+                }
+                activeLoans.add(loan);
+                adopted++;
+            }
+        }
+        if (adopted > 0) {
+            System.out.println("Added " + adopted + " loans kept only by their members to the active loans.");
+        }
+    }
+    
+    /**
+     * loans.dat and members.dat each deserialize their own copies of a loan, its member and
+     * its book. Use the member's instance (it carries the overdue accrual state) and point it
+     * at the inventory book, so returns give the copy back to the live book.
+     */
+    private List<Loan> relinkActiveLoans(List<Loan> loaded) {
+        List<Loan> linked = new ArrayList<>(loaded.size());
+        for (Loan loan : loaded) {
+            Member member = members.get(loan.getMember().getId());
+            Book book = bookInventory.get(loan.getBook().getIsbnKey());
+            if (member == null || book == null) {
+                System.err.println("Active loan with unknown member or book kept as loaded: " + loan);
+                linked.add(loan);
+                continue;
+            }
+            Loan own = member.findActiveLoan(loan);
+            if (own == null) {
+                loan.relink(member, book);
+                member.addLoan(loan);
+                own = loan;
+            } else {
+                own.relink(member, book);
+            }
+            linked.add(own);
+        }
+        return linked;
+    }
+    
+    /**
+     * Save reservation queues to binary file
+     */
+    public void saveReservationsToFile() {
+        try (ObjectOutputStream oos = new ObjectOutputStream(
+                new FileOutputStream(dataFile(RESERVATIONS_FILE)))) {
+            oos.writeObject(reservations);
+            System.out.println("Reservations saved successfully.");
+        } catch (IOException e) {
+            System.err.println("Error saving reservations: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Load reservation queues from binary file
+     */
+    public void loadReservationsFromFile() {
+        File file = new File(dataFile(RESERVATIONS_FILE));
+        if (!file.exists()) {
+            System.out.println("No existing reservation data found.");
+            return;
+        }
+        
+        try (ObjectInputStream ois = new ObjectInputStream(
+                new FileInputStream(dataFile(RESERVATIONS_FILE)))) {
+            reservations = (ReservationQueue) ois.readObject();
+            System.out.println("Loaded " + reservations.getTotalHolds() + " holds.");
+        } catch (IOException | ClassNotFoundException e) {
+            System.err.println("Error loading reservations: " + e.getMessage());
+            reservations = new ReservationQueue();
+            releaseReservedCopies();
+        }
+    }
+    
+    /**
+     * Without the holds, only copies out on loan are unavailable: give back the copies
+     * that READY holds had set aside
+     */
+    private void releaseReservedCopies() {
+        Map<Long, Integer> onLoan = new HashMap<>();
+        for (Loan loan : activeLoans) {
+            if (!loan.isReturned()) {
+                onLoan.merge(loan.getBook().getIsbnKey(), 1, Integer::sum);
+            }
+        }
+        int released = 0;
+        for (Book book : bookInventory.values()) {
+            int free = Math.max(0, book.getTotalCopies() - onLoan.getOrDefault(book.getIsbnKey(), 0));
+            if (book.getAvailableCopies() < free) {
+                released += free - book.getAvailableCopies();
+                book.setAvailableCopies(free);
+            }
+        }
+        if (released > 0) {
+            System.out.println("Released " + released + " copies that were set aside for holds.");
+        }
+    }
+    
+    /**
+     * Save the trending-titles counters to binary file
+     */
+    public void savePopularityToFile() {
+        try (ObjectOutputStream oos = new ObjectOutputStream(
+                new FileOutputStream(dataFile(POPULARITY_FILE)))) {
+            oos.writeObject(popularity);
+            System.out.println("Popularity counters saved successfully.");
+        } catch (IOException e) {
+            System.err.println("Error saving popularity counters: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Save the users' last-login times to binary file
+     */
+    public void saveLastLoginsToFile() {
+        try (ObjectOutputStream oos = new ObjectOutputStream(
+                new FileOutputStream(dataFile(LAST_LOGINS_FILE)))) {
+            oos.writeObject(sessions.getLastLogins());
+            System.out.println("Last-login times saved successfully.");
+        } catch (IOException e) {
+            System.err.println("Error saving last-login times: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Load the users' last-login times from binary file
+     */
+    @SuppressWarnings("unchecked")
+    public void loadLastLoginsFromFile() {
+        File file = new File(dataFile(LAST_LOGINS_FILE));
+        if (!file.exists()) {
+            System.out.println("No existing last-login data found.");
+            return;
+        }
+        
+        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
+            Map<Integer, LocalDateTime> lastLogins = (Map<Integer, LocalDateTime>) ois.readObject();
+            sessions.restoreLastLogins(lastLogins);
+            System.out.println("Loaded last-login times for " + lastLogins.size() + " users.");
+        } catch (IOException | ClassNotFoundException e) {
+            System.err.println("Error loading last-login times: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Load the trending-titles counters from binary file.
+     * Data saved before they existed is counted once from the loan history and active loans.
+     */
+    public void loadPopularityFromFile() {
+        File file = new File(dataFile(POPULARITY_FILE));
+        if (!file.exists()) {
+            popularity = new PopularityTracker();
+            loanHistory.scanSince(0, (memberId, isbnKey, loanDay, dueDay, returnDay) ->
+                    popularity.record(isbnKey, loanDay));
+            for (Loan loan : activeLoans) {
+                popularity.record(loan.getBook().getIsbnKey(), loan.getLoanDate().toEpochDay());
             }
+            System.out.println("Counted " + popularity.getTotalLoans() + " loans for trending titles.");
+            return;
+        }
+        
+        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
+            popularity = (PopularityTracker) ois.readObject();
+            System.out.println("Loaded popularity counters for " + popularity.getTrackedTitles() + " titles.");
+        } catch (IOException | ClassNotFoundException e) {
+            System.err.println("Error loading popularity counters: " + e.getMessage());
+            popularity = new PopularityTracker();
         }
     }
     
@@ -413,9 +738,57 @@ public class Library implements Serializable {
         saveMembersToFile();
         saveLibrariansToFile();
         saveLoansToFile();
+        saveFeeLedger();
+        saveReservationsToFile();
+        savePopularityToFile();
+        saveLastLoginsToFile();
+        if (overdueSweeper.isRunning()) {
+            overdueSweeper.saveToFile();
+        }
         System.out.println("All library data saved successfully!");
     }
     
+    /**
+     * Serialize all library data in memory, keyed by file path.
+     * Much cheaper than the disk writes, so the thread that owns the library can take
+     * a consistent snapshot and leave the writing to a background writer (see LibraryService).
+     */
+    public Map<String, byte[]> snapshotAllData() throws IOException {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put(dataFile(BOOKS_FILE), serialize(new ArrayList<>(bookInventory.values())));
+        files.put(dataFile(MEMBERS_FILE), serialize(new ArrayList<>(members.values())));
+        files.put(dataFile(LIBRARIANS_FILE), serialize(new ArrayList<>(librarians.values())));
+        files.put(dataFile(LOANS_FILE), serialize(activeLoans));
+        files.put(dataFile(LOAN_HISTORY_INDEX), loanHistory.snapshotIndex());
+        files.put(dataFile(FEE_LEDGER_INDEX), feeLedger.snapshotIndex());
+        files.put(dataFile(RESERVATIONS_FILE), serialize(reservations));
+        files.put(dataFile(POPULARITY_FILE), serialize(popularity));
+        files.put(dataFile(LAST_LOGINS_FILE), serialize(sessions.getLastLogins()));
+        return files;
+    }
+    
+    private static byte[] serialize(Object data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(data);
+        }
+        return bytes.toByteArray();
+    }
+    
+    /**
+     * Write a snapshot from snapshotAllData() to disk.
+     * Each file is written to a temporary file first and then moved into place.
+     */
+    public static void writeSnapshot(Map<String, byte[]> files) throws IOException {
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            java.nio.file.Path target = java.nio.file.Paths.get(file.getKey());
+            java.nio.file.Path temp = java.nio.file.Paths.get(file.getKey() + ".tmp");
+            java.nio.file.Files.write(temp, file.getValue());
+            java.nio.file.Files.move(temp, target, java.nio.file.StandardCopyOption.REPLACE_EXISTING,
+                    java.nio.file.StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+    
     /**
      * Load all library data from binary files
      */
@@ -425,6 +798,10 @@ public class Library implements Serializable {
         loadMembersFromFile();
         loadLibrariansFromFile();
         loadLoansFromFile();
+        loadReservationsFromFile();
+        loadPopularityFromFile();
+        loadLastLoginsFromFile();
+        recommendations.invalidate();
         System.out.println("All library data loaded successfully!");
     }
     
@@ -437,10 +814,12 @@ public class Library implements Serializable {
         if (book == null) {
             throw new IllegalArgumentException("Book cannot be null");
         }
-        if (bookInventory.containsKey(book.getIsbn())) {
+        if (bookInventory.containsKey(book.getIsbnKey())) {
             throw new IllegalArgumentException("A book with ISBN " + book.getIsbn() + " already exists");
         }
-        bookInventory.put(book.getIsbn(), book);
+        bookInventory.put(book.getIsbnKey(), book);
+        searchIndex.add(book);
+        catalogIndex.add(book);
         System.out.println("Book added: " + book.getTitle());
     }
     
@@ -452,54 +831,133 @@ public class Library implements Serializable {
         if (book.getAvailableCopies() < book.getTotalCopies()) {
             throw new IllegalStateException("Cannot remove book: Some copies are currently borrowed");
         }
-        bookInventory.remove(isbn);
+        bookInventory.remove(book.getIsbnKey());
+        searchIndex.remove(book.getIsbnKey());
+        catalogIndex.remove(book.getIsbnKey());
+        reservations.removeTitle(book.getIsbnKey());
         System.out.println("Book removed: " + book.getTitle());
     }
     
     /**
-     * Find a book by ISBN
+     * Change a book's details; null or empty values are left unchanged
+     */
+    public void updateBook(String isbn, String newTitle, String newAuthor, String newTheme) {
+        Book book = findBookByISBN(isbn);
+        catalogIndex.remove(book.getIsbnKey());     // Its title order and theme may change
+        try {
+            if (newTitle != null && !newTitle.isEmpty()) {
+                book.setTitle(newTitle);
+            }
+            if (newAuthor != null && !newAuthor.isEmpty()) {
+                book.setAuthor(newAuthor);
+            }
+            if (newTheme != null && !newTheme.isEmpty()) {
+                book.setTheme(newTheme);
+            }
+        } finally {
+            searchIndex.add(book);      // Re-index the new title and author
+            catalogIndex.add(book);
+        }
+    }
+    
+    /**
+     * Find a book by ISBN (ISBN-10 or ISBN-13, with or without hyphens)
+     * @throws IllegalArgumentException if the ISBN is not valid
      */
     public Book findBookByISBN(String isbn) {
-        Book book = bookInventory.get(isbn);
+        Book book = bookInventory.get(Isbn.lookupKey(isbn));
         if (book == null) {
             throw new NoSuchElementException("No book found with ISBN: " + isbn);
         }
         return book;
     }
     
+    /**
+     * Find a book by its numeric ISBN key
+     */
+    public Book findBookByKey(long isbnKey) {
+        Book book = bookInventory.get(isbnKey);
+        if (book == null) {
+            throw new NoSuchElementException("No book found with ISBN: " + Isbn.ofKey(isbnKey));
+        }
+        return book;
+    }
+    
     /**
      * Search books by title (partial match, case-insensitive)
      */
     public List<Book> searchBooksByTitle(String title) {
+        String query = StringPool.fold(title);
         return bookInventory.values().stream()
-                .filter(b -> b.getTitle().toLowerCase().contains(title.toLowerCase()))
+                .filter(b -> b.titleContains(query))
                 .collect(Collectors.toList());
     }
     
     /**
-     * Search books by author (partial match, case-insensitive)
+     * Search books by author (partial match, case-insensitive).
+     * The query is matched once against the distinct pooled authors;
+     * books are then filtered by author ID.
      */
     public List<Book> searchBooksByAuthor(String author) {
+        BitSet authorKeys = Book.getAuthorPool().foldedIdsContaining(author);
+        return bookInventory.values().stream()
+                .filter(b -> authorKeys.get(b.getAuthorKey()))
+                .collect(Collectors.toList());
+    }
+    
+    /**
+     * Search books whose title or author contains the query (case-insensitive)
+     */
+    public List<Book> searchBooks(String query) {
+        String foldedQuery = StringPool.fold(query);
+        BitSet authorKeys = Book.getAuthorPool().foldedIdsContaining(query);
         return bookInventory.values().stream()
-                .filter(b -> b.getAuthor() != null && 
-                        b.getAuthor().toLowerCase().contains(author.toLowerCase()))
+                .filter(b -> authorKeys.get(b.getAuthorKey()) || b.titleContains(foldedQuery))
                 .collect(Collectors.toList());
     }
     
+    /**
+     * Search books by the words of their title and author, tolerating typos
+     * (see FuzzySearchIndex). Best matches first.
+     */
+    public List<Book> searchBooksFuzzy(String query, int limit) {
+        List<Book> books = new ArrayList<>();
+        for (FuzzySearchIndex.Match match : searchIndex.search(query, limit)) {
+            books.add(match.getBook());
+        }
+        return books;
+    }
+    
+    public List<Book> searchBooksFuzzy(String query) {
+        return searchBooksFuzzy(query, FuzzySearchIndex.DEFAULT_LIMIT);
+    }
+    
     /**
      * Search books by theme
      */
     public List<Book> searchBooksByTheme(String theme) {
         try {
             Book.BookTheme bookTheme = Book.BookTheme.valueOf(theme.toUpperCase());
-            return bookInventory.values().stream()
-                    .filter(b -> b.getTheme() == bookTheme)
-                    .collect(Collectors.toList());
+            return findBooks(new BookQuery().theme(bookTheme));
         } catch (IllegalArgumentException e) {
             return new ArrayList<>();
         }
     }
     
+    /**
+     * Run a combined filter over the catalog, starting from its most selective index
+     */
+    public List<Book> findBooks(BookQuery query) {
+        return catalogIndex.execute(query);
+    }
+    
+    /**
+     * How findBooks() would run a query
+     */
+    public CatalogIndex.Plan planQuery(BookQuery query) {
+        return catalogIndex.plan(query);
+    }
+    
     /**
      * Get all books in the library
      */
@@ -507,6 +965,15 @@ public class Library implements Serializable {
         return new ArrayList<>(bookInventory.values());
     }
     
+    /**
+     * Visit every book in place, without copying the inventory
+     */
+    public void forEachBook(Consumer<? super Book> action) {
+        for (Book book : bookInventory.values()) {
+            action.accept(book);
+        }
+    }
+    
     /**
      * Get all available books
      */
@@ -536,6 +1003,10 @@ public class Library implements Serializable {
         if (members.containsKey(member.getId())) {
             throw new IllegalArgumentException("A member with ID " + member.getId() + " already exists");
         }
+        member.setOverdueSweeper(overdueSweeper);
+        member.setSummaryCache(summaryCache);
+        member.setHistoryStore(loanHistory);
+        member.setFeeLedger(feeLedger);
         members.put(member.getId(), member);
         System.out.println("Member registered: " + member.getName() + " " + member.getSurname() + 
                 " (ID: " + member.getId() + ")");
@@ -550,6 +1021,11 @@ public class Library implements Serializable {
             throw new IllegalStateException("Cannot remove member: Has active loans");
         }
         members.remove(memberId);
+        member.setOverdueSweeper(null);
+        member.setSummaryCache(null);
+        summaryCache.invalidate(memberId);
+        releaseReadyHolds(reservations.removeMember(memberId));
+        sessions.closeAllForUser(memberId);
         System.out.println("Member removed: " + member.getName() + " " + member.getSurname());
     }
     
@@ -573,7 +1049,29 @@ public class Library implements Serializable {
                         m.getSurname().toLowerCase().contains(name.toLowerCase()))
                 .collect(Collectors.toList());
     }
-    
+
+    /**
+     * Get a member's dashboard summary, from the cache when nothing it shows has changed
+     */
+    public MemberSummary getMemberSummary(int memberId) {
+        return summaryCache.get(findMemberById(memberId));
+    }
+
+    public MemberSummary getMemberSummary(Member member) {
+        return summaryCache.get(member);
+    }
+
+    /**
+     * Drop a cached summary after a change made outside the library thread (e.g. a login)
+     */
+    public void invalidateMemberSummary(int memberId) {
+        summaryCache.invalidate(memberId);
+    }
+
+    public MemberSummaryCache getMemberSummaryCache() {
+        return summaryCache;
+    }
+
     /**
      * Get all members
      */
@@ -581,6 +1079,15 @@ public class Library implements Serializable {
         return new ArrayList<>(members.values());
     }
     
+    /**
+     * Visit every member in place, without copying
+     */
+    public void forEachMember(Consumer<? super Member> action) {
+        for (Member member : members.values()) {
+            action.accept(member);
+        }
+    }
+    
     /**
      * Get member's borrowing details
      */
@@ -609,6 +1116,7 @@ public class Library implements Serializable {
         System.out.println("\n--- Overdue Fees ---");
         double totalFees = member.calculateTotalOverdueFees();
         System.out.println("Total overdue fees: $" + String.format("%.2f", totalFees));
+        System.out.println("Plan fees owed: $" + String.format("%.2f", member.getPlanFees()));
     }
     
     // ==================== LOAN MANAGEMENT ====================
@@ -619,15 +1127,18 @@ public class Library implements Serializable {
     public Loan issueLoan(int memberId, String isbn) {
         Member member = findMemberById(memberId);
         Book book = findBookByISBN(isbn);
+        long isbnKey = book.getIsbnKey();
+        ReservationQueue.Hold hold = reservations.findHold(memberId, isbnKey);
+        boolean pickingUpHold = hold != null && hold.isReady();
         
-        // Validate loan conditions
-        if (!book.isAvailable()) {
+        // Validate loan conditions (a ready hold already has a copy set aside)
+        if (!pickingUpHold && !book.isAvailable()) {
             throw new IllegalStateException("Book is not available for borrowing");
         }
         
-        if (member.getActiveLoans().size() >= MAX_BOOKS_PER_MEMBER) {
+        if (!member.canBorrowMore(member.getActiveLoans().size())) {
             throw new IllegalStateException("Member has reached maximum loan limit (" + 
-                    MAX_BOOKS_PER_MEMBER + " books)");
+                    member.getMaxLoanLimit() + " books)");
         }
         
         // Check if member has overdue books
@@ -637,16 +1148,26 @@ public class Library implements Serializable {
         
         // Check if member already has this book
         for (Loan loan : member.getActiveLoans()) {
-            if (loan.getBook().getIsbn().equals(isbn)) {
+            if (loan.getBook().getIsbnKey() == isbnKey) {
                 throw new IllegalStateException("Member already has this book on loan");
             }
         }
         
+        // Claim a copy atomically; another desk may have taken the last one since the check above
+        if (pickingUpHold) {
+            reservations.claimReady(memberId, isbnKey);
+        } else if (!book.tryBorrow()) {
+            throw new IllegalStateException("Book is not available for borrowing");
+        }
+        
         // Create and record the loan
-        Loan newLoan = new Loan(member, book, DEFAULT_LOAN_PERIOD_DAYS);
+        Loan newLoan = new Loan(member, book, member.getLoanPeriodDays());
         activeLoans.add(newLoan);
+        loanDates.add(newLoan);
         member.addLoan(newLoan);
-        book.borrowCopy();
+        popularity.record(isbnKey);
+        recommendations.recordLoan(member, isbnKey);
+        loanEvents++;
         
         System.out.println("Loan issued: " + book.getTitle() + " to " + 
                 member.getName() + " " + member.getSurname());
@@ -661,12 +1182,13 @@ public class Library implements Serializable {
     public void returnBook(int memberId, String isbn) {
         Member member = findMemberById(memberId);
         Book book = findBookByISBN(isbn);
+        long isbnKey = book.getIsbnKey();
         
         // Find the loan
         Loan loanToReturn = null;
         for (Loan loan : activeLoans) {
             if (loan.getMember().getId() == memberId && 
-                loan.getBook().getIsbn().equals(isbn) && 
+                loan.getBook().getIsbnKey() == isbnKey && 
                 !loan.isReturned()) {
                 loanToReturn = loan;
                 break;
@@ -677,20 +1199,25 @@ public class Library implements Serializable {
             throw new IllegalStateException("No active loan found for this book and member");
         }
         
-        // Calculate and apply overdue fees if any
-        double overdueFee = loanToReturn.calculateOverdueFee(DAILY_OVERDUE_FEE);
+        // Read before the return stops the loan's accrual and drops its locked-in rate
+        long overdueFeeCents = member.overdueFeeCents(loanToReturn);
         
-        // Process return
+        // Process return (markReturned gives the copy back to the book)
         loanToReturn.markReturned();
         activeLoans.remove(loanToReturn);
-        loanHistory.add(loanToReturn);
-        member.removeLoan(loanToReturn);
-        book.returnCopy();
+        loanDates.remove(loanToReturn);
+        member.removeLoan(loanToReturn);    // Appends it to the loan history store
+        if (overdueFeeCents > 0) {
+            member.chargeFee(FeeLedger.Type.OVERDUE_FEE, overdueFeeCents, isbnKey);
+        }
+        loanEvents++;
         
         System.out.println("Book returned: " + book.getTitle());
-        if (overdueFee > 0) {
-            System.out.println("Overdue fee: $" + String.format("%.2f", overdueFee));
+        if (overdueFeeCents > 0) {
+            System.out.println("Overdue fee: " + FeeLedger.formatCents(overdueFeeCents));
         }
+        
+        allocateNextHold(isbnKey);
     }
     
     /**
@@ -700,6 +1227,15 @@ public class Library implements Serializable {
         return new ArrayList<>(activeLoans);
     }
     
+    /**
+     * Visit every active loan in place, without copying
+     */
+    public void forEachActiveLoan(Consumer<? super Loan> action) {
+        for (Loan loan : activeLoans) {
+            action.accept(loan);
+        }
+    }
+    
     /**
      * Get active loans by member
      */
@@ -710,21 +1246,236 @@ public class Library implements Serializable {
     }
     
     /**
-     * Get all overdue loans
+     * Get all overdue loans, most overdue first
      */
     public List<Loan> getOverdueLoans() {
-        return activeLoans.stream()
-                .filter(Loan::isOverdue)
-                .collect(Collectors.toList());
+        return loanDates.dueBefore(LibraryClock.get().today());
+    }
+    
+    /**
+     * The n most recently issued active loans, newest first
+     */
+    public List<Loan> getRecentLoans(int n) {
+        return loanDates.latestLoans(n);
+    }
+    
+    /**
+     * Active loans due between the two dates (inclusive), soonest first
+     */
+    public List<Loan> getLoansDueBetween(LocalDate from, LocalDate to) {
+        return loanDates.dueBetween(from, to);
+    }
+    
+    /**
+     * Active loans issued between the two dates (inclusive), oldest first
+     */
+    public List<Loan> getLoansIssuedBetween(LocalDate from, LocalDate to) {
+        return loanDates.loanedBetween(from, to);
+    }
+    
+    /**
+     * Loans returned between the two dates (inclusive), earliest first.
+     * Returns by members no longer registered are left out.
+     */
+    public List<Loan> getLoansReturnedBetween(LocalDate from, LocalDate to) {
+        List<Loan> returned = new ArrayList<>();
+        for (LoanHistoryStore.Record record : loanDates.returnedBetween(from, to)) {
+            Member member = members.get(record.getMemberId());
+            if (member != null) {
+                returned.add(loanHistory.toLoan(record, member));
+            }
+        }
+        return returned;
+    }
+    
+    public LoanDateIndex getLoanDateIndex() {
+        return loanDates;
     }
     
     /**
      * Get loan history for a member
      */
     public List<Loan> getLoanHistoryByMember(int memberId) {
-        return loanHistory.stream()
-                .filter(l -> l.getMember().getId() == memberId)
-                .collect(Collectors.toList());
+        Member member = members.get(memberId);
+        return member != null ? member.getLoanHistory() : new ArrayList<>();
+    }
+    
+    public LoanHistoryStore getLoanHistoryStore() {
+        return loanHistory;
+    }
+    
+    /**
+     * Number of loans issued or returned through this library since it was created or loaded
+     */
+    public long getLoanEventCount() {
+        return loanEvents;
+    }
+    
+    // ==================== RESERVATIONS ====================
+    
+    /**
+     * Place a hold on an unavailable book for a member
+     * @return the member's position in the queue
+     */
+    public int placeHold(int memberId, String isbn) {
+        Member member = findMemberById(memberId);
+        Book book = findBookByISBN(isbn);
+        
+        if (book.isAvailable()) {
+            throw new IllegalStateException("Book is available. Borrow it directly instead of placing a hold.");
+        }
+        for (Loan loan : member.getActiveLoans()) {
+            if (loan.getBook().getIsbnKey() == book.getIsbnKey()) {
+                throw new IllegalStateException("Member already has this book on loan");
+            }
+        }
+        
+        reservations.placeHold(member, book.getIsbnKey());
+        summaryCache.invalidate(memberId);
+        int position = reservations.getQueuePosition(memberId, book.getIsbnKey());
+        System.out.println("Hold placed: " + book.getTitle() + " for " + 
+                member.getName() + " " + member.getSurname() + " (position " + position + ")");
+        return position;
+    }
+    
+    /**
+     * Cancel a member's hold. A copy set aside for it passes to the next in line.
+     */
+    public void cancelHold(int memberId, String isbn) {
+        ReservationQueue.Hold hold = reservations.cancelHold(memberId, Isbn.lookupKey(isbn));
+        if (hold == null) {
+            throw new NoSuchElementException("No hold found for this book and member");
+        }
+        summaryCache.invalidate(memberId);
+        if (hold.isReady()) {
+            releaseReadyHolds(List.of(hold));
+        }
+        System.out.println("Hold cancelled for ISBN: " + isbn);
+    }
+    
+    /**
+     * Set free copies of a title aside for the next members in its hold queue
+     */
+    public void allocateNextHold(String isbn) {
+        allocateNextHold(Isbn.lookupKey(isbn));
+    }
+    
+    /**
+     * Set free copies aside for the next holds, by ISBN key
+     */
+    public void allocateNextHold(long isbnKey) {
+        Book book = bookInventory.get(isbnKey);
+        if (book == null) return;
+        
+        while (reservations.hasWaitingHolds(isbnKey) && book.tryReserve(1)) {
+            ReservationQueue.Hold next = reservations.allocateNext(isbnKey);
+            Member member = members.get(next.getMemberId());
+            if (member == null) {
+                // Member left the library; give the copy back and try the next hold
+                book.tryReturn();
+                continue;
+            }
+            summaryCache.invalidate(member.getId());
+            System.out.println("Hold ready: " + book.getTitle() + " set aside for " + 
+                    member.getName() + " " + member.getSurname());
+        }
+    }
+    
+    /**
+     * Give the copies of cancelled READY holds back and re-allocate them
+     */
+    private void releaseReadyHolds(List<ReservationQueue.Hold> readyHolds) {
+        for (ReservationQueue.Hold hold : readyHolds) {
+            Book book = bookInventory.get(hold.getIsbnKey());
+            if (book != null) {
+                book.tryReturn();
+                allocateNextHold(hold.getIsbnKey());
+            }
+        }
+    }
+    
+    /**
+     * Find a member's hold on a book, or null if none
+     */
+    public ReservationQueue.Hold findHold(int memberId, String isbn) {
+        return reservations.findHold(memberId, Isbn.lookupKey(isbn));
+    }
+    
+    /**
+     * Get all holds placed by a member
+     */
+    public List<ReservationQueue.Hold> getHoldsByMember(int memberId) {
+        return reservations.getHoldsForMember(memberId);
+    }
+    
+    /**
+     * Number of members waiting for a book
+     */
+    public int getHoldQueueLength(String isbn) {
+        return reservations.getQueueLength(Isbn.lookupKey(isbn));
+    }
+    
+    /**
+     * Number of members waiting for a book, by ISBN key
+     */
+    public int getHoldQueueLength(long isbnKey) {
+        return reservations.getQueueLength(isbnKey);
+    }
+    
+    // ==================== INTER-BRANCH TRANSFERS ====================
+    
+    /**
+     * Take shelf copies out of the inventory to send to another branch.
+     * Only free copies can leave (not on loan, not set aside for a hold). The title
+     * stays in the inventory even at zero copies, so its loans and holds keep their book.
+     * @return false if the book is unknown or no longer has that many free copies
+     */
+    public boolean releaseCopiesForTransfer(long isbnKey, int copies) {
+        Book book = bookInventory.get(isbnKey);
+        return book != null && book.tryRemoveCopies(copies);
+    }
+    
+    /**
+     * Take in copies sent from another branch and serve waiting holds with them.
+     * The shipment is a Book whose copies are the copies in transit; a title new
+     * to this branch is added as is.
+     */
+    public void receiveTransferredCopies(Book shipment) {
+        if (shipment == null || shipment.getTotalCopies() < 1) {
+            throw new IllegalArgumentException("Shipment must contain at least one copy");
+        }
+        Book book = bookInventory.get(shipment.getIsbnKey());
+        if (book == null) {
+            bookInventory.put(shipment.getIsbnKey(), shipment);
+            searchIndex.add(shipment);
+            catalogIndex.add(shipment);
+        } else {
+            book.addCopies(shipment.getTotalCopies());
+        }
+        allocateNextHold(shipment.getIsbnKey());
+    }
+    
+    /**
+     * Loans per title started on or after the given date, active and returned
+     */
+    public LongObjectMap<Integer> countLoansByTitleSince(LocalDate since) {
+        LongObjectMap<Integer> counts = new LongObjectMap<>();
+        for (Loan loan : activeLoans) {
+            if (!loan.getLoanDate().isBefore(since)) {
+                countLoan(counts, loan.getBook().getIsbnKey());
+            }
+        }
+        loanHistory.forEach(record -> {
+            if (!record.getLoanDate().isBefore(since)) {
+                countLoan(counts, record.getIsbnKey());
+            }
+        });
+        return counts;
+    }
+    
+    private static void countLoan(LongObjectMap<Integer> counts, long isbnKey) {
+        Integer count = counts.get(isbnKey);
+        counts.put(isbnKey, count == null ? 1 : count + 1);
     }
     
     // ==================== FEE MANAGEMENT ====================
@@ -737,6 +1488,125 @@ public class Library implements Serializable {
         return member.calculateTotalOverdueFees();
     }
     
+    /**
+     * Total overdue fees on all active loans.
+     * An O(1) read while the overdue sweeper is current, otherwise a scan of all members.
+     */
+    public double calculateOutstandingOverdueFees() {
+        if (overdueSweeper.isCurrent(LibraryClock.get().today())) {
+            return overdueSweeper.getOutstandingFees();
+        }
+        return members.values().stream()
+                .mapToDouble(Member::calculateCurrentOverdueFees)
+                .sum();
+    }
+    
+    /**
+     * Take a payment towards a member's fees; anything above what is owed is given back
+     */
+    public void payMemberFees(int memberId, double amount) {
+        findMemberById(memberId).payFees(amount);
+    }
+    
+    /**
+     * Waive part of a member's fees
+     * @return the amount waived, at most what the member owed
+     */
+    public double waiveMemberFees(int memberId, double amount) {
+        Member member = findMemberById(memberId);
+        if (amount <= 0) {
+            throw new IllegalArgumentException("Amount must be positive");
+        }
+        long waivedCents = feeLedger.waive(memberId, FeeAccrual.toCents(amount));
+        summaryCache.invalidate(memberId);
+        System.out.println("Waived " + FeeLedger.formatCents(waivedCents) + " for " + member.getName() + " " + member.getSurname());
+        return waivedCents / 100.0;
+    }
+    
+    /**
+     * Every charge and payment of a member, oldest first
+     */
+    public List<FeeLedger.Entry> getFeeStatement(int memberId) {
+        findMemberById(memberId);
+        return feeLedger.getEntries(memberId);
+    }
+    
+    /**
+     * Fees owed for returned books and plans by all members, an O(1) read of the ledger
+     */
+    public double getOutstandingFeeBalance() {
+        return feeLedger.getOutstandingCents() / 100.0;
+    }
+    
+    /**
+     * Everything members owe: the ledger balance plus overdue fees still growing on active loans
+     */
+    public double calculateTotalFeesDue() {
+        return getOutstandingFeeBalance() + calculateOutstandingOverdueFees();
+    }
+    
+    /**
+     * Replay the fee ledger and check it against the running balances, printing the result
+     */
+    public FeeLedger.Reconciliation reconcileFees() {
+        FeeLedger.Reconciliation reconciliation = feeLedger.reconcile();
+        System.out.println("Fee ledger: " + reconciliation);
+        for (String problem : reconciliation.getProblems()) {
+            System.out.println("  ⚠ " + problem);
+        }
+        return reconciliation;
+    }
+    
+    public FeeLedger getFeeLedger() {
+        return feeLedger;
+    }
+    
+    /**
+     * Start the daily overdue sweep at local midnight.
+     * Sweeps run on the given executor (e.g. Platform::runLater), or the sweeper thread if null.
+     */
+    public void startOverdueSweeper(java.util.concurrent.Executor executor) {
+        overdueSweeper.start(executor);
+    }
+    
+    /**
+     * Stop the daily overdue sweep
+     */
+    public void stopOverdueSweeper() {
+        overdueSweeper.stop();
+    }
+    
+    public OverdueSweeper getOverdueSweeper() {
+        return overdueSweeper;
+    }
+    
+    /**
+     * Queue today's due-soon reminders now and then every morning.
+     * Runs execute on the given executor (e.g. Platform::runLater), or the reminder thread if null.
+     */
+    public void startReminders(java.util.concurrent.Executor executor) {
+        reminders.start(executor);
+    }
+    
+    /**
+     * Stop the daily reminders
+     */
+    public void stopReminders() {
+        reminders.stop();
+    }
+    
+    /**
+     * Queue reminders for loans due in the next few days that were not reminded yet
+     * @return number of members reminded
+     */
+    public int sendDueReminders() {
+        return reminders.run(LibraryClock.get().today());
+    }
+    
+    public ReminderPipeline getReminderPipeline() {
+        return reminders;
+    }
+    
     /**
      * Get daily overdue fee rate
      */
@@ -843,6 +1713,86 @@ public class Library implements Serializable {
         System.out.println("========================================\n");
     }
     
+    /**
+     * The most borrowed titles of late, recent loans counting most. Titles no longer in
+     * the catalog are skipped, so fewer than k may be returned.
+     */
+    public List<Book> getTrendingBooks(int k) {
+        List<Book> trending = new ArrayList<>(k);
+        for (PopularityTracker.Trend trend : popularity.getTrending(popularity.getLeaderboardSize())) {
+            if (trending.size() >= k) {
+                break;
+            }
+            Book book = bookInventory.get(trend.getIsbnKey());
+            if (book != null) {
+                trending.add(book);
+            }
+        }
+        return trending;
+    }
+    
+    public PopularityTracker getPopularityTracker() {
+        return popularity;
+    }
+    
+    /**
+     * Titles borrowed by members who borrowed what this member borrowed, strongest first.
+     * The co-borrowing model is built from the loan history on first use.
+     */
+    public List<Book> getRecommendations(Member member, int k) {
+        return recommendations.recommendFor(member, k);
+    }
+    
+    /**
+     * Titles most often borrowed by members who also borrowed this one
+     */
+    public List<Book> getAlsoBorrowed(String isbn, int k) {
+        return recommendations.alsoBorrowed(Isbn.lookupKey(isbn), k);
+    }
+    
+    public RecommendationEngine getRecommendationEngine() {
+        return recommendations;
+    }
+    
+    /**
+     * Circulation statistics over the loan history and active loans.
+     * Cached until the next loan is issued or returned.
+     */
+    public CirculationStats getCirculationStats() {
+        return circulation.getStats();
+    }
+    
+    /**
+     * Display circulation statistics
+     */
+    public void displayCirculationStatistics() {
+        CirculationStats stats = getCirculationStats();
+        System.out.println("\n======== CIRCULATION STATISTICS ========");
+        System.out.println("Loans (past and active): " + stats.getTotalLoans());
+        System.out.println("Late returns: " + String.format("%.1f%%", stats.getLateReturnRate() * 100) +
+                " of " + stats.getReturnedLoans());
+        System.out.println("\nMost borrowed titles:");
+        int rank = 1;
+        for (CirculationStats.TitleCount title : stats.getMostBorrowed()) {
+            System.out.println("  " + rank++ + ". " + title.getTitle() + " - " + title.getLoans() + " loans");
+        }
+        System.out.println("\nAverage loan length by plan:");
+        for (MembershipPlan.PlanType plan : MembershipPlan.PlanType.values()) {
+            CirculationStats.PlanStats planStats = stats.getPlanStats(plan);
+            if (planStats.getReturnedLoans() > 0) {
+                System.out.println("  " + plan.getDisplayName() + ": " +
+                        String.format("%.1f days, %.1f%% late", planStats.getAverageLoanDays(),
+                                planStats.getLateReturnRate() * 100));
+            }
+        }
+        if (!stats.getBorrowingByThemePerMonth().isEmpty()) {
+            java.time.YearMonth month = stats.getBorrowingByThemePerMonth().lastKey();
+            System.out.println("\nBorrowing by theme in " + month + ": " +
+                    stats.getBorrowingByThemePerMonth().get(month));
+        }
+        System.out.println("========================================\n");
+    }
+    
     // ==================== GETTERS ====================
     
     public String getLibraryName() {
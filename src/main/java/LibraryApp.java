@@ -1,9 +1,11 @@
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.effect.DropShadow;
+import javafx.scene.input.InputEvent;
 import javafx.scene.layout.*;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Text;
@@ -19,7 +21,7 @@ public class LibraryApp extends Application {
     
     private Stage primaryStage;
     private Library library;
-    private User currentUser;
+    private SessionManager.Session session;     // This window's terminal session
     
     // Screen dimensions
     private static final double WINDOW_WIDTH = 1200;
@@ -54,6 +56,30 @@ public class LibraryApp extends Application {
         if (library.getTotalMembers() == 0) {
             createSampleData();
         }
+        
+        // Materialize overdue fees nightly; sweeps run on the FX thread alongside UI edits
+        library.startOverdueSweeper(Platform::runLater);
+        
+        // Queue due-soon reminders every morning for the mail relay
+        library.startReminders(Platform::runLater);
+        
+        // Idle sessions expire on the ticker thread; bounce this window back to login
+        SessionManager sessions = library.getSessionManager();
+        sessions.addExpiryListener(expired -> Platform.runLater(() -> {
+            if (expired == session) {
+                session = null;
+                library.saveAllData();
+                showLoginScreen();
+            }
+        }));
+        sessions.start();
+    }
+    
+    @Override
+    public void stop() {
+        library.stopOverdueSweeper();
+        library.stopReminders();
+        library.getSessionManager().stop();
     }
     
     /**
@@ -111,14 +137,27 @@ public class LibraryApp extends Application {
         primaryStage.setScene(loginScene);
     }
     
+    /**
+     * Start a session after login and open the matching dashboard
+     */
+    public void startSession(SessionManager.Session newSession) {
+        this.session = newSession;
+        User user = newSession.getUser();
+        if (user instanceof Librarian) {
+            showLibrarianDashboard((Librarian) user);
+        } else if (user instanceof Member) {
+            showMemberDashboard((Member) user);
+        }
+    }
+    
     /**
      * Navigate to Member Dashboard
      */
     public void showMemberDashboard(Member member) {
-        this.currentUser = member;
         MemberDashboard dashboard = new MemberDashboard(this, library, member);
         Scene dashboardScene = new Scene(dashboard.getView(), WINDOW_WIDTH, WINDOW_HEIGHT);
         dashboardScene.getStylesheets().add(getClass().getResource("/styles.css").toExternalForm());
+        dashboardScene.addEventFilter(InputEvent.ANY, e -> touchSession());
         primaryStage.setScene(dashboardScene);
     }
     
@@ -126,20 +165,29 @@ public class LibraryApp extends Application {
      * Navigate to Librarian Dashboard
      */
     public void showLibrarianDashboard(Librarian librarian) {
-        this.currentUser = librarian;
         LibrarianDashboard dashboard = new LibrarianDashboard(this, library, librarian);
         Scene dashboardScene = new Scene(dashboard.getView(), WINDOW_WIDTH, WINDOW_HEIGHT);
         dashboardScene.getStylesheets().add(getClass().getResource("/styles.css").toExternalForm());
+        dashboardScene.addEventFilter(InputEvent.ANY, e -> touchSession());
         primaryStage.setScene(dashboardScene);
     }
     
+    /**
+     * Keep this window's session alive while the user is active
+     */
+    private void touchSession() {
+        if (session != null) {
+            library.getSession(session.getToken());
+        }
+    }
+    
     /**
      * Logout and return to login screen
      */
     public void logout() {
-        if (currentUser != null) {
-            currentUser.logout();
-            currentUser = null;
+        if (session != null) {
+            library.logout(session.getToken());
+            session = null;
         }
         library.saveAllData();
         showLoginScreen();
@@ -0,0 +1,126 @@
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * LibraryClock class is the library's source of "today".
+ * Caches the current epoch-day and only recomputes it once the wall clock passes the
+ * next local midnight, so date checks on millions of loans cost a millisecond read and
+ * a comparison instead of a time-zone conversion each.
+ * The clock is injectable: tests and benchmarks can pin the library to a fixed date.
+ */
+public final class LibraryClock {
+
+    private static volatile LibraryClock current = system();
+
+    // Attributes
+    private final Clock clock;
+    private volatile long cachedEpochDay;
+    private volatile long nextRolloverMillis;     // Start of the next local day, in epoch millis
+
+    // Constructors
+
+    private LibraryClock(Clock clock) {
+        this.clock = clock;
+        this.nextRolloverMillis = Long.MIN_VALUE;
+    }
+
+    // ==================== FACTORIES ====================
+
+    /**
+     * Clock following the system time in the default time zone
+     */
+    public static LibraryClock system() {
+        return new LibraryClock(Clock.systemDefaultZone());
+    }
+
+    /**
+     * Clock pinned to the start of the given date (for tests and benchmarks)
+     */
+    public static LibraryClock fixed(LocalDate date) {
+        ZoneId zone = ZoneId.systemDefault();
+        return new LibraryClock(Clock.fixed(date.atStartOfDay(zone).toInstant(), zone));
+    }
+
+    /**
+     * Clock backed by any java.time.Clock
+     */
+    public static LibraryClock of(Clock clock) {
+        if (clock == null) {
+            throw new IllegalArgumentException("Clock cannot be null");
+        }
+        return new LibraryClock(clock);
+    }
+
+    // ==================== GLOBAL INSTANCE ====================
+
+    /**
+     * Get the clock used by the library
+     */
+    public static LibraryClock get() {
+        return current;
+    }
+
+    /**
+     * Replace the clock used by the library
+     */
+    public static void set(LibraryClock clock) {
+        if (clock == null) {
+            throw new IllegalArgumentException("Clock cannot be null");
+        }
+        current = clock;
+    }
+
+    /**
+     * Go back to the system clock
+     */
+    public static void reset() {
+        current = system();
+    }
+
+    // ==================== TIME QUERIES ====================
+
+    /**
+     * Current day as days since 1970-01-01
+     */
+    public long todayEpochDay() {
+        long nowMillis = clock.millis();
+        if (nowMillis >= nextRolloverMillis) {
+            refresh(nowMillis);
+        }
+        return cachedEpochDay;
+    }
+
+    /**
+     * Current day as a LocalDate
+     */
+    public LocalDate today() {
+        return LocalDate.ofEpochDay(todayEpochDay());
+    }
+
+    /**
+     * The underlying java.time.Clock (e.g. for LocalDateTime.now(clock))
+     */
+    public Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * Recompute the cached day and the instant of the next rollover
+     */
+    private synchronized void refresh(long nowMillis) {
+        if (nowMillis < nextRolloverMillis) {
+            return; // Another thread already refreshed
+        }
+        ZoneId zone = clock.getZone();
+        LocalDate today = Instant.ofEpochMilli(nowMillis).atZone(zone).toLocalDate();
+        cachedEpochDay = today.toEpochDay();
+        nextRolloverMillis = today.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    @Override
+    public String toString() {
+        return "LibraryClock{today=" + today() + ", zone=" + clock.getZone() + "}";
+    }
+}
@@ -0,0 +1,409 @@
+import java.io.File;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+/**
+ * LibraryNetwork class federates the branches of a library network.
+ * Each branch is its own Library partition (shard) with its own data directory,
+ * run by its own LibraryService thread, so branches never contend with each other.
+ * Catalog searches fan out to every branch in parallel and are merged by ISBN;
+ * loans are routed to the member's home branch.
+ *
+ * Member IDs are expected to be unique across the network.
+ */
+public class LibraryNetwork {
+
+    /**
+     * One title in the network catalog with its copies at each branch.
+     * Built from snapshots, so it is safe to read on any thread.
+     */
+    public static class CatalogEntry {
+        private final String isbn;
+        private final String title;
+        private final String author;
+        private final Book.BookTheme theme;
+        private final Map<String, Integer> availableByBranch;   // Branch -> available copies
+        private int totalCopies;
+        private int availableCopies;
+
+        private CatalogEntry(BranchCopy copy) {
+            this.isbn = copy.isbn;
+            this.title = copy.title;
+            this.author = copy.author;
+            this.theme = copy.theme;
+            this.availableByBranch = new LinkedHashMap<>();
+        }
+
+        private void addBranch(String branch, int total, int available) {
+            availableByBranch.merge(branch, available, Integer::sum);
+            totalCopies += total;
+            availableCopies += available;
+        }
+
+        public String getIsbn() {
+            return isbn;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getAuthor() {
+            return author;
+        }
+
+        public Book.BookTheme getTheme() {
+            return theme;
+        }
+
+        public int getTotalCopies() {
+            return totalCopies;
+        }
+
+        public int getAvailableCopies() {
+            return availableCopies;
+        }
+
+        public Map<String, Integer> getAvailableByBranch() {
+            return Collections.unmodifiableMap(availableByBranch);
+        }
+
+        @Override
+        public String toString() {
+            return title + " by " + author + " (" + isbn + ") - " + availableCopies + "/" + totalCopies +
+                   " available " + availableByBranch;
+        }
+    }
+
+    /**
+     * Details and copy counts of one book at one branch, copied on that branch's thread
+     * (the Book itself is never read from another thread)
+     */
+    private static class BranchCopy {
+        private final long isbnKey;
+        private final String isbn;
+        private final String title;
+        private final String author;
+        private final Book.BookTheme theme;
+        private final int total;
+        private final int available;
+
+        private BranchCopy(Book book) {
+            this.isbnKey = book.getIsbnKey();
+            this.isbn = book.getIsbn();
+            this.title = book.getTitle();
+            this.author = book.getAuthor();
+            this.theme = book.getTheme();
+            this.total = book.getTotalCopies();
+            this.available = book.getAvailableCopies();
+        }
+    }
+
+    // Attributes
+    private final String rootDirectory;
+    private final Map<String, LibraryService> branches;
+    private final List<String> branchOrder;
+    private final Map<Integer, String> homeBranchByMember;     // Routing table
+
+    // Constructors
+
+    public LibraryNetwork(String rootDirectory) {
+        if (rootDirectory == null || rootDirectory.trim().isEmpty()) {
+            throw new IllegalArgumentException("Root directory cannot be empty");
+        }
+        this.rootDirectory = rootDirectory;
+        this.branches = new ConcurrentHashMap<>();
+        this.branchOrder = new CopyOnWriteArrayList<>();
+        this.homeBranchByMember = new ConcurrentHashMap<>();
+    }
+
+    // ==================== BRANCHES ====================
+
+    /**
+     * Open a branch stored under the root directory, loading its saved data if any
+     */
+    public LibraryService addBranch(String branchName) {
+        String directory = new File(rootDirectory, directoryNameFor(branchName)).getPath();
+        Library library = new Library(branchName, directory);
+        library.loadAllData();
+        return addBranch(library);
+    }
+
+    /**
+     * Add an existing library as a branch. It must not be used directly afterwards:
+     * all access goes through the returned service.
+     */
+    public synchronized LibraryService addBranch(Library library) {
+        String branchName = library.getLibraryName();
+        if (branches.containsKey(branchName)) {
+            throw new IllegalStateException("Branch already exists: " + branchName);
+        }
+        LibraryService service = new LibraryService(library);
+        for (Member member : library.getAllMembers()) {
+            registerMember(branchName, member.getId());
+        }
+        branches.put(branchName, service);
+        branchOrder.add(branchName);
+        System.out.println("Branch added: " + branchName + " (" + library.getDataDirectory() + ")");
+        return service;
+    }
+
+    /**
+     * Open every branch directory found under the root directory
+     */
+    public void loadBranches() {
+        File[] directories = new File(rootDirectory).listFiles(File::isDirectory);
+        if (directories == null) {
+            System.out.println("No branches found in " + rootDirectory);
+            return;
+        }
+        Arrays.sort(directories);
+        for (File directory : directories) {
+            addBranch(directory.getName());
+        }
+    }
+
+    private static String directoryNameFor(String branchName) {
+        if (branchName == null || branchName.trim().isEmpty()) {
+            throw new IllegalArgumentException("Branch name cannot be empty");
+        }
+        return branchName.trim().replaceAll("[^A-Za-z0-9._-]+", "_");
+    }
+
+    public LibraryService getBranch(String branchName) {
+        LibraryService service = branches.get(branchName);
+        if (service == null) {
+            throw new NoSuchElementException("No branch named: " + branchName);
+        }
+        return service;
+    }
+
+    public List<String> getBranchNames() {
+        return Collections.unmodifiableList(branchOrder);
+    }
+
+    public int getBranchCount() {
+        return branchOrder.size();
+    }
+
+    /**
+     * Start background jobs on every branch
+     */
+    public void start() {
+        for (String branch : branchOrder) {
+            branches.get(branch).start();
+        }
+    }
+
+    /**
+     * Save and stop every branch
+     */
+    public void stop() {
+        for (String branch : branchOrder) {
+            branches.get(branch).stop();
+        }
+    }
+
+    /**
+     * Save every branch to its own directory, all in parallel
+     */
+    public void saveAll() {
+        List<CompletableFuture<Void>> saves = new ArrayList<>();
+        for (String branch : branchOrder) {
+            saves.add(branches.get(branch).save());
+        }
+        join(CompletableFuture.allOf(saves.toArray(new CompletableFuture<?>[0])));
+    }
+
+    // ==================== MEMBERS & ROUTING ====================
+
+    /**
+     * Register a new member at their home branch
+     */
+    public void addMember(String branchName, Member member) {
+        if (member == null) {
+            throw new IllegalArgumentException("Member cannot be null");
+        }
+        LibraryService service = getBranch(branchName);
+        join(service.call(lib -> {
+            lib.addMember(member);
+            return null;
+        }));
+        registerMember(branchName, member.getId());
+    }
+
+    private void registerMember(String branchName, int memberId) {
+        String previous = homeBranchByMember.putIfAbsent(memberId, branchName);
+        if (previous != null && !previous.equals(branchName)) {
+            System.err.println("Warning: member ID " + memberId + " exists at both " + previous +
+                               " and " + branchName + "; routing to " + previous);
+        }
+    }
+
+    /**
+     * The branch that owns a member's account and loans.
+     * Members added to a branch directly are found by asking every branch once.
+     */
+    public String getHomeBranch(int memberId) {
+        String branch = homeBranchByMember.get(memberId);
+        if (branch != null) {
+            return branch;
+        }
+        Map<String, Boolean> found = fanOut(lib -> {
+            try {
+                lib.findMemberById(memberId);
+                return true;
+            } catch (NoSuchElementException e) {
+                return false;
+            }
+        });
+        for (Map.Entry<String, Boolean> entry : found.entrySet()) {
+            if (Boolean.TRUE.equals(entry.getValue())) {
+                registerMember(entry.getKey(), memberId);
+                return homeBranchByMember.get(memberId);
+            }
+        }
+        throw new NoSuchElementException("No member found with ID: " + memberId);
+    }
+
+    // ==================== LOANS ====================
+
+    /**
+     * Issue a loan at the member's home branch
+     * @return the due date
+     */
+    public LocalDate issueLoan(int memberId, String isbn) {
+        return join(getBranch(getHomeBranch(memberId)).call(lib -> lib.issueLoan(memberId, isbn).getDueDate()));
+    }
+
+    /**
+     * Return a book at the member's home branch
+     */
+    public void returnBook(int memberId, String isbn) {
+        join(getBranch(getHomeBranch(memberId)).call(lib -> {
+            lib.returnBook(memberId, isbn);
+            return null;
+        }));
+    }
+
+    // ==================== FEDERATED SEARCH ====================
+
+    /**
+     * Search titles across all branches (partial match, case-insensitive)
+     */
+    public List<CatalogEntry> searchBooksByTitle(String title) {
+        return search(lib -> lib.searchBooksByTitle(title));
+    }
+
+    /**
+     * Search authors across all branches (partial match, case-insensitive)
+     */
+    public List<CatalogEntry> searchBooksByAuthor(String author) {
+        return search(lib -> lib.searchBooksByAuthor(author));
+    }
+
+    /**
+     * Search a theme across all branches
+     */
+    public List<CatalogEntry> searchBooksByTheme(String theme) {
+        return search(lib -> lib.searchBooksByTheme(theme));
+    }
+
+    /**
+     * Search titles and authors across all branches
+     */
+    public List<CatalogEntry> searchBooks(String query) {
+        return search(lib -> lib.searchBooks(query));
+    }
+
+    /**
+     * Run a branch search on every branch in parallel and merge the hits by ISBN,
+     * sorted by title. A branch that fails is left out rather than failing the search.
+     */
+    public List<CatalogEntry> search(Function<Library, List<Book>> branchSearch) {
+        Map<String, List<BranchCopy>> perBranch = fanOut(lib -> {
+            List<BranchCopy> copies = new ArrayList<>();
+            for (Book book : branchSearch.apply(lib)) {
+                copies.add(new BranchCopy(book));
+            }
+            return copies;
+        });
+
+        LongObjectMap<CatalogEntry> merged = new LongObjectMap<>();
+        for (Map.Entry<String, List<BranchCopy>> branch : perBranch.entrySet()) {
+            if (branch.getValue() == null) {
+                continue;
+            }
+            for (BranchCopy copy : branch.getValue()) {
+                CatalogEntry entry = merged.get(copy.isbnKey);
+                if (entry == null) {
+                    entry = new CatalogEntry(copy);
+                    merged.put(copy.isbnKey, entry);
+                }
+                entry.addBranch(branch.getKey(), copy.total, copy.available);
+            }
+        }
+        List<CatalogEntry> results = new ArrayList<>(merged.values());
+        results.sort(Comparator.comparing(CatalogEntry::getTitle, String.CASE_INSENSITIVE_ORDER)
+                .thenComparing(CatalogEntry::getIsbn));
+        return results;
+    }
+
+    /**
+     * Run a function on every branch's own thread at once.
+     * @return branch name -> result, in branch order, with null for branches that failed
+     */
+    private <T> Map<String, T> fanOut(Function<Library, T> action) {
+        Map<String, CompletableFuture<T>> futures = new LinkedHashMap<>();
+        for (String name : branchOrder) {
+            futures.put(name, branches.get(name).call(action).exceptionally(error -> {
+                System.err.println("Branch " + name + " failed: " + unwrap(error).getMessage());
+                return null;
+            }));
+        }
+        Map<String, T> results = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<T>> future : futures.entrySet()) {
+            results.put(future.getKey(), future.getValue().join());
+        }
+        return results;
+    }
+
+    /**
+     * Wait for a branch call and rethrow its exception as the Library would have
+     */
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = unwrap(e);
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return "LibraryNetwork{root=" + rootDirectory + ", branches=" + branchOrder + "}";
+    }
+}
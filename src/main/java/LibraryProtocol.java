@@ -0,0 +1,259 @@
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * LibraryProtocol class executes one request of the terminal protocol against a Library.
+ *
+ * Requests and responses are single lines of TAB-separated fields:
+ *   request:  COMMAND \t arg1 \t arg2 ...
+ *   response: OK \t field ...   or   ERR \t message
+ * List responses carry one record per field, with the record's own fields separated by '|'.
+ *
+ * Commands:
+ *   PING
+ *   LOGIN    email password                  -> OK token role userId
+ *   LOGOUT   token
+ *   SEARCH   token query                     -> OK count isbn|title|author|available|total ...
+ *   BOOK     token isbn                      -> OK isbn|title|author|available|total
+ *   ISSUE    token memberId isbn             -> OK dueDate
+ *   RETURN   token memberId isbn
+ *   LOANS    token memberId                  -> OK count isbn|title|dueDate|overdue ...
+ *   REPORT   token stats|overdue|fees|members
+ *
+ * Members may only issue, return and list loans for themselves; librarians for anyone.
+ * Not thread-safe: LibraryService runs every request on the thread that owns the Library.
+ */
+public class LibraryProtocol {
+
+    public static final String OK = "OK";
+    public static final String ERR = "ERR";
+    public static final char FIELD_SEPARATOR = '\t';
+    public static final char RECORD_SEPARATOR = '|';
+
+    private static final int MAX_SEARCH_RESULTS = 50;
+
+    // Attributes
+    private final Library library;
+
+    // Constructors
+
+    public LibraryProtocol(Library library) {
+        if (library == null) {
+            throw new IllegalArgumentException("Library cannot be null");
+        }
+        this.library = library;
+    }
+
+    // ==================== REQUEST HANDLING ====================
+
+    /**
+     * Execute one request line and build its response line (without the newline)
+     */
+    public String handle(String line) {
+        String[] args = line.split(String.valueOf(FIELD_SEPARATOR), -1);
+        String command = commandOf(line);
+        try {
+            switch (command) {
+                case "PING":
+                    return OK + FIELD_SEPARATOR + "PONG";
+                case "LOGIN":
+                    return login(args);
+                case "LOGOUT":
+                    requireArgs(args, 2);
+                    library.logout(args[1]);
+                    return OK;
+                case "SEARCH":
+                    return search(args);
+                case "BOOK":
+                    requireArgs(args, 3);
+                    requireSession(args[1]);
+                    return OK + FIELD_SEPARATOR + formatBook(library.findBookByISBN(args[2]));
+                case "ISSUE":
+                    return issue(args);
+                case "RETURN":
+                    return returnBook(args);
+                case "LOANS":
+                    return loans(args);
+                case "REPORT":
+                    return report(args);
+                default:
+                    return error("Unknown command: " + command);
+            }
+        } catch (IllegalArgumentException | IllegalStateException | NoSuchElementException e) {
+            return error(e.getMessage());
+        } catch (SecurityException e) {
+            return error("Access denied: " + e.getMessage());
+        }
+    }
+
+    private String login(String[] args) {
+        requireArgs(args, 3);
+        return loginResponse(library.openSession(args[1], args[2]));
+    }
+
+    /**
+     * Response to LOGIN for a session, or an error if authentication failed
+     */
+    public static String loginResponse(SessionManager.Session session) {
+        if (session == null) {
+            return error("Invalid email or password");
+        }
+        return join(OK, session.getToken(), session.getRole().name(), String.valueOf(session.getUserId()));
+    }
+
+    /**
+     * Command name of a request line, upper-cased
+     */
+    public static String commandOf(String line) {
+        int end = line.indexOf(FIELD_SEPARATOR);
+        return (end < 0 ? line : line.substring(0, end)).trim().toUpperCase();
+    }
+
+    /**
+     * Check if a command changes library data that must be saved
+     */
+    public static boolean isMutating(String command) {
+        return command.equals("ISSUE") || command.equals("RETURN");
+    }
+
+    private String search(String[] args) {
+        requireArgs(args, 3);
+        requireSession(args[1]);
+        List<Book> books = args[2].isEmpty() ? library.getAllBooks() : library.searchBooks(args[2]);
+        StringBuilder response = new StringBuilder(OK).append(FIELD_SEPARATOR).append(books.size());
+        int limit = Math.min(books.size(), MAX_SEARCH_RESULTS);
+        for (int i = 0; i < limit; i++) {
+            response.append(FIELD_SEPARATOR).append(formatBook(books.get(i)));
+        }
+        return response.toString();
+    }
+
+    private String issue(String[] args) {
+        requireArgs(args, 4);
+        int memberId = parseId(args[2]);
+        requireAccessTo(args[1], memberId);
+        Loan loan = library.issueLoan(memberId, args[3]);
+        return join(OK, loan.getDueDate().toString());
+    }
+
+    private String returnBook(String[] args) {
+        requireArgs(args, 4);
+        int memberId = parseId(args[2]);
+        requireAccessTo(args[1], memberId);
+        library.returnBook(memberId, args[3]);
+        return OK;
+    }
+
+    private String loans(String[] args) {
+        requireArgs(args, 3);
+        int memberId = parseId(args[2]);
+        requireAccessTo(args[1], memberId);
+        List<Loan> loans = library.getActiveLoansByMember(memberId);
+        StringBuilder response = new StringBuilder(OK).append(FIELD_SEPARATOR).append(loans.size());
+        for (Loan loan : loans) {
+            response.append(FIELD_SEPARATOR)
+                    .append(loan.getBook().getIsbn()).append(RECORD_SEPARATOR)
+                    .append(clean(loan.getBook().getTitle())).append(RECORD_SEPARATOR)
+                    .append(loan.getDueDate()).append(RECORD_SEPARATOR)
+                    .append(loan.isOverdue());
+        }
+        return response.toString();
+    }
+
+    private String report(String[] args) {
+        requireArgs(args, 3);
+        SessionManager.Session session = requireSession(args[1]);
+        if (!session.isLibrarian()) {
+            throw new SecurityException("reports are for librarians");
+        }
+        switch (args[2].trim().toLowerCase()) {
+            case "stats":
+                return join(OK, "books=" + library.getTotalBooks(), "members=" + library.getTotalMembers(),
+                        "activeLoans=" + library.getActiveLoansCount(),
+                        "overdueLoans=" + library.getOverdueLoans().size(),
+                        "sessions=" + library.getSessionManager().getSessionCount(),
+                        "summaryHits=" + library.getMemberSummaryCache().getHits(),
+                        "summaryMisses=" + library.getMemberSummaryCache().getMisses());
+            case "overdue": {
+                List<Loan> overdue = library.getOverdueLoans();
+                StringBuilder response = new StringBuilder(OK).append(FIELD_SEPARATOR).append(overdue.size());
+                for (Loan loan : overdue) {
+                    response.append(FIELD_SEPARATOR)
+                            .append(loan.getMember().getId()).append(RECORD_SEPARATOR)
+                            .append(loan.getBook().getIsbn()).append(RECORD_SEPARATOR)
+                            .append(loan.getDueDate()).append(RECORD_SEPARATOR)
+                            .append(loan.getDaysOverdue());
+                }
+                return response.toString();
+            }
+            case "fees":
+                return join(OK, String.format("%.2f", library.calculateOutstandingOverdueFees()));
+            case "members": {
+                StringBuilder response = new StringBuilder(OK).append(FIELD_SEPARATOR)
+                        .append(library.getTotalMembers());
+                for (Member member : library.getAllMembers()) {
+                    response.append(FIELD_SEPARATOR).append(member.getId());
+                }
+                return response.toString();
+            }
+            default:
+                return error("Unknown report: " + args[2]);
+        }
+    }
+
+    // ==================== HELPERS ====================
+
+    private SessionManager.Session requireSession(String token) {
+        SessionManager.Session session = library.getSession(token);
+        if (session == null) {
+            throw new SecurityException("not logged in or session expired");
+        }
+        return session;
+    }
+
+    /**
+     * Librarians may act for any member; members only for themselves
+     */
+    private void requireAccessTo(String token, int memberId) {
+        SessionManager.Session session = requireSession(token);
+        if (!session.isLibrarian() && session.getUserId() != memberId) {
+            throw new SecurityException("members can only act on their own account");
+        }
+    }
+
+    private static void requireArgs(String[] args, int count) {
+        if (args.length < count) {
+            throw new IllegalArgumentException(args[0] + " expects " + (count - 1) + " argument(s)");
+        }
+    }
+
+    private static int parseId(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid member ID: " + value);
+        }
+    }
+
+    private static String formatBook(Book book) {
+        return book.getIsbn() + RECORD_SEPARATOR + clean(book.getTitle()) + RECORD_SEPARATOR +
+               clean(book.getAuthor()) + RECORD_SEPARATOR + book.getAvailableCopies() +
+               RECORD_SEPARATOR + book.getTotalCopies();
+    }
+
+    /**
+     * Keep separators and line breaks out of free-text fields
+     */
+    private static String clean(String text) {
+        return text.replace(FIELD_SEPARATOR, ' ').replace(RECORD_SEPARATOR, '/')
+                   .replace('\n', ' ').replace('\r', ' ');
+    }
+
+    private static String join(String... fields) {
+        return String.join(String.valueOf(FIELD_SEPARATOR), fields);
+    }
+
+    public static String error(String message) {
+        return ERR + FIELD_SEPARATOR + clean(message != null ? message : "Unexpected error");
+    }
+}
@@ -0,0 +1,348 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+/**
+ * LibraryServer - Headless multi-terminal server for one in-memory Library.
+ * Checkout desks and self-service kiosks connect over TCP and speak LibraryProtocol,
+ * one request per line. A single NIO selector thread handles every connection;
+ * complete request lines go to a LibraryService, which runs them on the thread that
+ * owns the Library and hashes logins on a separate pool. Requests from different
+ * connections overlap; each connection gets its responses in request order.
+ * LOGIN sends passwords in clear text, so the server only listens on the loopback
+ * interface unless another bind address is given explicitly.
+ *
+ * Usage: java LibraryServer [port] [--bind address] [--quiet]
+ */
+public class LibraryServer {
+
+    public static final int DEFAULT_PORT = 7070;
+    private static final int READ_BUFFER_BYTES = 8 * 1024;
+    private static final int MAX_LINE_BYTES = 8 * 1024;
+
+    /**
+     * Per-connection buffers
+     */
+    private static class Connection {
+        private final SocketChannel channel;
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+        private final Queue<ByteBuffer> pendingWrites = new ArrayDeque<>();   // Selector thread only
+        private byte[] partialLine = new byte[0];
+        private boolean discardingLine;             // Skipping the rest of an over-long line
+        private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);  // Selector thread only
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * A response produced by the service, waiting for the selector thread to queue it
+     */
+    private static class Reply {
+        private final Connection connection;
+        private final ByteBuffer data;
+
+        private Reply(Connection connection, ByteBuffer data) {
+            this.connection = connection;
+            this.data = data;
+        }
+    }
+
+    // Attributes
+    private final LibraryService service;
+    private final InetAddress bindAddress;
+    private final int port;
+    private final Queue<Reply> replies;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread selectorThread;
+    private volatile boolean running;
+
+    // Constructors
+
+    /**
+     * Server listening on the loopback interface only
+     */
+    public LibraryServer(Library library, int port) {
+        this(library, InetAddress.getLoopbackAddress(), port);
+    }
+
+    /**
+     * Server listening on the given address (e.g. 0.0.0.0 for every interface)
+     */
+    public LibraryServer(Library library, InetAddress bindAddress, int port) {
+        if (library == null) {
+            throw new IllegalArgumentException("Library cannot be null");
+        }
+        if (bindAddress == null) {
+            throw new IllegalArgumentException("Bind address cannot be null");
+        }
+        this.service = new LibraryService(library);
+        this.bindAddress = bindAddress;
+        this.port = port;
+        this.replies = new ConcurrentLinkedQueue<>();
+    }
+
+    // ==================== LIFECYCLE ====================
+
+    /**
+     * Bind the port and start serving
+     */
+    public void start() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(bindAddress, port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+
+        service.start();
+
+        selectorThread = new Thread(this::selectLoop, "library-server");
+        selectorThread.start();
+        System.out.println("Library server listening on " + bindAddress.getHostAddress() + ":" + getPort());
+        if (!bindAddress.isLoopbackAddress()) {
+            System.out.println("Warning: LOGIN passwords travel unencrypted; expose the server on trusted networks only.");
+        }
+    }
+
+    /**
+     * Stop accepting requests, finish queued ones and save the library
+     */
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        service.stop();
+        System.out.println("Library server stopped after " + getRequestsServed() + " requests.");
+    }
+
+    public int getPort() {
+        return serverChannel != null ? serverChannel.socket().getLocalPort() : port;
+    }
+
+    public long getRequestsServed() {
+        return service.getRequestsServed();
+    }
+
+    public LibraryService getService() {
+        return service;
+    }
+
+    // ==================== SELECTOR LOOP ====================
+
+    private void selectLoop() {
+        try {
+            while (running) {
+                selector.select();
+                drainReplies();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            if (key.isReadable()) {
+                                read(key);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                write(key);
+                            }
+                        }
+                    } catch (IOException e) {
+                        closeConnection(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Server error: " + e.getMessage());
+        } finally {
+            try {
+                for (SelectionKey key : selector.keys()) {
+                    key.channel().close();
+                }
+                selector.close();
+            } catch (IOException e) {
+                System.err.println("Error closing server: " + e.getMessage());
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(java.net.StandardSocketOptions.TCP_NODELAY, true);
+        channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+    }
+
+    /**
+     * Read what is available and hand every complete line to the service.
+     * Lines longer than MAX_LINE_BYTES are dropped and answered with an error.
+     */
+    private void read(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        ByteBuffer buffer = connection.readBuffer;
+        int read = connection.channel.read(buffer);
+        if (read < 0) {
+            closeConnection(key);
+            return;
+        }
+        buffer.flip();
+        int lineStart = buffer.position();
+        for (int i = buffer.position(); i < buffer.limit(); i++) {
+            if (buffer.get(i) == '\n') {
+                if (connection.discardingLine || connection.partialLine.length + (i - lineStart) > MAX_LINE_BYTES) {
+                    respond(connection, () -> CompletableFuture.completedFuture(
+                            LibraryProtocol.error("Request line too long")));
+                } else {
+                    dispatch(connection, concat(connection.partialLine, buffer, lineStart, i));
+                }
+                connection.partialLine = new byte[0];
+                connection.discardingLine = false;
+                lineStart = i + 1;
+            }
+        }
+        // Keep an unfinished line for the next read, unless it is already too long
+        if (lineStart < buffer.limit() && !connection.discardingLine) {
+            byte[] rest = concat(connection.partialLine, buffer, lineStart, buffer.limit());
+            if (rest.length > MAX_LINE_BYTES) {
+                connection.discardingLine = true;
+                rest = new byte[0];
+            }
+            connection.partialLine = rest;
+        }
+        buffer.clear();
+    }
+
+    private static byte[] concat(byte[] prefix, ByteBuffer buffer, int from, int to) {
+        byte[] line = new byte[prefix.length + (to - from)];
+        System.arraycopy(prefix, 0, line, 0, prefix.length);
+        for (int i = from; i < to; i++) {
+            line[prefix.length + i - from] = buffer.get(i);
+        }
+        return line;
+    }
+
+    private void dispatch(Connection connection, byte[] lineBytes) {
+        int length = lineBytes.length;
+        if (length > 0 && lineBytes[length - 1] == '\r') {
+            length--;
+        }
+        String line = new String(lineBytes, 0, length, StandardCharsets.UTF_8);
+        if (line.isBlank()) {
+            return;
+        }
+        respond(connection, () -> service.handle(line));
+    }
+
+    /**
+     * Chain a reply onto the connection's previous request so replies keep their order
+     */
+    private void respond(Connection connection, Supplier<CompletableFuture<String>> response) {
+        connection.tail = connection.tail
+                .thenCompose(ignored -> response.get())
+                .thenAccept(reply -> queueReply(connection, reply));
+    }
+
+    /**
+     * Called from any thread; the selector thread picks the reply up after wakeup()
+     */
+    private void queueReply(Connection connection, String response) {
+        byte[] bytes = (response + "\n").getBytes(StandardCharsets.UTF_8);
+        replies.add(new Reply(connection, ByteBuffer.wrap(bytes)));
+        selector.wakeup();
+    }
+
+    private void drainReplies() {
+        Reply reply;
+        while ((reply = replies.poll()) != null) {
+            SelectionKey key = reply.connection.channel.keyFor(selector);
+            if (key == null || !key.isValid()) {
+                continue;   // Client went away
+            }
+            reply.connection.pendingWrites.add(reply.data);
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        Queue<ByteBuffer> pending = connection.pendingWrites;
+        while (!pending.isEmpty()) {
+            ByteBuffer data = pending.peek();
+            connection.channel.write(data);
+            if (data.hasRemaining()) {
+                return;     // Socket buffer full; wait for the next OP_WRITE
+            }
+            pending.poll();
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void closeConnection(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    // ==================== ENTRY POINT ====================
+
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        InetAddress bindAddress = InetAddress.getLoopbackAddress();
+        boolean quiet = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--quiet")) {
+                quiet = true;
+            } else if (args[i].equals("--bind") && i + 1 < args.length) {
+                bindAddress = InetAddress.getByName(args[++i]);
+            } else {
+                port = Integer.parseInt(args[i]);
+            }
+        }
+
+        Library library = new Library();
+        library.loadAllData();
+        LibraryServer server = new LibraryServer(library, bindAddress, port);
+        server.start();
+
+        if (quiet) {
+            // Library logs every operation to stdout; silence it under load
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "library-server-shutdown"));
+    }
+}
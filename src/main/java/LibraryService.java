@@ -0,0 +1,371 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * LibraryService class is the asynchronous front of one Library for servers and terminals.
+ * Every request is a CompletableFuture, and the work is split by what it waits on:
+ *   - library thread: the single thread that owns the Library (which is not thread-safe)
+ *   - CPU pool:       password hashing, one thread per core, off the library thread
+ *   - I/O pool:       writing snapshots to disk, at most one write at a time
+ * A slow login or a save therefore never holds up searches and checkouts.
+ */
+public class LibraryService {
+
+    private static final long SAVE_INTERVAL_SECONDS = 30;
+
+    /**
+     * Everything a terminal needs right after login
+     */
+    public static class LoginResult {
+        private final SessionManager.Session session;
+        private final MemberSummary summary;     // null for librarians
+        private final int availableTitles;
+
+        private LoginResult(SessionManager.Session session, MemberSummary summary, int availableTitles) {
+            this.session = session;
+            this.summary = summary;
+            this.availableTitles = availableTitles;
+        }
+
+        public SessionManager.Session getSession() {
+            return session;
+        }
+
+        public MemberSummary getSummary() {
+            return summary;
+        }
+
+        public int getAvailableTitles() {
+            return availableTitles;
+        }
+    }
+
+    /**
+     * Serialized library data, numbered in the order it was taken
+     */
+    private static class Snapshot {
+        private final long sequence;
+        private final Map<String, byte[]> files;
+
+        private Snapshot(long sequence, Map<String, byte[]> files) {
+            this.sequence = sequence;
+            this.files = files;
+        }
+    }
+
+    /**
+     * A user and the credential read for it on the library thread, plus the credential
+     * to keep once the password checked out
+     */
+    private static class LoginAttempt {
+        private final User user;
+        private final PasswordCredential stored;
+        private final String legacyHash;
+        private final PasswordCredential verified;
+
+        private LoginAttempt(User user) {
+            this(user, user.getCredential(), user.getLegacyPasswordHash(), null);
+        }
+
+        private LoginAttempt(User user, PasswordCredential stored, String legacyHash, PasswordCredential verified) {
+            this.user = user;
+            this.stored = stored;
+            this.legacyHash = legacyHash;
+            this.verified = verified;
+        }
+
+        private LoginAttempt verified(PasswordCredential credential) {
+            return new LoginAttempt(user, stored, legacyHash, credential);
+        }
+    }
+
+    // Attributes
+    private final Library library;
+    private final LibraryProtocol protocol;
+    private final ExecutorService libraryThread;
+    private final ExecutorService cpuPool;
+    private final ExecutorService ioPool;
+    private final ScheduledExecutorService saveTimer;
+    private final Semaphore writePermit;              // One snapshot write at a time
+    private final AtomicBoolean dirty;
+    private final AtomicBoolean savePending;          // Coalesces save requests
+    private final AtomicLong snapshotSequence;
+    private long lastWrittenSequence;                 // Guarded by writePermit
+    private final AtomicLong requestsServed;
+
+    // Constructors
+
+    public LibraryService(Library library) {
+        if (library == null) {
+            throw new IllegalArgumentException("Library cannot be null");
+        }
+        this.library = library;
+        this.protocol = new LibraryProtocol(library);
+        this.libraryThread = Executors.newSingleThreadExecutor(named("library-worker", false));
+        this.cpuPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                named("library-auth", true));
+        this.ioPool = Executors.newCachedThreadPool(named("library-io", false));
+        this.saveTimer = Executors.newSingleThreadScheduledExecutor(named("library-save-timer", true));
+        this.writePermit = new Semaphore(1);
+        this.dirty = new AtomicBoolean(false);
+        this.savePending = new AtomicBoolean(false);
+        this.snapshotSequence = new AtomicLong();
+        this.lastWrittenSequence = 0;
+        this.requestsServed = new AtomicLong();
+    }
+
+    private static ThreadFactory named(String prefix, boolean numbered) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, numbered ? prefix + "-" + count.incrementAndGet() : prefix);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // ==================== LIFECYCLE ====================
+
+    /**
+     * Start background jobs: the overdue sweeper, due-date reminders and session expiry,
+     * plus a periodic save whenever requests changed the data
+     */
+    public void start() {
+        library.startOverdueSweeper(libraryThread);
+        library.startReminders(libraryThread);
+        library.getSessionManager().start();
+        saveTimer.scheduleWithFixedDelay(() -> {
+            if (dirty.get()) {
+                requestSave();
+            }
+        }, SAVE_INTERVAL_SECONDS, SAVE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Finish queued requests, save everything and stop all threads
+     */
+    public void stop() {
+        saveTimer.shutdownNow();
+        library.stopOverdueSweeper();
+        library.stopReminders();
+        library.getSessionManager().stop();
+        try {
+            save().get(30, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            System.err.println("Final save failed: " + e.getMessage());
+        }
+        libraryThread.shutdown();
+        cpuPool.shutdown();
+        ioPool.shutdown();
+        try {
+            libraryThread.awaitTermination(30, TimeUnit.SECONDS);
+            ioPool.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The thread that owns the Library, for callers that need to run their own jobs on it
+     */
+    public Executor getLibraryExecutor() {
+        return libraryThread;
+    }
+
+    /**
+     * Note a change made through call(), so the periodic save picks it up
+     */
+    public void markDirty() {
+        dirty.set(true);
+    }
+
+    public Library getLibrary() {
+        return library;
+    }
+
+    public long getRequestsServed() {
+        return requestsServed.get();
+    }
+
+    // ==================== REQUESTS ====================
+
+    /**
+     * Run a function against the Library on the library thread
+     */
+    public <T> CompletableFuture<T> call(Function<Library, T> action) {
+        return CompletableFuture.supplyAsync(() -> action.apply(library), libraryThread);
+    }
+
+    /**
+     * Execute one protocol request line.
+     * LOGIN hashes on the CPU pool; every other command runs on the library thread.
+     * The future always completes normally with a response line.
+     */
+    public CompletableFuture<String> handle(String line) {
+        String command = LibraryProtocol.commandOf(line);
+        CompletableFuture<String> response;
+        if (command.equals("LOGIN")) {
+            String[] args = line.split(String.valueOf(LibraryProtocol.FIELD_SEPARATOR), -1);
+            response = args.length < 3
+                    ? CompletableFuture.completedFuture(LibraryProtocol.error("LOGIN expects 2 argument(s)"))
+                    : authenticate(args[1], args[2]).thenApply(LibraryProtocol::loginResponse);
+        } else {
+            response = call(lib -> protocol.handle(line));
+            if (LibraryProtocol.isMutating(command)) {
+                response = response.thenApply(result -> {
+                    if (result.startsWith(LibraryProtocol.OK)) {
+                        dirty.set(true);
+                    }
+                    return result;
+                });
+            }
+        }
+        return response.handle((result, error) -> {
+            requestsServed.incrementAndGet();
+            return error == null ? result : LibraryProtocol.error(rootCause(error).getMessage());
+        });
+    }
+
+    /**
+     * Check credentials and open a session.
+     * The user and its stored credential are read on the library thread and only the key
+     * derivation runs on the CPU pool; an upgraded credential is installed and the session
+     * opened back on the library thread.
+     * @return a future of the new session, or of null if authentication fails
+     */
+    public CompletableFuture<SessionManager.Session> authenticate(String email, String password) {
+        return call(lib -> {
+                    User user = lib.findUserByEmail(email);
+                    return user != null ? new LoginAttempt(user) : null;
+                })
+                .thenApplyAsync(attempt -> {
+                    if (attempt == null || password == null) {
+                        PasswordCredential.verifyDummy(password != null ? password : "");
+                        return null;
+                    }
+                    PasswordCredential verified = User.checkPassword(attempt.stored, attempt.legacyHash, password);
+                    return verified != null ? attempt.verified(verified) : null;
+                }, cpuPool)
+                .thenApplyAsync(attempt -> {
+                    if (attempt == null) {
+                        return null;
+                    }
+                    attempt.user.installCredential(attempt.stored, attempt.verified);
+                    library.invalidateMemberSummary(attempt.user.getId());   // The summary shows the last login
+                    return library.getSessionManager().open(attempt.user);
+                }, libraryThread);
+    }
+
+    /**
+     * Get a member's dashboard summary on the library thread (cached until it changes)
+     * @return a future of the summary, failing if the session is not a member's
+     */
+    public CompletableFuture<MemberSummary> loadDashboard(String token) {
+        return call(lib -> {
+            SessionManager.Session session = lib.getSession(token);
+            if (session == null) {
+                throw new SecurityException("not logged in or session expired");
+            }
+            if (!(session.getUser() instanceof Member)) {
+                throw new IllegalStateException("Not a member session");
+            }
+            return lib.getMemberSummary((Member) session.getUser());
+        });
+    }
+
+    /**
+     * Log in and load everything the first screen shows, as one operation.
+     * The dashboard parts are forked together; if any of them fails the others are
+     * cancelled and the session is closed again, so a failed login leaves nothing behind.
+     * @return a future of the result, or of null if authentication fails
+     */
+    public CompletableFuture<LoginResult> loginAndLoadDashboard(String email, String password) {
+        return authenticate(email, password).thenCompose(session -> {
+            if (session == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            TaskScope scope = new TaskScope();
+            CompletableFuture<MemberSummary> summary = scope.fork(() -> session.getUser() instanceof Member
+                    ? library.getMemberSummary((Member) session.getUser()) : null, libraryThread);
+            CompletableFuture<Integer> available = scope.fork(
+                    () -> library.getAvailableBooks().size(), libraryThread);
+            return scope.joinAsync()
+                    .thenApply(ignored -> new LoginResult(session, summary.join(), available.join()))
+                    .whenComplete((result, error) -> {
+                        scope.close();
+                        if (error != null) {
+                            library.getSessionManager().close(session.getToken());
+                        }
+                    });
+        });
+    }
+
+    // ==================== PERSISTENCE ====================
+
+    /**
+     * Ask for a save soon. Requests made while one is already queued are merged into it.
+     */
+    public void requestSave() {
+        if (savePending.compareAndSet(false, true)) {
+            save().whenComplete((ignored, error) -> {
+                if (error != null) {
+                    System.err.println("Background save failed: " + rootCause(error).getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Snapshot the Library on the library thread, then write it on the I/O pool.
+     * Only one write runs at a time; a snapshot older than one already written is dropped.
+     */
+    public CompletableFuture<Void> save() {
+        return call(lib -> {
+            savePending.set(false);
+            dirty.set(false);
+            try {
+                Snapshot snapshot = new Snapshot(snapshotSequence.incrementAndGet(), lib.snapshotAllData());
+                if (lib.getOverdueSweeper().isRunning()) {
+                    lib.getOverdueSweeper().saveToFile();   // A few bytes; not worth a snapshot
+                }
+                return snapshot;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).thenAcceptAsync(snapshot -> {
+            writePermit.acquireUninterruptibly();
+            try {
+                if (snapshot.sequence > lastWrittenSequence) {
+                    Library.writeSnapshot(snapshot.files);
+                    lastWrittenSequence = snapshot.sequence;
+                }
+            } catch (IOException e) {
+                dirty.set(true);    // Try again on the next interval
+                throw new UncheckedIOException(e);
+            } finally {
+                writePermit.release();
+            }
+        }, ioPool);
+    }
+
+    private static Throwable rootCause(Throwable error) {
+        while (error.getCause() != null && (error instanceof CompletionException
+                || error instanceof UncheckedIOException)) {
+            error = error.getCause();
+        }
+        return error;
+    }
+}
@@ -0,0 +1,231 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LoadGenerator - Simulates many checkout desks and kiosks against a LibraryServer.
+ * Each terminal logs in once, then loops over a request mix until the time is up:
+ * 70% searches, 10% book lookups, 15% checkouts followed by returns, 5% reports.
+ * Prints requests per second and latency percentiles.
+ *
+ * Usage: java LoadGenerator [host] [port] [terminals] [seconds] [email] [password]
+ */
+public class LoadGenerator {
+
+    private static final String[] SEARCH_TERMS = {"the", "a", "history", "new", "code", "world", "in", "an"};
+
+    // Attributes
+    private final String host;
+    private final int port;
+    private final String email;
+    private final String password;
+    private final AtomicLong okCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+
+    // Constructors
+
+    public LoadGenerator(String host, int port, String email, String password) {
+        this.host = host;
+        this.port = port;
+        this.email = email;
+        this.password = password;
+    }
+
+    // ==================== TERMINAL ====================
+
+    /**
+     * One simulated terminal with its own connection
+     */
+    private class Terminal implements Runnable {
+
+        private final long durationNanos;
+        private final CountDownLatch ready;
+        private final CountDownLatch startSignal;
+        private final Random random;
+        private long[] latencies = new long[4096];
+        private int latencyCount;
+
+        private Socket socket;
+        private BufferedReader in;
+        private Writer out;
+        private String token;
+        private String[] isbns = new String[0];
+        private String[] memberIds = new String[0];
+
+        private Terminal(long durationNanos, CountDownLatch ready, CountDownLatch startSignal, long seed) {
+            this.durationNanos = durationNanos;
+            this.ready = ready;
+            this.startSignal = startSignal;
+            this.random = new Random(seed);
+        }
+
+        @Override
+        public void run() {
+            try {
+                try {
+                    socket = new Socket(host, port);
+                    socket.setTcpNoDelay(true);
+                    in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                    out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+                    setUp();
+                } finally {
+                    ready.countDown();
+                }
+                startSignal.await();
+                long endNanos = System.nanoTime() + durationNanos;
+                while (System.nanoTime() < endNanos) {
+                    runOne();
+                }
+            } catch (IOException e) {
+                System.err.println("Terminal failed: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                try {
+                    if (token != null) {
+                        send("LOGOUT\t" + token);
+                    }
+                    if (socket != null) {
+                        socket.close();
+                    }
+                } catch (IOException e) {
+                    // Server already gone
+                }
+            }
+        }
+
+        /**
+         * Log in and fetch the ISBNs and member IDs to work with (not timed)
+         */
+        private void setUp() throws IOException {
+            String[] login = send("LOGIN\t" + email + "\t" + password);
+            if (!LibraryProtocol.OK.equals(login[0])) {
+                throw new IOException("Login failed: " + String.join(" ", login));
+            }
+            token = login[1];
+            String[] books = send("SEARCH\t" + token + "\t");
+            isbns = Arrays.stream(books, 2, books.length).map(r -> r.split("\\|")[0]).toArray(String[]::new);
+            String[] members = send("REPORT\t" + token + "\tmembers");
+            if (LibraryProtocol.OK.equals(members[0])) {
+                memberIds = Arrays.copyOfRange(members, 2, members.length);
+            }
+        }
+
+        private void runOne() throws IOException {
+            int roll = random.nextInt(100);
+            if (roll < 70 || isbns.length == 0) {
+                timed("SEARCH\t" + token + "\t" + SEARCH_TERMS[random.nextInt(SEARCH_TERMS.length)]);
+            } else if (roll < 80) {
+                timed("BOOK\t" + token + "\t" + isbns[random.nextInt(isbns.length)]);
+            } else if (roll < 95 && memberIds.length > 0) {
+                String member = memberIds[random.nextInt(memberIds.length)];
+                String isbn = isbns[random.nextInt(isbns.length)];
+                String[] issued = timed("ISSUE\t" + token + "\t" + member + "\t" + isbn);
+                if (LibraryProtocol.OK.equals(issued[0])) {
+                    timed("RETURN\t" + token + "\t" + member + "\t" + isbn);
+                }
+            } else {
+                timed("REPORT\t" + token + "\tstats");
+            }
+        }
+
+        private String[] timed(String request) throws IOException {
+            long start = System.nanoTime();
+            String[] response = send(request);
+            if (latencyCount == latencies.length) {
+                latencies = Arrays.copyOf(latencies, latencyCount * 2);
+            }
+            latencies[latencyCount++] = System.nanoTime() - start;
+            if (LibraryProtocol.OK.equals(response[0])) {
+                okCount.incrementAndGet();
+            } else {
+                errorCount.incrementAndGet();   // e.g. book unavailable: still a served request
+            }
+            return response;
+        }
+
+        private String[] send(String request) throws IOException {
+            out.write(request);
+            out.write('\n');
+            out.flush();
+            String line = in.readLine();
+            if (line == null) {
+                throw new IOException("Server closed the connection");
+            }
+            return line.split("\t", -1);
+        }
+    }
+
+    // ==================== RUN ====================
+
+    /**
+     * Run the given number of terminals for the given time and print the results
+     */
+    public void run(int terminals, int seconds) throws InterruptedException {
+        CountDownLatch ready = new CountDownLatch(terminals);
+        CountDownLatch startSignal = new CountDownLatch(1);
+        long durationNanos = seconds * 1_000_000_000L;
+        List<Terminal> workers = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < terminals; i++) {
+            Terminal terminal = new Terminal(durationNanos, ready, startSignal, i);
+            workers.add(terminal);
+            Thread thread = new Thread(terminal, "terminal-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+        // Logins are deliberately slow (PBKDF2); start the clock once every terminal is signed in
+        ready.await();
+        long start = System.nanoTime();
+        startSignal.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        int total = 0;
+        for (Terminal terminal : workers) {
+            total += terminal.latencyCount;
+        }
+        long[] all = new long[total];
+        int offset = 0;
+        for (Terminal terminal : workers) {
+            System.arraycopy(terminal.latencies, 0, all, offset, terminal.latencyCount);
+            offset += terminal.latencyCount;
+        }
+        Arrays.sort(all);
+
+        System.out.println("\n=== Load test: " + terminals + " terminals, " + String.format("%.1f", elapsed) + " s ===");
+        System.out.println("Requests:      " + total + " (" + okCount.get() + " OK, " + errorCount.get() + " ERR)");
+        System.out.printf("Throughput:    %.0f requests/s%n", total / elapsed);
+        if (total > 0) {
+            System.out.printf("Latency (ms):  p50 %.2f   p95 %.2f   p99 %.2f   max %.2f%n",
+                    percentile(all, 0.50), percentile(all, 0.95), percentile(all, 0.99), all[total - 1] / 1e6);
+        }
+    }
+
+    private static double percentile(long[] sortedNanos, double p) {
+        int index = (int) Math.ceil(p * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, index)] / 1e6;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : LibraryServer.DEFAULT_PORT;
+        int terminals = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        String email = args.length > 4 ? args[4] : "fatbardh@librarian.com";
+        String password = args.length > 5 ? args[5] : "admin123";
+        new LoadGenerator(host, port, email, password).run(terminals, seconds);
+    }
+}
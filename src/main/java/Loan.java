@@ -1,3 +1,5 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
@@ -5,6 +7,7 @@ import java.time.temporal.ChronoUnit;
 /**
  * Loan class represents a book loan transaction.
  * Tracks loan dates, due dates, return status, and calculates overdue fees.
+ * Date checks run on cached epoch-day values against LibraryClock.
  */
 public class Loan implements Serializable {
 
@@ -12,12 +15,18 @@ public class Loan implements Serializable {
     private static final int DEFAULT_LOAN_PERIOD_DAYS = 14;
 
     // Attributes
-    private final Member member;
-    private final Book book;
+    private Member member;                // Re-linked to the live member and book after loading
+    private Book book;
     private final LocalDate loanDate;
     private final LocalDate dueDate;
     private LocalDate returnDate;
     private boolean returned;
+    private boolean feeAccruing;          // Set by the overdue sweeper once the loan is past due
+    private long accrualRateCents;        // Daily fee locked in when accrual started
+    
+    // Epoch-day copies of the dates above, rebuilt after deserialization
+    private transient long dueEpochDay;
+    private transient long returnEpochDay;
 
     // Constructors
     
@@ -44,10 +53,48 @@ public class Loan implements Serializable {
         
         this.member = member;
         this.book = book;
-        this.loanDate = LocalDate.now();
+        this.loanDate = LibraryClock.get().today();
         this.dueDate = loanDate.plusDays(loanPeriodDays);
         this.returnDate = null;
         this.returned = false;
+        cacheEpochDays();
+    }
+    
+    /**
+     * Rebuild a past loan from the loan history store
+     */
+    private Loan(Member member, Book book, LocalDate loanDate, LocalDate dueDate, LocalDate returnDate) {
+        this.member = member;
+        this.book = book;
+        this.loanDate = loanDate;
+        this.dueDate = dueDate;
+        this.returnDate = returnDate;
+        this.returned = returnDate != null;
+        cacheEpochDays();
+    }
+    
+    /**
+     * Rebuild a returned loan from its stored dates (see LoanHistoryStore)
+     */
+    public static Loan restore(Member member, Book book, LocalDate loanDate, LocalDate dueDate,
+                               LocalDate returnDate) {
+        if (member == null || book == null || loanDate == null || dueDate == null) {
+            throw new IllegalArgumentException("Member, book, loan date and due date are required");
+        }
+        return new Loan(member, book, loanDate, dueDate, returnDate);
+    }
+    
+    /**
+     * Refresh the epoch-day copies of the due and return dates
+     */
+    private void cacheEpochDays() {
+        this.dueEpochDay = dueDate.toEpochDay();
+        this.returnEpochDay = returnDate != null ? returnDate.toEpochDay() : Long.MIN_VALUE;
+    }
+    
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        cacheEpochDays();
     }
 
     // Getters
@@ -84,9 +131,9 @@ public class Loan implements Serializable {
     public boolean isOverdue() {
         if (returned) {
             // If returned, check if it was returned late
-            return returnDate != null && returnDate.isAfter(dueDate);
+            return returnDate != null && returnEpochDay > dueEpochDay;
         }
-        return LocalDate.now().isAfter(dueDate);
+        return LibraryClock.get().todayEpochDay() > dueEpochDay;
     }
     
     /**
@@ -95,15 +142,15 @@ public class Loan implements Serializable {
      */
     public long getDaysOverdue() {
         if (returned) {
-            if (returnDate != null && returnDate.isAfter(dueDate)) {
-                return ChronoUnit.DAYS.between(dueDate, returnDate);
+            if (returnDate != null && returnEpochDay > dueEpochDay) {
+                return returnEpochDay - dueEpochDay;
             }
             return 0;
         }
         
-        LocalDate today = LocalDate.now();
-        if (today.isAfter(dueDate)) {
-            return ChronoUnit.DAYS.between(dueDate, today);
+        long today = LibraryClock.get().todayEpochDay();
+        if (today > dueEpochDay) {
+            return today - dueEpochDay;
         }
         return 0;
     }
@@ -116,9 +163,9 @@ public class Loan implements Serializable {
         if (returned) {
             return 0;
         }
-        LocalDate today = LocalDate.now();
-        if (today.isBefore(dueDate) || today.isEqual(dueDate)) {
-            return ChronoUnit.DAYS.between(today, dueDate);
+        long today = LibraryClock.get().todayEpochDay();
+        if (today <= dueEpochDay) {
+            return dueEpochDay - today;
         }
         return 0;
     }
@@ -134,6 +181,42 @@ public class Loan implements Serializable {
         return daysOverdue * dailyRate;
     }
 
+    /**
+     * Mark that the overdue sweeper has started accruing this loan's fee
+     */
+    void startFeeAccrual(long ratePerDayCents) {
+        this.feeAccruing = true;
+        this.accrualRateCents = ratePerDayCents;
+    }
+    
+    /**
+     * Point this loan at the library's own member and inventory book.
+     * Loans read from disk carry private copies of both; see Library.loadLoansFromFile().
+     */
+    void relink(Member member, Book book) {
+        if (member.getId() != this.member.getId() || book.getIsbnKey() != this.book.getIsbnKey()) {
+            throw new IllegalArgumentException("Cannot relink a loan to a different member or book");
+        }
+        this.member = member;
+        this.book = book;
+    }
+    
+    /**
+     * Mark that this loan no longer contributes to materialized fees
+     */
+    void stopFeeAccrual() {
+        this.feeAccruing = false;
+        this.accrualRateCents = 0;
+    }
+    
+    public boolean isFeeAccruing() {
+        return feeAccruing;
+    }
+    
+    public long getAccrualRateCents() {
+        return accrualRateCents;
+    }
+
     // ==================== LOAN OPERATIONS ====================
     
     /**
@@ -142,7 +225,8 @@ public class Loan implements Serializable {
     public void markReturned() {
         if (!returned) {
             this.returned = true;
-            this.returnDate = LocalDate.now();
+            this.returnDate = LibraryClock.get().today();
+            this.returnEpochDay = returnDate.toEpochDay();
             book.returnCopy();
             
             if (isOverdue()) {
@@ -203,14 +287,14 @@ public class Loan implements Serializable {
         if (obj == null || getClass() != obj.getClass()) return false;
         Loan loan = (Loan) obj;
         return member.getId() == loan.member.getId() && 
-               book.getIsbn().equals(loan.book.getIsbn()) &&
+               book.getIsbnKey() == loan.book.getIsbnKey() &&
                loanDate.equals(loan.loanDate);
     }
     
     @Override
     public int hashCode() {
         int result = member.getId();
-        result = 31 * result + book.getIsbn().hashCode();
+        result = 31 * result + Long.hashCode(book.getIsbnKey());
         result = 31 * result + loanDate.hashCode();
         return result;
     }
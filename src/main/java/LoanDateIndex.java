@@ -0,0 +1,269 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * LoanDateIndex class keeps loans sorted by date so date ranges and "latest n" lists read only
+ * the loans they return, in O(log n + k).
+ *
+ * Active loans are kept in two sorted maps, by loan date and by due date. Each key is the epoch
+ * day in the high 32 bits and a sequence number in the low 32 bits, so loans of the same day
+ * stay apart and a day range is one sub-map. Returned loans live in the LoanHistoryStore on
+ * disk; for them the index holds a sorted array of (return day, record number) keys, built on
+ * the first query and caught up from the records appended since. Only the matching records are
+ * read back from the log.
+ * Not thread-safe: used by the thread that owns the Library.
+ */
+public class LoanDateIndex {
+
+    private static final int RECORD_BITS = 40;      // Record numbers below 2^40 in a return key
+
+    // Attributes
+    private final LoanHistoryStore history;
+    private final TreeMap<Long, Loan> byLoanDay;
+    private final TreeMap<Long, Loan> byDueDay;
+    private final IdentityHashMap<Loan, Integer> sequenceOf;
+    private int nextSequence;
+    private long[] returnKeys;                       // Sorted (return day, record number) keys
+    private int returnCount;
+    private long recordsIndexed;                     // History records already in returnKeys
+
+    // Constructors
+
+    public LoanDateIndex(LoanHistoryStore history) {
+        if (history == null) {
+            throw new IllegalArgumentException("Loan history store cannot be null");
+        }
+        this.history = history;
+        this.byLoanDay = new TreeMap<>();
+        this.byDueDay = new TreeMap<>();
+        this.sequenceOf = new IdentityHashMap<>();
+        this.returnKeys = new long[1024];
+    }
+
+    // ==================== ACTIVE LOANS ====================
+
+    /**
+     * Index all active loans, replacing what was indexed before
+     */
+    public void indexActiveLoans(Iterable<Loan> loans) {
+        byLoanDay.clear();
+        byDueDay.clear();
+        sequenceOf.clear();
+        nextSequence = 0;
+        for (Loan loan : loans) {
+            add(loan);
+        }
+    }
+
+    /**
+     * Index a newly issued loan
+     */
+    public void add(Loan loan) {
+        if (loan.isReturned() || sequenceOf.containsKey(loan)) {
+            return;
+        }
+        int sequence = nextSequence++;
+        if (nextSequence < 0) {
+            nextSequence = 0;       // Wrapped: keys stay unique as long as fewer than 2^31 loans are out
+        }
+        sequenceOf.put(loan, sequence);
+        byLoanDay.put(key(loan.getLoanDate().toEpochDay(), sequence), loan);
+        byDueDay.put(key(loan.getDueDate().toEpochDay(), sequence), loan);
+    }
+
+    /**
+     * Drop a loan that was returned; its return is found through the loan history from then on
+     */
+    public void remove(Loan loan) {
+        Integer sequence = sequenceOf.remove(loan);
+        if (sequence != null) {
+            byLoanDay.remove(key(loan.getLoanDate().toEpochDay(), sequence));
+            byDueDay.remove(key(loan.getDueDate().toEpochDay(), sequence));
+        }
+    }
+
+    public int getActiveLoanCount() {
+        return sequenceOf.size();
+    }
+
+    /**
+     * Active loans issued between the two dates (inclusive), oldest first
+     */
+    public List<Loan> loanedBetween(LocalDate from, LocalDate to) {
+        return first(range(byLoanDay, from, to), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Active loans due between the two dates (inclusive), soonest first
+     */
+    public List<Loan> dueBetween(LocalDate from, LocalDate to) {
+        return first(range(byDueDay, from, to), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Active loans due before the given date, earliest first
+     */
+    public List<Loan> dueBefore(LocalDate date) {
+        return first(byDueDay.headMap(key(date.toEpochDay(), 0), false), Integer.MAX_VALUE);
+    }
+
+    /**
+     * The n most recently issued active loans, newest first
+     */
+    public List<Loan> latestLoans(int n) {
+        return first(byLoanDay.descendingMap(), n);
+    }
+
+    /**
+     * The n active loans due soonest, soonest first
+     */
+    public List<Loan> nextDue(int n) {
+        return first(byDueDay, n);
+    }
+
+    private static NavigableMap<Long, Loan> range(TreeMap<Long, Loan> index, LocalDate from, LocalDate to) {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("Dates cannot be null");
+        }
+        if (to.isBefore(from)) {
+            return new TreeMap<>();
+        }
+        return index.subMap(key(from.toEpochDay(), 0), true, key(to.toEpochDay(), -1), true);
+    }
+
+    /**
+     * Up to n loans in index order, skipping loans returned outside the Library
+     */
+    private static List<Loan> first(NavigableMap<Long, Loan> index, int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Count cannot be negative");
+        }
+        List<Loan> loans = new ArrayList<>(Math.min(n, index.size()));
+        for (Loan loan : index.values()) {
+            if (loans.size() == n) {
+                break;
+            }
+            if (!loan.isReturned()) {
+                loans.add(loan);
+            }
+        }
+        return loans;
+    }
+
+    /**
+     * Day in the high 32 bits, sequence as an unsigned low half (-1 is the last key of the day)
+     */
+    private static long key(long epochDay, int sequence) {
+        long day = Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, epochDay));
+        return (day << 32) | (sequence & 0xFFFFFFFFL);
+    }
+
+    // ==================== RETURNED LOANS ====================
+
+    /**
+     * Loans returned between the two dates (inclusive), earliest return first
+     */
+    public List<LoanHistoryStore.Record> returnedBetween(LocalDate from, LocalDate to) {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("Dates cannot be null");
+        }
+        catchUpReturns();
+        List<LoanHistoryStore.Record> records = new ArrayList<>();
+        if (to.isBefore(from)) {
+            return records;
+        }
+        int start = lowerBound(returnKey(from.toEpochDay(), 0));
+        int end = lowerBound(returnKey(to.toEpochDay() + 1, 0));
+        for (int i = start; i < end; i++) {
+            records.add(history.getRecord(returnKeys[i] & ((1L << RECORD_BITS) - 1)));
+        }
+        return records;
+    }
+
+    /**
+     * The n most recent returns, latest first
+     */
+    public List<LoanHistoryStore.Record> latestReturns(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Count cannot be negative");
+        }
+        catchUpReturns();
+        List<LoanHistoryStore.Record> records = new ArrayList<>(Math.min(n, returnCount));
+        for (int i = returnCount - 1; i >= 0 && records.size() < n; i--) {
+            records.add(history.getRecord(returnKeys[i] & ((1L << RECORD_BITS) - 1)));
+        }
+        return records;
+    }
+
+    /**
+     * Forget the returns index; it is rebuilt from the log on the next query
+     */
+    public void invalidateReturns() {
+        returnCount = 0;
+        recordsIndexed = 0;
+    }
+
+    /**
+     * Add the history records appended since the last query. Returns arrive in date order,
+     * so new keys nearly always go at the end of the array.
+     */
+    private void catchUpReturns() {
+        long recordCount = history.getRecordCount();
+        if (recordCount < recordsIndexed) {
+            invalidateReturns();        // Log was truncated or replaced
+        }
+        if (recordCount == recordsIndexed) {
+            return;
+        }
+        long[] next = {recordsIndexed};
+        history.scanSince(recordsIndexed, (memberId, isbnKey, loanDay, dueDay, returnDay) -> {
+            if (returnDay != LoanHistoryStore.NOT_RETURNED) {
+                insertReturn(returnKey(returnDay, next[0]));
+            }
+            next[0]++;
+        });
+        recordsIndexed = next[0];
+    }
+
+    private void insertReturn(long key) {
+        if (returnCount == returnKeys.length) {
+            returnKeys = Arrays.copyOf(returnKeys, returnCount * 2);
+        }
+        int position = returnCount == 0 || key >= returnKeys[returnCount - 1] ? returnCount : lowerBound(key);
+        System.arraycopy(returnKeys, position, returnKeys, position + 1, returnCount - position);
+        returnKeys[position] = key;
+        returnCount++;
+    }
+
+    /**
+     * First position whose key is not below the given key
+     */
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = returnCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (returnKeys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static long returnKey(long epochDay, long recordNumber) {
+        long day = Math.max(-(1L << 22), Math.min((1L << 22) - 1, epochDay));
+        return (day << RECORD_BITS) | recordNumber;
+    }
+
+    @Override
+    public String toString() {
+        return "LoanDateIndex{activeLoans=" + getActiveLoanCount() + ", returnsIndexed=" + returnCount + "}";
+    }
+}
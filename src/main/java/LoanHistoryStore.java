@@ -0,0 +1,458 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * LoanHistoryStore class keeps returned loans on disk instead of in memory.
+ *
+ * The log is an append-only file of fixed-size records. Each record points back to
+ * the previous record of the same member, so a member's history is a chain that
+ * starts at the member's latest record. The index file holds the start of every
+ * member's chain and the log length it covers; records appended after the index was
+ * last saved are replayed from the log when the store is opened.
+ *
+ * Nothing is read at startup except the index. A member's history is read on first
+ * access and kept in a small LRU cache of recently viewed histories.
+ * Not thread-safe: used from the thread that owns the Library.
+ */
+public class LoanHistoryStore {
+
+    public static final int DEFAULT_CACHE_SIZE = 64;
+
+    private static final int RECORD_BYTES = 32;
+    private static final long MAGIC = 0x4C4D534849535431L;    // "LMSHIST1"
+    private static final long NO_RECORD = 0;                    // Offset 0 is the header
+    public static final int NOT_RETURNED = Integer.MIN_VALUE;     // Return day of a loan still out
+
+    /**
+     * One returned loan as stored in the log
+     */
+    public static class Record {
+        private final int memberId;
+        private final long isbnKey;
+        private final LocalDate loanDate;
+        private final LocalDate dueDate;
+        private final LocalDate returnDate;
+
+        private Record(int memberId, long isbnKey, LocalDate loanDate, LocalDate dueDate, LocalDate returnDate) {
+            this.memberId = memberId;
+            this.isbnKey = isbnKey;
+            this.loanDate = loanDate;
+            this.dueDate = dueDate;
+            this.returnDate = returnDate;
+        }
+
+        public int getMemberId() {
+            return memberId;
+        }
+
+        public long getIsbnKey() {
+            return isbnKey;
+        }
+
+        public LocalDate getLoanDate() {
+            return loanDate;
+        }
+
+        public LocalDate getDueDate() {
+            return dueDate;
+        }
+
+        public LocalDate getReturnDate() {
+            return returnDate;
+        }
+    }
+
+    /**
+     * Where a member's chain starts and how long it is
+     */
+    private static class Chain {
+        private final int memberId;
+        private long latest;
+        private int count;
+
+        private Chain(int memberId, long latest, int count) {
+            this.memberId = memberId;
+            this.latest = latest;
+            this.count = count;
+        }
+    }
+
+    // Attributes
+    private final String logFile;
+    private final String indexFile;
+    private final LongFunction<Book> bookLookup;        // ISBN key -> Book in the inventory, or null
+    private final IntObjectMap<Chain> chains;
+    private final LinkedHashMap<Integer, List<Record>> recentlyViewed;
+    private RandomAccessFile log;
+    private long cacheHits;
+    private long cacheMisses;
+
+    // Constructors
+
+    public LoanHistoryStore(String logFile, String indexFile, LongFunction<Book> bookLookup, int cacheSize) {
+        if (cacheSize < 1) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        this.logFile = logFile;
+        this.indexFile = indexFile;
+        this.bookLookup = bookLookup;
+        this.chains = new IntObjectMap<>();
+        this.recentlyViewed = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<Record>> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    public LoanHistoryStore(String logFile, String indexFile, LongFunction<Book> bookLookup) {
+        this(logFile, indexFile, bookLookup, DEFAULT_CACHE_SIZE);
+    }
+
+    // ==================== OPEN / CLOSE ====================
+
+    /**
+     * Open the log on first use: load the index and replay records appended after it
+     */
+    private RandomAccessFile log() {
+        if (log != null) {
+            return log;
+        }
+        try {
+            log = new RandomAccessFile(logFile, "rw");
+            if (log.length() == 0) {
+                log.writeLong(MAGIC);
+                log.write(new byte[RECORD_BYTES - Long.BYTES]);
+            } else if (log.readLong() != MAGIC) {
+                throw new IOException("Not a loan history log: " + logFile);
+            }
+            long indexed = loadIndex();
+            if (indexed > log.length()) {
+                chains.clear();     // Index belongs to a different log: rebuild from this one
+                indexed = RECORD_BYTES;
+            }
+            long end = log.length() - (log.length() - RECORD_BYTES) % RECORD_BYTES;  // Drop a torn record
+            for (long offset = Math.max(indexed, RECORD_BYTES); offset < end; offset += RECORD_BYTES) {
+                log.seek(offset);
+                int memberId = log.readInt();
+                link(memberId, offset);
+            }
+            log.setLength(end);
+            return log;
+        } catch (IOException e) {
+            log = null;
+            throw new UncheckedIOException("Cannot open loan history: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the log length the index covers
+     */
+    private long loadIndex() throws IOException {
+        File file = new File(indexFile);
+        if (!file.exists()) {
+            return RECORD_BYTES;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            long covered = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int memberId = in.readInt();
+                chains.put(memberId, new Chain(memberId, in.readLong(), in.readInt()));
+            }
+            return covered;
+        } catch (EOFException e) {
+            chains.clear();     // Torn index: rebuild from the whole log
+            return RECORD_BYTES;
+        }
+    }
+
+    private void link(int memberId, long offset) {
+        Chain chain = chains.get(memberId);
+        if (chain == null) {
+            chains.put(memberId, new Chain(memberId, offset, 1));
+        } else {
+            chain.latest = offset;
+            chain.count++;
+        }
+    }
+
+    /**
+     * The index as it would be saved, for writing together with a library snapshot
+     */
+    public byte[] snapshotIndex() {
+        try {
+            long covered = log().length();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(12 + chains.size() * 16);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeLong(covered);
+            out.writeInt(chains.size());
+            for (Chain chain : chains.values()) {
+                out.writeInt(chain.memberId);
+                out.writeLong(chain.latest);
+                out.writeInt(chain.count);
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Save the index so the next open replays nothing
+     */
+    public void saveIndex() throws IOException {
+        byte[] index = snapshotIndex();
+        java.nio.file.Path temp = Paths.get(indexFile + ".tmp");
+        Files.write(temp, index);
+        Files.move(temp, Paths.get(indexFile), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public void close() {
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                System.err.println("Error closing loan history: " + e.getMessage());
+            }
+            log = null;
+        }
+    }
+
+    // ==================== WRITING ====================
+
+    /**
+     * Append a returned loan to its member's history
+     */
+    public void append(Loan loan) {
+        append(loan.getMember().getId(), loan.getBook().getIsbnKey(), loan.getLoanDate(),
+                loan.getDueDate(), loan.getReturnDate());
+    }
+
+    private void append(int memberId, long isbnKey, LocalDate loanDate, LocalDate dueDate, LocalDate returnDate) {
+        RandomAccessFile file = log();
+        Chain chain = chains.get(memberId);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+        record.putInt(memberId)
+              .putLong(chain != null ? chain.latest : NO_RECORD)
+              .putLong(isbnKey)
+              .putInt((int) loanDate.toEpochDay())
+              .putInt((int) dueDate.toEpochDay())
+              .putInt(returnDate != null ? (int) returnDate.toEpochDay() : NOT_RETURNED);
+        try {
+            long offset = file.length();
+            file.seek(offset);
+            file.write(record.array());
+            link(memberId, offset);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write loan history: " + e.getMessage(), e);
+        }
+        List<Record> cached = recentlyViewed.get(memberId);
+        if (cached != null) {
+            List<Record> updated = new ArrayList<>(cached);
+            updated.add(new Record(memberId, isbnKey, loanDate, dueDate, returnDate));
+            recentlyViewed.put(memberId, Collections.unmodifiableList(updated));
+        }
+    }
+
+    // ==================== READING ====================
+
+    /**
+     * A member's history, oldest first. Read from disk on first access, then cached.
+     */
+    public List<Record> getRecords(int memberId) {
+        List<Record> cached = recentlyViewed.get(memberId);
+        if (cached != null) {
+            cacheHits++;
+            return cached;
+        }
+        cacheMisses++;
+        RandomAccessFile file = log();
+        Chain chain = chains.get(memberId);
+        List<Record> records = new ArrayList<>(chain != null ? chain.count : 0);
+        byte[] buffer = new byte[RECORD_BYTES];
+        try {
+            for (long offset = chain != null ? chain.latest : NO_RECORD; offset != NO_RECORD; ) {
+                file.seek(offset);
+                file.readFully(buffer);
+                ByteBuffer record = ByteBuffer.wrap(buffer);
+                records.add(decode(record));
+                offset = record.getLong(Integer.BYTES);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read loan history: " + e.getMessage(), e);
+        }
+        Collections.reverse(records);
+        List<Record> history = Collections.unmodifiableList(records);
+        recentlyViewed.put(memberId, history);
+        return history;
+    }
+
+    /**
+     * A member's history as loans, oldest first. Titles no longer in the inventory
+     * are shown by ISBN.
+     */
+    public List<Loan> getLoans(Member member) {
+        List<Loan> loans = new ArrayList<>();
+        for (Record record : getRecords(member.getId())) {
+            loans.add(toLoan(record, member));
+        }
+        return loans;
+    }
+
+    /**
+     * One record of the given member as a loan. Titles no longer in the inventory are shown by ISBN.
+     */
+    public Loan toLoan(Record record, Member member) {
+        Book book = bookLookup.apply(record.isbnKey);
+        if (book == null) {
+            String isbn = Isbn.ofKey(record.isbnKey).toDisplayString();
+            book = new Book(isbn, "Removed title (" + isbn + ")", "Unknown", Book.BookTheme.OTHER, 0);
+        }
+        return Loan.restore(member, book, record.loanDate, record.dueDate, record.returnDate);
+    }
+
+    /**
+     * Read one record by its number in the log (0 is the first record written)
+     * @throws NoSuchElementException if there is no such record
+     */
+    public Record getRecord(long recordNumber) {
+        if (recordNumber < 0 || recordNumber >= getRecordCount()) {
+            throw new NoSuchElementException("No loan history record " + recordNumber);
+        }
+        byte[] buffer = new byte[RECORD_BYTES];
+        try {
+            RandomAccessFile file = log();
+            file.seek(RECORD_BYTES + recordNumber * RECORD_BYTES);
+            file.readFully(buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read loan history: " + e.getMessage(), e);
+        }
+        return decode(ByteBuffer.wrap(buffer));
+    }
+
+    /**
+     * Number of past loans of a member, without reading them
+     */
+    public int getCount(int memberId) {
+        log();
+        Chain chain = chains.get(memberId);
+        return chain != null ? chain.count : 0;
+    }
+
+    /**
+     * Read every record in the order written, with a sequential scan
+     */
+    public void forEach(Consumer<Record> action) {
+        forEachSince(0, action);
+    }
+
+    /**
+     * Read the records written after the first n, in order (e.g. those added since an export)
+     */
+    public void forEachSince(long firstRecord, Consumer<Record> action) {
+        scanSince(firstRecord, (memberId, isbnKey, loanDay, dueDay, returnDay) -> action.accept(new Record(memberId,
+                isbnKey, LocalDate.ofEpochDay(loanDay), LocalDate.ofEpochDay(dueDay),
+                returnDay != NOT_RETURNED ? LocalDate.ofEpochDay(returnDay) : null)));
+    }
+
+    /**
+     * Fields of one record as primitives, for bulk scans that should not create objects
+     */
+    public interface RecordVisitor {
+        void visit(int memberId, long isbnKey, int loanDay, int dueDay, int returnDay);
+    }
+
+    /**
+     * Like forEachSince(), but passes the fields as epoch days without creating records
+     */
+    public void scanSince(long firstRecord, RecordVisitor visitor) {
+        if (firstRecord < 0) {
+            throw new IllegalArgumentException("Record number cannot be negative");
+        }
+        long end = logLength();
+        long start = RECORD_BYTES + firstRecord * RECORD_BYTES;
+        if (start >= end) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile), 64 * 1024))) {
+            in.skipNBytes(start);
+            byte[] buffer = new byte[RECORD_BYTES];
+            ByteBuffer record = ByteBuffer.wrap(buffer);
+            for (long offset = start; offset < end; offset += RECORD_BYTES) {
+                in.readFully(buffer);
+                visitor.visit(record.getInt(0), record.getLong(12), record.getInt(20), record.getInt(24),
+                        record.getInt(28));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read loan history: " + e.getMessage(), e);
+        }
+    }
+
+    private static Record decode(ByteBuffer record) {
+        int memberId = record.getInt(0);
+        long isbnKey = record.getLong(12);
+        LocalDate loanDate = LocalDate.ofEpochDay(record.getInt(20));
+        LocalDate dueDate = LocalDate.ofEpochDay(record.getInt(24));
+        int returned = record.getInt(28);
+        return new Record(memberId, isbnKey, loanDate, dueDate,
+                returned != NOT_RETURNED ? LocalDate.ofEpochDay(returned) : null);
+    }
+
+    // ==================== STATISTICS ====================
+
+    /**
+     * Total number of records in the log
+     */
+    public long getRecordCount() {
+        return (logLength() - RECORD_BYTES) / RECORD_BYTES;
+    }
+
+    private long logLength() {
+        try {
+            return log().length();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses;
+    }
+
+    public int getCachedHistories() {
+        return recentlyViewed.size();
+    }
+
+    @Override
+    public String toString() {
+        return "LoanHistoryStore{file=" + logFile + ", members=" + chains.size() +
+               ", cached=" + recentlyViewed.size() + ", hits=" + cacheHits + ", misses=" + cacheMisses + "}";
+    }
+}
@@ -295,10 +295,10 @@ public class LoginController {
         loginButton.setDisable(true);
         loginButton.setText("Signing in...");
         
-        // Attempt authentication
-        User user = library.authenticateUser(email, password);
+        // Attempt authentication and open a session for this terminal
+        SessionManager.Session session = library.openSession(email, password);
         
-        if (user != null) {
+        if (session != null) {
             // Successful login
             hideError();
             
@@ -306,7 +306,7 @@ public class LoginController {
             FadeTransition fadeOut = new FadeTransition(Duration.millis(300), rootPane);
             fadeOut.setFromValue(1);
             fadeOut.setToValue(0);
-            fadeOut.setOnFinished(e -> navigateToDashboard(user));
+            fadeOut.setOnFinished(e -> app.startSession(session));
             fadeOut.play();
             
         } else {
@@ -318,17 +318,6 @@ public class LoginController {
         }
     }
     
-    /**
-     * Navigate to appropriate dashboard based on user type
-     */
-    private void navigateToDashboard(User user) {
-        if (user instanceof Librarian) {
-            app.showLibrarianDashboard((Librarian) user);
-        } else if (user instanceof Member) {
-            app.showMemberDashboard((Member) user);
-        }
-    }
-    
     /**
      * Show error message
      */
@@ -0,0 +1,168 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+import java.io.Serializable;
+
+/**
+ * LongObjectMap class is an open-addressing hash map from primitive long keys to objects.
+ * Used for indexes keyed by ISBN (see Isbn.toKey()): lookups never box the key, and each
+ * entry costs one long and one reference slot instead of a Node and a Long.
+ * Probing, deletion and the values view are shared with IntObjectMap (see OpenAddressingMap).
+ */
+public class LongObjectMap<V> extends OpenAddressingMap<V> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // Serialized form stays {keys, values, size, mask, resizeThreshold}
+    // so existing data files keep loading.
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("keys", long[].class),
+        new ObjectStreamField("values", Object[].class),
+        new ObjectStreamField("size", int.class),
+        new ObjectStreamField("mask", int.class),
+        new ObjectStreamField("resizeThreshold", int.class)
+    };
+
+    // Attributes
+    private long[] keys;
+
+    // Constructors
+
+    public LongObjectMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a map sized for the expected number of entries
+     */
+    public LongObjectMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * Spread the key bits so sequential ISBN keys do not form long probe runs
+     */
+    private int slotOf(long key) {
+        int h = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    // ==================== MAP OPERATIONS ====================
+
+    /**
+     * Get the value for a key, or null if absent
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int slot = slotOf(key);
+        Object value;
+        while ((value = values[slot]) != null) {
+            if (keys[slot] == key) {
+                return (V) value;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Associate a value with a key
+     * @return the previous value, or null if none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Value cannot be null");
+        }
+        int slot = slotOf(key);
+        Object existing;
+        while ((existing = values[slot]) != null) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return (V) existing;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        inserted();
+        return null;
+    }
+
+    /**
+     * Remove a key
+     * @return the removed value, or null if absent
+     */
+    public V remove(long key) {
+        int slot = slotOf(key);
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                return removeAt(slot);
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    // ==================== KEY HOOKS ====================
+
+    @Override
+    void allocateKeys(int capacity) {
+        this.keys = new long[capacity];
+    }
+
+    @Override
+    int homeSlotAt(int slot) {
+        return slotOf(keys[slot]);
+    }
+
+    @Override
+    void moveKey(int from, int to) {
+        keys[to] = keys[from];
+    }
+
+    @Override
+    void clearKey(int slot) {
+        keys[slot] = 0;
+    }
+
+    @Override
+    void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = slotOf(oldKeys[i]);
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    // Serialization
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("keys", keys);
+        fields.put("values", values);
+        fields.put("size", size);
+        fields.put("mask", mask);
+        fields.put("resizeThreshold", resizeThreshold);
+        out.writeFields();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        this.keys = (long[]) fields.get("keys", null);
+        restore((Object[]) fields.get("values", null), fields.get("size", 0));
+    }
+}
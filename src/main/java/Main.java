@@ -121,23 +121,26 @@ public class Main {
         
         // Test valid member login
         System.out.println("\n[Alice logging in correctly]");
-        Member loggedInAlice = library.loginMember("alice@email.com", "password123");
-        if (loggedInAlice != null) {
-            System.out.println("Current user: " + library.getCurrentUser().getName());
-            System.out.println("Is member logged in: " + library.isMemberLoggedIn());
+        SessionManager.Session aliceSession = library.openSession("alice@email.com", "password123");
+        if (aliceSession != null) {
+            System.out.println("Session user: " + aliceSession.getUser().getName());
+            System.out.println("Is member logged in: " + library.isUserLoggedIn(aliceSession.getUserId()));
+        }
+        
+        // Librarian logs in at another terminal while Alice is still signed in
+        System.out.println("\n[Librarian Sarah logging in]");
+        SessionManager.Session sarahSession = library.openSession("sarah@library.com", "admin123");
+        if (sarahSession != null) {
+            System.out.println("Is librarian logged in: " + library.isUserLoggedIn(sarahSession.getUserId()));
+            System.out.println("Open sessions: " + library.getSessionManager().getSessionCount());
+            library.logout(sarahSession.getToken());
         }
         
         // Logout Alice
         System.out.println("\n[Alice logging out]");
-        library.logout();
-        
-        // Test librarian login
-        System.out.println("\n[Librarian Sarah logging in]");
-        Librarian loggedInLibrarian = library.loginLibrarian("sarah@library.com", "admin123");
-        if (loggedInLibrarian != null) {
-            System.out.println("Is librarian logged in: " + library.isLibrarianLoggedIn());
+        if (aliceSession != null) {
+            library.logout(aliceSession.getToken());
         }
-        library.logout();
 
         // ==================== BORROWING WITH PLAN LIMITS ====================
         System.out.println("\n" + "-".repeat(60));
@@ -1,4 +1,6 @@
 import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -13,8 +15,14 @@ public class Member extends User implements Serializable {
 
     // Attributes
     private List<Loan> activeLoans;
-    private List<Loan> loanHistory;
-    private double accumulatedFees;
+    private List<Loan> loanHistory;                    // Only until a LoanHistoryStore is attached
+    private transient LoanHistoryStore historyStore;   // Set by Library; holds past loans on disk
+    private double accumulatedFees;                    // Only until a FeeLedger is attached
+    private long planFeeCents;                         // Plan fees, only until a FeeLedger is attached
+    private transient FeeLedger feeLedger;             // Set by Library; charges and payments in cents
+    private FeeAccrual overdueAccrual;                 // Materialized fees on overdue active loans
+    private transient OverdueSweeper overdueSweeper;   // Set by Library, like Librarian.library
+    private transient MemberSummaryCache summaryCache; // Set by Library; told when this member changes
 
     // Constructors
     
@@ -66,11 +74,16 @@ public class Member extends User implements Serializable {
             System.out.println("Error: Members cannot upgrade to Staff plan.");
             return;
         }
+        MembershipPlan.PlanType oldPlanType = membershipPlan != null ? membershipPlan.getPlanType() : null;
         if (membershipPlan != null) {
             membershipPlan.upgradePlan(newPlanType);
         } else {
             this.membershipPlan = new MembershipPlan(newPlanType);
         }
+        if (membershipPlan.getPlanType() != oldPlanType) {
+            chargePlanYear();
+        }
+        invalidateSummary();
         System.out.println(name + " " + surname + " upgraded to " + newPlanType.getDisplayName());
     }
     
@@ -82,11 +95,42 @@ public class Member extends User implements Serializable {
             System.out.println("Error: Members cannot have Staff plan.");
             return;
         }
+        MembershipPlan.PlanType oldPlanType = membershipPlan != null ? membershipPlan.getPlanType() : null;
         if (membershipPlan != null) {
             membershipPlan.changePlan(newPlanType);
         } else {
             this.membershipPlan = new MembershipPlan(newPlanType);
         }
+        if (membershipPlan.getPlanType() != oldPlanType) {
+            chargePlanYear();
+        }
+        invalidateSummary();
+    }
+    
+    /**
+     * Renew the current plan for another year and charge that year
+     */
+    public void renewPlan() {
+        if (membershipPlan == null) {
+            System.out.println("Error: No membership plan to renew.");
+            return;
+        }
+        membershipPlan.renewPlan();
+        if (membershipPlan.getPlanType() != MembershipPlan.PlanType.STAFF) {
+            chargePlanYear();
+        }
+        invalidateSummary();
+    }
+    
+    /**
+     * Charge the current plan's annual cost: a new or renewed plan runs for one year
+     */
+    private void chargePlanYear() {
+        long feeCents = FeeAccrual.toCents(membershipPlan.getAnnualCost());
+        if (feeCents > 0) {
+            chargeFee(FeeLedger.Type.PLAN_FEE, feeCents, membershipPlan.getPlanType().ordinal());
+            System.out.println("Plan fee charged: " + FeeLedger.formatCents(feeCents) + " for one year");
+        }
     }
     
     /**
@@ -113,6 +157,21 @@ public class Member extends User implements Serializable {
         return new ArrayList<>(activeLoans);
     }
     
+    /**
+     * Check if a loan is still among this member's active loans
+     */
+    public boolean hasActiveLoan(Loan loan) {
+        return activeLoans.contains(loan);
+    }
+    
+    /**
+     * Get this member's own instance of an active loan (equal by member, book and loan date)
+     */
+    Loan findActiveLoan(Loan loan) {
+        int index = activeLoans.indexOf(loan);
+        return index >= 0 ? activeLoans.get(index) : null;
+    }
+    
     /**
      * @deprecated Use getActiveLoans() instead
      */
@@ -122,10 +181,57 @@ public class Member extends User implements Serializable {
     }
     
     /**
-     * Get loan history
+     * Get loan history, oldest first.
+     * Read from the library's history store on first access rather than kept in memory.
      */
     public List<Loan> getLoanHistory() {
-        return new ArrayList<>(loanHistory);
+        if (historyStore != null) {
+            return historyStore.getLoans(this);
+        }
+        return loanHistory != null ? new ArrayList<>(loanHistory) : new ArrayList<>();
+    }
+    
+    /**
+     * Number of past loans, without loading them
+     */
+    public int getLoanHistoryCount() {
+        if (historyStore != null) {
+            return historyStore.getCount(getId());
+        }
+        return loanHistory != null ? loanHistory.size() : 0;
+    }
+    
+    private void recordPastLoan(Loan loan) {
+        if (historyStore != null) {
+            historyStore.append(loan);
+        } else {
+            if (loanHistory == null) {
+                loanHistory = new ArrayList<>();
+            }
+            loanHistory.add(loan);
+        }
+    }
+    
+    /**
+     * Attach the library's history store. Past loans kept in memory (by a member not yet
+     * in a library, or saved by an older version inside members.dat) move into the store.
+     * @return the number of past loans moved
+     */
+    public int setHistoryStore(LoanHistoryStore historyStore) {
+        this.historyStore = historyStore;
+        if (historyStore == null) {
+            loanHistory = new ArrayList<>();
+            return 0;
+        }
+        int moved = 0;
+        if (loanHistory != null) {
+            for (Loan loan : loanHistory) {
+                historyStore.append(loan);
+                moved++;
+            }
+        }
+        loanHistory = null;
+        return moved;
     }
     
     /**
@@ -134,6 +240,10 @@ public class Member extends User implements Serializable {
     public void addLoan(Loan loan) {
         if (loan != null && !activeLoans.contains(loan)) {
             activeLoans.add(loan);
+            if (overdueSweeper != null) {
+                overdueSweeper.track(loan);
+            }
+            invalidateSummary();
         }
     }
     
@@ -142,8 +252,12 @@ public class Member extends User implements Serializable {
      */
     public void removeLoan(Loan loan) {
         if (loan != null) {
-            activeLoans.remove(loan);
-            loanHistory.add(loan);
+            int index = activeLoans.indexOf(loan);
+            if (index >= 0) {
+                stopOverdueAccrual(activeLoans.remove(index));
+            }
+            recordPastLoan(loan);
+            invalidateSummary();
         }
     }
     
@@ -185,10 +299,19 @@ public class Member extends User implements Serializable {
             return false;
         }
         
+        // Claim a copy atomically; the availability check above may be stale by now
+        if (!book.tryBorrow()) {
+            System.out.println("Error: '" + book.getTitle() + "' is not available");
+            return false;
+        }
+        
         // Create loan with plan-specific loan period
-        book.borrowCopy();
         Loan loan = new Loan(this, book, getLoanPeriodDays());
         activeLoans.add(loan);
+        if (overdueSweeper != null) {
+            overdueSweeper.track(loan);
+        }
+        invalidateSummary();
         
         System.out.println("Success: Borrowed '" + book.getTitle() + "'");
         System.out.println("Due date: " + loan.getDueDate() + " (" + getLoanPeriodDays() + " day loan period)");
@@ -210,18 +333,20 @@ public class Member extends User implements Serializable {
             return false;
         }
         
-        // Calculate and add any overdue fees using plan's fee rate
-        double overdueFee = matchingLoan.calculateOverdueFee(getDailyOverdueFee());
-        if (overdueFee > 0) {
-            accumulatedFees += overdueFee;
-            System.out.println("Overdue fee added: $" + String.format("%.2f", overdueFee) + 
-                    " (Rate: $" + String.format("%.2f", getDailyOverdueFee()) + "/day)");
+        // Calculate and add any overdue fees at the loan's overdue rate
+        long overdueFeeCents = overdueFeeCents(matchingLoan);
+        if (overdueFeeCents > 0) {
+            chargeFee(FeeLedger.Type.OVERDUE_FEE, overdueFeeCents, book.getIsbnKey());
+            System.out.println("Overdue fee added: " + FeeLedger.formatCents(overdueFeeCents) + 
+                    " (Rate: " + FeeLedger.formatCents(overdueRateCents(matchingLoan)) + "/day)");
         }
         
         // Process return
+        stopOverdueAccrual(matchingLoan);
         matchingLoan.markReturned();
         activeLoans.remove(matchingLoan);
-        loanHistory.add(matchingLoan);
+        recordPastLoan(matchingLoan);
+        invalidateSummary();
         
         System.out.println("Success: Returned '" + book.getTitle() + "'");
         return true;
@@ -230,59 +355,206 @@ public class Member extends User implements Serializable {
     // ==================== FEE CALCULATION ====================
     
     /**
-     * Calculate total current overdue fees from active loans
-     * Uses the member's plan-specific daily fee rate
+     * Calculate total overdue fees: owed for returned books plus accruing on active loans.
+     * Plan fees are not overdue fees (see getPlanFees).
      */
     public double calculateTotalOverdueFees() {
-        double totalFees = accumulatedFees;
-        double feeRate = getDailyOverdueFee();
-        for (Loan loan : activeLoans) {
-            if (loan.isOverdue()) {
-                totalFees += loan.calculateOverdueFee(feeRate);
-            }
-        }
-        return totalFees;
+        return getAccumulatedFees() + calculateCurrentOverdueFees();
     }
     
     /**
      * Calculate overdue fees from active loans only (not accumulated)
-     * Uses the member's plan-specific daily fee rate
+     * Reads the materialized counter when the overdue sweeper is up to date,
+     * otherwise loops the active loans at each loan's overdue rate (see overdueRateCents)
      */
     public double calculateCurrentOverdueFees() {
-        double currentFees = 0.0;
-        double feeRate = getDailyOverdueFee();
+        LocalDate today = LibraryClock.get().today();
+        if (overdueSweeper != null && overdueSweeper.isCurrent(today)) {
+            return getOverdueAccrual().amountAsOf(today);
+        }
+        long currentCents = 0;
         for (Loan loan : activeLoans) {
             if (loan.isOverdue()) {
-                currentFees += loan.calculateOverdueFee(feeRate);
+                currentCents += overdueFeeCents(loan);
             }
         }
-        return currentFees;
+        return currentCents / 100.0;
+    }
+    
+    /**
+     * Daily overdue rate of a loan in cents: the rate locked in when the overdue sweeper
+     * started accruing it, otherwise the member's plan rate
+     */
+    public long overdueRateCents(Loan loan) {
+        return loan.isFeeAccruing() ? loan.getAccrualRateCents() : FeeAccrual.toCents(getDailyOverdueFee());
+    }
+    
+    /**
+     * Overdue fee owed on a loan so far, in cents; what returning it today charges
+     */
+    public long overdueFeeCents(Loan loan) {
+        return overdueRateCents(loan) * loan.getDaysOverdue();
+    }
+    
+    // ==================== MATERIALIZED OVERDUE FEES ====================
+    
+    /**
+     * Attach the library's overdue sweeper (re-linked after loading, not serialized)
+     */
+    public void setOverdueSweeper(OverdueSweeper overdueSweeper) {
+        this.overdueSweeper = overdueSweeper;
+    }
+    
+    /**
+     * Attach the library's summary cache (re-linked after loading, not serialized)
+     */
+    public void setSummaryCache(MemberSummaryCache summaryCache) {
+        this.summaryCache = summaryCache;
+    }
+    
+    /**
+     * Drop this member's cached dashboard summary after a change it shows
+     */
+    private void invalidateSummary() {
+        if (summaryCache != null) {
+            summaryCache.invalidate(getId());
+        }
+    }
+    
+    /**
+     * Get the materialized overdue fee counter for active loans
+     */
+    public FeeAccrual getOverdueAccrual() {
+        if (overdueAccrual == null) {
+            // Members saved before the counter existed
+            overdueAccrual = new FeeAccrual();
+        }
+        return overdueAccrual;
+    }
+    
+    /**
+     * Called by the overdue sweeper when one of this member's loans crosses its due date.
+     * The daily rate is locked in at that point.
+     */
+    void startOverdueAccrual(Loan loan, long rateCents, long feeCents, LocalDate asOf) {
+        loan.startFeeAccrual(rateCents);
+        getOverdueAccrual().add(feeCents, rateCents, asOf);
+        invalidateSummary();
+    }
+    
+    /**
+     * Take an accruing loan's fee out of the materialized counters when it leaves the active loans
+     */
+    private void stopOverdueAccrual(Loan loan) {
+        if (loan == null || !loan.isFeeAccruing()) {
+            return;
+        }
+        LocalDate today = LibraryClock.get().today();
+        long rateCents = loan.getAccrualRateCents();
+        long feeCents = rateCents * Math.max(0, ChronoUnit.DAYS.between(loan.getDueDate(), today));
+        getOverdueAccrual().remove(feeCents, rateCents, today);
+        if (overdueSweeper != null) {
+            overdueSweeper.release(feeCents, rateCents, today);
+        }
+        loan.stopFeeAccrual();
+    }
+    
+    // ==================== FEE LEDGER ====================
+    
+    /**
+     * Attach the library's fee ledger. Fees accumulated before (by a member not yet in a
+     * library, or saved by an older version inside members.dat) become an opening balance.
+     * A member who already has ledger entries was moved before, e.g. by a run that stopped
+     * before members.dat was saved again; the fees kept inline are then not charged twice.
+     * @return the amount moved into the ledger, in cents
+     */
+    public long setFeeLedger(FeeLedger feeLedger) {
+        this.feeLedger = feeLedger;
+        if (feeLedger == null) {
+            return 0;
+        }
+        long openingCents = FeeAccrual.toCents(accumulatedFees);
+        long planCents = planFeeCents;
+        accumulatedFees = 0;
+        planFeeCents = 0;
+        if (feeLedger.hasAccount(getId())) {
+            return 0;
+        }
+        if (openingCents > 0) {
+            feeLedger.charge(getId(), FeeLedger.Type.OPENING_BALANCE, openingCents, 0);
+        }
+        if (planCents > 0) {
+            feeLedger.charge(getId(), FeeLedger.Type.PLAN_FEE, planCents, membershipPlan.getPlanType().ordinal());
+        }
+        return Math.max(0, openingCents) + planCents;
+    }
+    
+    /**
+     * Record a charge in the ledger, or on the member until a ledger is attached
+     */
+    void chargeFee(FeeLedger.Type type, long amountCents, long reference) {
+        if (feeLedger != null) {
+            feeLedger.charge(getId(), type, amountCents, reference);
+        } else if (type == FeeLedger.Type.PLAN_FEE) {
+            planFeeCents += amountCents;
+        } else {
+            accumulatedFees = (FeeAccrual.toCents(accumulatedFees) + amountCents) / 100.0;
+        }
+        invalidateSummary();
+    }
+    
+    /**
+     * Fees owed for returned books and plans, in cents
+     */
+    public long getFeeBalanceCents() {
+        return feeLedger != null ? feeLedger.getBalanceCents(getId())
+                : FeeAccrual.toCents(accumulatedFees) + planFeeCents;
+    }
+    
+    /**
+     * The part of the fee balance owed for plans, in cents
+     */
+    public long getPlanFeeBalanceCents() {
+        return feeLedger != null ? feeLedger.getPlanFeeBalanceCents(getId()) : planFeeCents;
+    }
+    
+    /**
+     * Get plan fees still owed
+     */
+    public double getPlanFees() {
+        return getPlanFeeBalanceCents() / 100.0;
     }
     
     /**
-     * Get accumulated fees (from returned books)
+     * Get accumulated fees (from returned books), without plan fees
      */
     public double getAccumulatedFees() {
-        return accumulatedFees;
+        return (getFeeBalanceCents() - getPlanFeeBalanceCents()) / 100.0;
     }
     
     /**
-     * Pay fees
+     * Pay fees. Only what is owed is taken; the rest is given back as change.
      */
     public void payFees(double amount) {
         if (amount <= 0) {
             System.out.println("Error: Payment amount must be positive");
             return;
         }
-        if (amount > accumulatedFees) {
-            System.out.println("Payment of $" + String.format("%.2f", accumulatedFees) + 
-                    " accepted. Change: $" + String.format("%.2f", amount - accumulatedFees));
-            accumulatedFees = 0;
+        long offeredCents = FeeAccrual.toCents(amount);
+        long acceptedCents;
+        if (feeLedger != null) {
+            acceptedCents = feeLedger.pay(getId(), offeredCents);
         } else {
-            accumulatedFees -= amount;
-            System.out.println("Payment of $" + String.format("%.2f", amount) + " accepted.");
-            System.out.println("Remaining fees: $" + String.format("%.2f", accumulatedFees));
+            // Fines first, then plan fees, as in the ledger
+            long fineCents = FeeAccrual.toCents(accumulatedFees);
+            acceptedCents = Math.min(offeredCents, fineCents + planFeeCents);
+            accumulatedFees = (fineCents - Math.min(acceptedCents, fineCents)) / 100.0;
+            planFeeCents -= Math.max(0, acceptedCents - fineCents);
         }
+        System.out.println("Payment of " + FeeLedger.formatCents(acceptedCents) + " accepted."
+                + (offeredCents > acceptedCents ? " Change: " + FeeLedger.formatCents(offeredCents - acceptedCents) : ""));
+        System.out.println("Remaining fees: " + FeeLedger.formatCents(getFeeBalanceCents()));
+        invalidateSummary();
     }
     
     /**
@@ -333,8 +605,7 @@ public class Member extends User implements Serializable {
             System.out.println("  Due: " + loan.getDueDate());
             if (loan.isOverdue()) {
                 System.out.println("  ⚠ OVERDUE by " + loan.getDaysOverdue() + " days!");
-                System.out.println("  Fee: $" + String.format("%.2f", 
-                        loan.calculateOverdueFee(getDailyOverdueFee())));
+                System.out.println("  Fee: " + FeeLedger.formatCents(overdueFeeCents(loan)));
             }
             System.out.println();
         }
@@ -342,7 +613,7 @@ public class Member extends User implements Serializable {
         
         double totalFees = calculateTotalOverdueFees();
         if (totalFees > 0) {
-            System.out.println("Total fees owed: $" + String.format("%.2f", totalFees));
+            System.out.println("Total overdue fees owed: $" + String.format("%.2f", totalFees));
         }
         System.out.println("==========================================\n");
     }
@@ -356,11 +627,13 @@ public class Member extends User implements Serializable {
         System.out.println("Plan: " + membershipPlan.getPlanName() + 
                 " (Fee rate: $" + String.format("%.2f", getDailyOverdueFee()) + "/day)");
         System.out.println("Accumulated fees (past returns): $" + 
-                String.format("%.2f", accumulatedFees));
+                String.format("%.2f", getAccumulatedFees()));
         System.out.println("Current overdue fees: $" + 
                 String.format("%.2f", calculateCurrentOverdueFees()));
-        System.out.println("Total fees owed: $" + 
+        System.out.println("Total overdue fees: $" + 
                 String.format("%.2f", calculateTotalOverdueFees()));
+        System.out.println("Plan fees owed: $" + 
+                String.format("%.2f", getPlanFees()));
         System.out.println("==================================\n");
     }
 
@@ -14,7 +14,6 @@ import javafx.scene.shape.Circle;
 import javafx.scene.text.Text;
 import javafx.util.Duration;
 
-import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Optional;
@@ -25,6 +24,8 @@ import java.util.Optional;
  */
 public class MemberDashboard {
     
+    private static final int MAX_HISTORY_ROWS = 10;
+    
     private LibraryApp app;
     private Library library;
     private Member member;
@@ -196,12 +197,13 @@ public class MemberDashboard {
         welcome.getStyleClass().add("title-label");
         
         // Stats cards
+        MemberSummary summary = library.getMemberSummary(member);
         HBox statsRow = new HBox(20);
         statsRow.getChildren().addAll(
-            createStatCard("📚", "Books Borrowed", String.valueOf(member.getActiveLoans().size())),
-            createStatCard("⏰", "Days Until Due", getNextDueDate()),
-            createStatCard("💰", "Outstanding Fees", String.format("$%.2f", member.calculateCurrentOverdueFees())),
-            createStatCard("📖", "Loan Limit", member.getActiveLoans().size() + "/" + member.getMaxLoanLimit())
+            createStatCard("📚", "Books Borrowed", String.valueOf(summary.getActiveLoans().size())),
+            createStatCard("⏰", "Days Until Due", getNextDueDate(summary)),
+            createStatCard("💰", "Overdue Fees", String.format("$%.2f", summary.getOutstandingFees())),
+            createStatCard("📖", "Loan Limit", summary.getActiveLoans().size() + "/" + summary.getMaxLoans())
         );
         
         // Quick actions
@@ -229,7 +231,14 @@ public class MemberDashboard {
         
         VBox loansPreview = createLoansPreview();
         
-        content.getChildren().addAll(welcome, statsRow, quickActionsLabel, quickActions, loansLabel, loansPreview);
+        // Trending titles
+        Label trendingLabel = new Label("Trending Now");
+        trendingLabel.getStyleClass().add("section-label");
+        
+        VBox trendingPreview = createTrendingPreview();
+        
+        content.getChildren().addAll(welcome, statsRow, quickActionsLabel, quickActions, loansLabel, loansPreview,
+                trendingLabel, trendingPreview);
         
         setContent(content);
     }
@@ -237,19 +246,12 @@ public class MemberDashboard {
     /**
      * Get next due date string
      */
-    private String getNextDueDate() {
-        List<Loan> loans = member.getActiveLoans();
-        if (loans.isEmpty()) return "N/A";
+    private String getNextDueDate(MemberSummary summary) {
+        MemberSummary.LoanLine nextDue = summary.getNextDue();
+        if (nextDue == null) return "N/A";
         
-        LocalDate earliest = loans.stream()
-            .map(Loan::getDueDate)
-            .min(LocalDate::compareTo)
-            .orElse(null);
-        
-        if (earliest == null) return "N/A";
-        
-        long days = java.time.temporal.ChronoUnit.DAYS.between(LocalDate.now(), earliest);
-        if (days < 0) return "OVERDUE!";
+        if (nextDue.isOverdue()) return "OVERDUE!";
+        long days = nextDue.getDaysUntilDue();
         if (days == 0) return "Today";
         if (days == 1) return "Tomorrow";
         return days + " days";
@@ -306,6 +308,50 @@ public class MemberDashboard {
         return box;
     }
     
+    /**
+     * Create the list of the most borrowed titles of late
+     */
+    private VBox createTrendingPreview() {
+        VBox box = new VBox(10);
+        box.getStyleClass().add("glass-card");
+        
+        List<Book> trending = library.getTrendingBooks(5);
+        if (trending.isEmpty()) {
+            Label noTrending = new Label("Nothing is trending yet.");
+            noTrending.getStyleClass().add("body-label");
+            box.getChildren().add(noTrending);
+            return box;
+        }
+        
+        int rank = 1;
+        for (Book book : trending) {
+            HBox row = new HBox(15);
+            row.setAlignment(Pos.CENTER_LEFT);
+            row.setPadding(new Insets(10));
+            row.setStyle("-fx-background-color: rgba(255,255,255,0.05); -fx-background-radius: 10;");
+            
+            Label rankLabel = new Label("#" + rank++);
+            rankLabel.getStyleClass().add("section-label");
+            
+            VBox bookInfo = new VBox(3);
+            Label title = new Label(book.getTitle());
+            title.getStyleClass().add("body-label");
+            title.setStyle("-fx-font-weight: bold;");
+            Label author = new Label("by " + book.getAuthor());
+            author.getStyleClass().add("muted-label");
+            bookInfo.getChildren().addAll(title, author);
+            HBox.setHgrow(bookInfo, Priority.ALWAYS);
+            
+            Label status = new Label(book.isAvailable() ? "Available" : "On Loan");
+            status.getStyleClass().addAll("badge", book.isAvailable() ? "badge-success" : "badge-warning");
+            
+            row.getChildren().addAll(rankLabel, bookInfo, status);
+            box.getChildren().add(row);
+        }
+        
+        return box;
+    }
+    
     /**
      * Create a loan row for preview
      */
@@ -356,28 +402,50 @@ public class MemberDashboard {
         searchField.getStyleClass().add("glass-text-field");
         searchField.setPrefWidth(300);
         
-        header.getChildren().addAll(title, searchField);
+        // Filters
+        ComboBox<Book.BookTheme> themeCombo = new ComboBox<>();
+        themeCombo.setPromptText("All Categories");
+        themeCombo.getItems().add(null);
+        themeCombo.getItems().addAll(Book.BookTheme.values());
+        themeCombo.setButtonCell(new ListCell<>() {
+            @Override
+            protected void updateItem(Book.BookTheme item, boolean empty) {
+                super.updateItem(item, empty);
+                setText(empty || item == null ? "All Categories" : item.toString());
+            }
+        });
+        
+        CheckBox availableOnly = new CheckBox("Available only");
+        availableOnly.getStyleClass().add("body-label");
+        
+        header.getChildren().addAll(title, themeCombo, availableOnly, searchField);
         
         // Books table
         TableView<Book> booksTable = createBooksTable();
         VBox.setVgrow(booksTable, Priority.ALWAYS);
         
-        // Load all available books
-        ObservableList<Book> books = FXCollections.observableArrayList(library.getAllBooks());
-        booksTable.setItems(books);
-        
-        // Search functionality
-        searchField.textProperty().addListener((obs, old, newValue) -> {
-            if (newValue.isEmpty()) {
-                booksTable.setItems(FXCollections.observableArrayList(library.getAllBooks()));
+        // Search text, category and availability combined in one query
+        Runnable refresh = () -> {
+            BookQuery query = new BookQuery();
+            String text = searchField.getText().trim();
+            if (text.isEmpty()) {
+                query.sortBy(BookQuery.Sort.TITLE);
             } else {
-                List<Book> filtered = library.getAllBooks().stream()
-                    .filter(b -> b.getTitle().toLowerCase().contains(newValue.toLowerCase()) ||
-                                b.getAuthor().toLowerCase().contains(newValue.toLowerCase()))
-                    .toList();
-                booksTable.setItems(FXCollections.observableArrayList(filtered));
+                query.text(text);
             }
-        });
+            if (themeCombo.getValue() != null) {
+                query.theme(themeCombo.getValue());
+            }
+            if (availableOnly.isSelected()) {
+                query.availableOnly();
+            }
+            booksTable.setItems(FXCollections.observableArrayList(library.findBooks(query)));
+        };
+        refresh.run();
+        
+        searchField.textProperty().addListener((obs, old, newValue) -> refresh.run());
+        themeCombo.valueProperty().addListener((obs, old, newValue) -> refresh.run());
+        availableOnly.selectedProperty().addListener((obs, old, newValue) -> refresh.run());
         
         // Borrow button
         Button borrowBtn = new Button("Borrow Selected Book");
@@ -385,14 +453,63 @@ public class MemberDashboard {
         borrowBtn.setDisable(true);
         borrowBtn.setOnAction(e -> handleBorrowBook(booksTable.getSelectionModel().getSelectedItem()));
         
+        // "Also borrowed" line for the selected book
+        Label alsoBorrowedLabel = new Label();
+        alsoBorrowedLabel.getStyleClass().add("muted-label");
+        alsoBorrowedLabel.setWrapText(true);
+        
         booksTable.getSelectionModel().selectedItemProperty().addListener((obs, old, selected) -> {
             borrowBtn.setDisable(selected == null);
+            alsoBorrowedLabel.setText(selected == null ? "" : describeAlsoBorrowed(selected));
         });
         
-        content.getChildren().addAll(header, booksTable, borrowBtn);
+        content.getChildren().add(header);
+        
+        // Personal recommendations from co-borrowing
+        List<Book> recommended = library.getRecommendations(member, 5);
+        if (!recommended.isEmpty()) {
+            Label recommendedLabel = new Label("Recommended for You");
+            recommendedLabel.getStyleClass().add("section-label");
+            
+            FlowPane recommendedRow = new FlowPane(10, 10);
+            for (Book book : recommended) {
+                Button bookBtn = new Button("📖 " + book.getTitle());
+                bookBtn.getStyleClass().add("glass-button");
+                bookBtn.setOnAction(e -> {
+                    // Show the whole catalog again
+                    themeCombo.setValue(null);
+                    availableOnly.setSelected(false);
+                    searchField.clear();
+                    booksTable.getSelectionModel().select(book);
+                    booksTable.scrollTo(book);
+                });
+                recommendedRow.getChildren().add(bookBtn);
+            }
+            content.getChildren().addAll(recommendedLabel, recommendedRow);
+        }
+        
+        content.getChildren().addAll(booksTable, alsoBorrowedLabel, borrowBtn);
         setContent(content);
     }
     
+    /**
+     * Text listing what members who borrowed the book also borrowed
+     */
+    private String describeAlsoBorrowed(Book book) {
+        List<Book> also = library.getAlsoBorrowed(book.getIsbn(), 3);
+        if (also.isEmpty()) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder("Members who borrowed this also borrowed: ");
+        for (int i = 0; i < also.size(); i++) {
+            if (i > 0) {
+                text.append(", ");
+            }
+            text.append(also.get(i).getTitle());
+        }
+        return text.toString();
+    }
+    
     /**
      * Create books table
      */
@@ -435,9 +552,14 @@ public class MemberDashboard {
     private void handleBorrowBook(Book book) {
         if (book == null) return;
         
+        ReservationQueue.Hold hold = library.findHold(member.getId(), book.getIsbn());
+        if (hold != null && hold.isReady()) {
+            handlePickUpHold(book);
+            return;
+        }
+        
         if (!book.isAvailable()) {
-            showAlert(Alert.AlertType.WARNING, "Book Unavailable", 
-                "This book is currently not available for borrowing.");
+            handlePlaceHold(book, hold);
             return;
         }
         
@@ -453,11 +575,16 @@ public class MemberDashboard {
         confirm.setTitle("Confirm Borrow");
         confirm.setHeaderText("Borrow \"" + book.getTitle() + "\"?");
         confirm.setContentText("Loan period: " + member.getLoanPeriodDays() + " days\n" +
-                              "Due date: " + LocalDate.now().plusDays(member.getLoanPeriodDays()));
+                              "Due date: " + LibraryClock.get().today().plusDays(member.getLoanPeriodDays()));
         
         Optional<ButtonType> result = confirm.showAndWait();
         if (result.isPresent() && result.get() == ButtonType.OK) {
-            member.borrowBook(book);
+            try {
+                library.issueLoan(member.getId(), book.getIsbn());
+            } catch (IllegalStateException ex) {
+                showAlert(Alert.AlertType.WARNING, "Cannot Borrow", ex.getMessage());
+                return;
+            }
             library.saveAllData();
             showAlert(Alert.AlertType.INFORMATION, "Success", 
                 "You have successfully borrowed \"" + book.getTitle() + "\"!");
@@ -465,6 +592,59 @@ public class MemberDashboard {
         }
     }
     
+    /**
+     * Offer a hold on an unavailable book instead of making the member retry
+     */
+    private void handlePlaceHold(Book book, ReservationQueue.Hold existingHold) {
+        if (existingHold != null) {
+            showAlert(Alert.AlertType.INFORMATION, "Already On Hold", 
+                "You are already in the queue for \"" + book.getTitle() + "\".\n" +
+                "We will set a copy aside for you as soon as one is returned.");
+            return;
+        }
+        
+        if (!member.getMembershipPlan().canReserveBooks()) {
+            showAlert(Alert.AlertType.WARNING, "Book Unavailable", 
+                "This book is currently not available for borrowing.\n" +
+                "Upgrade your plan to place holds on unavailable books.");
+            return;
+        }
+        
+        Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
+        confirm.setTitle("Place Hold");
+        confirm.setHeaderText("\"" + book.getTitle() + "\" is currently unavailable");
+        confirm.setContentText("Members waiting: " + library.getHoldQueueLength(book.getIsbn()) + "\n" +
+                              "Place a hold and we will set the next returned copy aside for you.");
+        
+        Optional<ButtonType> result = confirm.showAndWait();
+        if (result.isPresent() && result.get() == ButtonType.OK) {
+            try {
+                int position = library.placeHold(member.getId(), book.getIsbn());
+                library.saveAllData();
+                showAlert(Alert.AlertType.INFORMATION, "Hold Placed", 
+                    "You are number " + position + " in the queue for \"" + book.getTitle() + "\".");
+            } catch (Exception ex) {
+                showAlert(Alert.AlertType.ERROR, "Hold Failed", ex.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Pick up a copy that was set aside for the member's hold
+     */
+    private void handlePickUpHold(Book book) {
+        try {
+            Loan loan = library.issueLoan(member.getId(), book.getIsbn());
+            library.saveAllData();
+            showAlert(Alert.AlertType.INFORMATION, "Success", 
+                "Your reserved copy of \"" + book.getTitle() + "\" is now on loan.\n" +
+                "Due date: " + loan.getDueDate());
+            showBrowseBooks(); // Refresh
+        } catch (Exception ex) {
+            showAlert(Alert.AlertType.ERROR, "Pickup Failed", ex.getMessage());
+        }
+    }
+    
     /**
      * Show my loans view
      */
@@ -527,7 +707,7 @@ public class MemberDashboard {
             if (loan.isOverdue()) {
                 return new SimpleStringProperty("⚠️ OVERDUE (" + loan.getDaysOverdue() + " days)");
             } else {
-                long daysLeft = java.time.temporal.ChronoUnit.DAYS.between(LocalDate.now(), loan.getDueDate());
+                long daysLeft = loan.getDaysUntilDue();
                 return new SimpleStringProperty("✓ " + daysLeft + " days left");
             }
         });
@@ -535,7 +715,7 @@ public class MemberDashboard {
         
         TableColumn<Loan, String> feeCol = new TableColumn<>("Fee");
         feeCol.setCellValueFactory(data -> 
-            new SimpleStringProperty(String.format("$%.2f", data.getValue().calculateOverdueFee(member.getDailyOverdueFee()))));
+            new SimpleStringProperty(FeeLedger.formatCents(member.overdueFeeCents(data.getValue()))));
         feeCol.setPrefWidth(80);
         
         table.getColumns().addAll(titleCol, borrowDateCol, dueDateCol, statusCol, feeCol);
@@ -549,10 +729,10 @@ public class MemberDashboard {
     private void handleReturnBook(Loan loan) {
         if (loan == null) return;
         
-        double fee = loan.calculateOverdueFee(member.getDailyOverdueFee());
+        long feeCents = member.overdueFeeCents(loan);
         String message = "Return \"" + loan.getBook().getTitle() + "\"?";
-        if (fee > 0) {
-            message += "\n\nOverdue fee: $" + String.format("%.2f", fee);
+        if (feeCents > 0) {
+            message += "\n\nOverdue fee: " + FeeLedger.formatCents(feeCents);
         }
         
         Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
@@ -562,10 +742,10 @@ public class MemberDashboard {
         
         Optional<ButtonType> result = confirm.showAndWait();
         if (result.isPresent() && result.get() == ButtonType.OK) {
-            member.returnBook(loan.getBook());
+            library.returnBook(member.getId(), loan.getBook().getIsbn());    // Also sets the copy aside for the next hold
             library.saveAllData();
             showAlert(Alert.AlertType.INFORMATION, "Success", 
-                "Book returned successfully!" + (fee > 0 ? "\nFee charged: $" + String.format("%.2f", fee) : ""));
+                "Book returned successfully!" + (feeCents > 0 ? "\nFee charged: " + FeeLedger.formatCents(feeCents) : ""));
             showMyLoans(); // Refresh
         }
     }
@@ -577,29 +757,37 @@ public class MemberDashboard {
         HBox box = new HBox(30);
         box.getStyleClass().add("glass-card");
         box.setAlignment(Pos.CENTER_LEFT);
+        MemberSummary summary = library.getMemberSummary(member);
         
         VBox current = new VBox(5);
         Label currentLabel = new Label("Current Overdue Fees");
         currentLabel.getStyleClass().add("muted-label");
-        Label currentValue = new Label(String.format("$%.2f", member.calculateCurrentOverdueFees()));
+        Label currentValue = new Label(String.format("$%.2f", summary.getCurrentFees()));
         currentValue.getStyleClass().add("heading-label");
         current.getChildren().addAll(currentLabel, currentValue);
         
         VBox total = new VBox(5);
-        Label totalLabel = new Label("Total Accumulated Fees");
+        Label totalLabel = new Label("Total Overdue Fees");
         totalLabel.getStyleClass().add("muted-label");
-        Label totalValue = new Label(String.format("$%.2f", member.calculateTotalOverdueFees()));
+        Label totalValue = new Label(String.format("$%.2f", summary.getOutstandingFees()));
         totalValue.getStyleClass().add("heading-label");
         total.getChildren().addAll(totalLabel, totalValue);
         
+        VBox planFees = new VBox(5);
+        Label planFeesLabel = new Label("Plan Fees Due");
+        planFeesLabel.getStyleClass().add("muted-label");
+        Label planFeesValue = new Label(String.format("$%.2f", summary.getPlanFees()));
+        planFeesValue.getStyleClass().add("heading-label");
+        planFees.getChildren().addAll(planFeesLabel, planFeesValue);
+        
         VBox rate = new VBox(5);
         Label rateLabel = new Label("Your Daily Rate");
         rateLabel.getStyleClass().add("muted-label");
-        Label rateValue = new Label(String.format("$%.2f/day", member.getDailyOverdueFee()));
+        Label rateValue = new Label(String.format("$%.2f/day", summary.getDailyFee()));
         rateValue.getStyleClass().add("heading-label");
         rate.getChildren().addAll(rateLabel, rateValue);
         
-        box.getChildren().addAll(current, total, rate);
+        box.getChildren().addAll(current, total, planFees, rate);
         return box;
     }
     
@@ -621,7 +809,10 @@ public class MemberDashboard {
         // Plan upgrade section
         VBox upgradeSection = createUpgradeSection();
         
-        content.getChildren().addAll(title, accountCard, planCard, upgradeSection);
+        // Past loans, read from the history store only now
+        VBox historyCard = createHistoryCard();
+        
+        content.getChildren().addAll(title, accountCard, planCard, upgradeSection, historyCard);
         setContent(content);
     }
     
@@ -695,9 +886,37 @@ public class MemberDashboard {
         
         planInfo.getChildren().addAll(nameBox, benefits);
         card.getChildren().addAll(header, planInfo);
+        
+        if (plan.getPlanType() != MembershipPlan.PlanType.STAFF && (plan.isExpiringSoon() || !plan.isActive())) {
+            Button renewBtn = new Button("Renew for $" + String.format("%.2f", plan.getAnnualCost()) + "/year");
+            renewBtn.getStyleClass().add("primary-button");
+            renewBtn.setOnAction(e -> handleRenew());
+            card.getChildren().add(renewBtn);
+        }
         return card;
     }
     
+    /**
+     * Handle plan renewal
+     */
+    private void handleRenew() {
+        MembershipPlan plan = member.getMembershipPlan();
+        
+        Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
+        confirm.setTitle("Confirm Renewal");
+        confirm.setHeaderText("Renew " + plan.getPlanName() + " for one year?");
+        confirm.setContentText("Charged now: $" + String.format("%.2f", plan.getAnnualCost()));
+        
+        Optional<ButtonType> result = confirm.showAndWait();
+        if (result.isPresent() && result.get() == ButtonType.OK) {
+            member.renewPlan();
+            library.saveAllData();
+            showAlert(Alert.AlertType.INFORMATION, "Success", 
+                "Your plan now runs until " + plan.getExpiryDate() + ".");
+            showAccount(); // Refresh
+        }
+    }
+    
     /**
      * Create benefit row
      */
@@ -711,6 +930,33 @@ public class MemberDashboard {
         return row;
     }
     
+    /**
+     * Create borrowing history card (most recent loans first)
+     */
+    private VBox createHistoryCard() {
+        VBox card = new VBox(10);
+        card.getStyleClass().add("glass-card");
+        
+        List<Loan> history = member.getLoanHistory();
+        Label header = new Label("Borrowing History (" + history.size() + " past loans)");
+        header.getStyleClass().add("section-label");
+        card.getChildren().add(header);
+        
+        if (history.isEmpty()) {
+            Label empty = new Label("No past loans yet.");
+            empty.getStyleClass().add("muted-label");
+            card.getChildren().add(empty);
+        }
+        for (int i = history.size() - 1; i >= Math.max(0, history.size() - MAX_HISTORY_ROWS); i--) {
+            Loan loan = history.get(i);
+            Label row = new Label("📖  " + loan.getBook().getTitle() + "  —  borrowed " + loan.getLoanDate() +
+                    ", returned " + (loan.getReturnDate() != null ? loan.getReturnDate() : "-"));
+            row.getStyleClass().add("body-label");
+            card.getChildren().add(row);
+        }
+        return card;
+    }
+    
     /**
      * Create upgrade section
      */
@@ -788,6 +1034,7 @@ public class MemberDashboard {
         confirm.setTitle("Confirm Upgrade");
         confirm.setHeaderText("Upgrade to " + newPlan.getPlanName() + "?");
         confirm.setContentText("Monthly fee: $" + String.format("%.2f", newPlan.getMonthlyFee()) + 
+                              "\nCharged now: $" + String.format("%.2f", newPlan.getAnnualCost()) + " for one year" +
                               "\n\nBenefits:\n" +
                               "• Max books: " + newPlan.getMaxLoans() + "\n" +
                               "• Loan period: " + newPlan.getLoanPeriodDays() + " days\n" +
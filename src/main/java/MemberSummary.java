@@ -0,0 +1,195 @@
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * MemberSummary class is a read-only snapshot of what a member's dashboard shows:
+ * plan, active loans, overdue state, fees and holds.
+ * Built on the thread that owns the Library, then safe to hand to any other thread.
+ */
+public class MemberSummary {
+
+    /**
+     * One active loan as shown on the dashboard
+     */
+    public static class LoanLine {
+
+        private final String isbn;
+        private final String title;
+        private final LocalDate dueDate;
+        private final long daysUntilDue;     // Negative when overdue
+        private final boolean overdue;
+
+        private LoanLine(Loan loan) {
+            this.isbn = loan.getBook().getIsbn();
+            this.title = loan.getBook().getTitle();
+            this.dueDate = loan.getDueDate();
+            // Signed, unlike Loan.getDaysUntilDue(), which stops at 0
+            this.daysUntilDue = dueDate.toEpochDay() - LibraryClock.get().todayEpochDay();
+            this.overdue = loan.isOverdue();
+        }
+
+        public String getIsbn() {
+            return isbn;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public LocalDate getDueDate() {
+            return dueDate;
+        }
+
+        public long getDaysUntilDue() {
+            return daysUntilDue;
+        }
+
+        public boolean isOverdue() {
+            return overdue;
+        }
+    }
+
+    // Attributes
+    private final int memberId;
+    private final String fullName;
+    private final String planName;
+    private final int maxLoans;
+    private final int loanPeriodDays;
+    private final double dailyFee;
+    private final List<LoanLine> activeLoans;
+    private final LoanLine nextDue;      // Earliest due date, or null without loans
+    private final int overdueCount;
+    private final double currentFees;    // Accruing on active loans
+    private final double outstandingFees;
+    private final double planFees;       // Owed for plans, not part of outstandingFees
+    private final int holdCount;
+    private final int readyHoldCount;
+    private final LocalDateTime lastLogin;
+    private final LocalDate asOf;
+
+    // Constructors
+
+    /**
+     * Snapshot a member. Must run on the thread that owns the Library.
+     */
+    public MemberSummary(Library library, Member member) {
+        this.memberId = member.getId();
+        this.fullName = member.getName() + " " + member.getSurname();
+        MembershipPlan plan = member.getMembershipPlan();
+        this.planName = plan != null ? plan.getPlanName() : "None";
+        this.maxLoans = member.getMaxLoanLimit();
+        this.loanPeriodDays = member.getLoanPeriodDays();
+        this.dailyFee = member.getDailyOverdueFee();
+
+        List<LoanLine> lines = new ArrayList<>();
+        LoanLine earliest = null;
+        int overdue = 0;
+        for (Loan loan : member.getActiveLoans()) {
+            LoanLine line = new LoanLine(loan);
+            lines.add(line);
+            if (line.isOverdue()) {
+                overdue++;
+            }
+            if (earliest == null || line.getDueDate().isBefore(earliest.getDueDate())) {
+                earliest = line;
+            }
+        }
+        this.activeLoans = Collections.unmodifiableList(lines);
+        this.nextDue = earliest;
+        this.overdueCount = overdue;
+        this.currentFees = member.calculateCurrentOverdueFees();
+        this.outstandingFees = member.getAccumulatedFees() + currentFees;
+        this.planFees = member.getPlanFees();
+
+        List<ReservationQueue.Hold> holds = library.getHoldsByMember(memberId);
+        this.holdCount = holds.size();
+        this.readyHoldCount = (int) holds.stream().filter(ReservationQueue.Hold::isReady).count();
+        this.lastLogin = library.getSessionManager().getLastLogin(memberId);
+        this.asOf = LibraryClock.get().today();
+    }
+
+    // Getters
+
+    public int getMemberId() {
+        return memberId;
+    }
+
+    public String getFullName() {
+        return fullName;
+    }
+
+    public String getPlanName() {
+        return planName;
+    }
+
+    public int getMaxLoans() {
+        return maxLoans;
+    }
+
+    public int getLoanPeriodDays() {
+        return loanPeriodDays;
+    }
+
+    public double getDailyFee() {
+        return dailyFee;
+    }
+
+    public List<LoanLine> getActiveLoans() {
+        return activeLoans;
+    }
+
+    /**
+     * The active loan due first, or null if there are none
+     */
+    public LoanLine getNextDue() {
+        return nextDue;
+    }
+
+    public int getOverdueCount() {
+        return overdueCount;
+    }
+
+    public double getCurrentFees() {
+        return currentFees;
+    }
+
+    /**
+     * Fees from returned books plus those accruing now
+     */
+    public double getOutstandingFees() {
+        return outstandingFees;
+    }
+
+    /**
+     * Plan fees still owed, kept apart from the overdue fees
+     */
+    public double getPlanFees() {
+        return planFees;
+    }
+
+    public int getHoldCount() {
+        return holdCount;
+    }
+
+    public int getReadyHoldCount() {
+        return readyHoldCount;
+    }
+
+    public LocalDateTime getLastLogin() {
+        return lastLogin;
+    }
+
+    public LocalDate getAsOf() {
+        return asOf;
+    }
+
+    @Override
+    public String toString() {
+        return "MemberSummary{member=" + fullName + ", plan=" + planName + ", loans=" + activeLoans.size() +
+               "/" + maxLoans + ", overdue=" + overdueCount + ", fees=$" + String.format("%.2f", outstandingFees) +
+               ", planFees=$" + String.format("%.2f", planFees) + ", holds=" + holdCount + "}";
+    }
+}
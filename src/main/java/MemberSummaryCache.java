@@ -0,0 +1,117 @@
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * MemberSummaryCache class keeps the most recently viewed member summaries, keyed by member ID.
+ *
+ * Entries are dropped precisely when something they show changes: Member invalidates its own
+ * entry on loans, returns, fee payments and plan changes; Library does so for holds and logins.
+ * A summary from an earlier day is rebuilt, since due dates and fees move with the date.
+ * Bounded in size, least recently used first out.
+ */
+public class MemberSummaryCache {
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    // Attributes
+    private final Library library;
+    private final int capacity;
+    private final LinkedHashMap<Integer, MemberSummary> summaries;
+    private long hits;
+    private long misses;
+    private long invalidations;
+
+    // Constructors
+
+    public MemberSummaryCache(Library library, int capacity) {
+        if (library == null) {
+            throw new IllegalArgumentException("Library cannot be null");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        this.library = library;
+        this.capacity = capacity;
+        this.summaries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, MemberSummary> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public MemberSummaryCache(Library library) {
+        this(library, DEFAULT_CAPACITY);
+    }
+
+    // ==================== LOOKUP ====================
+
+    /**
+     * A member's summary, built on a miss. Must run on the thread that owns the Library.
+     */
+    public synchronized MemberSummary get(Member member) {
+        LocalDate today = LibraryClock.get().today();
+        MemberSummary cached = summaries.get(member.getId());
+        if (cached != null && cached.getAsOf().equals(today)) {
+            hits++;
+            return cached;
+        }
+        misses++;
+        MemberSummary summary = new MemberSummary(library, member);
+        summaries.put(member.getId(), summary);
+        return summary;
+    }
+
+    /**
+     * Drop a member's summary; the next get() rebuilds it.
+     * Safe to call from any thread.
+     */
+    public synchronized void invalidate(int memberId) {
+        if (summaries.remove(memberId) != null) {
+            invalidations++;
+        }
+    }
+
+    public synchronized void clear() {
+        invalidations += summaries.size();
+        summaries.clear();
+    }
+
+    // ==================== METRICS ====================
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    /**
+     * Fraction of lookups served from the cache, 0 when there were none
+     */
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+
+    public synchronized int getSize() {
+        return summaries.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "MemberSummaryCache{size=" + summaries.size() + "/" + capacity + ", hits=" + hits +
+               ", misses=" + misses + ", invalidations=" + invalidations +
+               ", hitRate=" + String.format("%.1f%%", getHitRate() * 100) + "}";
+    }
+}
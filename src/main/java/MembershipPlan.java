@@ -58,7 +58,7 @@ public class MembershipPlan implements Serializable {
     public MembershipPlan(PlanType planType) {
         this.planType = planType;
         this.isActive = true;
-        this.startDate = java.time.LocalDate.now();
+        this.startDate = LibraryClock.get().today();
         // Staff plans don't expire, others expire in 1 year
         this.expiryDate = planType == PlanType.STAFF ? null : startDate.plusYears(1);
     }
@@ -107,7 +107,7 @@ public class MembershipPlan implements Serializable {
     public boolean isActive() {
         if (!isActive) return false;
         if (expiryDate == null) return true; // Staff plans never expire
-        return !java.time.LocalDate.now().isAfter(expiryDate);
+        return !LibraryClock.get().today().isAfter(expiryDate);
     }
     
     public java.time.LocalDate getStartDate() {
@@ -126,7 +126,7 @@ public class MembershipPlan implements Serializable {
     public void upgradePlan(PlanType newPlanType) {
         if (newPlanType.ordinal() > this.planType.ordinal()) {
             this.planType = newPlanType;
-            this.startDate = java.time.LocalDate.now();
+            this.startDate = LibraryClock.get().today();
             this.expiryDate = newPlanType == PlanType.STAFF ? null : startDate.plusYears(1);
             System.out.println("Plan upgraded to: " + newPlanType.getDisplayName());
         } else {
@@ -139,7 +139,7 @@ public class MembershipPlan implements Serializable {
      */
     public void changePlan(PlanType newPlanType) {
         this.planType = newPlanType;
-        this.startDate = java.time.LocalDate.now();
+        this.startDate = LibraryClock.get().today();
         this.expiryDate = newPlanType == PlanType.STAFF ? null : startDate.plusYears(1);
         System.out.println("Plan changed to: " + newPlanType.getDisplayName());
     }
@@ -152,7 +152,7 @@ public class MembershipPlan implements Serializable {
             System.out.println("Staff plans don't need renewal.");
             return;
         }
-        this.startDate = java.time.LocalDate.now();
+        this.startDate = LibraryClock.get().today();
         this.expiryDate = startDate.plusYears(1);
         this.isActive = true;
         System.out.println("Plan renewed until: " + expiryDate);
@@ -179,7 +179,7 @@ public class MembershipPlan implements Serializable {
     public long getDaysUntilExpiry() {
         if (expiryDate == null) return Long.MAX_VALUE; // Never expires
         return java.time.temporal.ChronoUnit.DAYS.between(
-                java.time.LocalDate.now(), expiryDate);
+                LibraryClock.get().today(), expiryDate);
     }
     
     /**
@@ -0,0 +1,200 @@
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * OpenAddressingMap class holds the parts of the primitive-keyed maps that do not depend
+ * on the key type: the value table, sizing, backward-shift deletion and the values view.
+ * IntObjectMap and LongObjectMap add the key array, hashing and key comparison.
+ * Uses linear probing with backward-shift deletion, so there are no tombstones.
+ * Null values are not allowed (an empty slot is a null value).
+ */
+public abstract class OpenAddressingMap<V> {
+
+    static final int DEFAULT_CAPACITY = 16;
+    static final float LOAD_FACTOR = 0.75f;
+
+    // Attributes (serialized by the subclasses, which keep their original stream layout)
+    Object[] values;
+    int size;
+    int mask;
+    int resizeThreshold;
+    transient int modCount;
+
+    static int tableSizeFor(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Expected size cannot be negative");
+        }
+        int needed = (int) Math.ceil(expectedSize / LOAD_FACTOR);
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < needed) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Allocate empty value and key tables of the given power-of-two capacity
+     */
+    void allocate(int capacity) {
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+        this.resizeThreshold = (int) (capacity * LOAD_FACTOR);
+        allocateKeys(capacity);
+    }
+
+    /**
+     * Install a table read from a stream (the capacity is the table length)
+     */
+    void restore(Object[] values, int size) {
+        this.values = values;
+        this.size = size;
+        this.mask = values.length - 1;
+        this.resizeThreshold = (int) (values.length * LOAD_FACTOR);
+    }
+
+    // ==================== KEY HOOKS ====================
+
+    abstract void allocateKeys(int capacity);
+
+    /**
+     * Home slot of the key stored at a slot
+     */
+    abstract int homeSlotAt(int slot);
+
+    abstract void moveKey(int from, int to);
+
+    abstract void clearKey(int slot);
+
+    /**
+     * Rebuild the tables at a new capacity
+     */
+    abstract void rehash(int newCapacity);
+
+    // ==================== TABLE OPERATIONS ====================
+
+    /**
+     * Record an insertion into an empty slot, growing the table if needed
+     */
+    void inserted() {
+        modCount++;
+        if (++size > resizeThreshold) {
+            rehash(values.length << 1);
+        }
+    }
+
+    /**
+     * Remove the entry at a slot
+     * @return the removed value
+     */
+    @SuppressWarnings("unchecked")
+    V removeAt(int slot) {
+        V value = (V) values[slot];
+        shiftBack(slot);
+        size--;
+        modCount++;
+        return value;
+    }
+
+    /**
+     * Close the gap left at a removed slot by moving later entries of the probe run back
+     */
+    private void shiftBack(int gap) {
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & mask;
+            if (values[slot] == null) {
+                break;
+            }
+            int home = homeSlotAt(slot);
+            // Move the entry only if its home slot is not between the gap and its current slot
+            boolean movable = gap <= slot ? (home <= gap || home > slot) : (home <= gap && home > slot);
+            if (movable) {
+                moveKey(slot, gap);
+                values[gap] = values[slot];
+                gap = slot;
+            }
+        }
+        values[gap] = null;
+        clearKey(gap);
+    }
+
+    public void clear() {
+        if (size > 0) {
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    clearKey(i);
+                }
+            }
+            Arrays.fill(values, null);
+            size = 0;
+            modCount++;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // ==================== VIEWS ====================
+
+    /**
+     * Live, read-only view of the values (no copy is made)
+     */
+    public Collection<V> values() {
+        return new AbstractCollection<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new ValueIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private class ValueIterator implements Iterator<V> {
+        private int nextSlot = advance(0);
+        private final int expectedModCount = modCount;
+
+        private int advance(int from) {
+            while (from < values.length && values[from] == null) {
+                from++;
+            }
+            return from;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextSlot < values.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (nextSlot >= values.length) {
+                throw new NoSuchElementException();
+            }
+            V value = (V) values[nextSlot];
+            nextSlot = advance(nextSlot + 1);
+            return value;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{size=" + size + ", capacity=" + values.length + "}";
+    }
+}
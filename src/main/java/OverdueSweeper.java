@@ -0,0 +1,251 @@
+import java.io.*;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OverdueSweeper class materializes overdue fees incrementally.
+ * Loans that are not yet overdue wait in an index ordered by due date; a daily job at
+ * local midnight moves only the loans that crossed their due date into the per-member
+ * and library-wide fee counters. Fee lookups then read those counters in O(1).
+ */
+public class OverdueSweeper {
+
+    private static final String OVERDUE_FEES_FILE = "overdue_fees.dat";
+
+    // Attributes
+    private final Library library;
+    private final TreeMap<LocalDate, List<Loan>> pendingByDueDate;   // Loans not yet accruing
+    private FeeAccrual outstandingFees;                               // Library-wide current overdue fees
+    private LocalDate lastSweepDate;
+    private ScheduledExecutorService scheduler;
+    private Executor sweepExecutor;
+
+    // Constructors
+
+    public OverdueSweeper(Library library) {
+        if (library == null) {
+            throw new IllegalArgumentException("Library cannot be null");
+        }
+        this.library = library;
+        this.pendingByDueDate = new TreeMap<>();
+        this.outstandingFees = new FeeAccrual();
+        this.lastSweepDate = null;
+    }
+
+    // ==================== SCHEDULING ====================
+
+    /**
+     * Index the active loans, catch up on today's sweep and schedule one at every local midnight.
+     * The sweep body runs on the given executor, e.g. Platform::runLater for the JavaFX app,
+     * so it never races the thread that mutates loans.
+     */
+    public void start(Executor executor) {
+        if (scheduler != null) {
+            return;
+        }
+        this.sweepExecutor = executor != null ? executor : Runnable::run;
+        indexActiveLoans();
+        if (!loadFromFile()) {
+            recomputeOutstanding();
+        }
+        sweep(LibraryClock.get().today());
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "overdue-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduleNextRun();
+        System.out.println("Overdue sweeper scheduled (next run at midnight).");
+    }
+
+    /**
+     * Start with sweeps running directly on the scheduler thread
+     */
+    public void start() {
+        start(null);
+    }
+
+    /**
+     * Stop the daily job
+     */
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    public boolean isRunning() {
+        return scheduler != null;
+    }
+
+    /**
+     * Schedule the next run for the coming local midnight. Recomputed every run
+     * so daylight-saving shifts do not drift the schedule.
+     */
+    private void scheduleNextRun() {
+        LocalDateTime now = LocalDateTime.now(LibraryClock.get().getClock());
+        LocalDateTime nextMidnight = now.toLocalDate().plusDays(1).atStartOfDay();
+        long delayMillis = Duration.between(now, nextMidnight).toMillis();
+        scheduler.schedule(() -> {
+            sweepExecutor.execute(() -> {
+                sweep(LibraryClock.get().today());
+                saveToFile();
+                library.saveMembersToFile();
+            });
+            if (scheduler != null) {
+                scheduleNextRun();
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // ==================== INDEX MAINTENANCE ====================
+
+    /**
+     * Build the due-date index from the members' active loans that are not accruing yet.
+     * Runs once at startup; loans already accruing are carried by the saved member counters.
+     */
+    public void indexActiveLoans() {
+        pendingByDueDate.clear();
+        for (Member member : library.getAllMembers()) {
+            for (Loan loan : member.getActiveLoans()) {
+                track(loan);
+            }
+        }
+    }
+
+    /**
+     * Rebuild the library-wide total from the per-member counters (no loan scan)
+     */
+    public void recomputeOutstanding() {
+        LocalDate today = LibraryClock.get().today();
+        outstandingFees.reset();
+        for (Member member : library.getAllMembers()) {
+            FeeAccrual accrual = member.getOverdueAccrual();
+            outstandingFees.add(accrual.centsAsOf(today), accrual.getCentsPerDay(), today);
+        }
+    }
+
+    /**
+     * Add a newly issued loan to the due-date index
+     */
+    public void track(Loan loan) {
+        if (loan == null || loan.isReturned() || loan.isFeeAccruing()) {
+            return;
+        }
+        pendingByDueDate.computeIfAbsent(loan.getDueDate(), d -> new ArrayList<>()).add(loan);
+    }
+
+    /**
+     * Advance the counters to the given day: every pending loan whose due date
+     * has passed starts accruing. Loans still inside their period are not touched.
+     * @return number of loans that crossed their due date
+     */
+    public int sweep(LocalDate today) {
+        int crossed = 0;
+        NavigableMap<LocalDate, List<Loan>> due = pendingByDueDate.headMap(today, false);
+        for (List<Loan> loans : due.values()) {
+            for (Loan loan : loans) {
+                Member member = loan.getMember();
+                // Loans returned since they were indexed are dropped lazily here
+                if (loan.isReturned() || loan.isFeeAccruing() || !member.hasActiveLoan(loan)) {
+                    continue;
+                }
+                long rateCents = FeeAccrual.toCents(member.getDailyOverdueFee());
+                long feeCents = rateCents * ChronoUnit.DAYS.between(loan.getDueDate(), today);
+                member.startOverdueAccrual(loan, rateCents, feeCents, today);
+                outstandingFees.add(feeCents, rateCents, today);
+                crossed++;
+            }
+        }
+        due.clear();
+        lastSweepDate = today;
+        if (crossed > 0) {
+            System.out.println("Overdue sweep " + today + ": " + crossed + " loan(s) became overdue.");
+        }
+        return crossed;
+    }
+
+    /**
+     * Called when an accruing loan is returned: take its fee out of the library-wide total
+     */
+    void release(long feeCents, long rateCents, LocalDate asOf) {
+        outstandingFees.remove(feeCents, rateCents, asOf);
+    }
+
+    // ==================== QUERIES ====================
+
+    /**
+     * Check if the counters are up to date for the given day
+     */
+    public boolean isCurrent(LocalDate today) {
+        return lastSweepDate != null && !lastSweepDate.isBefore(today);
+    }
+
+    /**
+     * Library-wide overdue fees on active loans, as of today
+     */
+    public double getOutstandingFees() {
+        return outstandingFees.amountAsOf(LibraryClock.get().today());
+    }
+
+    public LocalDate getLastSweepDate() {
+        return lastSweepDate;
+    }
+
+    /**
+     * Number of loans waiting to cross their due date
+     */
+    public int getPendingCount() {
+        int count = 0;
+        for (List<Loan> loans : pendingByDueDate.values()) {
+            count += loans.size();
+        }
+        return count;
+    }
+
+    // ==================== PERSISTENCE ====================
+
+    /**
+     * Save the library-wide counter and sweep date.
+     * Per-member counters are saved with the members.
+     */
+    public void saveToFile() {
+        try (ObjectOutputStream oos = new ObjectOutputStream(
+                new FileOutputStream(library.dataFile(OVERDUE_FEES_FILE)))) {
+            oos.writeObject(outstandingFees);
+            oos.writeObject(lastSweepDate);
+        } catch (IOException e) {
+            System.err.println("Error saving overdue fees: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Load the library-wide counter and sweep date
+     * @return true if a saved counter was loaded
+     */
+    public boolean loadFromFile() {
+        File file = new File(library.dataFile(OVERDUE_FEES_FILE));
+        if (!file.exists()) {
+            return false;
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(
+                new FileInputStream(library.dataFile(OVERDUE_FEES_FILE)))) {
+            outstandingFees = (FeeAccrual) ois.readObject();
+            lastSweepDate = (LocalDate) ois.readObject();
+            return true;
+        } catch (IOException | ClassNotFoundException e) {
+            System.err.println("Error loading overdue fees: " + e.getMessage());
+            outstandingFees = new FeeAccrual();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Base64;
+import java.util.HexFormat;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * PasswordCredential class is a salted PBKDF2 password hash together with the
+ * parameters it was derived with (algorithm, iteration count, salt).
+ * Each user gets a random salt; the iteration count is tunable for new credentials
+ * (see PasswordHashBenchmark) while stored credentials keep verifying with their own
+ * parameters. Key factories and digests are reused per thread, and hashes are
+ * compared in constant time.
+ */
+public final class PasswordCredential implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String ALGORITHM = "PBKDF2WithHmacSHA512";
+    public static final int MIN_ITERATIONS = 100_000;          // Floor that tuning cannot go below
+    public static final int DEFAULT_ITERATIONS = 210_000;
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 512;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static volatile int iterations = readIterationsProperty();
+
+    // One key factory / digest per thread: getInstance() is a provider lookup on every call
+    private static final ThreadLocal<SecretKeyFactory> KEY_FACTORY = ThreadLocal.withInitial(() -> {
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    });
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
+
+    // Verified against when no user matches, so unknown emails cost as much as wrong passwords
+    private static volatile PasswordCredential dummy;
+
+    // Attributes
+    private final String algorithm;
+    private final int iterationCount;
+    private final byte[] salt;
+    private final byte[] hash;
+
+    // Constructors
+
+    private PasswordCredential(String algorithm, int iterationCount, byte[] salt, byte[] hash) {
+        this.algorithm = algorithm;
+        this.iterationCount = iterationCount;
+        this.salt = salt;
+        this.hash = hash;
+    }
+
+    /**
+     * Derive a new credential with a fresh salt and the current iteration count
+     */
+    public static PasswordCredential create(String password) {
+        if (password == null) {
+            throw new IllegalArgumentException("Password cannot be null");
+        }
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        int count = iterations;
+        return new PasswordCredential(ALGORITHM, count, salt, derive(ALGORITHM, password, salt, count));
+    }
+
+    // ==================== VERIFICATION ====================
+
+    /**
+     * Check a password against this credential in constant time
+     */
+    public boolean verify(String password) {
+        if (password == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(hash, derive(algorithm, password, salt, iterationCount));
+    }
+
+    /**
+     * Check if this credential was made with weaker parameters than the current ones
+     * and should be re-derived at the next successful login
+     */
+    public boolean needsRehash() {
+        return !ALGORITHM.equals(algorithm) || iterationCount < iterations;
+    }
+
+    /**
+     * Spend the same work as a real verification without revealing anything
+     */
+    public static void verifyDummy(String password) {
+        PasswordCredential d = dummy;
+        if (d == null || d.iterationCount != iterations) {
+            d = create("dummy-password");
+            dummy = d;
+        }
+        d.verify(password != null ? password : "");
+    }
+
+    /**
+     * Check a password against a legacy unsalted SHA-256 hex hash, in constant time
+     */
+    public static boolean verifyLegacySha256(String password, String hexHash) {
+        if (password == null || hexHash == null) {
+            return false;
+        }
+        byte[] expected;
+        try {
+            expected = HexFormat.of().parseHex(hexHash);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        MessageDigest digest = SHA_256.get();
+        byte[] actual = digest.digest(password.getBytes(StandardCharsets.UTF_8));
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    private static byte[] derive(String algorithm, String password, byte[] salt, int count) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, count, HASH_BITS);
+        try {
+            SecretKeyFactory factory = ALGORITHM.equals(algorithm)
+                    ? KEY_FACTORY.get() : SecretKeyFactory.getInstance(algorithm);
+            return factory.generateSecret(spec).getEncoded();
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+            throw new IllegalStateException("Password hashing failed: " + e.getMessage(), e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    // ==================== TUNING ====================
+
+    /**
+     * Iteration count used for new credentials
+     */
+    public static int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Change the iteration count for new credentials.
+     * Existing credentials are upgraded at their next login.
+     * @throws IllegalArgumentException if below MIN_ITERATIONS
+     */
+    public static void setIterations(int count) {
+        if (count < MIN_ITERATIONS) {
+            throw new IllegalArgumentException("Iteration count cannot be below " + MIN_ITERATIONS);
+        }
+        iterations = count;
+    }
+
+    /**
+     * Read the "lms.kdf.iterations" system property, falling back to the default
+     */
+    private static int readIterationsProperty() {
+        String value = System.getProperty("lms.kdf.iterations");
+        if (value == null) {
+            return DEFAULT_ITERATIONS;
+        }
+        try {
+            return Math.max(MIN_ITERATIONS, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            System.err.println("Ignoring invalid lms.kdf.iterations: " + value);
+            return DEFAULT_ITERATIONS;
+        }
+    }
+
+    // ==================== GETTERS ====================
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getIterationCount() {
+        return iterationCount;
+    }
+
+    /**
+     * Stored form: algorithm$iterations$salt$hash (Base64)
+     */
+    public String encode() {
+        Base64.Encoder b64 = Base64.getEncoder().withoutPadding();
+        return algorithm + "$" + iterationCount + "$" + b64.encodeToString(salt) + "$" + b64.encodeToString(hash);
+    }
+
+    @Override
+    public String toString() {
+        return "PasswordCredential{algorithm=" + algorithm + ", iterations=" + iterationCount + "}";
+    }
+}
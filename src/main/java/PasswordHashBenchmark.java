@@ -0,0 +1,111 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * PasswordHashBenchmark - Tunes the PBKDF2 iteration count for login bursts.
+ * Simulates the opening-time rush: a burst of logins arrives at once and is verified
+ * on one thread per core. For each candidate iteration count it reports the latency
+ * each login sees (queueing included) and recommends the highest count whose
+ * 95th percentile stays within the target.
+ *
+ * Usage: java PasswordHashBenchmark [burstSize] [targetMillis] [iterations...]
+ */
+public class PasswordHashBenchmark {
+
+    private static final int DEFAULT_BURST = 50;
+    private static final long DEFAULT_TARGET_MILLIS = 2000;
+    private static final int[] DEFAULT_CANDIDATES = {100_000, 150_000, 210_000, 300_000, 450_000, 600_000};
+
+    public static void main(String[] args) throws Exception {
+        int burst = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_BURST;
+        long targetMillis = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_TARGET_MILLIS;
+        int[] candidates = DEFAULT_CANDIDATES;
+        if (args.length > 2) {
+            candidates = Arrays.stream(args, 2, args.length).mapToInt(Integer::parseInt).toArray();
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        int original = PasswordCredential.getIterations();
+        System.out.println("=== PBKDF2 login burst benchmark ===");
+        System.out.println("Algorithm: " + PasswordCredential.ALGORITHM + ", threads: " + threads +
+                ", burst: " + burst + " logins, target p95: " + targetMillis + " ms\n");
+        System.out.printf("%12s %10s %10s %10s %10s %12s%n",
+                "iterations", "single ms", "p50 ms", "p95 ms", "max ms", "logins/s");
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        int recommended = -1;
+        try {
+            for (int count : candidates) {
+                if (count < PasswordCredential.MIN_ITERATIONS) {
+                    System.out.printf("%12d   skipped (below minimum %d)%n", count, PasswordCredential.MIN_ITERATIONS);
+                    continue;
+                }
+                PasswordCredential.setIterations(count);
+                PasswordCredential credential = PasswordCredential.create("benchmark-password");
+
+                // Warm up the per-thread key factories and the JIT
+                runBurst(pool, credential, threads * 2);
+
+                long start = System.nanoTime();
+                credential.verify("benchmark-password");
+                double singleMillis = (System.nanoTime() - start) / 1e6;
+
+                long burstStart = System.nanoTime();
+                long[] latencies = runBurst(pool, credential, burst);
+                double burstSeconds = (System.nanoTime() - burstStart) / 1e9;
+
+                Arrays.sort(latencies);
+                double p50 = percentile(latencies, 0.50);
+                double p95 = percentile(latencies, 0.95);
+                double max = latencies[latencies.length - 1] / 1e6;
+                System.out.printf("%12d %10.1f %10.1f %10.1f %10.1f %12.1f%n",
+                        count, singleMillis, p50, p95, max, burst / burstSeconds);
+
+                if (p95 <= targetMillis) {
+                    recommended = Math.max(recommended, count);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+            PasswordCredential.setIterations(original);
+        }
+
+        System.out.println();
+        if (recommended > 0) {
+            System.out.println("Recommended: -Dlms.kdf.iterations=" + recommended);
+        } else {
+            System.out.println("No candidate meets the target; add hardware or spread the burst " +
+                    "(the count cannot go below " + PasswordCredential.MIN_ITERATIONS + ").");
+        }
+    }
+
+    /**
+     * Submit all logins at once and return each one's latency from the start of the burst, in nanos
+     */
+    private static long[] runBurst(ExecutorService pool, PasswordCredential credential, int size) throws Exception {
+        long burstStart = System.nanoTime();
+        List<Future<Long>> futures = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            // Every fourth login uses a wrong password, like a real rush
+            String attempt = (i % 4 == 3) ? "wrong-password" : "benchmark-password";
+            futures.add(pool.submit(() -> {
+                credential.verify(attempt);
+                return System.nanoTime() - burstStart;
+            }));
+        }
+        long[] latencies = new long[size];
+        for (int i = 0; i < size; i++) {
+            latencies[i] = futures.get(i).get();
+        }
+        return latencies;
+    }
+
+    private static double percentile(long[] sortedNanos, double p) {
+        int index = (int) Math.ceil(p * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, index)] / 1e6;
+    }
+}
@@ -0,0 +1,340 @@
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PopularityTracker class keeps a running list of the most borrowed titles, with recent
+ * loans weighing more than old ones.
+ *
+ * Counts are kept with the Space-Saving algorithm: a fixed number of counters, and a new
+ * title takes over the smallest one, inheriting its count as an error bound. Any title whose
+ * share of loans is above 1/capacity is guaranteed to be tracked. Each loan adds a weight that
+ * doubles every half-life (forward decay), so older loans fade without touching the counters;
+ * the counters are rescaled now and then to keep the weights in range.
+ *
+ * Recording a loan is O(log capacity + leaderboard size) and getTrending(k) is O(k); the loan
+ * history is never scanned. Not thread-safe: used by the thread that owns the Library.
+ */
+public class PopularityTracker implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final int DEFAULT_LEADERBOARD_SIZE = 50;
+    public static final double DEFAULT_HALF_LIFE_DAYS = 14.0;
+    private static final double RESCALE_EXPONENT = 512.0;     // Rescale before weights reach 2^512
+
+    /**
+     * A trending title with its decayed loan count
+     */
+    public static class Trend {
+        private final long isbnKey;
+        private final double score;
+        private final double error;
+
+        private Trend(long isbnKey, double score, double error) {
+            this.isbnKey = isbnKey;
+            this.score = score;
+            this.error = error;
+        }
+
+        public long getIsbnKey() {
+            return isbnKey;
+        }
+
+        /**
+         * Decayed loan count; may overestimate by up to getError()
+         */
+        public double getScore() {
+            return score;
+        }
+
+        /**
+         * Most the score may overestimate, inherited when the title took over another's counter
+         */
+        public double getError() {
+            return error;
+        }
+
+        /**
+         * Score that is certain, whatever happened to the counter before this title got it
+         */
+        public double getGuaranteedScore() {
+            return score - error;
+        }
+
+        @Override
+        public String toString() {
+            return "Trend{isbn=" + isbnKey + ", score=" + String.format("%.2f", score) + "}";
+        }
+    }
+
+    /**
+     * One Space-Saving counter, in the min-heap and possibly on the leaderboard
+     */
+    private static final class Counter implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private long isbnKey;
+        private double count;            // Weighted at the landmark day
+        private double error;
+        private int heapIndex;
+        private int rank = -1;           // Position on the leaderboard, -1 if not on it
+    }
+
+    // Attributes
+    private final int capacity;
+    private final double halfLifeDays;
+    private final LongObjectMap<Counter> counters;     // ISBN key -> counter
+    private final Counter[] heap;                      // Min-heap by count
+    private final Counter[] leaderboard;               // Largest counts, descending
+    private int size;
+    private int leaders;
+    private long landmarkDay;                          // Day at which a loan weighs 1
+    private long totalLoans;
+
+    // Constructors
+
+    public PopularityTracker(int capacity, int leaderboardSize, double halfLifeDays) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        if (leaderboardSize < 1 || leaderboardSize > capacity) {
+            throw new IllegalArgumentException("Leaderboard size must be between 1 and the capacity");
+        }
+        if (!(halfLifeDays > 0)) {
+            throw new IllegalArgumentException("Half-life must be positive");
+        }
+        this.capacity = capacity;
+        this.halfLifeDays = halfLifeDays;
+        this.counters = new LongObjectMap<>(capacity);
+        this.heap = new Counter[capacity];
+        this.leaderboard = new Counter[leaderboardSize];
+        this.landmarkDay = LibraryClock.get().todayEpochDay();
+    }
+
+    public PopularityTracker() {
+        this(DEFAULT_CAPACITY, DEFAULT_LEADERBOARD_SIZE, DEFAULT_HALF_LIFE_DAYS);
+    }
+
+    // ==================== RECORDING ====================
+
+    /**
+     * Count a loan of a title issued today
+     */
+    public void record(long isbnKey) {
+        record(isbnKey, LibraryClock.get().todayEpochDay());
+    }
+
+    /**
+     * Count a loan of a title issued on the given day (loans may arrive out of order)
+     */
+    public void record(long isbnKey, long epochDay) {
+        if (size == 0) {
+            landmarkDay = epochDay;
+        }
+        double exponent = (epochDay - landmarkDay) / halfLifeDays;
+        if (exponent > RESCALE_EXPONENT) {
+            rescale(epochDay);
+            exponent = 0.0;
+        }
+        double weight = Math.pow(2.0, exponent);
+        totalLoans++;
+
+        Counter counter = counters.get(isbnKey);
+        if (counter == null) {
+            if (size < capacity) {
+                counter = new Counter();
+                counter.isbnKey = isbnKey;
+                counter.heapIndex = size;
+                heap[size++] = counter;
+                siftUp(counter.heapIndex);
+            } else {
+                // Take over the smallest counter, which stays the upper bound of the new title's count
+                counter = heap[0];
+                counters.remove(counter.isbnKey);
+                if (counter.rank >= 0) {
+                    dropFromLeaderboard(counter);
+                }
+                counter.isbnKey = isbnKey;
+                counter.error = counter.count;
+            }
+            counters.put(isbnKey, counter);
+        }
+        counter.count += weight;
+        siftDown(counter.heapIndex);
+        promote(counter);
+    }
+
+    /**
+     * Bring every count to the given landmark day, so new weights start again at 1
+     */
+    private void rescale(long newLandmarkDay) {
+        double factor = Math.pow(2.0, -(newLandmarkDay - landmarkDay) / halfLifeDays);
+        for (int i = 0; i < size; i++) {
+            heap[i].count *= factor;
+            heap[i].error *= factor;
+        }
+        landmarkDay = newLandmarkDay;
+    }
+
+    // ==================== QUERIES ====================
+
+    /**
+     * The k most borrowed titles as of today, highest score first. k is capped at the leaderboard size.
+     */
+    public List<Trend> getTrending(int k) {
+        return getTrending(k, LibraryClock.get().todayEpochDay());
+    }
+
+    /**
+     * The k most borrowed titles, with scores decayed to the given day
+     */
+    public List<Trend> getTrending(int k, long epochDay) {
+        if (k < 0) {
+            throw new IllegalArgumentException("Number of titles cannot be negative");
+        }
+        double decay = decayTo(epochDay);
+        int count = Math.min(k, leaders);
+        List<Trend> trending = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Counter counter = leaderboard[i];
+            trending.add(new Trend(counter.isbnKey, counter.count * decay, counter.error * decay));
+        }
+        return trending;
+    }
+
+    /**
+     * Decayed loan count of a title as of today, 0 if it is not tracked
+     */
+    public double getScore(long isbnKey) {
+        Counter counter = counters.get(isbnKey);
+        return counter != null ? counter.count * decayTo(LibraryClock.get().todayEpochDay()) : 0.0;
+    }
+
+    private double decayTo(long epochDay) {
+        return Math.pow(2.0, -(epochDay - landmarkDay) / halfLifeDays);
+    }
+
+    public boolean isTracked(long isbnKey) {
+        return counters.containsKey(isbnKey);
+    }
+
+    /**
+     * Loans recorded since the tracker was created
+     */
+    public long getTotalLoans() {
+        return totalLoans;
+    }
+
+    public int getTrackedTitles() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getLeaderboardSize() {
+        return leaderboard.length;
+    }
+
+    public double getHalfLifeDays() {
+        return halfLifeDays;
+    }
+
+    // ==================== LEADERBOARD ====================
+
+    /**
+     * Put a counter whose count just grew in its place on the leaderboard
+     */
+    private void promote(Counter counter) {
+        if (counter.rank < 0) {
+            if (leaders < leaderboard.length) {
+                counter.rank = leaders;
+                leaderboard[leaders++] = counter;
+            } else if (counter.count > leaderboard[leaders - 1].count) {
+                leaderboard[leaders - 1].rank = -1;
+                counter.rank = leaders - 1;
+                leaderboard[leaders - 1] = counter;
+            } else {
+                return;
+            }
+        }
+        int i = counter.rank;
+        while (i > 0 && leaderboard[i - 1].count < counter.count) {
+            leaderboard[i] = leaderboard[i - 1];
+            leaderboard[i].rank = i;
+            i--;
+        }
+        leaderboard[i] = counter;
+        counter.rank = i;
+    }
+
+    /**
+     * Remove a counter that is being taken over. It held the smallest count, so it can only be
+     * on the leaderboard when ties or few titles put it there; refill the freed place from the heap.
+     */
+    private void dropFromLeaderboard(Counter counter) {
+        for (int i = counter.rank; i < leaders - 1; i++) {
+            leaderboard[i] = leaderboard[i + 1];
+            leaderboard[i].rank = i;
+        }
+        leaderboard[--leaders] = null;
+        counter.rank = -1;
+
+        Counter best = null;
+        for (int i = 0; i < size; i++) {
+            Counter candidate = heap[i];
+            if (candidate.rank < 0 && candidate != counter && (best == null || candidate.count > best.count)) {
+                best = candidate;
+            }
+        }
+        if (best != null) {
+            promote(best);
+        }
+    }
+
+    // ==================== HEAP ====================
+
+    private void siftUp(int index) {
+        Counter counter = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent].count <= counter.count) {
+                break;
+            }
+            place(heap[parent], index);
+            index = parent;
+        }
+        place(counter, index);
+    }
+
+    private void siftDown(int index) {
+        Counter counter = heap[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                child++;
+            }
+            if (counter.count <= heap[child].count) {
+                break;
+            }
+            place(heap[child], index);
+            index = child;
+        }
+        place(counter, index);
+    }
+
+    private void place(Counter counter, int index) {
+        heap[index] = counter;
+        counter.heapIndex = index;
+    }
+
+    @Override
+    public String toString() {
+        return "PopularityTracker{titles=" + size + "/" + capacity + ", loans=" + totalLoans +
+               ", halfLife=" + halfLifeDays + "d}";
+    }
+}
@@ -0,0 +1,547 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.LongFunction;
+
+/**
+ * RecommendationEngine class suggests titles from co-borrowing: "members who borrowed this
+ * also borrowed".
+ *
+ * A batch build reads the whole loan history into per-member baskets of distinct titles,
+ * then counts, for every title, how many members also borrowed each other title. The counting
+ * is a fork-join pass over ranges of titles. Only the strongest NEIGHBORS_PER_TITLE neighbours
+ * of each title are kept, in flat primitive arrays sorted by ISBN key.
+ *
+ * New loans are added to a small overlay of extra counts, so recommendations follow new
+ * borrowing right away; the model is rebuilt once the overlay grows large. Queries read a
+ * few neighbour lists and take milliseconds. Must run on the thread that owns the Library.
+ */
+public class RecommendationEngine {
+
+    public static final int NEIGHBORS_PER_TITLE = 50;
+    public static final int MAX_BASKET = 200;           // Most recent distinct titles counted per member
+    private static final int MAX_SEEDS = 20;            // Most recent titles of a member used for a query
+    private static final int MIN_LEAF_TITLES = 64;
+    private static final int MIN_REBUILD_PAIRS = 10_000;
+    private static final double REBUILD_RATIO = 0.25;   // Overlay size, relative to the model, that triggers a rebuild
+
+    /**
+     * Counts added since the last build for one title
+     */
+    private static final class Overlay {
+        private long[] isbnKeys = new long[4];
+        private int[] counts = new int[4];
+        private int size;
+
+        private void add(long isbnKey) {
+            for (int i = 0; i < size; i++) {
+                if (isbnKeys[i] == isbnKey) {
+                    counts[i]++;
+                    return;
+                }
+            }
+            if (size == isbnKeys.length) {
+                isbnKeys = Arrays.copyOf(isbnKeys, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            isbnKeys[size] = isbnKey;
+            counts[size++] = 1;
+        }
+    }
+
+    // Attributes
+    private final Library library;
+    private final LongFunction<Book> bookLookup;        // ISBN key -> Book in the inventory, or null
+    private final ForkJoinPool pool;
+    private boolean built;
+    private long[] titleIsbns = new long[0];            // Titles with neighbours, sorted
+    private int[] offsets = {0};                        // Neighbours of title i: offsets[i] to offsets[i + 1]
+    private long[] neighborIsbns = new long[0];
+    private int[] neighborCounts = new int[0];          // Members who borrowed both titles
+    private LongObjectMap<Overlay> overlay = new LongObjectMap<>();
+    private long overlayPairs;
+    private long buildMillis;
+
+    // Constructors
+
+    public RecommendationEngine(Library library, LongFunction<Book> bookLookup, ForkJoinPool pool) {
+        if (library == null || bookLookup == null || pool == null) {
+            throw new IllegalArgumentException("Library, book lookup and pool cannot be null");
+        }
+        this.library = library;
+        this.bookLookup = bookLookup;
+        this.pool = pool;
+    }
+
+    public RecommendationEngine(Library library, LongFunction<Book> bookLookup) {
+        this(library, bookLookup, ForkJoinPool.commonPool());
+    }
+
+    // ==================== QUERIES ====================
+
+    /**
+     * Titles borrowed by members who borrowed the member's recent titles, strongest first.
+     * Titles the member has borrowed, and titles no longer in the catalog, are left out.
+     */
+    public List<Book> recommendFor(Member member, int k) {
+        if (member == null) {
+            throw new IllegalArgumentException("Member cannot be null");
+        }
+        ensureBuilt();
+        long[] borrowed = titlesOf(member.getId(), member.getActiveLoans(), Integer.MAX_VALUE);
+        long[] seeds = Arrays.copyOf(borrowed, Math.min(borrowed.length, MAX_SEEDS));
+        Arrays.sort(borrowed);
+        return top(seeds, borrowed, k);
+    }
+
+    /**
+     * Titles most often borrowed by members who also borrowed the given one
+     */
+    public List<Book> alsoBorrowed(long isbnKey, int k) {
+        ensureBuilt();
+        return top(new long[] {isbnKey}, new long[] {isbnKey}, k);
+    }
+
+    /**
+     * Add up the neighbour counts of the seeds and keep the best k titles
+     * @param excluded sorted ISBN keys never to suggest
+     */
+    private List<Book> top(long[] seeds, long[] excluded, int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("Number of titles cannot be negative");
+        }
+        LongObjectMap<long[]> scores = new LongObjectMap<>();     // ISBN key -> {ISBN key, score}
+        for (long seed : seeds) {
+            int title = Arrays.binarySearch(titleIsbns, seed);
+            if (title >= 0) {
+                for (int i = offsets[title]; i < offsets[title + 1]; i++) {
+                    addScore(scores, neighborIsbns[i], neighborCounts[i], excluded);
+                }
+            }
+            Overlay extra = overlay.get(seed);
+            if (extra != null) {
+                for (int i = 0; i < extra.size; i++) {
+                    addScore(scores, extra.isbnKeys[i], extra.counts[i], excluded);
+                }
+            }
+        }
+
+        List<long[]> ranked = new ArrayList<>(scores.values());
+        ranked.sort((a, b) -> a[1] != b[1] ? Long.compare(b[1], a[1]) : Long.compare(a[0], b[0]));
+
+        List<Book> books = new ArrayList<>(Math.min(k, ranked.size()));
+        for (long[] candidate : ranked) {
+            if (books.size() >= k) {
+                break;
+            }
+            Book book = bookLookup.apply(candidate[0]);
+            if (book != null) {
+                books.add(book);
+            }
+        }
+        return books;
+    }
+
+    private static void addScore(LongObjectMap<long[]> scores, long isbnKey, int count, long[] excluded) {
+        if (Arrays.binarySearch(excluded, isbnKey) >= 0) {
+            return;
+        }
+        long[] score = scores.get(isbnKey);
+        if (score == null) {
+            scores.put(isbnKey, new long[] {isbnKey, count});
+        } else {
+            score[1] += count;
+        }
+    }
+
+    // ==================== INCREMENTAL UPDATES ====================
+
+    /**
+     * Count a new loan against the member's other titles. Call after the loan was added to the member.
+     * Titles the member borrowed before are already counted.
+     */
+    public void recordLoan(Member member, long isbnKey) {
+        if (!built) {
+            return;         // The first build reads this loan anyway
+        }
+        List<Loan> others = new ArrayList<>(member.getActiveLoans().size());
+        for (Loan loan : member.getActiveLoans()) {
+            if (loan.getBook().getIsbnKey() != isbnKey) {
+                others.add(loan);
+            }
+        }
+        long[] titles = titlesOf(member.getId(), others, MAX_BASKET);
+        for (long title : titles) {
+            if (title == isbnKey) {
+                return;     // Borrowed again: the pairs are already counted
+            }
+        }
+        Overlay forNew = overlay.get(isbnKey);
+        if (forNew == null) {
+            forNew = new Overlay();
+            overlay.put(isbnKey, forNew);
+        }
+        for (long title : titles) {
+            forNew.add(title);
+            Overlay forOther = overlay.get(title);
+            if (forOther == null) {
+                forOther = new Overlay();
+                overlay.put(title, forOther);
+            }
+            forOther.add(isbnKey);
+        }
+        overlayPairs += 2L * titles.length;
+        if (overlayPairs > Math.max(MIN_REBUILD_PAIRS, neighborIsbns.length * REBUILD_RATIO)) {
+            built = false;  // Rebuilt on the next query
+        }
+    }
+
+    /**
+     * Distinct titles of a member, most recent first: the given active loans, then the loan history
+     */
+    private long[] titlesOf(int memberId, List<Loan> activeLoans, int limit) {
+        List<LoanHistoryStore.Record> history = library.getLoanHistoryStore().getRecords(memberId);
+        long[] titles = new long[Math.min(limit, activeLoans.size() + history.size())];
+        int count = 0;
+        for (int i = activeLoans.size() - 1; i >= 0 && count < titles.length; i--) {
+            count = addDistinct(titles, count, activeLoans.get(i).getBook().getIsbnKey());
+        }
+        for (int i = history.size() - 1; i >= 0 && count < titles.length; i--) {
+            count = addDistinct(titles, count, history.get(i).getIsbnKey());
+        }
+        return Arrays.copyOf(titles, count);
+    }
+
+    private static int addDistinct(long[] titles, int count, long isbnKey) {
+        for (int i = 0; i < count; i++) {
+            if (titles[i] == isbnKey) {
+                return count;
+            }
+        }
+        titles[count] = isbnKey;
+        return count + 1;
+    }
+
+    // ==================== BATCH BUILD ====================
+
+    private void ensureBuilt() {
+        if (!built) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Drop the model, e.g. after the library data was reloaded; the next query rebuilds it
+     */
+    public void invalidate() {
+        built = false;
+    }
+
+    /**
+     * Build the model from the whole loan history and the active loans, dropping the overlay
+     */
+    public void rebuild() {
+        long start = System.nanoTime();
+
+        // 1. Every loan as (member, title), in time order
+        LoanColumns loans = new LoanColumns();
+        library.getLoanHistoryStore().scanSince(0, loans);
+        library.forEachActiveLoan(loan -> {
+            if (!loan.isReturned()) {
+                loans.visit(loan.getMember().getId(), loan.getBook().getIsbnKey(), 0, 0, 0);
+            }
+        });
+        int loanCount = loans.count;
+        int titleCount = loans.titleCount;
+        long[] isbns = loans.isbns;
+        int[] members = loans.members;
+        int[] titles = loans.titles;
+
+        // 2. Baskets: each member's distinct titles, most recent MAX_BASKET
+        int firstMember = loanCount == 0 ? 0 : loans.firstMember;
+        int memberSlots = loanCount == 0 ? 0 : loans.lastMember - loans.firstMember + 1;
+        int[] loanStart = new int[memberSlots + 1];
+        for (int i = 0; i < loanCount; i++) {
+            loanStart[members[i] - firstMember + 1]++;
+        }
+        for (int m = 0; m < memberSlots; m++) {
+            loanStart[m + 1] += loanStart[m];
+        }
+        int[] loansByMember = new int[loanCount];
+        int[] fill = Arrays.copyOf(loanStart, memberSlots);
+        for (int i = 0; i < loanCount; i++) {
+            loansByMember[fill[members[i] - firstMember]++] = titles[i];
+        }
+        int[] basketStart = new int[memberSlots + 1];
+        int[] basketTitles = new int[loanCount];
+        int[] seenBy = new int[titleCount];
+        Arrays.fill(seenBy, -1);
+        int basketSize = 0;
+        for (int m = 0; m < memberSlots; m++) {
+            int taken = 0;
+            for (int i = loanStart[m + 1] - 1; i >= loanStart[m] && taken < MAX_BASKET; i--) {
+                int title = loansByMember[i];
+                if (seenBy[title] != m) {
+                    seenBy[title] = m;
+                    basketTitles[basketSize++] = title;
+                    taken++;
+                }
+            }
+            basketStart[m + 1] = basketSize;
+        }
+
+        // 3. Borrowers of each title (the baskets, transposed)
+        int[] borrowerStart = new int[titleCount + 1];
+        for (int i = 0; i < basketSize; i++) {
+            borrowerStart[basketTitles[i] + 1]++;
+        }
+        for (int t = 0; t < titleCount; t++) {
+            borrowerStart[t + 1] += borrowerStart[t];
+        }
+        int[] borrowers = new int[basketSize];
+        fill = Arrays.copyOf(borrowerStart, titleCount);
+        for (int m = 0; m < memberSlots; m++) {
+            for (int i = basketStart[m]; i < basketStart[m + 1]; i++) {
+                borrowers[fill[basketTitles[i]]++] = m;
+            }
+        }
+
+        // 4. Co-borrowing counts, a range of titles per task
+        Baskets baskets = new Baskets(titleCount, basketStart, basketTitles, borrowerStart, borrowers, isbns);
+        baskets.leafTitles = Math.max(MIN_LEAF_TITLES, titleCount / (pool.getParallelism() * 4) + 1);
+        if (titleCount > 0) {
+            pool.invoke(new CountTask(baskets, 0, titleCount));
+        }
+
+        // 5. Pack the lists, titles sorted by ISBN key
+        Integer[] order = new Integer[titleCount];
+        for (int t = 0; t < titleCount; t++) {
+            order[t] = t;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(isbns[a], isbns[b]));
+        long[] packedTitles = new long[titleCount];
+        int[] packedOffsets = new int[titleCount + 1];
+        int total = 0;
+        for (int t = 0; t < titleCount; t++) {
+            total += baskets.neighbors[t].length;
+        }
+        long[] packedNeighbors = new long[total];
+        int[] packedCounts = new int[total];
+        int position = 0;
+        for (int i = 0; i < titleCount; i++) {
+            int t = order[i];
+            packedTitles[i] = isbns[t];
+            int[] neighbors = baskets.neighbors[t];
+            int[] neighborCount = baskets.neighborCounts[t];
+            for (int j = 0; j < neighbors.length; j++) {
+                packedNeighbors[position] = isbns[neighbors[j]];
+                packedCounts[position++] = neighborCount[j];
+            }
+            packedOffsets[i + 1] = position;
+        }
+
+        titleIsbns = packedTitles;
+        offsets = packedOffsets;
+        neighborIsbns = packedNeighbors;
+        neighborCounts = packedCounts;
+        overlay = new LongObjectMap<>();
+        overlayPairs = 0;
+        built = true;
+        buildMillis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("Recommendations built from " + loanCount + " loans of " + titleCount +
+                " titles in " + buildMillis + " ms.");
+    }
+
+    /**
+     * Member and title of every loan, titles numbered in order of appearance
+     */
+    private static final class LoanColumns implements LoanHistoryStore.RecordVisitor {
+        private final LongObjectMap<Integer> titleIndex = new LongObjectMap<>();
+        private long[] isbns = new long[1024];
+        private int[] members = new int[1024];
+        private int[] titles = new int[1024];
+        private int titleCount;
+        private int count;
+        private int firstMember = Integer.MAX_VALUE;
+        private int lastMember = Integer.MIN_VALUE;
+
+        @Override
+        public void visit(int memberId, long isbnKey, int loanDay, int dueDay, int returnDay) {
+            Integer title = titleIndex.get(isbnKey);
+            if (title == null) {
+                title = titleCount;
+                titleIndex.put(isbnKey, title);
+                if (titleCount == isbns.length) {
+                    isbns = Arrays.copyOf(isbns, titleCount * 2);
+                }
+                isbns[titleCount++] = isbnKey;
+            }
+            if (count == members.length) {
+                members = Arrays.copyOf(members, count * 2);
+                titles = Arrays.copyOf(titles, count * 2);
+            }
+            members[count] = memberId;
+            titles[count++] = title;
+            firstMember = Math.min(firstMember, memberId);
+            lastMember = Math.max(lastMember, memberId);
+        }
+    }
+
+    /**
+     * Baskets and borrower lists one build reads, and the neighbour lists it writes
+     */
+    private static final class Baskets {
+        private final int titleCount;
+        private final int[] basketStart;
+        private final int[] basketTitles;
+        private final int[] borrowerStart;
+        private final int[] borrowers;
+        private final long[] isbns;
+        private final int[][] neighbors;
+        private final int[][] neighborCounts;
+        private int leafTitles;
+
+        private Baskets(int titleCount, int[] basketStart, int[] basketTitles, int[] borrowerStart,
+                        int[] borrowers, long[] isbns) {
+            this.titleCount = titleCount;
+            this.basketStart = basketStart;
+            this.basketTitles = basketTitles;
+            this.borrowerStart = borrowerStart;
+            this.borrowers = borrowers;
+            this.isbns = isbns;
+            this.neighbors = new int[titleCount][];
+            this.neighborCounts = new int[titleCount][];
+        }
+    }
+
+    private static final class CountTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Baskets baskets;
+        private final int from;
+        private final int to;
+
+        private CountTask(Baskets baskets, int from, int to) {
+            this.baskets = baskets;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > baskets.leafTitles) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new CountTask(baskets, from, middle), new CountTask(baskets, middle, to));
+                return;
+            }
+            Baskets b = baskets;
+            int[] counts = new int[b.titleCount];
+            int[] touched = new int[b.titleCount];
+            for (int title = from; title < to; title++) {
+                int touchedCount = 0;
+                for (int i = b.borrowerStart[title]; i < b.borrowerStart[title + 1]; i++) {
+                    int member = b.borrowers[i];
+                    for (int j = b.basketStart[member]; j < b.basketStart[member + 1]; j++) {
+                        int other = b.basketTitles[j];
+                        if (other != title && counts[other]++ == 0) {
+                            touched[touchedCount++] = other;
+                        }
+                    }
+                }
+                keepStrongest(b, title, counts, touched, touchedCount);
+                for (int i = 0; i < touchedCount; i++) {
+                    counts[touched[i]] = 0;
+                }
+            }
+        }
+
+        /**
+         * Store the NEIGHBORS_PER_TITLE titles with the highest counts, strongest first
+         */
+        private static void keepStrongest(Baskets b, int title, int[] counts, int[] touched, int touchedCount) {
+            // Sort keys: count in the high bits, then the title seen first; pick with a partial selection
+            long[] keys = new long[touchedCount];
+            for (int i = 0; i < touchedCount; i++) {
+                keys[i] = ((long) counts[touched[i]] << 32) | (0xFFFFFFFFL - touched[i]);
+            }
+            int keep = Math.min(NEIGHBORS_PER_TITLE, touchedCount);
+            if (touchedCount > keep * 4) {
+                select(keys, touchedCount - keep);
+                Arrays.sort(keys, touchedCount - keep, touchedCount);
+            } else {
+                Arrays.sort(keys);
+            }
+            int[] neighbors = new int[keep];
+            int[] neighborCount = new int[keep];
+            for (int i = 0; i < keep; i++) {
+                long key = keys[touchedCount - 1 - i];
+                neighbors[i] = (int) (0xFFFFFFFFL - (key & 0xFFFFFFFFL));
+                neighborCount[i] = (int) (key >>> 32);
+            }
+            b.neighbors[title] = neighbors;
+            b.neighborCounts[title] = neighborCount;
+        }
+
+        /**
+         * Quickselect: afterwards keys[rank] is in its sorted place, smaller keys before it, larger after
+         */
+        private static void select(long[] keys, int rank) {
+            int lo = 0;
+            int hi = keys.length - 1;
+            while (lo < hi) {
+                long pivot = keys[(lo + hi) >>> 1];
+                int i = lo;
+                int j = hi;
+                while (i <= j) {
+                    while (keys[i] < pivot) i++;
+                    while (keys[j] > pivot) j--;
+                    if (i <= j) {
+                        long swap = keys[i];
+                        keys[i++] = keys[j];
+                        keys[j--] = swap;
+                    }
+                }
+                if (rank <= j) {
+                    hi = j;
+                } else if (rank >= i) {
+                    lo = i;
+                } else {
+                    return;
+                }
+            }
+        }
+    }
+
+    // ==================== STATISTICS ====================
+
+    public boolean isBuilt() {
+        return built;
+    }
+
+    public int getTitleCount() {
+        return titleIsbns.length;
+    }
+
+    /**
+     * Neighbour entries in the model, not counting the overlay
+     */
+    public int getPairCount() {
+        return neighborIsbns.length;
+    }
+
+    public long getOverlayPairs() {
+        return overlayPairs;
+    }
+
+    public long getBuildMillis() {
+        return buildMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "RecommendationEngine{titles=" + titleIsbns.length + ", pairs=" + neighborIsbns.length +
+               ", overlay=" + overlayPairs + ", built=" + built + "}";
+    }
+}
@@ -0,0 +1,322 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * ReminderPipeline class warns members before their loans fall due.
+ *
+ * Once a day it reads the loans due within the next few days from the due-date index
+ * (LoanDateIndex), so loans outside the window are never touched, and groups them into one
+ * reminder per member. The reminders of a run are written as one batch file to an outbox
+ * directory, which a mail relay drains (see drainOutbox()). Every loan is reminded once per
+ * due date: the (member, ISBN) pairs already sent are kept per due date and dropped once that
+ * date has passed. A batch file is named after its content, so a run repeated after a crash
+ * rewrites the same file instead of queueing the reminders twice.
+ */
+public class ReminderPipeline {
+
+    public static final int DEFAULT_DAYS_AHEAD = 3;
+    public static final LocalTime DEFAULT_RUN_TIME = LocalTime.of(7, 0);
+
+    private static final String BATCH_PREFIX = "reminders-";
+    private static final String BATCH_SUFFIX = ".dat";
+
+    /**
+     * One member's reminder, as queued in the outbox
+     */
+    public static class Reminder implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int memberId;
+        private final String email;
+        private final String subject;
+        private final String body;
+
+        private Reminder(int memberId, String email, String subject, String body) {
+            this.memberId = memberId;
+            this.email = email;
+            this.subject = subject;
+            this.body = body;
+        }
+
+        public int getMemberId() {
+            return memberId;
+        }
+
+        public String getEmail() {
+            return email;
+        }
+
+        public String getSubject() {
+            return subject;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        @Override
+        public String toString() {
+            return "To: " + email + "\nSubject: " + subject + "\n\n" + body;
+        }
+    }
+
+    // Attributes
+    private final LoanDateIndex loans;
+    private final File outbox;
+    private final String sentFile;
+    private final int daysAhead;
+    private TreeMap<Long, Set<String>> sentByDueDay;    // Due epoch day -> "memberId:isbnKey" reminded
+    private ScheduledExecutorService scheduler;
+    private Executor runExecutor;
+    private LocalTime runTime;
+
+    // Constructors
+
+    public ReminderPipeline(LoanDateIndex loans, String outboxDirectory, String sentFile, int daysAhead) {
+        if (loans == null) {
+            throw new IllegalArgumentException("Loan date index cannot be null");
+        }
+        if (daysAhead < 0) {
+            throw new IllegalArgumentException("Days ahead cannot be negative");
+        }
+        this.loans = loans;
+        this.outbox = new File(outboxDirectory);
+        this.sentFile = sentFile;
+        this.daysAhead = daysAhead;
+        this.runTime = DEFAULT_RUN_TIME;
+    }
+
+    // ==================== SCHEDULING ====================
+
+    /**
+     * Catch up on today's reminders and schedule a run every day at the given local time.
+     * Runs execute on the given executor, e.g. Platform::runLater, so they never race the
+     * thread that issues and returns loans.
+     */
+    public void start(Executor executor, LocalTime at) {
+        if (scheduler != null) {
+            return;
+        }
+        this.runExecutor = executor != null ? executor : Runnable::run;
+        this.runTime = at != null ? at : DEFAULT_RUN_TIME;
+        runExecutor.execute(() -> run(LibraryClock.get().today()));
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "due-reminders");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduleNextRun();
+        System.out.println("Due-date reminders scheduled (daily at " + runTime + ").");
+    }
+
+    public void start(Executor executor) {
+        start(executor, DEFAULT_RUN_TIME);
+    }
+
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    public boolean isRunning() {
+        return scheduler != null;
+    }
+
+    /**
+     * Schedule the next run; recomputed every run so daylight-saving shifts do not drift it
+     */
+    private void scheduleNextRun() {
+        LocalDateTime now = LocalDateTime.now(LibraryClock.get().getClock());
+        LocalDateTime next = now.toLocalDate().atTime(runTime);
+        if (!next.isAfter(now)) {
+            next = next.plusDays(1);
+        }
+        scheduler.schedule(() -> {
+            runExecutor.execute(() -> run(LibraryClock.get().today()));
+            if (scheduler != null) {
+                scheduleNextRun();
+            }
+        }, Duration.between(now, next).toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // ==================== RUN ====================
+
+    /**
+     * Queue reminders for the loans due between today and daysAhead days from now that were
+     * not reminded yet. Members without an email address are skipped and tried again next run.
+     * @return number of reminders queued
+     */
+    public int run(LocalDate today) {
+        loadSent();
+        sentByDueDay.headMap(today.toEpochDay(), false).clear();
+
+        // Loans arrive in due-date order; keep each member's reminder in that order too
+        Map<Integer, List<Loan>> byMember = new LinkedHashMap<>();
+        List<String> keys = new ArrayList<>();
+        for (Loan loan : loans.dueBetween(today, today.plusDays(daysAhead))) {
+            Member member = loan.getMember();
+            String key = member.getId() + ":" + loan.getBook().getIsbnKey();
+            Set<String> sent = sentByDueDay.get(loan.getDueDate().toEpochDay());
+            if (loan.isReturned() || member.getEmail() == null || (sent != null && sent.contains(key))) {
+                continue;
+            }
+            byMember.computeIfAbsent(member.getId(), id -> new ArrayList<>()).add(loan);
+            keys.add(loan.getDueDate() + ":" + key);
+        }
+        if (byMember.isEmpty()) {
+            saveSent();
+            return 0;
+        }
+
+        List<Reminder> batch = new ArrayList<>(byMember.size());
+        for (List<Loan> memberLoans : byMember.values()) {
+            batch.add(compose(memberLoans, today));
+        }
+        // Same reminders, same file name: a repeated run overwrites instead of duplicating
+        String name = BATCH_PREFIX + today + "-" + Integer.toHexString(keys.hashCode()) + BATCH_SUFFIX;
+        try {
+            writeBatch(name, batch);
+        } catch (IOException e) {
+            System.err.println("Error writing reminders to the outbox: " + e.getMessage());
+            return 0;
+        }
+        for (List<Loan> memberLoans : byMember.values()) {
+            for (Loan loan : memberLoans) {
+                sentByDueDay.computeIfAbsent(loan.getDueDate().toEpochDay(), d -> new HashSet<>())
+                        .add(loan.getMember().getId() + ":" + loan.getBook().getIsbnKey());
+            }
+        }
+        saveSent();
+        System.out.println("Queued " + batch.size() + " due-date reminder(s) for " + keys.size() + " loan(s).");
+        return batch.size();
+    }
+
+    private static Reminder compose(List<Loan> memberLoans, LocalDate today) {
+        Member member = memberLoans.get(0).getMember();
+        StringBuilder body = new StringBuilder();
+        body.append("Dear ").append(member.getName()).append(",\n\n");
+        body.append(memberLoans.size() == 1 ? "This book is due soon:\n" : "These books are due soon:\n");
+        for (Loan loan : memberLoans) {
+            long days = ChronoUnit.DAYS.between(today, loan.getDueDate());
+            body.append("  - ").append(loan.getBook().getTitle())
+                .append(" by ").append(loan.getBook().getAuthor())
+                .append(", due ").append(loan.getDueDate())
+                .append(days == 0 ? " (today)" : days == 1 ? " (tomorrow)" : " (in " + days + " days)")
+                .append('\n');
+        }
+        body.append("\nPlease return or extend ").append(memberLoans.size() == 1 ? "it" : "them")
+            .append(" to avoid overdue fees.\n");
+        String subject = memberLoans.size() == 1 ? "A book is due soon"
+                : memberLoans.size() + " books are due soon";
+        return new Reminder(member.getId(), member.getEmail(), subject, body.toString());
+    }
+
+    // ==================== OUTBOX ====================
+
+    /**
+     * Write a batch to a temporary file, then move it into the outbox in one step
+     */
+    private void writeBatch(String name, List<Reminder> batch) throws IOException {
+        if (!outbox.exists() && !outbox.mkdirs()) {
+            throw new IOException("Cannot create outbox " + outbox);
+        }
+        Path target = Paths.get(outbox.getPath(), name);
+        Path temp = Paths.get(outbox.getPath(), name + ".tmp");
+        try (ObjectOutputStream oos = new ObjectOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            oos.writeObject(new ArrayList<>(batch));
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Hand every queued reminder to the relay, oldest batch first, deleting each batch once
+     * all its reminders were accepted. If the relay throws, the batch stays for the next drain.
+     * @return number of reminders delivered
+     */
+    @SuppressWarnings("unchecked")
+    public int drainOutbox(Consumer<Reminder> relay) {
+        File[] batches = outbox.listFiles((dir, name) -> name.startsWith(BATCH_PREFIX) && name.endsWith(BATCH_SUFFIX));
+        if (batches == null) {
+            return 0;
+        }
+        Arrays.sort(batches, Comparator.comparingLong(File::lastModified).thenComparing(File::getName));
+        int delivered = 0;
+        for (File batch : batches) {
+            List<Reminder> reminders;
+            try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(batch)))) {
+                reminders = (List<Reminder>) ois.readObject();
+            } catch (IOException | ClassNotFoundException e) {
+                System.err.println("Skipping unreadable reminder batch " + batch.getName() + ": " + e.getMessage());
+                continue;
+            }
+            for (Reminder reminder : reminders) {
+                relay.accept(reminder);
+                delivered++;
+            }
+            if (!batch.delete()) {
+                System.err.println("Could not remove delivered reminder batch " + batch.getName());
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * Number of batch files waiting in the outbox
+     */
+    public int getQueuedBatches() {
+        String[] names = outbox.list((dir, name) -> name.startsWith(BATCH_PREFIX) && name.endsWith(BATCH_SUFFIX));
+        return names != null ? names.length : 0;
+    }
+
+    // ==================== PERSISTENCE ====================
+
+    @SuppressWarnings("unchecked")
+    private void loadSent() {
+        if (sentByDueDay != null) {
+            return;
+        }
+        sentByDueDay = new TreeMap<>();
+        File file = new File(sentFile);
+        if (!file.exists()) {
+            return;
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            sentByDueDay = (TreeMap<Long, Set<String>>) ois.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            System.err.println("Error loading sent reminders: " + e.getMessage());
+        }
+    }
+
+    private void saveSent() {
+        try (ObjectOutputStream oos = new ObjectOutputStream(
+                new BufferedOutputStream(new FileOutputStream(sentFile)))) {
+            oos.writeObject(sentByDueDay);
+        } catch (IOException e) {
+            System.err.println("Error saving sent reminders: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ReminderPipeline{daysAhead=" + daysAhead + ", outbox=" + outbox + ", running=" + isRunning() + "}";
+    }
+}
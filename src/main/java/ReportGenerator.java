@@ -0,0 +1,214 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * ReportGenerator class streams the full library report to a file.
+ *
+ * Books, members and active loans are visited in place (no copies of the collections)
+ * and each row is encoded straight into one large buffer that is drained to a FileChannel,
+ * optionally through gzip. Memory use stays the same whatever the size of the catalog.
+ * Must run on the thread that owns the Library.
+ */
+public class ReportGenerator {
+
+    public static final String GZIP_SUFFIX = ".gz";
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+    private static final int PROGRESS_INTERVAL = 10_000;     // Rows between progress reports
+
+    /**
+     * Told how far a report has got, every few thousand rows and at the end of each section
+     */
+    public interface ProgressListener {
+        void onProgress(String section, long rowsDone, long rowsTotal);
+    }
+
+    // Attributes
+    private final Library library;
+    private final int bufferSize;
+    private ProgressListener progressListener;
+
+    // Constructors
+
+    public ReportGenerator(Library library, int bufferSize) {
+        if (library == null) {
+            throw new IllegalArgumentException("Library cannot be null");
+        }
+        if (bufferSize < 1024) {
+            throw new IllegalArgumentException("Buffer size must be at least 1 KB");
+        }
+        this.library = library;
+        this.bufferSize = bufferSize;
+    }
+
+    public ReportGenerator(Library library) {
+        this(library, DEFAULT_BUFFER_SIZE);
+    }
+
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    // ==================== GENERATION ====================
+
+    /**
+     * Write the report, gzipped if the file name ends in .gz
+     * @return the number of entity rows written
+     */
+    public long generate(String filename) throws IOException {
+        return generate(filename, filename.endsWith(GZIP_SUFFIX));
+    }
+
+    /**
+     * Write the report to a file, replacing it
+     * @return the number of entity rows written
+     */
+    public long generate(String filename, boolean gzip) throws IOException {
+        try (ChannelWriter out = new ChannelWriter(Path.of(filename), gzip, bufferSize)) {
+            out.println("===========================================");
+            out.println("       LIBRARY MANAGEMENT SYSTEM REPORT    ");
+            out.println("===========================================");
+            out.println("Library: " + library.getLibraryName());
+            out.println("Generated: " + LocalDateTime.now());
+            out.println("");
+
+            out.println("--- INVENTORY SUMMARY ---");
+            out.println("Total Books: " + library.getTotalBooks());
+            out.println("Total Members: " + library.getTotalMembers());
+            out.println("Active Loans: " + library.getActiveLoansCount());
+            out.println("");
+
+            long rows = 0;
+            rows += section(out, "ALL BOOKS", library.getTotalBooks(), library::forEachBook);
+            out.println("");
+            rows += section(out, "ALL MEMBERS", library.getTotalMembers(), library::forEachMember);
+            out.println("");
+            rows += section(out, "ACTIVE LOANS", library.getActiveLoansCount(), library::forEachActiveLoan);
+
+            out.println("");
+            out.println("===========================================");
+            out.println("              END OF REPORT                ");
+            out.println("===========================================");
+            return rows;
+        }
+    }
+
+    /**
+     * Write one section, a row per entity, reporting progress as it goes
+     */
+    private long section(ChannelWriter out, String title, long total,
+                         Consumer<Consumer<Object>> source) throws IOException {
+        out.println("--- " + title + " ---");
+        long[] done = new long[1];
+        try {
+            source.accept(entity -> {
+                try {
+                    out.println(String.valueOf(entity));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (++done[0] % PROGRESS_INTERVAL == 0) {
+                    progress(title, done[0], total);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (done[0] == 0 || done[0] % PROGRESS_INTERVAL != 0) {
+            progress(title, done[0], total);
+        }
+        return done[0];
+    }
+
+    private void progress(String section, long rowsDone, long rowsTotal) {
+        if (progressListener != null) {
+            progressListener.onProgress(section, rowsDone, rowsTotal);
+        }
+    }
+
+    // ==================== OUTPUT ====================
+
+    /**
+     * Encodes text lines as UTF-8 into a single reusable buffer and drains it to the file
+     * channel when full, through a gzip stream if requested
+     */
+    private static final class ChannelWriter implements Closeable {
+
+        private static final CharBuffer LINE_SEPARATOR = CharBuffer.wrap(System.lineSeparator());
+
+        private final FileChannel channel;
+        private final OutputStream gzip;            // Null for plain text
+        private final ByteBuffer buffer;
+        private final CharsetEncoder encoder;
+
+        private ChannelWriter(Path file, boolean gzip, int bufferSize) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            this.gzip = gzip ? new GZIPOutputStream(Channels.newOutputStream(channel),
+                    GZIP_BUFFER_SIZE) : null;
+            this.buffer = ByteBuffer.allocate(bufferSize);
+            this.encoder = StandardCharsets.UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        private void println(String line) throws IOException {
+            encode(CharBuffer.wrap(line));
+            encode(LINE_SEPARATOR.duplicate());
+        }
+
+        private void encode(CharBuffer chars) throws IOException {
+            CoderResult result;
+            while ((result = encoder.encode(chars, buffer, true)).isOverflow()) {
+                drain();
+            }
+            if (result.isError()) {
+                result.throwException();
+            }
+            while (encoder.flush(buffer).isOverflow()) {
+                drain();
+            }
+            encoder.reset();
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            if (gzip != null) {
+                gzip.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            } else {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                drain();
+            } finally {
+                if (gzip != null) {
+                    gzip.close();       // Finishes the stream and closes the channel
+                } else {
+                    channel.close();
+                }
+            }
+        }
+    }
+}
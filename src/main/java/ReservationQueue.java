@@ -0,0 +1,495 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * ReservationQueue class manages book holds for members whose plan allows reservations.
+ * Keeps one ordered queue per ISBN key: priority-access plans (VIP, Staff) first, then by request time.
+ * Placing, cancelling, allocating and looking up a queue position are O(log n) in the number of
+ * holds on that title; a member's holds are indexed by member ID.
+ */
+public class ReservationQueue implements Serializable {
+
+    private static final long serialVersionUID = 2L;
+
+    public enum HoldStatus {
+        WAITING,    // In the queue, no copy set aside yet
+        READY       // A returned copy has been set aside for pickup
+    }
+
+    /**
+     * A single hold placed by a member on a title
+     */
+    public static class Hold implements Serializable {
+
+        private static final long serialVersionUID = 2L;
+
+        private final int memberId;
+        private final long isbnKey;
+        private final boolean priorityAccess;
+        private final LocalDateTime requestTime;
+        private final long sequence;            // Tie-breaker for holds placed in the same instant
+        private HoldStatus status;
+        private LocalDateTime readySince;
+        private transient int slot;             // Position in its WaitingLane while WAITING
+
+        private Hold(int memberId, long isbnKey, boolean priorityAccess, long sequence) {
+            this.memberId = memberId;
+            this.isbnKey = isbnKey;
+            this.priorityAccess = priorityAccess;
+            this.requestTime = LocalDateTime.now(LibraryClock.get().getClock());
+            this.sequence = sequence;
+            this.status = HoldStatus.WAITING;
+            this.readySince = null;
+        }
+
+        public int getMemberId() {
+            return memberId;
+        }
+
+        public long getIsbnKey() {
+            return isbnKey;
+        }
+
+        public String getIsbn() {
+            return Isbn.ofKey(isbnKey).toDisplayString();
+        }
+
+        public boolean hasPriorityAccess() {
+            return priorityAccess;
+        }
+
+        public LocalDateTime getRequestTime() {
+            return requestTime;
+        }
+
+        public HoldStatus getStatus() {
+            return status;
+        }
+
+        public boolean isReady() {
+            return status == HoldStatus.READY;
+        }
+
+        public LocalDateTime getReadySince() {
+            return readySince;
+        }
+
+        @Override
+        public String toString() {
+            return "Hold{memberId=" + memberId + ", isbn='" + getIsbn() + "', status=" + status +
+                   (priorityAccess ? ", priority" : "") + ", requested=" + requestTime + "}";
+        }
+    }
+
+    /**
+     * Queue order: priority access first, then request time, then placement order.
+     * Used to restore the waiting lanes on load.
+     */
+    private static class HoldOrder implements Comparator<Hold>, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public int compare(Hold a, Hold b) {
+            if (a.priorityAccess != b.priorityAccess) {
+                return a.priorityAccess ? -1 : 1;
+            }
+            int byTime = a.requestTime.compareTo(b.requestTime);
+            if (byTime != 0) {
+                return byTime;
+            }
+            return Long.compare(a.sequence, b.sequence);
+        }
+    }
+
+    /**
+     * Waiting holds of one priority class on one title, in queue order.
+     * Holds take increasing slots as they join; a Fenwick tree over the slots counts
+     * the holds still waiting, so a hold's rank is a prefix sum instead of a set walk.
+     */
+    private static class WaitingLane {
+
+        private Hold[] slots = new Hold[4];
+        private int[] tree = new int[slots.length + 1];   // 1-based Fenwick tree of live slots
+        private int nextSlot;
+        private int head;                                 // No live hold below this slot
+        private int size;
+
+        void add(Hold hold) {
+            if (nextSlot == slots.length) {
+                resize();
+            }
+            hold.slot = nextSlot;
+            slots[nextSlot] = hold;
+            update(nextSlot, 1);
+            nextSlot++;
+            size++;
+        }
+
+        void remove(Hold hold) {
+            slots[hold.slot] = null;
+            update(hold.slot, -1);
+            size--;
+            if (size == 0) {
+                nextSlot = 0;
+                head = 0;
+            }
+        }
+
+        Hold pollFirst() {
+            if (size == 0) {
+                return null;
+            }
+            while (slots[head] == null) {
+                head++;
+            }
+            Hold first = slots[head];
+            remove(first);
+            return first;
+        }
+
+        /**
+         * Number of waiting holds ahead of the given one
+         */
+        int countBefore(Hold hold) {
+            int count = 0;
+            for (int i = hold.slot; i > 0; i -= i & -i) {
+                count += tree[i];
+            }
+            return count;
+        }
+
+        int size() {
+            return size;
+        }
+
+        private void update(int slot, int delta) {
+            for (int i = slot + 1; i < tree.length; i += i & -i) {
+                tree[i] += delta;
+            }
+        }
+
+        /**
+         * Renumber the live holds from slot 0, doubling the capacity only if they fill over half of it
+         */
+        private void resize() {
+            Hold[] live = new Hold[size];
+            int n = 0;
+            for (int i = head; i < nextSlot; i++) {
+                if (slots[i] != null) {
+                    live[n++] = slots[i];
+                }
+            }
+            int capacity = size * 2 > slots.length ? slots.length * 2 : slots.length;
+            slots = Arrays.copyOf(live, capacity);
+            tree = new int[capacity + 1];
+            for (int i = 0; i < n; i++) {
+                slots[i].slot = i;
+                tree[i + 1] = 1;
+            }
+            for (int i = 1; i < tree.length; i++) {     // Linear-time Fenwick build
+                int parent = i + (i & -i);
+                if (parent < tree.length) {
+                    tree[parent] += tree[i];
+                }
+            }
+            nextSlot = n;
+            head = 0;
+        }
+    }
+
+    /**
+     * The waiting queue of one title: the priority-access lane is served before the regular lane
+     */
+    private static class WaitingLine {
+
+        private final WaitingLane priority = new WaitingLane();
+        private final WaitingLane regular = new WaitingLane();
+
+        void add(Hold hold) {
+            laneOf(hold).add(hold);
+        }
+
+        void remove(Hold hold) {
+            laneOf(hold).remove(hold);
+        }
+
+        Hold pollFirst() {
+            return priority.size() > 0 ? priority.pollFirst() : regular.pollFirst();
+        }
+
+        int position(Hold hold) {
+            int ahead = laneOf(hold).countBefore(hold);
+            return hold.priorityAccess ? ahead + 1 : priority.size() + ahead + 1;
+        }
+
+        int size() {
+            return priority.size() + regular.size();
+        }
+
+        boolean isEmpty() {
+            return size() == 0;
+        }
+
+        private WaitingLane laneOf(Hold hold) {
+            return hold.priorityAccess ? priority : regular;
+        }
+    }
+
+    // Attributes
+    private final LongObjectMap<IntObjectMap<Hold>> holdsByTitle;         // ISBN key -> MemberID -> hold (waiting or ready)
+    private long nextSequence;
+    private transient LongObjectMap<WaitingLine> waitingByTitle;          // ISBN key -> waiting holds in queue order
+    private transient IntObjectMap<List<Hold>> holdsByMember;             // MemberID -> holds (waiting or ready)
+
+    // Constructors
+
+    public ReservationQueue() {
+        this.holdsByTitle = new LongObjectMap<>();
+        this.nextSequence = 0;
+        this.waitingByTitle = new LongObjectMap<>();
+        this.holdsByMember = new IntObjectMap<>();
+    }
+
+    /**
+     * The waiting lanes and the member index are rebuilt from the saved holds
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.waitingByTitle = new LongObjectMap<>();
+        this.holdsByMember = new IntObjectMap<>();
+        List<Hold> waiting = new ArrayList<>();
+        for (IntObjectMap<Hold> titleHolds : holdsByTitle.values()) {
+            for (Hold hold : titleHolds.values()) {
+                indexMemberHold(hold);
+                if (hold.status == HoldStatus.WAITING) {
+                    waiting.add(hold);
+                }
+            }
+        }
+        waiting.sort(new HoldOrder());
+        for (Hold hold : waiting) {
+            enqueue(hold);
+        }
+    }
+
+    // ==================== HOLD OPERATIONS ====================
+
+    /**
+     * Place a hold for a member on a title
+     * @throws IllegalStateException if the member's plan does not allow reservations
+     *         or the member already holds this title
+     */
+    public Hold placeHold(Member member, long isbnKey) {
+        if (member == null) {
+            throw new IllegalArgumentException("Member cannot be null");
+        }
+        MembershipPlan plan = member.getMembershipPlan();
+        if (plan == null || !plan.canReserveBooks()) {
+            throw new IllegalStateException("Your membership plan does not include book reservations");
+        }
+
+        IntObjectMap<Hold> titleHolds = holdsByTitle.get(isbnKey);
+        if (titleHolds == null) {
+            titleHolds = new IntObjectMap<>();
+            holdsByTitle.put(isbnKey, titleHolds);
+        } else if (titleHolds.containsKey(member.getId())) {
+            throw new IllegalStateException("Member already has a hold on this book");
+        }
+
+        Hold hold = new Hold(member.getId(), isbnKey, plan.hasPriorityAccess(), nextSequence++);
+        titleHolds.put(member.getId(), hold);
+        indexMemberHold(hold);
+        enqueue(hold);
+        return hold;
+    }
+
+    /**
+     * Cancel a member's hold on a title
+     * @return the removed hold (the caller must release its copy if it was READY), or null if none
+     */
+    public Hold cancelHold(int memberId, long isbnKey) {
+        IntObjectMap<Hold> titleHolds = holdsByTitle.get(isbnKey);
+        if (titleHolds == null) {
+            return null;
+        }
+        Hold hold = titleHolds.remove(memberId);
+        if (hold == null) {
+            return null;
+        }
+        if (hold.status == HoldStatus.WAITING) {
+            WaitingLine waiting = waitingByTitle.get(isbnKey);
+            waiting.remove(hold);
+            if (waiting.isEmpty()) {
+                waitingByTitle.remove(isbnKey);
+            }
+        }
+        if (titleHolds.isEmpty()) {
+            holdsByTitle.remove(isbnKey);
+        }
+        unindexMemberHold(hold);
+        return hold;
+    }
+
+    /**
+     * Take the next waiting hold for a title and mark it READY.
+     * The caller is responsible for setting a copy aside for it.
+     * @return the allocated hold, or null if nobody is waiting
+     */
+    public Hold allocateNext(long isbnKey) {
+        WaitingLine waiting = waitingByTitle.get(isbnKey);
+        if (waiting == null) {
+            return null;
+        }
+        Hold next = waiting.pollFirst();
+        if (waiting.isEmpty()) {
+            waitingByTitle.remove(isbnKey);
+        }
+        if (next != null) {
+            next.status = HoldStatus.READY;
+            next.readySince = LocalDateTime.now(LibraryClock.get().getClock());
+        }
+        return next;
+    }
+
+    /**
+     * Remove a READY hold when the member picks the book up
+     * @return the claimed hold, or null if the member has no ready hold on this title
+     */
+    public Hold claimReady(int memberId, long isbnKey) {
+        Hold hold = findHold(memberId, isbnKey);
+        if (hold == null || !hold.isReady()) {
+            return null;
+        }
+        return cancelHold(memberId, isbnKey);
+    }
+
+    /**
+     * Drop every hold on a title (e.g. when the book leaves the inventory)
+     * @return the holds that were READY and had a copy set aside
+     */
+    public List<Hold> removeTitle(long isbnKey) {
+        List<Hold> readyHolds = new ArrayList<>();
+        IntObjectMap<Hold> titleHolds = holdsByTitle.remove(isbnKey);
+        waitingByTitle.remove(isbnKey);
+        if (titleHolds != null) {
+            for (Hold hold : titleHolds.values()) {
+                unindexMemberHold(hold);
+                if (hold.isReady()) {
+                    readyHolds.add(hold);
+                }
+            }
+        }
+        return readyHolds;
+    }
+
+    /**
+     * Drop every hold placed by a member (e.g. when the member is removed)
+     * @return the holds that were READY and had a copy set aside
+     */
+    public List<Hold> removeMember(int memberId) {
+        List<Hold> readyHolds = new ArrayList<>();
+        for (Hold hold : getHoldsForMember(memberId)) {
+            cancelHold(memberId, hold.getIsbnKey());
+            if (hold.isReady()) {
+                readyHolds.add(hold);
+            }
+        }
+        return readyHolds;
+    }
+
+    // ==================== QUERIES ====================
+
+    /**
+     * Find a member's hold on a title
+     */
+    public Hold findHold(int memberId, long isbnKey) {
+        IntObjectMap<Hold> titleHolds = holdsByTitle.get(isbnKey);
+        return titleHolds != null ? titleHolds.get(memberId) : null;
+    }
+
+    /**
+     * Check if anyone is waiting for a title
+     */
+    public boolean hasWaitingHolds(long isbnKey) {
+        return waitingByTitle.containsKey(isbnKey);
+    }
+
+    /**
+     * Number of members waiting for a title
+     */
+    public int getQueueLength(long isbnKey) {
+        WaitingLine waiting = waitingByTitle.get(isbnKey);
+        return waiting != null ? waiting.size() : 0;
+    }
+
+    /**
+     * 1-based queue position of a member's waiting hold, 0 if READY, -1 if none
+     */
+    public int getQueuePosition(int memberId, long isbnKey) {
+        Hold hold = findHold(memberId, isbnKey);
+        if (hold == null) return -1;
+        if (hold.isReady()) return 0;
+        return waitingByTitle.get(isbnKey).position(hold);
+    }
+
+    /**
+     * Get all holds placed by a member
+     */
+    public List<Hold> getHoldsForMember(int memberId) {
+        List<Hold> memberHolds = holdsByMember.get(memberId);
+        return memberHolds != null ? new ArrayList<>(memberHolds) : new ArrayList<>();
+    }
+
+    /**
+     * Total number of holds across all titles
+     */
+    public int getTotalHolds() {
+        int total = 0;
+        for (IntObjectMap<Hold> titleHolds : holdsByTitle.values()) {
+            total += titleHolds.size();
+        }
+        return total;
+    }
+
+    // ==================== INDEX MAINTENANCE ====================
+
+    private void enqueue(Hold hold) {
+        WaitingLine waiting = waitingByTitle.get(hold.isbnKey);
+        if (waiting == null) {
+            waiting = new WaitingLine();
+            waitingByTitle.put(hold.isbnKey, waiting);
+        }
+        waiting.add(hold);
+    }
+
+    private void indexMemberHold(Hold hold) {
+        List<Hold> memberHolds = holdsByMember.get(hold.memberId);
+        if (memberHolds == null) {
+            memberHolds = new ArrayList<>(2);
+            holdsByMember.put(hold.memberId, memberHolds);
+        }
+        memberHolds.add(hold);
+    }
+
+    private void unindexMemberHold(Hold hold) {
+        List<Hold> memberHolds = holdsByMember.get(hold.memberId);
+        if (memberHolds != null) {
+            memberHolds.remove(hold);
+            if (memberHolds.isEmpty()) {
+                holdsByMember.remove(hold.memberId);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ReservationQueue{titles=" + holdsByTitle.size() + ", holds=" + getTotalHolds() + "}";
+    }
+}
@@ -0,0 +1,359 @@
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * SessionManager class is the registry of logged-in terminals.
+ * Each successful login gets its own session and random token, so any number of
+ * librarians and members can be signed in to one Library at the same time.
+ * Idle sessions expire through a hashed timer wheel: a touch only updates a
+ * timestamp, and the periodic tick looks at one wheel slot instead of every session.
+ * Last-login times are kept here, not on the serialized User; Library saves them
+ * in their own small file with the other data files.
+ */
+public class SessionManager {
+
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 15 * 60 * 1000L;
+    private static final long TICK_MILLIS = 1000;
+    private static final int WHEEL_SIZE = 1024;               // Power of two; one turn is ~17 minutes
+    private static final int TOKEN_BYTES = 32;
+
+    /**
+     * A logged-in user at one terminal
+     */
+    public static class Session {
+
+        private final String token;
+        private final User user;
+        private final LocalDateTime createdAt;
+        private volatile long lastAccessMillis;
+        private volatile boolean open;
+        private long deadlineTick;                            // Guarded by the wheel lock
+
+        private Session(String token, User user, long nowMillis) {
+            this.token = token;
+            this.user = user;
+            this.createdAt = LocalDateTime.now(LibraryClock.get().getClock());
+            this.lastAccessMillis = nowMillis;
+            this.open = true;
+        }
+
+        public String getToken() {
+            return token;
+        }
+
+        public User getUser() {
+            return user;
+        }
+
+        public int getUserId() {
+            return user.getId();
+        }
+
+        public User.Role getRole() {
+            return user.getRole();
+        }
+
+        public boolean isLibrarian() {
+            return user instanceof Librarian;
+        }
+
+        public LocalDateTime getCreatedAt() {
+            return createdAt;
+        }
+
+        public long getLastAccessMillis() {
+            return lastAccessMillis;
+        }
+
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public String toString() {
+            return "Session{user=" + user.getName() + " " + user.getSurname() + ", role=" + user.getRole() +
+                   ", since=" + createdAt + (open ? "" : ", closed") + "}";
+        }
+    }
+
+    // Attributes
+    private final Map<String, Session> sessionsByToken;
+    private final Map<Integer, LocalDateTime> lastLoginByUser;
+    private final List<Consumer<Session>> expiryListeners;
+    private final SecureRandom random;
+    private final long idleTimeoutMillis;
+
+    // Timer wheel: slot i holds sessions whose deadline tick is i modulo WHEEL_SIZE
+    private final Object wheelLock = new Object();
+    private final List<List<Session>> wheel;
+    private final long startMillis;
+    private long currentTick;
+    private ScheduledExecutorService ticker;
+
+    // Constructors
+
+    public SessionManager() {
+        this(DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    public SessionManager(long idleTimeoutMillis) {
+        if (idleTimeoutMillis < TICK_MILLIS) {
+            throw new IllegalArgumentException("Idle timeout must be at least " + TICK_MILLIS + " ms");
+        }
+        this.sessionsByToken = new ConcurrentHashMap<>();
+        this.lastLoginByUser = new ConcurrentHashMap<>();
+        this.expiryListeners = new CopyOnWriteArrayList<>();
+        this.random = new SecureRandom();
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.wheel = new ArrayList<>(WHEEL_SIZE);
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(new ArrayList<>());
+        }
+        this.startMillis = now();
+        this.currentTick = 0;
+    }
+
+    private static long now() {
+        return LibraryClock.get().getClock().millis();
+    }
+
+    // ==================== SESSION LIFECYCLE ====================
+
+    /**
+     * Open a session for an authenticated user
+     */
+    public Session open(User user) {
+        if (user == null) {
+            throw new IllegalArgumentException("User cannot be null");
+        }
+        long nowMillis = now();
+        Session session = new Session(newToken(), user, nowMillis);
+        sessionsByToken.put(session.token, session);
+        lastLoginByUser.put(user.getId(), session.createdAt);
+        synchronized (wheelLock) {
+            schedule(session);
+        }
+        return session;
+    }
+
+    /**
+     * Look up an open session and mark it active
+     * @return the session, or null if the token is unknown, closed or expired
+     */
+    public Session touch(String token) {
+        Session session = token != null ? sessionsByToken.get(token) : null;
+        if (session == null || !session.open) {
+            return null;
+        }
+        long nowMillis = now();
+        if (nowMillis - session.lastAccessMillis >= idleTimeoutMillis) {
+            expire(session);
+            return null;
+        }
+        session.lastAccessMillis = nowMillis;
+        return session;
+    }
+
+    /**
+     * Get the session for a token without marking it active
+     */
+    public Session find(String token) {
+        Session session = token != null ? sessionsByToken.get(token) : null;
+        return session != null && session.open ? session : null;
+    }
+
+    /**
+     * Close a session
+     * @return true if the session was open
+     */
+    public boolean close(String token) {
+        Session session = token != null ? sessionsByToken.remove(token) : null;
+        if (session == null || !session.open) {
+            return false;
+        }
+        session.open = false;   // The wheel drops it lazily when its slot comes up
+        return true;
+    }
+
+    /**
+     * Close every session of a user (e.g. when the account is removed)
+     * @return number of sessions closed
+     */
+    public int closeAllForUser(int userId) {
+        int closed = 0;
+        for (Session session : sessionsByToken.values()) {
+            if (session.getUserId() == userId && close(session.token)) {
+                closed++;
+            }
+        }
+        return closed;
+    }
+
+    private void expire(Session session) {
+        if (sessionsByToken.remove(session.token, session)) {
+            session.open = false;
+            for (Consumer<Session> listener : expiryListeners) {
+                listener.accept(session);
+            }
+        }
+    }
+
+    private String newToken() {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    // ==================== IDLE EXPIRY (TIMER WHEEL) ====================
+
+    /**
+     * Put a session in the slot of its idle deadline. Caller holds wheelLock.
+     */
+    private void schedule(Session session) {
+        long deadlineMillis = session.lastAccessMillis + idleTimeoutMillis;
+        long tick = Math.max(currentTick + 1, (deadlineMillis - startMillis + TICK_MILLIS - 1) / TICK_MILLIS);
+        session.deadlineTick = tick;
+        wheel.get((int) (tick & (WHEEL_SIZE - 1))).add(session);
+    }
+
+    /**
+     * Advance the wheel to the given time, expiring sessions idle past the timeout.
+     * Sessions touched since they were scheduled move to the slot of their new deadline.
+     * @return number of sessions expired
+     */
+    public int advance(long nowMillis) {
+        List<Session> expired = new ArrayList<>();
+        synchronized (wheelLock) {
+            long targetTick = (nowMillis - startMillis) / TICK_MILLIS;
+            // A gap longer than a full turn only needs each slot visited once
+            long firstTick = Math.max(currentTick + 1, targetTick - WHEEL_SIZE + 1);
+            for (long tick = firstTick; tick <= targetTick; tick++) {
+                List<Session> slot = wheel.get((int) (tick & (WHEEL_SIZE - 1)));
+                if (slot.isEmpty()) {
+                    continue;
+                }
+                List<Session> due = new ArrayList<>(slot);
+                slot.clear();
+                for (Session session : due) {
+                    if (!session.open) {
+                        continue;
+                    }
+                    if (session.deadlineTick > targetTick) {
+                        slot.add(session);          // Due on a later turn of the wheel
+                    } else if (nowMillis - session.lastAccessMillis >= idleTimeoutMillis) {
+                        expired.add(session);
+                    } else {
+                        currentTick = tick;
+                        schedule(session);
+                    }
+                }
+            }
+            currentTick = Math.max(currentTick, targetTick);
+        }
+        for (Session session : expired) {
+            expire(session);
+        }
+        return expired.size();
+    }
+
+    /**
+     * Start the background ticker that expires idle sessions
+     */
+    public void start() {
+        if (ticker != null) {
+            return;
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "session-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(() -> advance(now()), TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop the background ticker
+     */
+    public void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+            ticker = null;
+        }
+    }
+
+    /**
+     * Be notified when a session expires (called on the ticker thread)
+     */
+    public void addExpiryListener(Consumer<Session> listener) {
+        expiryListeners.add(listener);
+    }
+
+    // ==================== QUERIES ====================
+
+    /**
+     * Check if a user has at least one open session
+     */
+    public boolean isLoggedIn(int userId) {
+        for (Session session : sessionsByToken.values()) {
+            if (session.getUserId() == userId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * When the user last logged in, or null if never
+     */
+    public LocalDateTime getLastLogin(int userId) {
+        return lastLoginByUser.get(userId);
+    }
+
+    /**
+     * Copy of the last-login times, keyed by user ID (for saving)
+     */
+    public HashMap<Integer, LocalDateTime> getLastLogins() {
+        return new HashMap<>(lastLoginByUser);
+    }
+
+    /**
+     * Restore saved last-login times. Logins made since startup are kept.
+     */
+    public void restoreLastLogins(Map<Integer, LocalDateTime> lastLogins) {
+        for (Map.Entry<Integer, LocalDateTime> entry : lastLogins.entrySet()) {
+            lastLoginByUser.putIfAbsent(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Snapshot of the open sessions
+     */
+    public List<Session> getActiveSessions() {
+        return new ArrayList<>(sessionsByToken.values());
+    }
+
+    public int getSessionCount() {
+        return sessionsByToken.size();
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "SessionManager{sessions=" + sessionsByToken.size() +
+               ", idleTimeout=" + (idleTimeoutMillis / 1000) + "s}";
+    }
+}
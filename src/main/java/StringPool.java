@@ -0,0 +1,170 @@
+import java.lang.ref.WeakReference;
+import java.util.BitSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * StringPool class canonicalizes repeated strings such as author names.
+ * Every distinct value is stored once together with its precomputed case-folded form,
+ * and values that differ only by case share one folded ID, so case-insensitive
+ * comparisons become int equality instead of toLowerCase() on every call.
+ * The pool holds its entries weakly: a value is dropped once nothing uses its Entry.
+ * Safe for concurrent use.
+ */
+public class StringPool {
+
+    /**
+     * A canonical pooled string with its folded form and folded ID
+     */
+    public static final class Entry {
+
+        private final String value;
+        private final Folded folded;
+
+        private Entry(String value, Folded folded) {
+            this.value = value;
+            this.folded = folded;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public String getFolded() {
+            return folded.text;
+        }
+
+        /**
+         * Same for all values equal ignoring case
+         */
+        public int getFoldedId() {
+            return folded.id;
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+    }
+
+    /**
+     * A folded form and its ID, kept alive by the entries that share it
+     */
+    private static final class Folded {
+
+        private final String text;
+        private final int id;
+
+        private Folded(String text, int id) {
+            this.text = text;
+            this.id = id;
+        }
+    }
+
+    // Attributes (keys are the entries' own strings, so a map entry lives exactly as long as its Entry)
+    private final Map<String, WeakReference<Entry>> entries;     // Exact value -> canonical entry
+    private final Map<String, WeakReference<Folded>> foldedIds;  // Folded value -> folded ID
+    private int nextFoldedId;
+
+    // Constructors
+
+    public StringPool() {
+        this.entries = new WeakHashMap<>();
+        this.foldedIds = new WeakHashMap<>();
+        this.nextFoldedId = 0;
+    }
+
+    // ==================== POOL OPERATIONS ====================
+
+    /**
+     * Case-fold a string the same way the pool does
+     */
+    public static String fold(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Check whether a text contains an already folded query, ignoring case, without folding the text
+     */
+    public static boolean containsFolded(String text, String foldedQuery) {
+        int length = foldedQuery.length();
+        for (int i = 0, last = text.length() - length; i <= last; i++) {
+            if (text.regionMatches(true, i, foldedQuery, 0, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the canonical entry for a value, adding it if new
+     */
+    public synchronized Entry intern(String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Pooled value cannot be null");
+        }
+        Entry entry = get(entries, value);
+        if (entry != null) {
+            return entry;
+        }
+        String foldedText = fold(value);
+        Folded folded = get(foldedIds, foldedText);
+        if (folded == null) {
+            // Share the folded instance with the value when folding changes nothing
+            folded = new Folded(foldedText.equals(value) ? value : foldedText, nextFoldedId++);
+            foldedIds.put(folded.text, new WeakReference<>(folded));
+        }
+        entry = new Entry(value, folded);
+        entries.put(value, new WeakReference<>(entry));
+        return entry;
+    }
+
+    /**
+     * Folded ID of a value, or -1 if no value equal ignoring case is pooled
+     */
+    public synchronized int findFoldedId(String value) {
+        Folded folded = get(foldedIds, fold(value));
+        return folded != null ? folded.id : -1;
+    }
+
+    /**
+     * Folded IDs of all pooled values containing the query, ignoring case.
+     * Scans distinct values only, not every string that references them.
+     */
+    public synchronized BitSet foldedIdsContaining(String query) {
+        String foldedQuery = fold(query);
+        BitSet matches = new BitSet(nextFoldedId);
+        for (Map.Entry<String, WeakReference<Folded>> e : foldedIds.entrySet()) {
+            Folded folded = e.getValue().get();
+            if (folded != null && e.getKey().contains(foldedQuery)) {
+                matches.set(folded.id);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Number of distinct values still in use
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Number of distinct values ignoring case still in use
+     */
+    public synchronized int foldedSize() {
+        return foldedIds.size();
+    }
+
+    private static <T> T get(Map<String, WeakReference<T>> map, String key) {
+        WeakReference<T> ref = map.get(key);
+        return ref != null ? ref.get() : null;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "StringPool{values=" + entries.size() + ", folded=" + foldedIds.size() + "}";
+    }
+}
@@ -0,0 +1,114 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * TaskScope class runs the subtasks of one composite operation as a unit.
+ * Subtasks are forked onto executors and joined together: if any subtask fails,
+ * the others are cancelled and join() throws that failure, so no subtask outlives
+ * the operation that started it. Modelled on StructuredTaskScope.ShutdownOnFailure,
+ * which is not available on Java 17.
+ */
+public class TaskScope implements AutoCloseable {
+
+    // Attributes
+    private final List<CompletableFuture<?>> subtasks;
+    private final CompletableFuture<Void> firstFailure;
+    private boolean joined;
+
+    // Constructors
+
+    public TaskScope() {
+        this.subtasks = new ArrayList<>();
+        this.firstFailure = new CompletableFuture<>();
+        this.joined = false;
+    }
+
+    // ==================== FORK / JOIN ====================
+
+    /**
+     * Start a subtask on the given executor
+     */
+    public <T> CompletableFuture<T> fork(Callable<T> task, Executor executor) {
+        if (joined) {
+            throw new IllegalStateException("Cannot fork after join()");
+        }
+        CompletableFuture<T> future = CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+        future.whenComplete((result, error) -> {
+            if (error != null) {
+                firstFailure.completeExceptionally(unwrap(error));
+            }
+        });
+        subtasks.add(future);
+        return future;
+    }
+
+    /**
+     * Wait until every subtask succeeded or one failed.
+     * On failure the remaining subtasks are cancelled.
+     * @throws ExecutionException wrapping the first failure
+     */
+    public void join() throws ExecutionException, InterruptedException {
+        joined = true;
+        CompletableFuture<Void> all = CompletableFuture.allOf(subtasks.toArray(new CompletableFuture<?>[0]));
+        try {
+            CompletableFuture.anyOf(all, firstFailure).get();
+        } catch (ExecutionException e) {
+            cancelAll();
+            throw new ExecutionException(unwrap(e.getCause()));
+        } catch (InterruptedException e) {
+            cancelAll();
+            throw e;
+        }
+    }
+
+    /**
+     * Non-blocking join for callers that are themselves asynchronous
+     * @return a future completing when all subtasks succeed, or failing with the first failure
+     */
+    public CompletableFuture<Void> joinAsync() {
+        joined = true;
+        CompletableFuture<Void> all = CompletableFuture.allOf(subtasks.toArray(new CompletableFuture<?>[0]));
+        return CompletableFuture.anyOf(all, firstFailure)
+                .<Void>thenApply(ignored -> null)
+                .whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        cancelAll();
+                    }
+                });
+    }
+
+    private void cancelAll() {
+        for (CompletableFuture<?> subtask : subtasks) {
+            subtask.cancel(true);
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException)
+                && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    /**
+     * Cancel anything still running (e.g. when the caller gave up before join())
+     */
+    @Override
+    public void close() {
+        cancelAll();
+    }
+}
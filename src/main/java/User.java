@@ -1,7 +1,4 @@
 import java.io.Serializable;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.nio.charset.StandardCharsets;
 
 /**
  * Abstract base class for all users in the Library Management System.
@@ -22,11 +19,10 @@ public abstract class User implements Serializable {
     protected final String surname;
     protected int age;
     protected String email;
-    protected String passwordHash;  // Store hashed password for security
+    protected PasswordCredential credential;  // Salted PBKDF2 hash and its parameters
+    protected String passwordHash;  // Legacy unsalted SHA-256 hex, replaced by a credential at next login
     protected Role role;
     protected MembershipPlan membershipPlan;
-    protected boolean isLoggedIn;
-    protected java.time.LocalDateTime lastLoginTime;
 
     private static int baseId = 100;
 
@@ -48,10 +44,9 @@ public abstract class User implements Serializable {
         this.surname = surname;
         this.age = age;
         this.email = email;
-        this.passwordHash = hashPassword(password);
+        this.credential = PasswordCredential.create(password);
+        this.passwordHash = null;
         this.role = role;
-        this.isLoggedIn = false;
-        this.lastLoginTime = null;
         
         // Assign plan using polymorphic method
         this.membershipPlan = assignDefaultPlan();
@@ -71,10 +66,9 @@ public abstract class User implements Serializable {
         this.surname = surname;
         this.age = age;
         this.email = null;
+        this.credential = null;
         this.passwordHash = null;
         this.role = role;
-        this.isLoggedIn = false;
-        this.lastLoginTime = null;
         
         // Assign plan using polymorphic method
         this.membershipPlan = assignDefaultPlan();
@@ -121,42 +115,72 @@ public abstract class User implements Serializable {
     // ==================== PASSWORD HASHING ====================
     
     /**
-     * Hash a password using SHA-256
+     * Verify a password against the stored credential.
+     * Legacy SHA-256 hashes and credentials made with weaker parameters
+     * are re-derived with the current ones after a successful check.
+     */
+    protected boolean verifyPassword(String password) {
+        PasswordCredential verified = checkPassword(credential, passwordHash, password);
+        if (verified == null) {
+            return false;
+        }
+        installCredential(credential, verified);
+        return true;
+    }
+    
+    /**
+     * Check a password against a stored credential or legacy hash without touching any user,
+     * so the key derivation can run off the thread that owns the library.
+     * @return the credential to keep (a new one if the stored one needs upgrading),
+     *         or null if the password is wrong
      */
-    protected static String hashPassword(String password) {
+    static PasswordCredential checkPassword(PasswordCredential stored, String legacyHash, String password) {
         if (password == null) return null;
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(password.getBytes(StandardCharsets.UTF_8));
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) hexString.append('0');
-                hexString.append(hex);
+        if (stored != null) {
+            if (!stored.verify(password)) {
+                return null;
             }
-            return hexString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            // Fallback to simple encoding if SHA-256 not available
-            return password;
+            return stored.needsRehash() ? PasswordCredential.create(password) : stored;
+        }
+        if (PasswordCredential.verifyLegacySha256(password, legacyHash)) {
+            return PasswordCredential.create(password);
         }
+        return null;
     }
     
     /**
-     * Verify a password against the stored hash
+     * Install a credential returned by checkPassword(), unless the stored one changed since
      */
-    protected boolean verifyPassword(String password) {
-        if (password == null || passwordHash == null) return false;
-        return passwordHash.equals(hashPassword(password));
+    void installCredential(PasswordCredential checkedAgainst, PasswordCredential verified) {
+        if (verified != checkedAgainst && credential == checkedAgainst) {
+            credential = verified;
+            passwordHash = null;
+        }
+    }
+    
+    PasswordCredential getCredential() {
+        return credential;
+    }
+    
+    String getLegacyPasswordHash() {
+        return passwordHash;
+    }
+    
+    /**
+     * Check if a password has been set
+     */
+    public boolean hasCredentials() {
+        return credential != null || passwordHash != null;
     }
 
     // ==================== AUTHENTICATION ====================
     
     /**
-     * Login with email and password
+     * Check email and password. Session state lives in SessionManager, not on the user.
      * @return true if login successful
      */
     public boolean login(String email, String password) {
-        if (this.email == null || this.passwordHash == null) {
+        if (this.email == null || !hasCredentials()) {
             System.out.println("Error: No credentials set for this user.");
             return false;
         }
@@ -171,38 +195,17 @@ public abstract class User implements Serializable {
             return false;
         }
         
-        this.isLoggedIn = true;
-        this.lastLoginTime = java.time.LocalDateTime.now();
         System.out.println("✓ Login successful! Welcome, " + name + " " + surname);
         onLogin(); // Polymorphic callback
         return true;
     }
     
     /**
-     * Logout the user
+     * Logout the user (called when one of the user's sessions is closed)
      */
     public void logout() {
-        if (isLoggedIn) {
-            this.isLoggedIn = false;
-            System.out.println("✓ Logged out successfully. Goodbye, " + name + "!");
-            onLogout(); // Polymorphic callback
-        } else {
-            System.out.println("You are not logged in.");
-        }
-    }
-    
-    /**
-     * Check if user is currently logged in
-     */
-    public boolean isLoggedIn() {
-        return isLoggedIn;
-    }
-    
-    /**
-     * Get last login time
-     */
-    public java.time.LocalDateTime getLastLoginTime() {
-        return lastLoginTime;
+        System.out.println("✓ Logged out successfully. Goodbye, " + name + "!");
+        onLogout(); // Polymorphic callback
     }
     
     /**
@@ -300,7 +303,7 @@ public abstract class User implements Serializable {
      */
     @Deprecated
     public String getPassword() {
-        return this.passwordHash;
+        return credential != null ? credential.encode() : this.passwordHash;
     }
     
     public Role getRole() {
@@ -321,7 +324,8 @@ public abstract class User implements Serializable {
     
     public void setPassword(String password) {
         validatePassword(password);
-        this.passwordHash = hashPassword(password);
+        this.credential = PasswordCredential.create(password);
+        this.passwordHash = null;
     }
     
     /**
@@ -331,7 +335,8 @@ public abstract class User implements Serializable {
         validateEmail(email);
         validatePassword(password);
         this.email = email;
-        this.passwordHash = hashPassword(password);
+        this.credential = PasswordCredential.create(password);
+        this.passwordHash = null;
         System.out.println("✓ Credentials updated for " + name + " " + surname);
     }
 